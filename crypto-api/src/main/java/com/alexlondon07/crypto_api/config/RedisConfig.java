@@ -3,12 +3,14 @@ package com.alexlondon07.crypto_api.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisPassword;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisOperations;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
@@ -61,6 +63,14 @@ public class RedisConfig {
         return reactiveRedisTemplate;
     }
     
+    /**
+     * Reads the "chunked" history of a time range (tail and overlapping chunks) in one call.
+     */
+    @Bean
+    public RedisScript<byte[]> readHistoryChunksScript() {
+        return RedisScript.of(new ClassPathResource("scripts/read_history_chunks.lua"), byte[].class);
+    }
+
     @Bean
     public ObjectMapper objectMapper() {
         ObjectMapper objectMapper = new ObjectMapper();
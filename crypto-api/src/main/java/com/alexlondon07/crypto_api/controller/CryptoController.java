@@ -1,7 +1,11 @@
 package com.alexlondon07.crypto_api.controller;
 
+import com.alexlondon07.crypto_api.model.Candle;
+import com.alexlondon07.crypto_api.model.CorrelationSnapshot;
 import com.alexlondon07.crypto_api.model.CryptoListResponse;
 import com.alexlondon07.crypto_api.model.CryptoPrice;
+import com.alexlondon07.crypto_api.model.Indicators;
+import com.alexlondon07.crypto_api.model.Mover;
 import com.alexlondon07.crypto_api.model.PriceStats;
 import com.alexlondon07.crypto_api.service.CryptoService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -17,10 +21,14 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/v1/crypto")
 @Slf4j
@@ -76,19 +84,118 @@ public class CryptoController {
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
-    @Operation(summary = "Get price statistics", description = "Retrieves price statistics (min, max, avg, sample count) for a specific cryptocurrency")
+    @Operation(summary = "Get price statistics", description = "Retrieves price statistics (min, max, avg, sample count, percentiles and rolling windows) for a specific cryptocurrency, optionally narrowed to one rolling window")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved statistics",
                     content = @Content(mediaType = "application/json",
                             schema = @Schema(implementation = PriceStats.class))),
-            @ApiResponse(responseCode = "404", description = "Cryptocurrency not found")
+            @ApiResponse(responseCode = "404", description = "Cryptocurrency or window not found")
     })
     @GetMapping("/stats/{symbol}")
     public Mono<ResponseEntity<PriceStats>> getStats(
+            @Parameter(description = "Cryptocurrency symbol (e.g., BTC, ETH, SOL)", required = true, example = "BTC")
+            @PathVariable String symbol,
+            @Parameter(description = "Rolling window to return (e.g., 1h, 24h, 7d); all windows when omitted", example = "1h")
+            @RequestParam(required = false) String window) {
+        Mono<PriceStats> stats = window == null
+                ? cryptoService.getStatsBySymbol(symbol)
+                : cryptoService.getStatsBySymbol(symbol, window);
+        return stats
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @Operation(summary = "Get technical indicators", description = "Retrieves the latest SMA, EMA, RSI, Bollinger bands and MACD of a specific cryptocurrency, computed over tick periods; indicators still warming up are omitted")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved indicators",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = Indicators.class))),
+            @ApiResponse(responseCode = "404", description = "Cryptocurrency not found or no indicators computed")
+    })
+    @GetMapping("/indicators/{symbol}")
+    public Mono<ResponseEntity<Indicators>> getIndicators(
             @Parameter(description = "Cryptocurrency symbol (e.g., BTC, ETH, SOL)", required = true, example = "BTC")
             @PathVariable String symbol) {
-        return cryptoService.getStatsBySymbol(symbol)
+        return cryptoService.getIndicators(symbol)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @Operation(summary = "Get recent price history", description = "Retrieves the price ticks of a specific cryptocurrency recorded in the last N minutes")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved history",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CryptoPrice.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error")
+    })
+    @GetMapping("/history/{symbol}")
+    public Flux<CryptoPrice> getHistory(
+            @Parameter(description = "Cryptocurrency symbol (e.g., BTC, ETH, SOL)", required = true, example = "BTC")
+            @PathVariable String symbol,
+            @Parameter(description = "Size of the window in minutes", example = "60")
+            @RequestParam(defaultValue = "60") long minutes) {
+        log.info("Request: Get last {} minutes of history for {}", minutes, symbol);
+        return cryptoService.getRecentHistory(symbol, Duration.ofMinutes(minutes));
+    }
+
+    @Operation(summary = "Get OHLC candles", description = "Retrieves the latest finished open/high/low/close candles of a specific cryptocurrency at a resolution of 1m, 5m, 1h or 1d")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved candles",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = Candle.class))),
+            @ApiResponse(responseCode = "400", description = "Unsupported resolution")
+    })
+    @GetMapping("/candles/{symbol}")
+    public Mono<ResponseEntity<List<Candle>>> getCandles(
+            @Parameter(description = "Cryptocurrency symbol (e.g., BTC, ETH, SOL)", required = true, example = "BTC")
+            @PathVariable String symbol,
+            @Parameter(description = "Candle resolution (1m, 5m, 1h, 1d)", example = "1m")
+            @RequestParam(defaultValue = "1m") String resolution,
+            @Parameter(description = "Maximum number of candles, oldest first", example = "100")
+            @RequestParam(defaultValue = "100") int limit) {
+        if (!cryptoService.isSupportedResolution(resolution) || limit <= 0) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return cryptoService.getCandles(symbol, resolution, limit)
+                .map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Get correlation matrix", description = "Retrieves the rolling pairwise covariance and correlation of log returns sampled on a common time grid, optionally narrowed to some symbols")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved correlation",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CorrelationSnapshot.class))),
+            @ApiResponse(responseCode = "404", description = "No correlation snapshot published yet")
+    })
+    @GetMapping("/correlation")
+    public Mono<ResponseEntity<CorrelationSnapshot>> getCorrelation(
+            @Parameter(description = "Symbols to include, all when omitted", example = "BTC,ETH,SOL")
+            @RequestParam(required = false) List<String> symbols) {
+        return cryptoService.getCorrelation(symbols)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
+
+    @Operation(summary = "Get top movers", description = "Retrieves the top N symbols ranked by 24h change, market cap (volume proxy) or rolling volatility, from leaderboards maintained on ingest")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved movers",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = Mover.class))),
+            @ApiResponse(responseCode = "400", description = "Unsupported metric or order")
+    })
+    @GetMapping("/movers")
+    public Mono<ResponseEntity<List<Mover>>> getMovers(
+            @Parameter(description = "Ranking metric (change24h, marketCap, volatility)", example = "change24h")
+            @RequestParam(defaultValue = "change24h") String metric,
+            @Parameter(description = "Maximum number of symbols", example = "10")
+            @RequestParam(defaultValue = "10") int limit,
+            @Parameter(description = "desc for gainers / highest first, asc for losers / lowest first", example = "desc")
+            @RequestParam(defaultValue = "desc") String order) {
+        if (!cryptoService.isSupportedMoverMetric(metric) || limit <= 0
+                || !("asc".equals(order) || "desc".equals(order))) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return cryptoService.getMovers(metric, limit, "asc".equals(order))
+                .map(ResponseEntity::ok);
+    }
 }
\ No newline at end of file
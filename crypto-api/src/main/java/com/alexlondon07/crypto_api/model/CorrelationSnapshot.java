@@ -0,0 +1,22 @@
+package com.alexlondon07.crypto_api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CorrelationSnapshot {
+    private Instant asOf;
+    private long intervalMillis;
+    private int window;
+    private List<String> symbols;
+    private double[][] covariance;
+    private double[][] correlation;
+}
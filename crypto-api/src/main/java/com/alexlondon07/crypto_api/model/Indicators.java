@@ -0,0 +1,27 @@
+package com.alexlondon07.crypto_api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Indicators {
+    private String symbol;
+    private long samples;
+    private Map<String, BigDecimal> sma;
+    private Map<String, BigDecimal> ema;
+    private BigDecimal rsi;
+    private BigDecimal bollingerMiddle;
+    private BigDecimal bollingerUpper;
+    private BigDecimal bollingerLower;
+    private BigDecimal macd;
+    private BigDecimal macdSignal;
+    private BigDecimal macdHistogram;
+}
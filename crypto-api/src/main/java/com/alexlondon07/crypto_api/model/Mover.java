@@ -0,0 +1,19 @@
+package com.alexlondon07.crypto_api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Mover {
+    private int rank;
+    private String symbol;
+    private String metric;
+    private BigDecimal value;
+}
@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Map;
 
 @Data
 @Builder
@@ -20,4 +21,9 @@ public class PriceStats {
     private BigDecimal avgPrice;
     private int sampleCount;
     private Instant lastUpdated;
+    private Instant lastTickTime;
+    private Map<String, BigDecimal> pricePercentiles;
+    private Map<String, BigDecimal> changePercentiles;
+    private Map<String, WindowStats> windows;
+    private Indicators indicators;
 }
\ No newline at end of file
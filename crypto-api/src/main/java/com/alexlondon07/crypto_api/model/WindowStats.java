@@ -0,0 +1,23 @@
+package com.alexlondon07.crypto_api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WindowStats {
+    private String window;
+    private long count;
+    private BigDecimal mean;
+    private BigDecimal variance;
+    private BigDecimal stddev;
+    private BigDecimal ewma;
+    private BigDecimal min;
+    private BigDecimal max;
+}
@@ -1,10 +1,15 @@
 package com.alexlondon07.crypto_api.repository;
 
+import com.alexlondon07.crypto_api.model.Candle;
+import com.alexlondon07.crypto_api.model.CorrelationSnapshot;
 import com.alexlondon07.crypto_api.model.CryptoPrice;
+import com.alexlondon07.crypto_api.model.Mover;
 import com.alexlondon07.crypto_api.model.PriceStats;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
+
 public interface CryptoRepository {
 
     Mono<CryptoPrice> findCurrentPrice(String symbol);
@@ -12,4 +17,15 @@ public interface CryptoRepository {
     Flux<CryptoPrice> findAllCurrentPrices();
 
     Mono<PriceStats> findStats(String symbol);
+
+    Flux<CryptoPrice> findHistory(String symbol, Instant from, Instant to);
+
+    Flux<Candle> findLatestCandles(String symbol, String resolution, int limit);
+
+    /**
+     * Top symbols of a movers leaderboard, highest scores first unless ascending.
+     */
+    Flux<Mover> findMovers(String metric, int limit, boolean ascending);
+
+    Mono<CorrelationSnapshot> findCorrelation();
 }
@@ -1,22 +1,57 @@
 package com.alexlondon07.crypto_api.repository;
 
+import com.alexlondon07.crypto_api.model.Candle;
+import com.alexlondon07.crypto_api.model.CorrelationSnapshot;
 import com.alexlondon07.crypto_api.model.CryptoPrice;
+import com.alexlondon07.crypto_api.model.Mover;
 import com.alexlondon07.crypto_api.model.PriceStats;
+import com.alexlondon07.crypto_api.utils.HistoryChunkCodec;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Repository
 @RequiredArgsConstructor
 public class CryptoRepositoryImp  implements CryptoRepository{
     private final ReactiveRedisTemplate<String, Object> redisTemplate;
     private final ObjectMapper objectMapper;
+    private final RedisScript<byte[]> readHistoryChunksScript;
+
+    @Value("${crypto.history.format:stream}")
+    private String historyFormat;
 
     private static final String REDIS_KEY_CURRENT = "crypto:current:";
     private static final String REDIS_KEY_STATS = "crypto:stats:";
+    private static final String REDIS_KEY_STATS_HASH = "crypto:stats-hash:";
+    private static final String REDIS_KEY_HISTORY = "crypto:history:";
+    private static final String REDIS_KEY_HISTORY_STREAM = "crypto:history-stream:";
+    private static final String REDIS_KEY_HISTORY_TAIL = "crypto:history-tail:";
+    private static final String REDIS_KEY_HISTORY_CHUNKS = "crypto:history-chunks:";
+    private static final String REDIS_KEY_HISTORY_INDEX = "crypto:history-index:";
+    private static final String HISTORY_FORMAT_CHUNKED = "chunked";
+    private static final String HISTORY_FORMAT_LIST = "list";
+    private static final String REDIS_KEY_CANDLES = "crypto:candles:";
+    private static final String REDIS_KEY_MOVERS = "crypto:movers:";
+    private static final String REDIS_KEY_CORRELATION = "crypto:correlation";
 
     @Override
     public Mono<CryptoPrice> findCurrentPrice(String symbol) {
@@ -36,7 +71,135 @@ public class CryptoRepositoryImp  implements CryptoRepository{
     public Mono<PriceStats> findStats(String symbol) {
         return redisTemplate.opsForValue()
                 .get(REDIS_KEY_STATS + symbol.toUpperCase())
-                .map(obj -> objectMapper.convertValue(obj, PriceStats.class));
+                .map(obj -> objectMapper.convertValue(obj, PriceStats.class))
+                .switchIfEmpty(Mono.defer(() -> findStatsHash(symbol)));
+    }
+
+    /**
+     * History stream entry ids are tick timestamps in millis, so the time window maps to an XRANGE.
+     * Chunked history is read with one script call and decoded here; the legacy list has no
+     * time index, so the whole list is read and filtered.
+     */
+    @Override
+    public Flux<CryptoPrice> findHistory(String symbol, Instant from, Instant to) {
+        String upperSymbol = symbol.toUpperCase();
+        if (HISTORY_FORMAT_CHUNKED.equals(historyFormat)) {
+            return findChunkedHistory(upperSymbol, from, to);
+        }
+        if (HISTORY_FORMAT_LIST.equals(historyFormat)) {
+            return redisTemplate.opsForList()
+                    .range(REDIS_KEY_HISTORY + upperSymbol, 0, -1)
+                    .map(obj -> objectMapper.convertValue(obj, CryptoPrice.class))
+                    .filter(price -> price.getTimestamp() != null
+                            && !price.getTimestamp().isBefore(from) && !price.getTimestamp().isAfter(to));
+        }
+        Range<String> range = Range.closed(String.valueOf(from.toEpochMilli()), String.valueOf(to.toEpochMilli()));
+        return redisTemplate.<String, String>opsForStream()
+                .range(REDIS_KEY_HISTORY_STREAM + upperSymbol, range)
+                .map(record -> toCryptoPrice(upperSymbol, record));
+    }
+
+    /**
+     * Candles are stored in a sorted set scored by open time, so the newest N are the last N ranks.
+     */
+    @Override
+    public Flux<Candle> findLatestCandles(String symbol, String resolution, int limit) {
+        return redisTemplate.opsForZSet()
+                .range(REDIS_KEY_CANDLES + resolution + ":" + symbol.toUpperCase(), Range.closed((long) -limit, -1L))
+                .map(obj -> objectMapper.convertValue(obj, Candle.class));
+    }
+
+    /**
+     * Leaderboards are sorted sets kept up to date by price-processor-service, so the top N
+     * is a single ZRANGE / ZREVRANGE costing O(log n + N).
+     */
+    @Override
+    public Flux<Mover> findMovers(String metric, int limit, boolean ascending) {
+        String key = REDIS_KEY_MOVERS + metric;
+        Range<Long> ranks = Range.closed(0L, limit - 1L);
+        AtomicInteger rank = new AtomicInteger();
+        return (ascending
+                ? redisTemplate.opsForZSet().rangeWithScores(key, ranks)
+                : redisTemplate.opsForZSet().reverseRangeWithScores(key, ranks))
+                .map(entry -> Mover.builder()
+                        .rank(rank.incrementAndGet())
+                        .symbol(String.valueOf(entry.getValue()))
+                        .metric(metric)
+                        .value(BigDecimal.valueOf(entry.getScore()).setScale(4, RoundingMode.HALF_UP))
+                        .build());
+    }
+
+    @Override
+    public Mono<CorrelationSnapshot> findCorrelation() {
+        return redisTemplate.opsForValue()
+                .get(REDIS_KEY_CORRELATION)
+                .map(obj -> objectMapper.convertValue(obj, CorrelationSnapshot.class));
+    }
+
+    /**
+     * The script returns the raw tail and every chunk overlapping the window, including the one
+     * starting before it, so the decoded ticks are filtered by timestamp.
+     */
+    private Flux<CryptoPrice> findChunkedHistory(String symbol, Instant from, Instant to) {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        return redisTemplate.execute(readHistoryChunksScript,
+                        List.of(REDIS_KEY_HISTORY_TAIL + symbol, REDIS_KEY_HISTORY_CHUNKS + symbol, REDIS_KEY_HISTORY_INDEX + symbol),
+                        List.of(String.valueOf(fromMillis), String.valueOf(toMillis)),
+                        RedisElementWriter.from(StringRedisSerializer.UTF_8),
+                        RedisElementReader.from(RedisSerializer.byteArray()))
+                .next()
+                .flatMapIterable(snapshot -> {
+                    List<CryptoPrice> prices = new ArrayList<>();
+                    HistoryChunkCodec.decodeSnapshot(snapshot, (timestamp, price, change24h, marketCap) -> {
+                        if (timestamp >= fromMillis && timestamp <= toMillis) {
+                            prices.add(CryptoPrice.builder()
+                                    .symbol(symbol)
+                                    .priceUsd(HistoryChunkCodec.toDecimal(price))
+                                    .priceChange24h(HistoryChunkCodec.toDecimal(change24h))
+                                    .marketCap(HistoryChunkCodec.toDecimal(marketCap))
+                                    .timestamp(Instant.ofEpochMilli(timestamp))
+                                    .build());
+                        }
+                    });
+                    return prices;
+                });
+    }
+
+    private CryptoPrice toCryptoPrice(String symbol, MapRecord<String, String, String> record) {
+        Map<String, String> fields = record.getValue();
+        return CryptoPrice.builder()
+                .symbol(symbol)
+                .name(emptyToNull(fields.get("name")))
+                .priceUsd(toDecimal(fields.get("price")))
+                .priceChange24h(toDecimal(fields.get("change24h")))
+                .marketCap(toDecimal(fields.get("marketCap")))
+                .timestamp(Instant.ofEpochMilli(Long.parseLong(fields.get("timestamp"))))
+                .build();
+    }
+
+    private static BigDecimal toDecimal(String value) {
+        return value == null || value.isEmpty() ? null : new BigDecimal(value);
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Stats written by the processor's atomic (script) mode live in a hash instead of a JSON string.
+     */
+    private Mono<PriceStats> findStatsHash(String symbol) {
+        return redisTemplate.<String, Object>opsForHash()
+                .entries(REDIS_KEY_STATS_HASH + symbol.toUpperCase())
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .filter(fields -> !fields.isEmpty())
+                .map(fields -> {
+                    // running sum and newest tick time are internal to the update script
+                    fields.remove("sum");
+                    fields.remove("lastTick");
+                    return objectMapper.convertValue(fields, PriceStats.class);
+                });
     }
 
 }
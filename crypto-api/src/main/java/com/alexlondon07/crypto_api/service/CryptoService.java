@@ -1,7 +1,11 @@
 package com.alexlondon07.crypto_api.service;
 
+import com.alexlondon07.crypto_api.model.Candle;
+import com.alexlondon07.crypto_api.model.CorrelationSnapshot;
 import com.alexlondon07.crypto_api.model.CryptoListResponse;
 import com.alexlondon07.crypto_api.model.CryptoPrice;
+import com.alexlondon07.crypto_api.model.Indicators;
+import com.alexlondon07.crypto_api.model.Mover;
 import com.alexlondon07.crypto_api.model.PriceStats;
 import com.alexlondon07.crypto_api.repository.CryptoRepository;
 import lombok.RequiredArgsConstructor;
@@ -9,13 +13,18 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class CryptoService {
     
     private static final List<String> AVAILABLE_SYMBOLS = Arrays.asList("BTC", "ETH", "SOL");
+    private static final List<String> CANDLE_RESOLUTIONS = Arrays.asList("1m", "5m", "1h", "1d");
+    private static final List<String> MOVER_METRICS = Arrays.asList("change24h", "marketCap", "volatility");
     
     private final CryptoRepository cryptoRepository;
 
@@ -34,7 +43,83 @@ public class CryptoService {
     public Mono<PriceStats> getStatsBySymbol(String symbol) {
         return cryptoRepository.findStats(symbol);
     }
+
+    /**
+     * Stats narrowed to a single rolling window, empty when that window is not computed.
+     */
+    public Mono<PriceStats> getStatsBySymbol(String symbol, String window) {
+        return cryptoRepository.findStats(symbol)
+                .filter(stats -> stats.getWindows() != null && stats.getWindows().containsKey(window))
+                .map(stats -> {
+                    stats.setWindows(Map.of(window, stats.getWindows().get(window)));
+                    return stats;
+                });
+    }
+    
+    /**
+     * Latest technical indicators, stored by price-processor-service with the stats.
+     */
+    public Mono<Indicators> getIndicators(String symbol) {
+        return cryptoRepository.findStats(symbol)
+                .filter(stats -> stats.getIndicators() != null)
+                .map(stats -> {
+                    Indicators indicators = stats.getIndicators();
+                    indicators.setSymbol(stats.getSymbol());
+                    return indicators;
+                });
+    }
+
+    public Flux<CryptoPrice> getRecentHistory(String symbol, Duration window) {
+        Instant now = Instant.now();
+        return cryptoRepository.findHistory(symbol, now.minus(window), now);
+    }
+    
+    public boolean isSupportedResolution(String resolution) {
+        return CANDLE_RESOLUTIONS.contains(resolution);
+    }
+
+    public Mono<List<Candle>> getCandles(String symbol, String resolution, int limit) {
+        return cryptoRepository.findLatestCandles(symbol, resolution, limit).collectList();
+    }
     
+    public boolean isSupportedMoverMetric(String metric) {
+        return MOVER_METRICS.contains(metric);
+    }
+
+    public Mono<List<Mover>> getMovers(String metric, int limit, boolean ascending) {
+        return cryptoRepository.findMovers(metric, limit, ascending).collectList();
+    }
+
+    /**
+     * Latest correlation snapshot, narrowed to the requested symbols (in that order) when given.
+     * Requested symbols missing from the snapshot are left out.
+     */
+    public Mono<CorrelationSnapshot> getCorrelation(List<String> symbols) {
+        return cryptoRepository.findCorrelation()
+                .map(snapshot -> symbols == null || symbols.isEmpty() ? snapshot : narrow(snapshot, symbols));
+    }
+
+    private static CorrelationSnapshot narrow(CorrelationSnapshot snapshot, List<String> symbols) {
+        List<Integer> indexes = symbols.stream()
+                .map(symbol -> snapshot.getSymbols().indexOf(symbol.toUpperCase()))
+                .filter(index -> index >= 0)
+                .distinct()
+                .toList();
+        int size = indexes.size();
+        double[][] covariance = new double[size][size];
+        double[][] correlation = new double[size][size];
+        for (int a = 0; a < size; a++) {
+            for (int b = 0; b < size; b++) {
+                covariance[a][b] = snapshot.getCovariance()[indexes.get(a)][indexes.get(b)];
+                correlation[a][b] = snapshot.getCorrelation()[indexes.get(a)][indexes.get(b)];
+            }
+        }
+        snapshot.setSymbols(indexes.stream().map(snapshot.getSymbols()::get).toList());
+        snapshot.setCovariance(covariance);
+        snapshot.setCorrelation(correlation);
+        return snapshot;
+    }
+
     public Mono<CryptoListResponse> getAvailableSymbols() {
         return Mono.just(CryptoListResponse.builder()
                 .symbols(AVAILABLE_SYMBOLS)
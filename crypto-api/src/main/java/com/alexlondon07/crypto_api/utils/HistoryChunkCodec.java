@@ -0,0 +1,176 @@
+package com.alexlondon07.crypto_api.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decoder of the "chunked" price history written by price-processor-service
+ * (see HistoryChunkCodec there for the encoder and the full layout).
+ * <p>
+ * The tail holds fixed 32-byte raw ticks (timestamp millis, price, change 24h, market cap;
+ * a missing value is NaN). A chunk is: version (1 byte), tick count (4 bytes), the first tick
+ * in full, then per tick a delta-of-delta timestamp and the XOR of each double column with
+ * its previous value, keeping only the meaningful bits.
+ */
+public final class HistoryChunkCodec {
+
+    public static final int RAW_TICK_BYTES = 32;
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 5;
+    private static final int COLUMNS = 3;
+
+    private HistoryChunkCodec() {}
+
+    /**
+     * Receives decoded ticks in append order. Missing values are NaN.
+     */
+    @FunctionalInterface
+    public interface TickConsumer {
+        void accept(long timestampMillis, double price, double change24h, double marketCap);
+    }
+
+    /**
+     * Decode whole raw records of a tail; a trailing partial record is ignored.
+     * @return the number of ticks decoded.
+     */
+    public static int decodeRaw(byte[] raw, TickConsumer consumer) {
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        int count = raw.length / RAW_TICK_BYTES;
+        for (int i = 0; i < count; i++) {
+            consumer.accept(buffer.getLong(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+        }
+        return count;
+    }
+
+    /**
+     * Decode every tick of a chunk.
+     * @return the number of ticks decoded.
+     */
+    public static int decodeChunk(byte[] chunk, TickConsumer consumer) {
+        if (chunk.length < HEADER_BYTES || chunk[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported history chunk version");
+        }
+        BitReader in = new BitReader(chunk);
+        in.readBits(8);
+        int count = (int) in.readBits(32);
+
+        long timestamp = in.readBits(64);
+        long[] previous = new long[COLUMNS];
+        int[] leading = new int[COLUMNS];
+        int[] trailing = new int[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            previous[c] = in.readBits(64);
+        }
+        consumer.accept(timestamp, Double.longBitsToDouble(previous[0]),
+                Double.longBitsToDouble(previous[1]), Double.longBitsToDouble(previous[2]));
+
+        long delta = 0;
+        for (int i = 1; i < count; i++) {
+            delta += readDeltaOfDelta(in);
+            timestamp += delta;
+            for (int c = 0; c < COLUMNS; c++) {
+                if (!in.readBit()) {
+                    continue;
+                }
+                if (in.readBit()) {
+                    leading[c] = (int) in.readBits(6);
+                    int length = (int) in.readBits(6) + 1;
+                    trailing[c] = 64 - leading[c] - length;
+                }
+                previous[c] ^= in.readBits(64 - leading[c] - trailing[c]) << trailing[c];
+            }
+            consumer.accept(timestamp, Double.longBitsToDouble(previous[0]),
+                    Double.longBitsToDouble(previous[1]), Double.longBitsToDouble(previous[2]));
+        }
+        return count;
+    }
+
+    /**
+     * Decode the reply of read_history_chunks.lua: length-prefixed frames, the raw tail first
+     * and then the chunks in time order. Ticks are emitted chunks first, tail last.
+     * @return the number of ticks decoded.
+     */
+    public static int decodeSnapshot(byte[] snapshot, TickConsumer consumer) {
+        ByteBuffer frames = ByteBuffer.wrap(snapshot);
+        byte[] tail = new byte[frames.getInt()];
+        frames.get(tail);
+        int decoded = 0;
+        while (frames.hasRemaining()) {
+            byte[] chunk = new byte[frames.getInt()];
+            frames.get(chunk);
+            decoded += decodeChunk(chunk, consumer);
+        }
+        return decoded + decodeRaw(tail, consumer);
+    }
+
+    /**
+     * Back to the BigDecimal of the JSON boundary, NaN being a missing value.
+     * The shortest decimal that round-trips the double is used, so 66151.01 stays 66151.01.
+     */
+    public static BigDecimal toDecimal(double value) {
+        return Double.isNaN(value) ? null : BigDecimal.valueOf(value);
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        if (!in.readBit()) {
+            return 0;
+        }
+        if (!in.readBit()) {
+            return signExtend(in.readBits(7), 7);
+        }
+        if (!in.readBit()) {
+            return signExtend(in.readBits(9), 9);
+        }
+        if (!in.readBit()) {
+            return signExtend(in.readBits(12), 12);
+        }
+        return in.readBits(64);
+    }
+
+    private static long signExtend(long value, int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private static final class BitReader {
+        private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+        private final byte[] bytes;
+        private int position;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean readBit() {
+            boolean bit = ((bytes[position >>> 3] >>> (7 - (position & 7))) & 1) != 0;
+            position++;
+            return bit;
+        }
+
+        /**
+         * Read 1 to 64 bits, most significant first, from a big-endian window of 8 bytes.
+         */
+        long readBits(int count) {
+            if (count > 56) {
+                // The window holds 57 usable bits at worst, split wider reads
+                return (readBits(count - 32) << 32) | readBits(32);
+            }
+            int index = position >>> 3;
+            long window;
+            if (index + 8 <= bytes.length) {
+                window = (long) LONG_VIEW.get(bytes, index);
+            } else {
+                window = 0;
+                for (int i = 0; i < 8; i++) {
+                    window = (window << 8) | (index + i < bytes.length ? bytes[index + i] & 0xFF : 0);
+                }
+            }
+            long value = (window << (position & 7)) >>> (64 - count);
+            position += count;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+-- Reads the chunked history of a symbol overlapping a time range in one consistent snapshot.
+-- Chunks are indexed by their first tick, so the chunk starting before the range is included
+-- as well; the caller decodes and filters the ticks by timestamp.
+-- KEYS[1] = tail, KEYS[2] = chunks hash, KEYS[3] = chunk index sorted set
+-- ARGV[1] = from (millis), ARGV[2] = to (millis)
+-- Returns one bulk string: the raw tail first (possibly empty), then the chunks in time order,
+-- each prefixed with its length as a 4-byte big-endian integer.
+local tail, chunks, index = KEYS[1], KEYS[2], KEYS[3]
+
+local ids = redis.call('ZREVRANGEBYSCORE', index, '(' .. ARGV[1], '-inf', 'LIMIT', 0, 1)
+local inRange = redis.call('ZRANGEBYSCORE', index, ARGV[1], ARGV[2])
+for i = 1, #inRange do
+    ids[#ids + 1] = inRange[i]
+end
+
+local tailBytes = redis.call('GET', tail) or ''
+local result = { struct.pack('>I4', #tailBytes), tailBytes }
+if #ids > 0 then
+    local values = redis.call('HMGET', chunks, unpack(ids))
+    for i = 1, #values do
+        if values[i] then
+            result[#result + 1] = struct.pack('>I4', #values[i])
+            result[#result + 1] = values[i]
+        end
+    end
+end
+return table.concat(result)
@@ -0,0 +1,97 @@
+package com.alexlondon07.crypto_api.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HistoryChunkCodecTest {
+
+    // Written by the price-processor-service encoder: six ticks covering a NaN column,
+    // the 7-bit and 12-bit delta-of-delta ranges, the 64-bit escape
+    // of a one-year gap and a full 64-bit XOR window (66151.01 -> -Double.MIN_VALUE)
+    private static final byte[] CHUNK = HexFormat.of().parseHex(
+            "01000000060000018bcfe5680040f0267028f5c28f7ff80000000000004272eae09c800000e3e8607d80433333333333370a"
+                    + "6f62bab8272c0fb03c099c0a3d70a3af62bab82733fc0feffc0000000000006c02199999999999aebfe9fc00998000000"
+                    + "0023ffc0000000000017b15d5c139f0000000757b12bdb0");
+    private static final long[] TIMESTAMPS = {
+            1_700_000_000_000L, 1_700_000_001_000L, 1_700_000_002_000L,
+            1_700_000_003_063L, 1_700_000_003_100L, 1_700_000_003_100L + 31_536_000_000L
+    };
+    private static final double[][] VALUES = {
+            {66151.01, Double.NaN, 1.3e12},
+            {66151.01, -0.4, Double.NaN},
+            {-Double.MIN_VALUE, -0.4, 1.3e12},
+            {1.0, Double.NaN, 1.3e12},
+            {66150.0, 2.5, Double.NaN},
+            {66150.0, 2.5, Double.NaN}
+    };
+    // One raw tail record: 66200.5 without a 24h change
+    private static final byte[] TAIL = HexFormat.of().parseHex(
+            "000001932796a3a040f02988000000007ff8000000000000427310215ac00000");
+
+    @Test
+    void decodesEncoderChunk() {
+        List<double[]> decoded = new ArrayList<>();
+        int count = HistoryChunkCodec.decodeChunk(CHUNK, collector(decoded));
+
+        assertEquals(TIMESTAMPS.length, count);
+        assertTicks(decoded, 0);
+    }
+
+    @Test
+    void decodesSnapshotChunksBeforeTail() {
+        // The tail ends in a partial record, as seen while an APPEND is in flight
+        byte[] tail = ByteBuffer.allocate(TAIL.length + 5).put(TAIL).array();
+        byte[] snapshot = ByteBuffer.allocate(4 + tail.length + 4 + CHUNK.length)
+                .putInt(tail.length).put(tail)
+                .putInt(CHUNK.length).put(CHUNK)
+                .array();
+
+        List<double[]> decoded = new ArrayList<>();
+        int count = HistoryChunkCodec.decodeSnapshot(snapshot, collector(decoded));
+
+        assertEquals(TIMESTAMPS.length + 1, count);
+        assertTicks(decoded, 0);
+        double[] last = decoded.get(TIMESTAMPS.length);
+        assertEquals(1_731_536_004_000L, (long) last[0]);
+        assertEquals(new BigDecimal("66200.5"), HistoryChunkCodec.toDecimal(last[1]));
+        assertNull(HistoryChunkCodec.toDecimal(last[2]));
+        assertEquals(new BigDecimal("1.31E+12"), HistoryChunkCodec.toDecimal(last[3]));
+    }
+
+    @Test
+    void emptySnapshot() {
+        byte[] snapshot = ByteBuffer.allocate(4).putInt(0).array();
+        assertEquals(0, HistoryChunkCodec.decodeSnapshot(snapshot, collector(new ArrayList<>())));
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] chunk = CHUNK.clone();
+        chunk[0] = 2;
+        assertThrows(IllegalArgumentException.class, () -> HistoryChunkCodec.decodeChunk(chunk, collector(new ArrayList<>())));
+    }
+
+    private static void assertTicks(List<double[]> decoded, int offset) {
+        for (int i = 0; i < TIMESTAMPS.length; i++) {
+            double[] tick = decoded.get(offset + i);
+            assertEquals(TIMESTAMPS[i], (long) tick[0], "timestamp of tick " + i);
+            for (int c = 0; c < 3; c++) {
+                assertEquals(Double.doubleToRawLongBits(VALUES[i][c]), Double.doubleToRawLongBits(tick[c + 1]),
+                        "column " + c + " of tick " + i);
+            }
+        }
+    }
+
+    private static HistoryChunkCodec.TickConsumer collector(List<double[]> decoded) {
+        return (timestamp, price, change, marketCap) -> decoded.add(new double[]{timestamp, price, change, marketCap});
+    }
+}
@@ -0,0 +1,66 @@
+package com.alexlondon07.price_processor_service.benchmark;
+
+import com.alexlondon07.price_processor_service.aggregation.BatchStats;
+import com.alexlondon07.price_processor_service.aggregation.BatchStatsKernel;
+import com.alexlondon07.price_processor_service.aggregation.ScalarBatchStatsKernel;
+import com.alexlondon07.price_processor_service.state.StatsAccumulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of folding one symbol's run of ticks: StatsAccumulator.apply per tick, the scalar
+ * batch kernel and the Vector API kernel (forced on for every length). Compare the
+ * scalar and vector scores per length to find where SIMD starts to pay off, which is what
+ * processor.stats.vector.min-length should be set to on the target hardware.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BatchStatsKernelBenchmark {
+
+    @Param({"4", "16", "64", "512", "4096"})
+    private int length;
+
+    private long[] prices;
+    private BatchStatsKernel scalarKernel;
+    private BatchStatsKernel vectorKernel;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        prices = new long[length];
+        for (int i = 0; i < length; i++) {
+            prices[i] = 6_000_000_000_000L + random.nextInt(1_000_000_000);
+        }
+        scalarKernel = new ScalarBatchStatsKernel();
+        vectorKernel = BatchStatsKernel.create(true, 0);
+    }
+
+    @Benchmark
+    public StatsAccumulator perTickApply() {
+        StatsAccumulator stats = new StatsAccumulator("BTC");
+        for (long price : prices) {
+            stats.apply(price, 0L, 0L);
+        }
+        return stats;
+    }
+
+    @Benchmark
+    public BatchStats scalarKernel() {
+        return scalarKernel.compute(prices, length);
+    }
+
+    @Benchmark
+    public BatchStats vectorKernel() {
+        return vectorKernel.compute(prices, length);
+    }
+}
@@ -0,0 +1,114 @@
+package com.alexlondon07.price_processor_service.benchmark;
+
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.utils.HistoryChunkCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * History formats on one chunk of realistic ticks (fetch interval with a few ms of jitter,
+ * two-decimal random-walk prices): decode cost of the JSON list entries against a compressed
+ * chunk, and the cost of sealing a chunk. Bytes per tick of each format are printed once per
+ * trial; stream sizes count field names and values only, not the listpack overhead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryEncodingBenchmark {
+
+    @Param({"120", "1000"})
+    private int ticks;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+
+    private List<byte[]> jsonEntries;
+    private byte[] raw;
+    private byte[] chunk;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        List<CryptoPrice> prices = new ArrayList<>(ticks);
+        long timestamp = 1_700_000_000_000L;
+        double price = 66_151.01;
+        double marketCap = 1_300_000_000_000.0;
+        for (int i = 0; i < ticks; i++) {
+            timestamp += 300_000 + random.nextInt(40) - 20;
+            price = Math.max(0.01, price + random.nextGaussian() * 50);
+            marketCap += random.nextGaussian() * 1_000_000;
+            prices.add(CryptoPrice.builder()
+                    .symbol("BTC")
+                    .name("Bitcoin")
+                    .priceUsd(BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP))
+                    .priceChange24h(BigDecimal.valueOf(random.nextGaussian() * 3).setScale(2, RoundingMode.HALF_UP))
+                    .marketCap(BigDecimal.valueOf(Math.round(marketCap)))
+                    .timestamp(Instant.ofEpochMilli(timestamp))
+                    .build());
+        }
+
+        jsonEntries = new ArrayList<>(ticks);
+        long jsonBytes = 0;
+        long streamBytes = 0;
+        for (CryptoPrice tick : prices) {
+            byte[] json = objectMapper.writeValueAsBytes(tick);
+            jsonEntries.add(json);
+            jsonBytes += json.length;
+            streamBytes += utf8Length("price", tick.getPriceUsd().toPlainString())
+                    + utf8Length("change24h", tick.getPriceChange24h().toPlainString())
+                    + utf8Length("marketCap", tick.getMarketCap().toPlainString())
+                    + utf8Length("name", tick.getName())
+                    + utf8Length("timestamp", String.valueOf(tick.getTimestamp().toEpochMilli()));
+        }
+        raw = HistoryChunkCodec.encodeRaw(prices);
+        chunk = HistoryChunkCodec.encodeChunk(raw, ticks);
+
+        System.out.printf("%nbytes per tick over %d ticks: list (JSON) %.1f, stream fields %.1f, raw tail %d, chunk %.1f%n",
+                ticks, (double) jsonBytes / ticks, (double) streamBytes / ticks,
+                HistoryChunkCodec.RAW_TICK_BYTES, (double) chunk.length / ticks);
+    }
+
+    @Benchmark
+    public double decodeJson() throws IOException {
+        double sum = 0;
+        for (byte[] entry : jsonEntries) {
+            sum += objectMapper.readValue(entry, CryptoPrice.class).getPriceUsd().doubleValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double decodeChunk() {
+        double[] sum = new double[1];
+        HistoryChunkCodec.decodeChunk(chunk, (timestamp, price, change24h, marketCap) -> sum[0] += price);
+        return sum[0];
+    }
+
+    @Benchmark
+    public byte[] encodeChunk() {
+        return HistoryChunkCodec.encodeChunk(raw, ticks);
+    }
+
+    private static int utf8Length(String field, String value) {
+        return field.getBytes(StandardCharsets.UTF_8).length + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
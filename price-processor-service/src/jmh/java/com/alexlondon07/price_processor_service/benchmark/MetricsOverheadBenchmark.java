@@ -0,0 +1,87 @@
+package com.alexlondon07.price_processor_service.benchmark;
+
+import com.alexlondon07.price_processor_service.config.CustomDatadogConfig;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.FixedPoint;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tick metrics overhead for one of 300 symbols: the previous registry lookups
+ * (gauge(...) per value and counter(name, tags...) per message) against the
+ * pre-registered SymbolMeters used by PriceMetricsCollector now.
+ * The stage benchmarks measure what the price.stage.duration timers add around a
+ * completed Mono, with the stage timers on and off.
+ * Compare both the time and gc.alloc.rate.norm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsOverheadBenchmark {
+
+    private static final int SYMBOLS = 300;
+
+    private final String[] symbols = new String[SYMBOLS];
+    private MeterRegistry legacyRegistry;
+    private CustomDatadogConfig.PriceMetricsCollector collector;
+    private CustomDatadogConfig.PriceMetricsCollector untimedCollector;
+    private final Mono<Boolean> completed = Mono.just(true);
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < SYMBOLS; i++) {
+            symbols[i] = "SYM" + i;
+        }
+        legacyRegistry = new SimpleMeterRegistry();
+        collector = new CustomDatadogConfig.PriceMetricsCollector(new SimpleMeterRegistry());
+        untimedCollector = new CustomDatadogConfig.PriceMetricsCollector(new SimpleMeterRegistry(), false);
+    }
+
+    @Benchmark
+    public void registryLookupPerTick() {
+        String symbol = symbols[tick++ % SYMBOLS];
+        long price = 6_000_000_000_000L + tick;
+        legacyRegistry.gauge("price.current", Tags.of("symbol", symbol), FixedPoint.toDouble(price));
+        legacyRegistry.gauge("price.min", Tags.of("symbol", symbol), FixedPoint.toDouble(price - 1));
+        legacyRegistry.gauge("price.max", Tags.of("symbol", symbol), FixedPoint.toDouble(price + 1));
+        legacyRegistry.gauge("price.avg", Tags.of("symbol", symbol), FixedPoint.toDouble(price));
+        legacyRegistry.gauge("price.samples", Tags.of("symbol", symbol), tick);
+        legacyRegistry.gauge("price.volatility", Tags.of("symbol", symbol), 0.01);
+        legacyRegistry.gauge("price.change.percent", Tags.of("symbol", symbol), FixedPoint.changePercent(price - 1, price));
+        legacyRegistry.gauge("price.current", Tags.of("symbol", symbol), FixedPoint.toDouble(price));
+        legacyRegistry.counter("kafka.consumer.messages", "service", "price-processor-service", "topic", "crypto-prices").increment();
+        legacyRegistry.counter("price.storage.success", "symbol", symbol).increment();
+    }
+
+    @Benchmark
+    public void preRegisteredMeters() {
+        String symbol = symbols[tick++ % SYMBOLS];
+        long price = 6_000_000_000_000L + tick;
+        collector.recordPriceStats(symbol, price, price - 1, price + 1, price, tick);
+        collector.recordPriceChange(symbol, price - 1, price);
+        collector.recordKafkaMessages(1);
+        collector.recordStorageSuccess(symbol);
+    }
+
+    @Benchmark
+    public Boolean timedStage() {
+        return collector.timeStage(Constants.STAGE_STATS_GET, completed).block();
+    }
+
+    @Benchmark
+    public Boolean untimedStage() {
+        return untimedCollector.timeStage(Constants.STAGE_STATS_GET, completed).block();
+    }
+}
@@ -0,0 +1,111 @@
+package com.alexlondon07.price_processor_service.benchmark;
+
+import com.alexlondon07.price_processor_service.shard.PriceRingBuffer;
+import com.alexlondon07.price_processor_service.state.StatsAccumulator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ticks/sec of the in-memory part of the two engines for 300 symbols.
+ * sharedState: every consumer thread folds into one shared map of synchronized accumulators,
+ * like the listener modes do. ringBuffer: three consumer threads hand ticks to one shard
+ * that folds them into its own map, as the sharded engine does per core; the shard's
+ * "ticks" counter is the ticks/sec one core absorbs. The produce score counts every offer,
+ * also those rejected by a full buffer; its "offered" counter counts the ticks handed off.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShardHandoffBenchmark {
+
+    private static final int SYMBOLS = 300;
+    private static final String[] SYMBOL_NAMES = new String[SYMBOLS];
+
+    static {
+        for (int i = 0; i < SYMBOLS; i++) {
+            SYMBOL_NAMES[i] = "SYM" + i;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedState {
+        final Map<String, StatsAccumulator> stats = new ConcurrentHashMap<>();
+    }
+
+    @State(Scope.Group)
+    public static class ShardState {
+        PriceRingBuffer<String> ringBuffer;
+        final Map<String, StatsAccumulator> ownedStats = new HashMap<>();
+        final List<String> drained = new ArrayList<>(1024);
+        final List<Object> tags = new ArrayList<>(1024);
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            ringBuffer = new PriceRingBuffer<>(8192);
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ShardTicks {
+        public long ticks;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ProducedTicks {
+        public long offered;
+    }
+
+    @Benchmark
+    @Threads(3)
+    public long sharedState(SharedState state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String symbol = SYMBOL_NAMES[random.nextInt(SYMBOLS)];
+        return state.stats.computeIfAbsent(symbol, StatsAccumulator::new)
+                .apply(6_000_000_000_000L + random.nextInt(1_000_000), 0L, 0L);
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(3)
+    public boolean produce(ShardState state, ProducedTicks counters) {
+        boolean offered = state.ringBuffer.offer(SYMBOL_NAMES[ThreadLocalRandom.current().nextInt(SYMBOLS)], state);
+        if (offered) {
+            counters.offered++;
+        }
+        return offered;
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public int consume(ShardState state, ShardTicks counters) {
+        int drained = state.ringBuffer.drain(state.drained, state.tags, 1024);
+        for (int i = 0; i < drained; i++) {
+            state.ownedStats.computeIfAbsent(state.drained.get(i), StatsAccumulator::new)
+                    .apply(6_000_000_000_000L + i, 0L, 0L);
+        }
+        state.drained.clear();
+        state.tags.clear();
+        counters.ticks += drained;
+        return drained;
+    }
+}
@@ -0,0 +1,100 @@
+package com.alexlondon07.price_processor_service.benchmark;
+
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.state.StatsAccumulator;
+import com.alexlondon07.price_processor_service.utils.FixedPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tick cost of the stats update: the previous BigDecimal fold (new PriceStats per tick)
+ * against the fixed-point StatsAccumulator. Both start from the BigDecimal price a tick is
+ * deserialized with, so fixedPointStatsUpdate pays FixedPoint.fromDecimal like the listener
+ * path does; fixedPointFold is the fold alone, for the share of the conversion. Run with the
+ * gc profiler (configured in build.gradle) to compare gc.alloc.rate.norm, the bytes
+ * allocated per tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StatsArithmeticBenchmark {
+
+    private static final int TICKS = 1024;
+
+    private final BigDecimal[] decimalPrices = new BigDecimal[TICKS];
+    private final long[] fixedPrices = new long[TICKS];
+    private PriceStats decimalStats;
+    private StatsAccumulator fixedStats;
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < TICKS; i++) {
+            decimalPrices[i] = BigDecimal.valueOf(60_000 + random.nextInt(10_000_000) / 100.0);
+            fixedPrices[i] = FixedPoint.fromDecimal(decimalPrices[i]);
+        }
+        decimalStats = PriceStats.builder()
+                .symbol("BTC")
+                .currentPrice(decimalPrices[0])
+                .minPrice(decimalPrices[0])
+                .maxPrice(decimalPrices[0])
+                .avgPrice(decimalPrices[0])
+                .sampleCount(1)
+                .lastUpdated(Instant.now())
+                .build();
+        fixedStats = new StatsAccumulator("BTC");
+        long now = System.currentTimeMillis();
+        fixedStats.apply(fixedPrices[0], now, now);
+    }
+
+    @Benchmark
+    public PriceStats bigDecimalStatsUpdate() {
+        BigDecimal newPrice = decimalPrices[tick++ & (TICKS - 1)];
+        BigDecimal oldPrice = decimalStats.getCurrentPrice();
+        int newCount = decimalStats.getSampleCount() + 1;
+        BigDecimal newAvg = decimalStats.getAvgPrice()
+                .multiply(BigDecimal.valueOf(decimalStats.getSampleCount()))
+                .add(newPrice)
+                .divide(BigDecimal.valueOf(newCount), 2, RoundingMode.HALF_UP);
+        decimalStats = PriceStats.builder()
+                .symbol(decimalStats.getSymbol())
+                .currentPrice(newPrice)
+                .minPrice(decimalStats.getMinPrice().min(newPrice))
+                .maxPrice(decimalStats.getMaxPrice().max(newPrice))
+                .avgPrice(newAvg)
+                .sampleCount(newCount)
+                .lastUpdated(Instant.now())
+                .build();
+        // change percent as computed by the metrics collector before
+        newPrice.subtract(oldPrice).divide(oldPrice, 4, RoundingMode.HALF_UP).doubleValue();
+        return decimalStats;
+    }
+
+    @Benchmark
+    public double fixedPointStatsUpdate() {
+        long newPrice = FixedPoint.fromDecimal(decimalPrices[tick++ & (TICKS - 1)]);
+        long now = System.currentTimeMillis();
+        long oldPrice = fixedStats.apply(newPrice, now, now);
+        return FixedPoint.changePercent(oldPrice, newPrice);
+    }
+
+    @Benchmark
+    public double fixedPointFold() {
+        long newPrice = fixedPrices[tick++ & (TICKS - 1)];
+        long now = System.currentTimeMillis();
+        long oldPrice = fixedStats.apply(newPrice, now, now);
+        return FixedPoint.changePercent(oldPrice, newPrice);
+    }
+}
@@ -2,8 +2,10 @@ package com.alexlondon07.price_processor_service;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class PriceProcessorServiceApplication {
 
 	public static void main(String[] args) {
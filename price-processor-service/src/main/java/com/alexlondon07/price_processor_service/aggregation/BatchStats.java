@@ -0,0 +1,7 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+/**
+ * Min, max and sum of a run of fixed-point prices, as computed by a {@link BatchStatsKernel}.
+ */
+public record BatchStats(int count, long min, long max, long sum) {
+}
@@ -0,0 +1,36 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes {@link BatchStats} over the fixed-point prices of one symbol in one batch.
+ * {@link #create} returns the Vector API kernel when the jdk.incubator.vector module is
+ * present (the JVM is started with --add-modules jdk.incubator.vector) and the scalar loop
+ * otherwise, so the service runs either way.
+ */
+public interface BatchStatsKernel {
+
+    /**
+     * @param prices fixed-point prices, only the first length entries are read.
+     * @param length number of prices, at least 1.
+     */
+    BatchStats compute(long[] prices, int length);
+
+    /**
+     * @param vectorEnabled false forces the scalar kernel.
+     * @param vectorMinLength runs shorter than this use the scalar loop, where SIMD setup does not pay off.
+     */
+    static BatchStatsKernel create(boolean vectorEnabled, int vectorMinLength) {
+        if (vectorEnabled && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // Loaded reflectively so a JVM without the module never links the vector classes
+                return (BatchStatsKernel) Class.forName(BatchStatsKernel.class.getPackageName() + ".VectorBatchStatsKernel")
+                        .getDeclaredConstructor(int.class)
+                        .newInstance(vectorMinLength);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                LoggerFactory.getLogger(BatchStatsKernel.class).warn("Vector API unavailable, using the scalar stats kernel: {}", e.toString());
+            }
+        }
+        return new ScalarBatchStatsKernel();
+    }
+}
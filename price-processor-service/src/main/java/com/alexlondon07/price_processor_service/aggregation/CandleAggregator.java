@@ -0,0 +1,257 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import com.alexlondon07.price_processor_service.model.Candle;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.repository.PriceRepository;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.SymbolPartitioner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Incremental OHLC aggregation at 1m, 5m, 1h and 1d per symbol, kept in memory.
+ * Each symbol tracks a watermark (the newest tick timestamp seen); a candle is only
+ * finished once the watermark has passed its end plus the allowed lateness, so
+ * out-of-order ticks within that margin still count. Ticks older than that are dropped.
+ * <p>
+ * Applying a tick is idempotent: each symbol remembers the ticks (timestamp and price) it
+ * applied within processor.candles.redelivery-window behind the watermark, and a tick seen
+ * again is a redelivery and ignored, so a batch processed again after a failed write does
+ * not inflate counts or move high and low. Older ticks can no longer be told apart and are
+ * applied while their candle is open. Finished candles are queued here until
+ * {@link #saveFinished()} has written them, a failed or skipped write keeps them for the next one.
+ * <p>
+ * Open candles of revoked or lost partitions are evicted: the next owner builds them from
+ * the ticks it consumes, and this instance must not finish stale ones if the partitions come back.
+ */
+@Component
+@Slf4j
+public class CandleAggregator implements ConsumerAwareRebalanceListener {
+
+    private final Map<String, SymbolCandles> candlesBySymbol = new ConcurrentHashMap<>();
+    private final Queue<Candle> finishedCandles = new ConcurrentLinkedQueue<>();
+    private final PriceRepository priceRepository;
+    private final MeterRegistry meterRegistry;
+    private final long allowedLatenessMillis;
+    private final long redeliveryWindowMillis;
+
+    public CandleAggregator(PriceRepository priceRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${processor.candles.allowed-lateness:30s}") Duration allowedLateness,
+                            @Value("${processor.candles.redelivery-window:5m}") Duration redeliveryWindow) {
+        this.priceRepository = priceRepository;
+        this.meterRegistry = meterRegistry;
+        this.allowedLatenessMillis = allowedLateness.toMillis();
+        this.redeliveryWindowMillis = redeliveryWindow.toMillis();
+    }
+
+    /**
+     * Apply a tick to every resolution of its symbol; the candles it finishes are queued
+     * for {@link #saveFinished()}.
+     * @param price CryptoPrice tick, its timestamp drives bucketing and the watermark.
+     */
+    public void onTick(CryptoPrice price) {
+        if (price.getTimestamp() == null || price.getPriceUsd() == null) {
+            return;
+        }
+        SymbolCandles symbolCandles = candlesBySymbol.computeIfAbsent(price.getSymbol(), SymbolCandles::new);
+        synchronized (symbolCandles) {
+            symbolCandles.add(price);
+        }
+    }
+
+    /**
+     * Write every queued finished candle. Candles of a failed write are queued again, so
+     * they go out with the next call; rewriting a candle replaces it.
+     */
+    public Mono<Void> saveFinished() {
+        return Mono.defer(() -> {
+            List<Candle> candles = new ArrayList<>();
+            for (Candle candle = finishedCandles.poll(); candle != null; candle = finishedCandles.poll()) {
+                candles.add(candle);
+            }
+            return priceRepository.saveCandles(candles)
+                    .doOnError(error -> finishedCandles.addAll(candles));
+        });
+    }
+
+    /**
+     * Write the open candles and watermark of a symbol, e.g. for a local checkpoint.
+     * @return false when the symbol has no candle state, nothing is written then.
+     */
+    public boolean write(String symbol, DataOutputStream out) throws IOException {
+        SymbolCandles symbolCandles = candlesBySymbol.get(symbol);
+        if (symbolCandles == null) {
+            return false;
+        }
+        synchronized (symbolCandles) {
+            symbolCandles.write(out);
+        }
+        return true;
+    }
+
+    /**
+     * Restore a symbol's candle state written by {@link #write}, unless it already has one.
+     */
+    public void restore(String symbol, ByteBuffer in) {
+        SymbolCandles symbolCandles = new SymbolCandles(symbol);
+        symbolCandles.read(in);
+        candlesBySymbol.putIfAbsent(symbol, symbolCandles);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsRevoked(partitions, consumer.partitionsFor(Constants.TOPIC_CRYPTO_PRICES).size());
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsRevoked(partitions, consumer.partitionsFor(Constants.TOPIC_CRYPTO_PRICES).size());
+    }
+
+    /**
+     * Evict the open candles of the symbols hashed to the given partitions. Candles they
+     * already finished stay queued for {@link #saveFinished()}.
+     * @param partitionCount number of partitions of the prices topic.
+     */
+    public void partitionsRevoked(Collection<TopicPartition> partitions, int partitionCount) {
+        Set<Integer> numbers = new HashSet<>();
+        for (TopicPartition partition : partitions) {
+            if (Constants.TOPIC_CRYPTO_PRICES.equals(partition.topic())) {
+                numbers.add(partition.partition());
+            }
+        }
+        if (numbers.isEmpty()) {
+            return;
+        }
+        int before = candlesBySymbol.size();
+        candlesBySymbol.keySet().removeIf(symbol -> numbers.contains(SymbolPartitioner.partitionOf(symbol, partitionCount)));
+        log.info("Evicted open candles of {} symbols of revoked partitions", before - candlesBySymbol.size());
+    }
+
+    private final class SymbolCandles {
+        private final String symbol;
+        private final Map<CandleResolution, TreeMap<Long, CandleBuilder>> openCandles = new EnumMap<>(CandleResolution.class);
+        private final Map<CandleResolution, Long> finishedUpTo = new EnumMap<>(CandleResolution.class);
+        // Registered once per symbol, dropping a late tick is a plain increment
+        private final Map<CandleResolution, Counter> lateTicks = new EnumMap<>(CandleResolution.class);
+        // Prices of the ticks applied within the redelivery window, by tick timestamp
+        private final TreeMap<Long, List<BigDecimal>> appliedTicks = new TreeMap<>();
+        private long watermark = Long.MIN_VALUE;
+
+        private SymbolCandles(String symbol) {
+            this.symbol = symbol;
+            for (CandleResolution resolution : CandleResolution.values()) {
+                openCandles.put(resolution, new TreeMap<>());
+                finishedUpTo.put(resolution, Long.MIN_VALUE);
+                lateTicks.put(resolution, Counter.builder("price.candles.late")
+                        .tag("symbol", symbol)
+                        .tag("resolution", resolution.getLabel())
+                        .register(meterRegistry));
+            }
+        }
+
+        private void add(CryptoPrice price) {
+            long timestamp = price.getTimestamp().toEpochMilli();
+            if (!markApplied(timestamp, price.getPriceUsd())) {
+                return;
+            }
+            watermark = Math.max(watermark, timestamp);
+            appliedTicks.headMap(watermark - redeliveryWindowMillis).clear();
+
+            for (CandleResolution resolution : CandleResolution.values()) {
+                long bucketStart = resolution.bucketStart(timestamp);
+                if (bucketStart + resolution.getMillis() <= finishedUpTo.get(resolution)) {
+                    lateTicks.get(resolution).increment();
+                    continue;
+                }
+                openCandles.get(resolution).computeIfAbsent(bucketStart, CandleBuilder::new)
+                        .add(price.getPriceUsd(), timestamp);
+                closeFinished(resolution);
+            }
+        }
+
+        /**
+         * Remember a tick within the redelivery window.
+         * @return false when the same tick was applied already.
+         */
+        private boolean markApplied(long timestamp, BigDecimal priceUsd) {
+            if (timestamp < watermark - redeliveryWindowMillis) {
+                return true;
+            }
+            List<BigDecimal> prices = appliedTicks.computeIfAbsent(timestamp, key -> new ArrayList<>(1));
+            for (BigDecimal applied : prices) {
+                if (applied.compareTo(priceUsd) == 0) {
+                    return false;
+                }
+            }
+            prices.add(priceUsd);
+            return true;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeLong(watermark);
+            for (CandleResolution resolution : CandleResolution.values()) {
+                out.writeLong(finishedUpTo.get(resolution));
+                TreeMap<Long, CandleBuilder> open = openCandles.get(resolution);
+                out.writeInt(open.size());
+                for (CandleBuilder builder : open.values()) {
+                    builder.write(out);
+                }
+            }
+        }
+
+        private void read(ByteBuffer in) {
+            watermark = in.getLong();
+            for (CandleResolution resolution : CandleResolution.values()) {
+                finishedUpTo.put(resolution, in.getLong());
+                TreeMap<Long, CandleBuilder> open = openCandles.get(resolution);
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) {
+                    CandleBuilder builder = CandleBuilder.read(in);
+                    open.put(builder.getOpenTime(), builder);
+                }
+            }
+        }
+
+        private void closeFinished(CandleResolution resolution) {
+            long closeBefore = watermark - allowedLatenessMillis;
+            Iterator<Map.Entry<Long, CandleBuilder>> iterator = openCandles.get(resolution).entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, CandleBuilder> entry = iterator.next();
+                long bucketEnd = entry.getKey() + resolution.getMillis();
+                if (bucketEnd > closeBefore) {
+                    break;
+                }
+                finishedCandles.add(entry.getValue().build(symbol, resolution));
+                finishedUpTo.put(resolution, Math.max(finishedUpTo.get(resolution), bucketEnd));
+                iterator.remove();
+            }
+        }
+    }
+}
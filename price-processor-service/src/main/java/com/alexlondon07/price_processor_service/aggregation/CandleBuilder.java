@@ -0,0 +1,106 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import com.alexlondon07.price_processor_service.model.Candle;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * Mutable OHLC state of one open candle. Open and close follow the tick timestamps,
+ * not the arrival order, so late ticks inside the bucket land in the right place.
+ */
+class CandleBuilder {
+
+    private final long openTime;
+    private BigDecimal open;
+    private BigDecimal high;
+    private BigDecimal low;
+    private BigDecimal close;
+    private long openTickTime = Long.MAX_VALUE;
+    private long closeTickTime = Long.MIN_VALUE;
+    private int count;
+
+    CandleBuilder(long openTime) {
+        this.openTime = openTime;
+    }
+
+    long getOpenTime() {
+        return openTime;
+    }
+
+    void add(BigDecimal price, long timestampMillis) {
+        if (count == 0) {
+            high = price;
+            low = price;
+        } else {
+            high = high.max(price);
+            low = low.min(price);
+        }
+        if (timestampMillis < openTickTime) {
+            openTickTime = timestampMillis;
+            open = price;
+        }
+        if (timestampMillis >= closeTickTime) {
+            closeTickTime = timestampMillis;
+            close = price;
+        }
+        count++;
+    }
+
+    Candle build(String symbol, CandleResolution resolution) {
+        return Candle.builder()
+                .symbol(symbol)
+                .resolution(resolution.getLabel())
+                .openTime(Instant.ofEpochMilli(openTime))
+                .open(open)
+                .high(high)
+                .low(low)
+                .close(close)
+                .count(count)
+                .build();
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(openTime);
+        out.writeLong(openTickTime);
+        out.writeLong(closeTickTime);
+        out.writeInt(count);
+        writeDecimal(out, open);
+        writeDecimal(out, high);
+        writeDecimal(out, low);
+        writeDecimal(out, close);
+    }
+
+    /**
+     * Read a candle written by {@link #write(DataOutputStream)}.
+     */
+    static CandleBuilder read(ByteBuffer in) {
+        CandleBuilder builder = new CandleBuilder(in.getLong());
+        builder.openTickTime = in.getLong();
+        builder.closeTickTime = in.getLong();
+        builder.count = in.getInt();
+        builder.open = readDecimal(in);
+        builder.high = readDecimal(in);
+        builder.low = readDecimal(in);
+        builder.close = readDecimal(in);
+        return builder;
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeInt(value.scale());
+        out.writeInt(unscaled.length);
+        out.write(unscaled);
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer in) {
+        int scale = in.getInt();
+        byte[] unscaled = new byte[in.getInt()];
+        in.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
@@ -0,0 +1,25 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public enum CandleResolution {
+    ONE_MINUTE("1m", Duration.ofMinutes(1)),
+    FIVE_MINUTES("5m", Duration.ofMinutes(5)),
+    ONE_HOUR("1h", Duration.ofHours(1)),
+    ONE_DAY("1d", Duration.ofDays(1));
+
+    private final String label;
+    private final long millis;
+
+    CandleResolution(String label, Duration duration) {
+        this.label = label;
+        this.millis = duration.toMillis();
+    }
+
+    public long bucketStart(long timestampMillis) {
+        return timestampMillis - Math.floorMod(timestampMillis, millis);
+    }
+}
@@ -0,0 +1,143 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.FixedPoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-symbol quantile sketches of price and tick-to-tick change, kept in memory and
+ * persisted as a compact encoded string in crypto:sketch:{symbol} at most once per
+ * processor.sketch.persist-interval per symbol. The p50/p90/p99 they yield are attached to
+ * PriceStats before it is written, so readers get them for free.
+ */
+@Component
+@Slf4j
+public class DistributionTracker implements SymbolStateTracker {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99"};
+
+    private final Map<String, PriceDistribution> distributions = new ConcurrentHashMap<>();
+    // Time each symbol's sketches were last encoded for persistence, guarded by the distribution
+    private final Map<String, Long> persistedAtMillis = new ConcurrentHashMap<>();
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private final long persistIntervalMillis;
+
+    public DistributionTracker(@Value("${processor.sketch.relative-accuracy:0.01}") double relativeAccuracy,
+                               @Value("${processor.sketch.max-bins:1024}") int maxBins,
+                               @Value("${processor.sketch.persist-interval:10s}") Duration persistInterval) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.persistIntervalMillis = persistInterval.toMillis();
+    }
+
+    @Override
+    public String getKeyPrefix() {
+        return Constants.REDIS_KEY_SKETCH;
+    }
+
+    @Override
+    public boolean isTracked(String symbol) {
+        return distributions.containsKey(symbol);
+    }
+
+    @Override
+    public void record(String symbol, long previousPrice, long price, long timestampMillis) {
+        PriceDistribution distribution = distributions.computeIfAbsent(symbol,
+                key -> new PriceDistribution(relativeAccuracy, maxBins));
+        synchronized (distribution) {
+            distribution.addPrice(FixedPoint.toDouble(price));
+            if (previousPrice > 0) {
+                distribution.addChange(FixedPoint.changePercent(previousPrice, price));
+            }
+        }
+    }
+
+    @Override
+    public void restore(String symbol, String encoded) {
+        try {
+            distributions.putIfAbsent(symbol, PriceDistribution.decode(encoded));
+        } catch (RuntimeException e) {
+            log.warn("Ignoring unreadable sketch for {}: {}", symbol, e.getMessage());
+        }
+    }
+
+    @Override
+    public void evict(String symbol) {
+        distributions.remove(symbol);
+        persistedAtMillis.remove(symbol);
+    }
+
+    /**
+     * Set the price and change percentiles on stats that are about to be written.
+     */
+    @Override
+    public void annotate(PriceStats stats) {
+        PriceDistribution distribution = distributions.get(stats.getSymbol());
+        if (distribution == null) {
+            return;
+        }
+        synchronized (distribution) {
+            stats.setPricePercentiles(percentiles(distribution.getPrices(), 2));
+            stats.setChangePercentiles(percentiles(distribution.getChanges(), 4));
+        }
+    }
+
+    @Override
+    public Map<String, String> encode(Collection<String> symbols) {
+        long nowMillis = System.currentTimeMillis();
+        Map<String, String> encoded = new HashMap<>();
+        for (String symbol : symbols) {
+            PriceDistribution distribution = distributions.get(symbol);
+            if (distribution == null) {
+                continue;
+            }
+            synchronized (distribution) {
+                if (nowMillis - persistedAtMillis.getOrDefault(symbol, Long.MIN_VALUE / 2) < persistIntervalMillis) {
+                    continue;
+                }
+                encoded.put(symbol, distribution.encode());
+                persistedAtMillis.put(symbol, nowMillis);
+            }
+        }
+        return encoded;
+    }
+
+    @Override
+    public Map<String, String> snapshot(Collection<String> symbols) {
+        Map<String, String> encoded = new HashMap<>();
+        for (String symbol : symbols) {
+            PriceDistribution distribution = distributions.get(symbol);
+            if (distribution != null) {
+                synchronized (distribution) {
+                    encoded.put(symbol, distribution.encode());
+                }
+            }
+        }
+        return encoded;
+    }
+
+    private static Map<String, BigDecimal> percentiles(QuantileSketch sketch, int scale) {
+        Map<String, BigDecimal> percentiles = new LinkedHashMap<>();
+        if (sketch.getCount() == 0) {
+            return percentiles;
+        }
+        for (int i = 0; i < QUANTILES.length; i++) {
+            percentiles.put(QUANTILE_NAMES[i], BigDecimal.valueOf(sketch.quantile(QUANTILES[i])).setScale(scale, RoundingMode.HALF_UP));
+        }
+        return percentiles;
+    }
+}
@@ -0,0 +1,368 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Technical indicators of one symbol, updated tick by tick in O(1) with state bounded by the
+ * configured periods: SMAs on rings of the last N prices with running sums, EMAs seeded with
+ * the SMA of their first N prices, Wilder's RSI, Bollinger bands (SMA +/- k population
+ * standard deviations) and MACD (fast EMA - slow EMA, with an EMA signal line).
+ * Periods count ticks, not time. Not thread-safe, callers synchronize per symbol.
+ */
+class IndicatorSet {
+
+    private final Spec spec;
+    private final MovingWindow[] smas;
+    private final Ema[] emas;
+    private final MovingWindow bollinger;
+    private final Rsi rsi;
+    private final Ema macdFast;
+    private final Ema macdSlow;
+    private final Ema macdSignal;
+    private long samples;
+    private double lastPrice = Double.NaN;
+
+    IndicatorSet(Spec spec) {
+        this.spec = spec;
+        this.smas = new MovingWindow[spec.smaPeriods().length];
+        for (int i = 0; i < smas.length; i++) {
+            smas[i] = new MovingWindow(spec.smaPeriods()[i]);
+        }
+        this.emas = new Ema[spec.emaPeriods().length];
+        for (int i = 0; i < emas.length; i++) {
+            emas[i] = new Ema(spec.emaPeriods()[i]);
+        }
+        this.bollinger = new MovingWindow(spec.bollingerPeriod());
+        this.rsi = new Rsi(spec.rsiPeriod());
+        this.macdFast = new Ema(spec.macdFast());
+        this.macdSlow = new Ema(spec.macdSlow());
+        this.macdSignal = new Ema(spec.macdSignal());
+    }
+
+    void add(double price) {
+        for (MovingWindow sma : smas) {
+            sma.add(price);
+        }
+        for (Ema ema : emas) {
+            ema.add(price);
+        }
+        bollinger.add(price);
+        if (!Double.isNaN(lastPrice)) {
+            rsi.add(price - lastPrice);
+        }
+        macdFast.add(price);
+        macdSlow.add(price);
+        if (macdSlow.isReady()) {
+            macdSignal.add(macdFast.value - macdSlow.value);
+        }
+        lastPrice = price;
+        samples++;
+    }
+
+    Spec getSpec() {
+        return spec;
+    }
+
+    long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return SMA of the i-th configured period, NaN until that many ticks were seen.
+     */
+    double sma(int i) {
+        return smas[i].isFull() ? smas[i].mean() : Double.NaN;
+    }
+
+    /**
+     * @return EMA of the i-th configured period, NaN until that many ticks were seen.
+     */
+    double ema(int i) {
+        return emas[i].isReady() ? emas[i].value : Double.NaN;
+    }
+
+    double rsi() {
+        return rsi.value();
+    }
+
+    double bollingerMiddle() {
+        return bollinger.isFull() ? bollinger.mean() : Double.NaN;
+    }
+
+    double bollingerWidth() {
+        return bollinger.isFull() ? spec.bollingerWidth() * bollinger.stddev() : Double.NaN;
+    }
+
+    double macd() {
+        return macdSlow.isReady() ? macdFast.value - macdSlow.value : Double.NaN;
+    }
+
+    double macdSignal() {
+        return macdSignal.isReady() ? macdSignal.value : Double.NaN;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        spec.write(out);
+        out.writeLong(samples);
+        out.writeDouble(lastPrice);
+        for (MovingWindow sma : smas) {
+            sma.write(out);
+        }
+        for (Ema ema : emas) {
+            ema.write(out);
+        }
+        bollinger.write(out);
+        rsi.write(out);
+        macdFast.write(out);
+        macdSlow.write(out);
+        macdSignal.write(out);
+    }
+
+    /**
+     * Read a set written by {@link #write(DataOutputStream)}.
+     * @return the set, or null when it was written with a different spec.
+     */
+    static IndicatorSet read(DataInputStream in, Spec expectedSpec) throws IOException {
+        if (!Spec.read(in).equals(expectedSpec)) {
+            return null;
+        }
+        IndicatorSet set = new IndicatorSet(expectedSpec);
+        set.samples = in.readLong();
+        set.lastPrice = in.readDouble();
+        for (MovingWindow sma : set.smas) {
+            sma.read(in);
+        }
+        for (Ema ema : set.emas) {
+            ema.read(in);
+        }
+        set.bollinger.read(in);
+        set.rsi.read(in);
+        set.macdFast.read(in);
+        set.macdSlow.read(in);
+        set.macdSignal.read(in);
+        return set;
+    }
+
+    /**
+     * Indicator periods, in ticks.
+     */
+    record Spec(int[] smaPeriods, int[] emaPeriods, int rsiPeriod, int bollingerPeriod, double bollingerWidth,
+                int macdFast, int macdSlow, int macdSignal) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Spec spec
+                    && Arrays.equals(smaPeriods, spec.smaPeriods)
+                    && Arrays.equals(emaPeriods, spec.emaPeriods)
+                    && rsiPeriod == spec.rsiPeriod
+                    && bollingerPeriod == spec.bollingerPeriod
+                    && Double.compare(bollingerWidth, spec.bollingerWidth) == 0
+                    && macdFast == spec.macdFast
+                    && macdSlow == spec.macdSlow
+                    && macdSignal == spec.macdSignal;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(smaPeriods) + Arrays.hashCode(emaPeriods);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            writePeriods(out, smaPeriods);
+            writePeriods(out, emaPeriods);
+            out.writeInt(rsiPeriod);
+            out.writeInt(bollingerPeriod);
+            out.writeDouble(bollingerWidth);
+            out.writeInt(macdFast);
+            out.writeInt(macdSlow);
+            out.writeInt(macdSignal);
+        }
+
+        private static Spec read(DataInputStream in) throws IOException {
+            return new Spec(readPeriods(in), readPeriods(in), in.readInt(), in.readInt(), in.readDouble(),
+                    in.readInt(), in.readInt(), in.readInt());
+        }
+
+        private static void writePeriods(DataOutputStream out, int[] periods) throws IOException {
+            out.writeInt(periods.length);
+            for (int period : periods) {
+                out.writeInt(period);
+            }
+        }
+
+        private static int[] readPeriods(DataInputStream in) throws IOException {
+            int[] periods = new int[in.readInt()];
+            for (int i = 0; i < periods.length; i++) {
+                periods[i] = in.readInt();
+            }
+            return periods;
+        }
+    }
+
+    /**
+     * Ring of the last N prices with their running sum and sum of squares. The sums are
+     * recomputed from the ring once per wrap, which bounds floating-point drift at O(1)
+     * amortized cost.
+     */
+    private static final class MovingWindow {
+        private final double[] values;
+        private int next;
+        private int count;
+        private double sum;
+        private double sumOfSquares;
+
+        private MovingWindow(int period) {
+            this.values = new double[period];
+        }
+
+        private void add(double value) {
+            if (count == values.length) {
+                double oldest = values[next];
+                sum -= oldest;
+                sumOfSquares -= oldest * oldest;
+            } else {
+                count++;
+            }
+            values[next] = value;
+            sum += value;
+            sumOfSquares += value * value;
+            next = (next + 1) % values.length;
+            if (next == 0) {
+                resum();
+            }
+        }
+
+        private boolean isFull() {
+            return count == values.length;
+        }
+
+        private double mean() {
+            return sum / count;
+        }
+
+        private double stddev() {
+            double mean = mean();
+            return Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+        }
+
+        private void resum() {
+            sum = 0;
+            sumOfSquares = 0;
+            for (int i = 0; i < count; i++) {
+                sum += values[i];
+                sumOfSquares += values[i] * values[i];
+            }
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(next);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeDouble(values[i]);
+            }
+        }
+
+        private void read(DataInputStream in) throws IOException {
+            next = in.readInt();
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                values[i] = in.readDouble();
+            }
+            resum();
+        }
+    }
+
+    /**
+     * Exponential moving average with alpha 2 / (N + 1), seeded with the mean of the first N values.
+     */
+    private static final class Ema {
+        private final int period;
+        private final double alpha;
+        private int count;
+        private double value;
+
+        private Ema(int period) {
+            this.period = period;
+            this.alpha = 2.0 / (period + 1);
+        }
+
+        private void add(double input) {
+            if (count < period) {
+                count++;
+                value += (input - value) / count;
+            } else {
+                value += alpha * (input - value);
+            }
+        }
+
+        private boolean isReady() {
+            return count >= period;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            out.writeDouble(value);
+        }
+
+        private void read(DataInputStream in) throws IOException {
+            count = in.readInt();
+            value = in.readDouble();
+        }
+    }
+
+    /**
+     * Wilder's RSI: average gain and loss seeded with the mean of the first N changes, then
+     * smoothed as avg = (avg * (N - 1) + change) / N.
+     */
+    private static final class Rsi {
+        private final int period;
+        private int count;
+        private double avgGain;
+        private double avgLoss;
+
+        private Rsi(int period) {
+            this.period = period;
+        }
+
+        private void add(double change) {
+            double gain = Math.max(change, 0);
+            double loss = Math.max(-change, 0);
+            if (count < period) {
+                count++;
+                avgGain += (gain - avgGain) / count;
+                avgLoss += (loss - avgLoss) / count;
+            } else {
+                avgGain = (avgGain * (period - 1) + gain) / period;
+                avgLoss = (avgLoss * (period - 1) + loss) / period;
+            }
+        }
+
+        /**
+         * @return RSI in [0, 100], NaN until N changes were seen.
+         */
+        private double value() {
+            if (count < period) {
+                return Double.NaN;
+            }
+            if (avgLoss == 0) {
+                return avgGain == 0 ? 50 : 100;
+            }
+            return 100 - 100 / (1 + avgGain / avgLoss);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            out.writeDouble(avgGain);
+            out.writeDouble(avgLoss);
+        }
+
+        private void read(DataInputStream in) throws IOException {
+            count = in.readInt();
+            avgGain = in.readDouble();
+            avgLoss = in.readDouble();
+        }
+    }
+}
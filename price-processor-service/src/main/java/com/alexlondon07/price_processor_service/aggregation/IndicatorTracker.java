@@ -0,0 +1,200 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import com.alexlondon07.price_processor_service.model.Indicators;
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.FixedPoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SMA, EMA, RSI, Bollinger bands and MACD of each symbol over the configured tick periods
+ * (processor.indicators.*), see {@link IndicatorSet}. Every tick costs O(1) and the state
+ * per symbol is bounded by the periods. The latest values are attached to PriceStats, so
+ * they are stored in crypto:stats:{symbol} with the other stats, and the indicator state is
+ * persisted in crypto:indicators:{symbol} at most once per processor.indicators.persist-interval
+ * per symbol.
+ */
+@Component
+@Slf4j
+public class IndicatorTracker implements SymbolStateTracker {
+
+    private final Map<String, SymbolIndicators> indicatorsBySymbol = new ConcurrentHashMap<>();
+    private final IndicatorSet.Spec spec;
+    private final long persistIntervalMillis;
+
+    public IndicatorTracker(@Value("${processor.indicators.sma-periods:20,50}") int[] smaPeriods,
+                            @Value("${processor.indicators.ema-periods:12,26}") int[] emaPeriods,
+                            @Value("${processor.indicators.rsi-period:14}") int rsiPeriod,
+                            @Value("${processor.indicators.bollinger-period:20}") int bollingerPeriod,
+                            @Value("${processor.indicators.bollinger-width:2}") double bollingerWidth,
+                            @Value("${processor.indicators.macd-fast:12}") int macdFast,
+                            @Value("${processor.indicators.macd-slow:26}") int macdSlow,
+                            @Value("${processor.indicators.macd-signal:9}") int macdSignal,
+                            @Value("${processor.indicators.persist-interval:10s}") Duration persistInterval) {
+        this.spec = new IndicatorSet.Spec(smaPeriods, emaPeriods, rsiPeriod, bollingerPeriod, bollingerWidth,
+                macdFast, macdSlow, macdSignal);
+        this.persistIntervalMillis = persistInterval.toMillis();
+    }
+
+    @Override
+    public String getKeyPrefix() {
+        return Constants.REDIS_KEY_INDICATORS;
+    }
+
+    @Override
+    public boolean isTracked(String symbol) {
+        return indicatorsBySymbol.containsKey(symbol);
+    }
+
+    @Override
+    public void record(String symbol, long previousPrice, long price, long timestampMillis) {
+        SymbolIndicators indicators = indicatorsBySymbol.computeIfAbsent(symbol,
+                key -> new SymbolIndicators(new IndicatorSet(spec)));
+        double value = FixedPoint.toDouble(price);
+        synchronized (indicators) {
+            indicators.set.add(value);
+        }
+    }
+
+    @Override
+    public void annotate(PriceStats stats) {
+        SymbolIndicators indicators = indicatorsBySymbol.get(stats.getSymbol());
+        if (indicators == null) {
+            return;
+        }
+        synchronized (indicators) {
+            stats.setIndicators(toIndicators(indicators.set));
+        }
+    }
+
+    @Override
+    public void restore(String symbol, String encoded) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            IndicatorSet set = IndicatorSet.read(in, spec);
+            if (set == null) {
+                log.info("Discarding indicators of {}, indicator configuration changed", symbol);
+                return;
+            }
+            indicatorsBySymbol.putIfAbsent(symbol, new SymbolIndicators(set));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable indicators for {}: {}", symbol, e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, String> encode(Collection<String> symbols) {
+        long nowMillis = System.currentTimeMillis();
+        Map<String, String> encoded = new HashMap<>();
+        for (String symbol : symbols) {
+            SymbolIndicators indicators = indicatorsBySymbol.get(symbol);
+            if (indicators == null) {
+                continue;
+            }
+            synchronized (indicators) {
+                if (nowMillis - indicators.persistedAtMillis < persistIntervalMillis) {
+                    continue;
+                }
+                encoded.put(symbol, encode(indicators.set));
+                indicators.persistedAtMillis = nowMillis;
+            }
+        }
+        return encoded;
+    }
+
+    @Override
+    public Map<String, String> snapshot(Collection<String> symbols) {
+        Map<String, String> encoded = new HashMap<>();
+        for (String symbol : symbols) {
+            SymbolIndicators indicators = indicatorsBySymbol.get(symbol);
+            if (indicators != null) {
+                synchronized (indicators) {
+                    encoded.put(symbol, encode(indicators.set));
+                }
+            }
+        }
+        return encoded;
+    }
+
+    @Override
+    public void evict(String symbol) {
+        indicatorsBySymbol.remove(symbol);
+    }
+
+    private static String encode(IndicatorSet indicators) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            indicators.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    private static Indicators toIndicators(IndicatorSet indicators) {
+        IndicatorSet.Spec spec = indicators.getSpec();
+        Map<String, BigDecimal> sma = new LinkedHashMap<>();
+        for (int i = 0; i < spec.smaPeriods().length; i++) {
+            putIfReady(sma, String.valueOf(spec.smaPeriods()[i]), indicators.sma(i));
+        }
+        Map<String, BigDecimal> ema = new LinkedHashMap<>();
+        for (int i = 0; i < spec.emaPeriods().length; i++) {
+            putIfReady(ema, String.valueOf(spec.emaPeriods()[i]), indicators.ema(i));
+        }
+        double middle = indicators.bollingerMiddle();
+        double width = indicators.bollingerWidth();
+        double macd = indicators.macd();
+        double signal = indicators.macdSignal();
+        return Indicators.builder()
+                .samples(indicators.getSamples())
+                .sma(sma)
+                .ema(ema)
+                .rsi(decimal(indicators.rsi(), 2))
+                .bollingerMiddle(decimal(middle, 2))
+                .bollingerUpper(decimal(middle + width, 2))
+                .bollingerLower(decimal(middle - width, 2))
+                .macd(decimal(macd, 4))
+                .macdSignal(decimal(signal, 4))
+                .macdHistogram(decimal(macd - signal, 4))
+                .build();
+    }
+
+    private static void putIfReady(Map<String, BigDecimal> values, String period, double value) {
+        if (!Double.isNaN(value)) {
+            values.put(period, decimal(value, 2));
+        }
+    }
+
+    /**
+     * @return the value rounded to scale, or null while the indicator is still warming up.
+     */
+    private static BigDecimal decimal(double value, int scale) {
+        return Double.isNaN(value) ? null : BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    private static final class SymbolIndicators {
+        private final IndicatorSet set;
+        private long persistedAtMillis = Long.MIN_VALUE / 2;
+
+        private SymbolIndicators(IndicatorSet set) {
+            this.set = set;
+        }
+    }
+}
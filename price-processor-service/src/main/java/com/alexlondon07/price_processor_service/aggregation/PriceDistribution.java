@@ -0,0 +1,52 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import java.util.Base64;
+
+/**
+ * Price and tick-to-tick change (in percent) distributions of one symbol.
+ */
+class PriceDistribution {
+
+    private static final String SEPARATOR = ":";
+
+    private final QuantileSketch prices;
+    private final QuantileSketch changes;
+
+    PriceDistribution(double relativeAccuracy, int maxBins) {
+        this(new QuantileSketch(relativeAccuracy, maxBins), new QuantileSketch(relativeAccuracy, maxBins));
+    }
+
+    private PriceDistribution(QuantileSketch prices, QuantileSketch changes) {
+        this.prices = prices;
+        this.changes = changes;
+    }
+
+    void addPrice(double price) {
+        prices.add(price);
+    }
+
+    void addChange(double changePercent) {
+        changes.add(changePercent);
+    }
+
+    QuantileSketch getPrices() {
+        return prices;
+    }
+
+    QuantileSketch getChanges() {
+        return changes;
+    }
+
+    String encode() {
+        Base64.Encoder encoder = Base64.getEncoder();
+        return encoder.encodeToString(prices.toBytes()) + SEPARATOR + encoder.encodeToString(changes.toBytes());
+    }
+
+    static PriceDistribution decode(String encoded) {
+        String[] parts = encoded.split(SEPARATOR, 2);
+        Base64.Decoder decoder = Base64.getDecoder();
+        return new PriceDistribution(
+                QuantileSketch.fromBytes(decoder.decode(parts[0])),
+                QuantileSketch.fromBytes(decoder.decode(parts[1])));
+    }
+}
@@ -0,0 +1,261 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with relative-error guarantees (DDSketch style).
+ * Values are mapped to logarithmic bins so that any returned quantile is within
+ * {@code relativeAccuracy} of the true value. Memory is fixed: each sign keeps at most
+ * {@code maxBins} counters and, past that, the bins closest to zero are collapsed
+ * together, so the tail quantiles stay accurate no matter how many samples arrive.
+ * The serialized form stores only the occupied bin range as varints.
+ */
+public final class QuantileSketch {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final BinStore positive;
+    private final BinStore negative;
+    private long zeroCount;
+    private long count;
+
+    public QuantileSketch(double relativeAccuracy, int maxBins) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.positive = new BinStore(maxBins);
+        this.negative = new BinStore(maxBins);
+    }
+
+    public void add(double value) {
+        if (value > MIN_INDEXABLE_VALUE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE_VALUE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.gamma != gamma) {
+            throw new IllegalArgumentException("Cannot merge sketches with different accuracy");
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param quantile between 0 and 1.
+     * @return the estimated value at the quantile, or NaN when the sketch is empty.
+     */
+    public double quantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (count - 1));
+        // Most negative values first: highest |value| bins of the negative store
+        if (rank < negative.total) {
+            return -value(negative.indexAtRankFromTop(rank));
+        }
+        rank -= negative.total;
+        if (rank < zeroCount) {
+            return 0;
+        }
+        rank -= zeroCount;
+        return value(positive.indexAtRank(rank));
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(FORMAT_VERSION);
+        writeVarLong(out, Double.doubleToLongBits(relativeAccuracy));
+        writeVarLong(out, positive.bins.length);
+        writeVarLong(out, zeroCount);
+        writeVarLong(out, count);
+        positive.writeTo(out);
+        negative.writeTo(out);
+        return out.toByteArray();
+    }
+
+    public static QuantileSketch fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported sketch format " + version);
+        }
+        double accuracy = Double.longBitsToDouble(readVarLong(buffer));
+        QuantileSketch sketch = new QuantileSketch(accuracy, (int) readVarLong(buffer));
+        sketch.zeroCount = readVarLong(buffer);
+        sketch.count = readVarLong(buffer);
+        sketch.positive.readFrom(buffer);
+        sketch.negative.readFrom(buffer);
+        return sketch;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * Dense window of at most {@code bins.length} consecutive bin counters.
+     * When a new index does not fit, the window slides up and the lowest bins are
+     * folded into the new lowest one.
+     */
+    private static final class BinStore {
+        private final long[] bins;
+        private int offset;
+        private int minIndex = Integer.MAX_VALUE;
+        private int maxIndex = Integer.MIN_VALUE;
+        private long total;
+
+        private BinStore(int maxBins) {
+            this.bins = new long[maxBins];
+        }
+
+        private void add(int index, long increment) {
+            if (total == 0) {
+                offset = index - bins.length / 2;
+                minIndex = index;
+                maxIndex = index;
+            } else if (index < offset || index >= offset + bins.length) {
+                index = extendTo(index);
+            }
+            bins[index - offset] += increment;
+            minIndex = Math.min(minIndex, index);
+            maxIndex = Math.max(maxIndex, index);
+            total += increment;
+        }
+
+        /**
+         * Move the window so it covers {@code index}, collapsing the lowest bins if needed.
+         * @return the index the value has to be counted in.
+         */
+        private int extendTo(int index) {
+            int newMin = Math.min(minIndex, index);
+            int newMax = Math.max(maxIndex, index);
+            int newOffset;
+            if ((long) newMax - newMin < bins.length) {
+                newOffset = newMin - (bins.length - 1 - (newMax - newMin)) / 2;
+            } else {
+                newOffset = newMax - bins.length + 1;
+            }
+
+            long[] old = bins.clone();
+            Arrays.fill(bins, 0);
+            int collapsedMin = Integer.MAX_VALUE;
+            for (int i = minIndex; i <= maxIndex; i++) {
+                long binCount = old[i - offset];
+                if (binCount == 0) {
+                    continue;
+                }
+                int target = Math.max(i, newOffset);
+                bins[target - newOffset] += binCount;
+                collapsedMin = Math.min(collapsedMin, target);
+            }
+            offset = newOffset;
+            minIndex = collapsedMin == Integer.MAX_VALUE ? Math.max(newMin, newOffset) : collapsedMin;
+            maxIndex = Math.min(maxIndex, newOffset + bins.length - 1);
+            return Math.max(index, newOffset);
+        }
+
+        private void merge(BinStore other) {
+            if (other.total == 0) {
+                return;
+            }
+            for (int i = other.minIndex; i <= other.maxIndex; i++) {
+                long binCount = other.bins[i - other.offset];
+                if (binCount > 0) {
+                    add(i, binCount);
+                }
+            }
+        }
+
+        private int indexAtRank(long rank) {
+            long seen = 0;
+            for (int i = minIndex; i <= maxIndex; i++) {
+                seen += bins[i - offset];
+                if (seen > rank) {
+                    return i;
+                }
+            }
+            return maxIndex;
+        }
+
+        private int indexAtRankFromTop(long rank) {
+            long seen = 0;
+            for (int i = maxIndex; i >= minIndex; i--) {
+                seen += bins[i - offset];
+                if (seen > rank) {
+                    return i;
+                }
+            }
+            return minIndex;
+        }
+
+        private void writeTo(ByteArrayOutputStream out) {
+            if (total == 0) {
+                writeVarLong(out, 0);
+                return;
+            }
+            writeVarLong(out, maxIndex - minIndex + 1);
+            // zig-zag so negative bin indexes stay short
+            writeVarLong(out, (minIndex << 1) ^ (minIndex >> 31));
+            for (int i = minIndex; i <= maxIndex; i++) {
+                writeVarLong(out, bins[i - offset]);
+            }
+        }
+
+        private void readFrom(ByteBuffer buffer) {
+            int width = (int) readVarLong(buffer);
+            if (width == 0) {
+                return;
+            }
+            int encodedMin = (int) readVarLong(buffer);
+            int storedMin = (encodedMin >>> 1) ^ -(encodedMin & 1);
+            for (int i = storedMin; i < storedMin + width; i++) {
+                long binCount = readVarLong(buffer);
+                if (binCount > 0) {
+                    add(i, binCount);
+                }
+            }
+        }
+    }
+}
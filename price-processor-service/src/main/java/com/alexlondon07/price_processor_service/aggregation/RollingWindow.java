@@ -0,0 +1,162 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sliding-window aggregate over a fixed duration, split into a ring of equal time buckets.
+ * A tick only touches its own bucket (Welford update of count, mean and M2 plus min/max),
+ * so adding is O(1); buckets that fall out of the window are reused in place. A snapshot
+ * merges the live buckets with Chan's parallel formula, which costs the bucket count and
+ * never depends on the number of ticks. The window is exact to one bucket width.
+ * The EWMA uses a time constant equal to the window duration, so irregular tick spacing is
+ * weighted correctly. Not thread-safe, callers synchronize per symbol.
+ */
+class RollingWindow {
+
+    private final long durationMillis;
+    private final long bucketMillis;
+    private final long[] bucketIndex;
+    private final long[] counts;
+    private final double[] means;
+    private final double[] m2s;
+    private final double[] mins;
+    private final double[] maxs;
+    private long latestIndex = Long.MIN_VALUE;
+    private double ewma;
+    private long ewmaMillis = Long.MIN_VALUE;
+
+    RollingWindow(long durationMillis, int buckets) {
+        this.durationMillis = durationMillis;
+        this.bucketMillis = Math.max(1L, durationMillis / buckets);
+        this.bucketIndex = new long[buckets];
+        this.counts = new long[buckets];
+        this.means = new double[buckets];
+        this.m2s = new double[buckets];
+        this.mins = new double[buckets];
+        this.maxs = new double[buckets];
+        Arrays.fill(bucketIndex, Long.MIN_VALUE);
+    }
+
+    long getDurationMillis() {
+        return durationMillis;
+    }
+
+    int getBucketCount() {
+        return counts.length;
+    }
+
+    void add(double value, long timestampMillis) {
+        long index = Math.floorDiv(timestampMillis, bucketMillis);
+        if (latestIndex != Long.MIN_VALUE && index <= latestIndex - counts.length) {
+            return;
+        }
+        int slot = (int) Math.floorMod(index, (long) counts.length);
+        if (bucketIndex[slot] != index) {
+            bucketIndex[slot] = index;
+            counts[slot] = 0;
+            means[slot] = 0;
+            m2s[slot] = 0;
+            mins[slot] = value;
+            maxs[slot] = value;
+        }
+        long count = ++counts[slot];
+        double delta = value - means[slot];
+        means[slot] += delta / count;
+        m2s[slot] += delta * (value - means[slot]);
+        mins[slot] = Math.min(mins[slot], value);
+        maxs[slot] = Math.max(maxs[slot], value);
+        latestIndex = Math.max(latestIndex, index);
+
+        if (ewmaMillis == Long.MIN_VALUE) {
+            ewma = value;
+            ewmaMillis = timestampMillis;
+        } else if (timestampMillis > ewmaMillis) {
+            double alpha = 1 - Math.exp(-(double) (timestampMillis - ewmaMillis) / durationMillis);
+            ewma += alpha * (value - ewma);
+            ewmaMillis = timestampMillis;
+        }
+    }
+
+    /**
+     * Merge the buckets still inside the window ending at nowMillis.
+     * @return aggregate, with a zero count when the window is empty.
+     */
+    Snapshot snapshot(long nowMillis) {
+        long newestIndex = Math.max(latestIndex, Math.floorDiv(nowMillis, bucketMillis));
+        long count = 0;
+        double mean = 0;
+        double m2 = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] == 0 || bucketIndex[slot] <= newestIndex - counts.length) {
+                continue;
+            }
+            long merged = count + counts[slot];
+            double delta = means[slot] - mean;
+            mean += delta * counts[slot] / merged;
+            m2 += m2s[slot] + delta * delta * ((double) count * counts[slot] / merged);
+            count = merged;
+            min = Math.min(min, mins[slot]);
+            max = Math.max(max, maxs[slot]);
+        }
+        double variance = count > 1 ? m2 / (count - 1) : 0;
+        return new Snapshot(count, mean, variance, min, max, ewma);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(durationMillis);
+        out.writeInt(counts.length);
+        out.writeLong(latestIndex);
+        out.writeDouble(ewma);
+        out.writeLong(ewmaMillis);
+        int live = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                live++;
+            }
+        }
+        out.writeInt(live);
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] > 0) {
+                out.writeLong(bucketIndex[slot]);
+                out.writeLong(counts[slot]);
+                out.writeDouble(means[slot]);
+                out.writeDouble(m2s[slot]);
+                out.writeDouble(mins[slot]);
+                out.writeDouble(maxs[slot]);
+            }
+        }
+    }
+
+    /**
+     * Read a window written by {@link #write(DataOutputStream)}.
+     * @return the window, or null when it was written with a different duration or bucket count.
+     */
+    static RollingWindow read(DataInputStream in, long expectedDurationMillis, int expectedBuckets) throws IOException {
+        long durationMillis = in.readLong();
+        int buckets = in.readInt();
+        RollingWindow window = new RollingWindow(durationMillis, buckets);
+        window.latestIndex = in.readLong();
+        window.ewma = in.readDouble();
+        window.ewmaMillis = in.readLong();
+        int live = in.readInt();
+        for (int i = 0; i < live; i++) {
+            long index = in.readLong();
+            int slot = (int) Math.floorMod(index, (long) buckets);
+            window.bucketIndex[slot] = index;
+            window.counts[slot] = in.readLong();
+            window.means[slot] = in.readDouble();
+            window.m2s[slot] = in.readDouble();
+            window.mins[slot] = in.readDouble();
+            window.maxs[slot] = in.readDouble();
+        }
+        return durationMillis == expectedDurationMillis && buckets == expectedBuckets ? window : null;
+    }
+
+    record Snapshot(long count, double mean, double variance, double min, double max, double ewma) {
+    }
+}
@@ -0,0 +1,206 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.model.WindowStats;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.FixedPoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sliding-window mean, variance/stddev, EWMA and min/max of each symbol's price over the
+ * configured windows (processor.windows.durations, 1h/24h/7d by default). Every window is
+ * a ring of processor.windows.buckets time buckets, see {@link RollingWindow}; ticks are
+ * bucketed by their own timestamp. The per-window aggregates are attached to PriceStats
+ * under their label, and the bucket state is persisted in crypto:windows:{symbol} at most
+ * once per processor.windows.persist-interval per symbol to keep writes small.
+ */
+@Component
+@Slf4j
+public class RollingWindowTracker implements SymbolStateTracker {
+
+    private final Map<String, SymbolWindows> windowsBySymbol = new ConcurrentHashMap<>();
+    private final String[] labels;
+    private final long[] durationsMillis;
+    private final int buckets;
+    private final long persistIntervalMillis;
+
+    public RollingWindowTracker(@Value("${processor.windows.durations:1h,24h,7d}") String[] labels,
+                                @Value("${processor.windows.buckets:60}") int buckets,
+                                @Value("${processor.windows.persist-interval:10s}") Duration persistInterval) {
+        this.labels = labels;
+        this.durationsMillis = new long[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            durationsMillis[i] = DurationStyle.detectAndParse(labels[i].trim()).toMillis();
+        }
+        this.buckets = buckets;
+        this.persistIntervalMillis = persistInterval.toMillis();
+    }
+
+    @Override
+    public String getKeyPrefix() {
+        return Constants.REDIS_KEY_WINDOWS;
+    }
+
+    @Override
+    public boolean isTracked(String symbol) {
+        return windowsBySymbol.containsKey(symbol);
+    }
+
+    @Override
+    public void record(String symbol, long previousPrice, long price, long timestampMillis) {
+        SymbolWindows symbolWindows = windowsBySymbol.computeIfAbsent(symbol, key -> newSymbolWindows());
+        double value = FixedPoint.toDouble(price);
+        synchronized (symbolWindows) {
+            for (RollingWindow window : symbolWindows.windows) {
+                window.add(value, timestampMillis);
+            }
+        }
+    }
+
+    @Override
+    public void annotate(PriceStats stats) {
+        SymbolWindows symbolWindows = windowsBySymbol.get(stats.getSymbol());
+        if (symbolWindows == null) {
+            return;
+        }
+        long nowMillis = System.currentTimeMillis();
+        Map<String, WindowStats> windowStats = new LinkedHashMap<>();
+        synchronized (symbolWindows) {
+            for (int i = 0; i < labels.length; i++) {
+                windowStats.put(labels[i], toWindowStats(labels[i], symbolWindows.windows[i].snapshot(nowMillis)));
+            }
+        }
+        stats.setWindows(windowStats);
+    }
+
+    @Override
+    public void restore(String symbol, String encoded) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            int count = in.readInt();
+            if (count != labels.length) {
+                log.info("Discarding rolling windows of {}, window configuration changed", symbol);
+                return;
+            }
+            RollingWindow[] windows = new RollingWindow[count];
+            for (int i = 0; i < count; i++) {
+                windows[i] = RollingWindow.read(in, durationsMillis[i], buckets);
+                if (windows[i] == null) {
+                    log.info("Discarding rolling windows of {}, window configuration changed", symbol);
+                    return;
+                }
+            }
+            windowsBySymbol.putIfAbsent(symbol, new SymbolWindows(windows));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable rolling windows for {}: {}", symbol, e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, String> encode(Collection<String> symbols) {
+        long nowMillis = System.currentTimeMillis();
+        Map<String, String> encoded = new HashMap<>();
+        for (String symbol : symbols) {
+            SymbolWindows symbolWindows = windowsBySymbol.get(symbol);
+            if (symbolWindows == null) {
+                continue;
+            }
+            synchronized (symbolWindows) {
+                if (nowMillis - symbolWindows.persistedAtMillis < persistIntervalMillis) {
+                    continue;
+                }
+                encoded.put(symbol, encode(symbolWindows));
+                symbolWindows.persistedAtMillis = nowMillis;
+            }
+        }
+        return encoded;
+    }
+
+    @Override
+    public Map<String, String> snapshot(Collection<String> symbols) {
+        Map<String, String> encoded = new HashMap<>();
+        for (String symbol : symbols) {
+            SymbolWindows symbolWindows = windowsBySymbol.get(symbol);
+            if (symbolWindows != null) {
+                synchronized (symbolWindows) {
+                    encoded.put(symbol, encode(symbolWindows));
+                }
+            }
+        }
+        return encoded;
+    }
+
+    @Override
+    public void evict(String symbol) {
+        windowsBySymbol.remove(symbol);
+    }
+
+    private SymbolWindows newSymbolWindows() {
+        RollingWindow[] windows = new RollingWindow[durationsMillis.length];
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = new RollingWindow(durationsMillis[i], buckets);
+        }
+        return new SymbolWindows(windows);
+    }
+
+    private static String encode(SymbolWindows symbolWindows) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(symbolWindows.windows.length);
+            for (RollingWindow window : symbolWindows.windows) {
+                window.write(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    private static WindowStats toWindowStats(String label, RollingWindow.Snapshot snapshot) {
+        WindowStats.WindowStatsBuilder builder = WindowStats.builder()
+                .window(label)
+                .count(snapshot.count());
+        if (snapshot.count() == 0) {
+            return builder.build();
+        }
+        return builder
+                .mean(decimal(snapshot.mean(), 2))
+                .variance(decimal(snapshot.variance(), 4))
+                .stddev(decimal(Math.sqrt(snapshot.variance()), 4))
+                .ewma(decimal(snapshot.ewma(), 2))
+                .min(decimal(snapshot.min(), FixedPoint.SCALE))
+                .max(decimal(snapshot.max(), FixedPoint.SCALE))
+                .build();
+    }
+
+    private static BigDecimal decimal(double value, int scale) {
+        return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    private static final class SymbolWindows {
+        private final RollingWindow[] windows;
+        private long persistedAtMillis = Long.MIN_VALUE / 2;
+
+        private SymbolWindows(RollingWindow[] windows) {
+            this.windows = windows;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+/**
+ * Plain loop over the prices; the fallback when the Vector API is not available and the
+ * kernel of short runs.
+ */
+public final class ScalarBatchStatsKernel implements BatchStatsKernel {
+
+    @Override
+    public BatchStats compute(long[] prices, int length) {
+        return compute(prices, 0, length);
+    }
+
+    static BatchStats compute(long[] prices, int from, int to) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            long price = prices[i];
+            min = Math.min(min, price);
+            max = Math.max(max, price);
+            sum += price;
+        }
+        return new BatchStats(to - from, min, max, sum);
+    }
+}
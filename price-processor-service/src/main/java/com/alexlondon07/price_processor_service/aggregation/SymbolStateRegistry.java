@@ -0,0 +1,213 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.repository.PriceRepository;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.SymbolPartitioner;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans ticks, stats annotation and persistence out to every {@link SymbolStateTracker}.
+ * Loading and saving issue one MGET / MSET per tracker, all subscribed together so they
+ * share a pipelined flush.
+ * The time of the newest recorded tick is kept per symbol, so a tick redelivered after a
+ * failed write is not added to the trackers a second time. It lives in memory only: after
+ * the symbol is evicted or the instance restarts, redelivered ticks are recorded on top of
+ * the persisted state again.
+ * As a rebalance listener it persists the complete state of the symbols of revoked
+ * partitions and evicts them, so the next owner loads fresh state and this instance
+ * reloads it if the partitions come back; state of lost partitions is evicted unwritten.
+ */
+@Component
+@Slf4j
+public class SymbolStateRegistry implements ConsumerAwareRebalanceListener {
+
+    private static final Duration REBALANCE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final List<SymbolStateTracker> trackers;
+    private final PriceRepository priceRepository;
+    private final Map<String, AtomicLong> lastRecordedTicks = new ConcurrentHashMap<>();
+    // Symbols loaded or recorded since their last eviction
+    private final Set<String> trackedSymbols = ConcurrentHashMap.newKeySet();
+
+    public SymbolStateRegistry(List<SymbolStateTracker> trackers, PriceRepository priceRepository) {
+        this.trackers = trackers;
+        this.priceRepository = priceRepository;
+    }
+
+    /**
+     * Restore the persisted state of symbols this instance has not tracked yet.
+     * @param symbols symbols about to be updated.
+     * @return Mono<Void>
+     */
+    public Mono<Void> load(Collection<String> symbols) {
+        trackedSymbols.addAll(symbols);
+        return Flux.fromIterable(trackers)
+                .flatMap(tracker -> {
+                    List<String> untracked = symbols.stream()
+                            .filter(symbol -> !tracker.isTracked(symbol))
+                            .toList();
+                    if (untracked.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    return priceRepository.getEncodedState(tracker.getKeyPrefix(), untracked)
+                            .doOnNext(states -> states.forEach(tracker::restore));
+                })
+                .then();
+    }
+
+    /**
+     * Add a tick to every tracker unless a tick of the symbol at or after its time was already recorded.
+     * @return whether the tick was recorded.
+     */
+    public boolean record(String symbol, long previousPrice, long price, long timestampMillis) {
+        AtomicLong lastRecorded = lastRecordedTicks.get(symbol);
+        if (lastRecorded == null) {
+            lastRecorded = lastRecordedTicks.computeIfAbsent(symbol, key -> new AtomicLong(Long.MIN_VALUE));
+        }
+        // A symbol's ticks are recorded by one consumer at a time, so check-then-set is enough
+        if (timestampMillis <= lastRecorded.get()) {
+            return false;
+        }
+        lastRecorded.set(timestampMillis);
+        trackedSymbols.add(symbol);
+        for (SymbolStateTracker tracker : trackers) {
+            tracker.record(symbol, previousPrice, price, timestampMillis);
+        }
+        return true;
+    }
+
+    public void annotate(PriceStats stats) {
+        for (SymbolStateTracker tracker : trackers) {
+            tracker.annotate(stats);
+        }
+    }
+
+    /**
+     * Persist the state of the given symbols.
+     * @return Mono<Void>
+     */
+    public Mono<Void> save(Collection<String> symbols) {
+        return Flux.fromIterable(trackers)
+                .flatMap(tracker -> priceRepository.saveEncodedState(tracker.getKeyPrefix(), tracker.encode(symbols)))
+                .then();
+    }
+
+    /**
+     * Persist the complete state of the given symbols, ignoring persistence throttling, e.g.
+     * before their partition moves to another consumer that loads it from Redis.
+     * @return Mono<Void>
+     */
+    public Mono<Void> saveNow(Collection<String> symbols) {
+        if (symbols.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(snapshot(symbols).entrySet())
+                .filter(states -> !states.getValue().isEmpty())
+                .flatMap(states -> priceRepository.saveEncodedState(states.getKey(), states.getValue()))
+                .then();
+    }
+
+    /**
+     * Encoded state of the given symbols in every tracker, ignoring persistence throttling.
+     * @return encoded state by symbol, keyed by tracker key prefix.
+     */
+    public Map<String, Map<String, String>> snapshot(Collection<String> symbols) {
+        Map<String, Map<String, String>> states = new HashMap<>();
+        for (SymbolStateTracker tracker : trackers) {
+            states.put(tracker.getKeyPrefix(), tracker.snapshot(symbols));
+        }
+        return states;
+    }
+
+    /**
+     * Restore a symbol's state taken by {@link #snapshot} into the tracker with the given key prefix.
+     */
+    public void restore(String keyPrefix, String symbol, String encoded) {
+        for (SymbolStateTracker tracker : trackers) {
+            if (tracker.getKeyPrefix().equals(keyPrefix)) {
+                tracker.restore(symbol, encoded);
+            }
+        }
+        trackedSymbols.add(symbol);
+    }
+
+    public void evict(String symbol) {
+        trackedSymbols.remove(symbol);
+        lastRecordedTicks.remove(symbol);
+        for (SymbolStateTracker tracker : trackers) {
+            tracker.evict(symbol);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsRevoked(partitions, consumer.partitionsFor(Constants.TOPIC_CRYPTO_PRICES).size());
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsLost(partitions, consumer.partitionsFor(Constants.TOPIC_CRYPTO_PRICES).size());
+    }
+
+    /**
+     * Persist the complete state of the symbols hashed to the revoked partitions and evict them.
+     * @param partitionCount number of partitions of the prices topic.
+     */
+    public void partitionsRevoked(Collection<TopicPartition> partitions, int partitionCount) {
+        List<String> revokedSymbols = symbolsOf(partitions, partitionCount);
+        if (revokedSymbols.isEmpty()) {
+            return;
+        }
+        try {
+            saveNow(revokedSymbols).block(REBALANCE_TIMEOUT);
+        } catch (RuntimeException e) {
+            log.error("Error persisting derived state of {} revoked symbols: {}", revokedSymbols.size(), e.getMessage());
+        }
+        revokedSymbols.forEach(this::evict);
+        log.info("Persisted and evicted derived state of {} symbols of revoked partitions", revokedSymbols.size());
+    }
+
+    /**
+     * Evict the state of the symbols hashed to lost partitions without writing it,
+     * another member may already own them.
+     */
+    public void partitionsLost(Collection<TopicPartition> partitions, int partitionCount) {
+        List<String> lostSymbols = symbolsOf(partitions, partitionCount);
+        lostSymbols.forEach(this::evict);
+        if (!lostSymbols.isEmpty()) {
+            log.warn("Evicted derived state of {} symbols of lost partitions", lostSymbols.size());
+        }
+    }
+
+    private List<String> symbolsOf(Collection<TopicPartition> partitions, int partitionCount) {
+        Set<Integer> numbers = new HashSet<>();
+        for (TopicPartition partition : partitions) {
+            if (Constants.TOPIC_CRYPTO_PRICES.equals(partition.topic())) {
+                numbers.add(partition.partition());
+            }
+        }
+        if (numbers.isEmpty()) {
+            return List.of();
+        }
+        return trackedSymbols.stream()
+                .filter(symbol -> numbers.contains(SymbolPartitioner.partitionOf(symbol, partitionCount)))
+                .toList();
+    }
+}
@@ -0,0 +1,55 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import com.alexlondon07.price_processor_service.model.PriceStats;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Per-symbol derived state that is updated on every tick, attached to PriceStats when the
+ * stats are written, and persisted as an encoded string under its own key prefix so it
+ * survives restarts and partition moves.
+ */
+public interface SymbolStateTracker {
+
+    /**
+     * @return Redis key prefix the encoded state is stored under, followed by the symbol.
+     */
+    String getKeyPrefix();
+
+    boolean isTracked(String symbol);
+
+    /**
+     * Add a tick to the symbol's state.
+     * @param previousPrice fixed-point price before this tick, or a non-positive value when unknown.
+     * @param price fixed-point price of this tick.
+     * @param timestampMillis tick time.
+     */
+    void record(String symbol, long previousPrice, long price, long timestampMillis);
+
+    /**
+     * Set the derived values on stats that are about to be written.
+     */
+    void annotate(PriceStats stats);
+
+    /**
+     * Restore persisted state unless the symbol is already tracked in memory.
+     */
+    void restore(String symbol, String encoded);
+
+    /**
+     * @return encoded state of the given symbols that is tracked and due to be persisted.
+     */
+    Map<String, String> encode(Collection<String> symbols);
+
+    /**
+     * @return encoded state of every given symbol that is tracked, whether or not it is due
+     * to be persisted, e.g. for a local checkpoint.
+     */
+    Map<String, String> snapshot(Collection<String> symbols);
+
+    /**
+     * Drop the in-memory state of a symbol this instance no longer owns.
+     */
+    void evict(String symbol);
+}
@@ -0,0 +1,52 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernel on the incubating Vector API: min, max and sum run lane-wise on LongVectors of
+ * the preferred width and the lanes are reduced once at the end. The tail shorter than a
+ * vector, and runs shorter than the configured minimum, go through the scalar loop.
+ * Only instantiated through {@link BatchStatsKernel#create}.
+ */
+final class VectorBatchStatsKernel implements BatchStatsKernel {
+
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    private final int minLength;
+
+    VectorBatchStatsKernel(int minLength) {
+        this.minLength = Math.max(minLength, LONGS.length());
+    }
+
+    @Override
+    public BatchStats compute(long[] prices, int length) {
+        if (length < minLength) {
+            return ScalarBatchStatsKernel.compute(prices, 0, length);
+        }
+
+        LongVector min = LongVector.broadcast(LONGS, Long.MAX_VALUE);
+        LongVector max = LongVector.broadcast(LONGS, Long.MIN_VALUE);
+        LongVector sum = LongVector.zero(LONGS);
+
+        int upper = LONGS.loopBound(length);
+        for (int i = 0; i < upper; i += LONGS.length()) {
+            LongVector chunk = LongVector.fromArray(LONGS, prices, i);
+            min = min.min(chunk);
+            max = max.max(chunk);
+            sum = sum.add(chunk);
+        }
+
+        long minPrice = min.reduceLanes(VectorOperators.MIN);
+        long maxPrice = max.reduceLanes(VectorOperators.MAX);
+        long total = sum.reduceLanes(VectorOperators.ADD);
+        if (upper < length) {
+            BatchStats tail = ScalarBatchStatsKernel.compute(prices, upper, length);
+            minPrice = Math.min(minPrice, tail.min());
+            maxPrice = Math.max(maxPrice, tail.max());
+            total += tail.sum();
+        }
+        return new BatchStats(length, minPrice, maxPrice, total);
+    }
+}
@@ -1,15 +1,22 @@
 package com.alexlondon07.price_processor_service.config;
 
+import com.alexlondon07.price_processor_service.logging.PriceEventLog;
 import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.FixedPoint;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
-import io.micrometer.core.instrument.Tags;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
@@ -26,8 +33,10 @@ public class CustomDatadogConfig {
     }
 
     @Bean
-    public PriceMetricsCollector priceMetricsCollector(MeterRegistry meterRegistry) {
-        return new PriceMetricsCollector(meterRegistry);
+    public PriceMetricsCollector priceMetricsCollector(MeterRegistry meterRegistry,
+                                                       PriceEventLog priceEventLog,
+                                                       @Value("${processor.metrics.stages.enabled:true}") boolean stageTimers) {
+        return new PriceMetricsCollector(meterRegistry, stageTimers, priceEventLog);
     }
 
     public static class PriceMetricsCollector {
@@ -37,19 +46,75 @@ public class CustomDatadogConfig {
         private final AtomicLong priceAlerts = new AtomicLong(0);
         private final Timer priceProcessingTimer;
         private final Timer kafkaProcessingTimer;
+        private final Timer tickAgeTimer;
+        private final boolean stageTimersEnabled;
+        private final PriceEventLog priceEventLog;
+        private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+        private final Counter processingSuccess;
+        private final Counter processingErrors;
+        private final Counter kafkaSuccess;
+        private final Counter kafkaErrors;
+        private final Counter kafkaMessages;
+        private final Counter deserializationErrors;
+        private final Map<String, SymbolMeters> metersBySymbol = new ConcurrentHashMap<>();
+        private final Map<String, RetryMeters> retryMetersByTopic = new ConcurrentHashMap<>();
 
         public PriceMetricsCollector(MeterRegistry meterRegistry) {
+            this(meterRegistry, true);
+        }
+
+        /**
+         * @param stageTimersEnabled time every pipeline stage (see {@link #timeStage(String, reactor.core.publisher.Mono)});
+         *                           when false the stages run untimed.
+         */
+        public PriceMetricsCollector(MeterRegistry meterRegistry, boolean stageTimersEnabled) {
+            this(meterRegistry, stageTimersEnabled, null);
+        }
+
+        /**
+         * @param priceEventLog gates the price alert log lines; null only counts alerts.
+         */
+        public PriceMetricsCollector(MeterRegistry meterRegistry, boolean stageTimersEnabled, PriceEventLog priceEventLog) {
             this.meterRegistry = meterRegistry;
+            this.stageTimersEnabled = stageTimersEnabled;
+            this.priceEventLog = priceEventLog;
             this.priceProcessingTimer = Timer.builder("price.processing.duration")
                 .description("Time taken to process crypto prices")
                 .tag("operation", "process")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
                 .register(meterRegistry);
             
             this.kafkaProcessingTimer = Timer.builder("kafka.consumer.duration")
                 .description("Time taken to process Kafka messages")
                 .tag("operation", "consume")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry);
+
+            this.tickAgeTimer = Timer.builder("price.record.age")
+                .description("Age of a tick when its record is received: now minus the tick timestamp")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(10))
+                .maximumExpectedValue(Duration.ofHours(6))
                 .register(meterRegistry);
 
+            this.processingSuccess = meterRegistry.counter("price.processing.operations", "type", "success");
+            this.processingErrors = meterRegistry.counter("price.processing.operations", "type", "error");
+            this.kafkaSuccess = meterRegistry.counter("kafka.consumer.operations", "type", "success");
+            this.kafkaErrors = meterRegistry.counter("kafka.consumer.operations", "type", "error");
+            this.kafkaMessages = meterRegistry.counter("kafka.consumer.messages",
+                "service", "price-processor-service",
+                "topic", Constants.TOPIC_CRYPTO_PRICES);
+            this.deserializationErrors = meterRegistry.counter("kafka.consumer.errors",
+                "service", "price-processor-service",
+                "error_type", "deserialization");
+
             // Register counters
             meterRegistry.gauge("price.processed.count", pricesProcessed);
             meterRegistry.gauge("price.errors.count", priceErrors);
@@ -61,11 +126,11 @@ public class CustomDatadogConfig {
             return operation
                 .doOnSuccess(value -> {
                     pricesProcessed.incrementAndGet();
-                    meterRegistry.counter("price.processing.operations", "type", "success").increment();
+                    processingSuccess.increment();
                 })
                 .doOnError(error -> {
                     priceErrors.incrementAndGet();
-                    meterRegistry.counter("price.processing.operations", "type", "error").increment();
+                    processingErrors.increment();
                 })
                 .doFinally(signalType -> sample.stop(priceProcessingTimer));
         }
@@ -73,67 +138,184 @@ public class CustomDatadogConfig {
         public <T> reactor.core.publisher.Mono<T> timeKafkaProcessing(reactor.core.publisher.Mono<T> operation) {
             Timer.Sample sample = Timer.start(meterRegistry);
             return operation
-                .doOnSuccess(value -> {
-                    meterRegistry.counter("kafka.consumer.operations", "type", "success").increment();
-                })
-                .doOnError(error -> {
-                    meterRegistry.counter("kafka.consumer.operations", "type", "error").increment();
-                })
+                .doOnSuccess(value -> kafkaSuccess.increment())
+                .doOnError(error -> kafkaErrors.increment())
                 .doFinally(signalType -> sample.stop(kafkaProcessingTimer));
         }
 
-        public void recordPriceChange(String symbol, BigDecimal oldPrice, BigDecimal newPrice) {
-            double changePercent = newPrice.subtract(oldPrice)
-                    .divide(oldPrice, 4, java.math.RoundingMode.HALF_UP)
-                    .doubleValue() * 100;
-            
-            // Record price change as a gauge
-            meterRegistry.gauge("price.change.percent", Tags.of("symbol", symbol), changePercent);
+        /**
+         * Time one stage of the pipeline (a repository call, one step of processPrice) from
+         * subscription to its terminal signal into price.stage.duration{stage}. The timer of a
+         * stage is registered once; afterwards a stage costs two nanoTime reads and one
+         * histogram update, whose buckets are bounded to 100us..10s.
+         * @param stage tag value, one of the Constants.STAGE_* names.
+         */
+        public <T> reactor.core.publisher.Mono<T> timeStage(String stage, reactor.core.publisher.Mono<T> operation) {
+            if (!stageTimersEnabled) {
+                return operation;
+            }
+            Timer timer = stageTimer(stage);
+            return reactor.core.publisher.Mono.defer(() -> {
+                long started = System.nanoTime();
+                return operation.doFinally(signalType -> timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS));
+            });
+        }
+
+        public <T> reactor.core.publisher.Flux<T> timeStage(String stage, reactor.core.publisher.Flux<T> operation) {
+            if (!stageTimersEnabled) {
+                return operation;
+            }
+            Timer timer = stageTimer(stage);
+            return reactor.core.publisher.Flux.defer(() -> {
+                long started = System.nanoTime();
+                return operation.doFinally(signalType -> timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS));
+            });
+        }
+
+        private Timer stageTimer(String stage) {
+            Timer timer = stageTimers.get(stage);
+            return timer != null ? timer : stageTimers.computeIfAbsent(stage, key -> Timer.builder("price.stage.duration")
+                .description("Time spent in one stage of the price pipeline")
+                .tag("stage", key)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry));
+        }
+
+        /**
+         * Record how old a tick is when its record is received.
+         * @param timestamp tick timestamp set by the fetcher, ignored when missing.
+         */
+        public void recordTickAge(Instant timestamp) {
+            if (timestamp != null) {
+                tickAgeTimer.record(Math.max(0, System.currentTimeMillis() - timestamp.toEpochMilli()), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Meters of a symbol, registered on first use and kept for the life of the collector.
+         */
+        public SymbolMeters meters(String symbol) {
+            SymbolMeters meters = metersBySymbol.get(symbol);
+            return meters != null ? meters : metersBySymbol.computeIfAbsent(symbol, key -> new SymbolMeters(key, meterRegistry));
+        }
+
+        /**
+         * Record the change between two consecutive prices.
+         * @param oldPrice fixed-point price (see {@link FixedPoint}), must be positive.
+         * @param newPrice fixed-point price.
+         */
+        public void recordPriceChange(String symbol, long oldPrice, long newPrice) {
+            double changePercent = FixedPoint.changePercent(oldPrice, newPrice);
+            SymbolMeters meters = meters(symbol);
+
+            meters.setChangePercent(changePercent);
             
             // Check for significant changes (alerts)
             if (Math.abs(changePercent) > Constants.ALERT_THRESHOLD_PERCENT) { // 1% threshold
                 priceAlerts.incrementAndGet();
-                meterRegistry.counter("price.alerts", 
-                    "symbol", symbol, 
-                    "type", changePercent > 0 ? "increase" : "decrease").increment();
+                meters.alerts(changePercent > 0).increment();
                 
-                System.out.println("Price alert for " + symbol + ": " + changePercent + "% change from " + oldPrice + " to " + newPrice);
+                if (priceEventLog != null && priceEventLog.shouldLog(symbol)) {
+                    log.info("Price alert for {}: {}% change from {} to {}", symbol, changePercent,
+                            FixedPoint.toDecimal(oldPrice), FixedPoint.toDecimal(newPrice));
+                }
             }
             
-            // Record absolute price
-            meterRegistry.gauge("price.current", Tags.of("symbol", symbol), newPrice.doubleValue());
+            meters.setCurrentPrice(FixedPoint.toDouble(newPrice));
         }
 
-        public void recordPriceStats(String symbol, BigDecimal currentPrice, BigDecimal minPrice, 
-                                   BigDecimal maxPrice, BigDecimal avgPrice, int sampleCount) {
-            meterRegistry.gauge("price.current", Tags.of("symbol", symbol), currentPrice.doubleValue());
-            meterRegistry.gauge("price.min", Tags.of("symbol", symbol), minPrice.doubleValue());
-            meterRegistry.gauge("price.max", Tags.of("symbol", symbol), maxPrice.doubleValue());
-            meterRegistry.gauge("price.avg", Tags.of("symbol", symbol), avgPrice.doubleValue());
-            meterRegistry.gauge("price.samples", Tags.of("symbol", symbol), sampleCount);
+        /**
+         * Record the running stats of a symbol. All prices are fixed-point (see {@link FixedPoint}).
+         */
+        public void recordPriceStats(String symbol, long currentPrice, long minPrice,
+                                   long maxPrice, long avgPrice, int sampleCount) {
+            SymbolMeters meters = meters(symbol);
+            meters.setCurrentPrice(FixedPoint.toDouble(currentPrice));
+            meters.setMinPrice(FixedPoint.toDouble(minPrice));
+            meters.setMaxPrice(FixedPoint.toDouble(maxPrice));
+            meters.setAvgPrice(FixedPoint.toDouble(avgPrice));
+            meters.setSampleCount(sampleCount);
             
             // Calculate and record volatility (range as percentage of current price)
-            if (currentPrice.compareTo(BigDecimal.ZERO) > 0) {
-                BigDecimal range = maxPrice.subtract(minPrice);
-                double volatility = range.divide(currentPrice, 4, java.math.RoundingMode.HALF_UP)
-                        .doubleValue() * 100;
-                meterRegistry.gauge("price.volatility", Tags.of("symbol", symbol), volatility);
+            if (currentPrice > 0) {
+                meters.setVolatility((double) (maxPrice - minPrice) / currentPrice * 100);
             }
         }
 
+        public void recordStorageSuccess(String symbol) {
+            meters(symbol).storageSuccess().increment();
+        }
+
+        /**
+         * Count ticks skipped because a tick of the symbol at or after their time was already applied,
+         * e.g. when a batch is redelivered after a failed write.
+         */
+        public void recordReplayedTicks(String symbol, int count) {
+            meters(symbol).replayedTicks().increment(count);
+        }
+
+        /**
+         * Count consumed Kafka records.
+         */
+        public void recordKafkaMessages(int count) {
+            kafkaMessages.increment(count);
+        }
+
+        public void recordDeserializationError() {
+            deserializationErrors.increment();
+        }
+
+        /**
+         * Count a record consumed from a retry topic and how long it waited there.
+         * @param waitMillis time since the failed attempt published it.
+         */
+        public void recordRetry(String topic, long waitMillis) {
+            RetryMeters meters = retryMetersByTopic.computeIfAbsent(topic, this::retryMeters);
+            meters.records().increment();
+            meters.waitTimer().record(Math.max(0, waitMillis), TimeUnit.MILLISECONDS);
+        }
+
+        private RetryMeters retryMeters(String topic) {
+            return new RetryMeters(
+                    meterRegistry.counter("kafka.consumer.retry.records", "topic", topic),
+                    Timer.builder("kafka.consumer.retry.wait")
+                            .description("Time records wait in a retry topic before being reprocessed")
+                            .tag("topic", topic)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry));
+        }
+
+        private record RetryMeters(Counter records, Timer waitTimer) {
+        }
+
+        /**
+         * Count a record routed to the dead-letter topic.
+         * @param reason deserialization, or the class of the exception that exhausted the retries.
+         */
+        public void recordDeadLetter(String reason) {
+            meterRegistry.counter("kafka.consumer.dlt.records", "reason", reason).increment();
+        }
+
         public void recordPriceProcessed() {
             pricesProcessed.incrementAndGet();
-            meterRegistry.counter("price.processing.operations", "type", "success").increment();
+            processingSuccess.increment();
         }
 
         public void recordPriceError() {
             priceErrors.incrementAndGet();
-            meterRegistry.counter("price.processing.operations", "type", "error").increment();
+            processingErrors.increment();
         }
 
         public void recordPriceAlert(String symbol, String alertType) {
             priceAlerts.incrementAndGet();
-            meterRegistry.counter("price.alerts", "symbol", symbol, "type", alertType).increment();
+            if ("increase".equals(alertType) || "decrease".equals(alertType)) {
+                meters(symbol).alerts("increase".equals(alertType)).increment();
+            } else {
+                meterRegistry.counter("price.alerts", "symbol", symbol, "type", alertType).increment();
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,39 @@
 package com.alexlondon07.price_processor_service.config;
 
 
+import com.alexlondon07.price_processor_service.aggregation.CandleAggregator;
+import com.alexlondon07.price_processor_service.aggregation.SymbolStateRegistry;
 import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.shard.ShardedPriceEngine;
+import com.alexlondon07.price_processor_service.state.ConflationBuffer;
+import com.alexlondon07.price_processor_service.state.LocalStatsStore;
+import com.alexlondon07.price_processor_service.state.StateCheckpointer;
+import com.alexlondon07.price_processor_service.timeseries.TickStore;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import reactor.kafka.receiver.ReceiverOptions;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -24,8 +44,74 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.consumer.group-id}")
     private String groupId;
 
+    @Value("${processor.kafka.concurrency:3}")
+    private int concurrency;
+
+    @Value("${processor.batch.max-poll-records:500}")
+    private int batchMaxPollRecords;
+
+    @Value("${processor.reactive.max-poll-records:500}")
+    private int reactiveMaxPollRecords;
+
+    @Value("${processor.reactive.commit-interval:1s}")
+    private Duration reactiveCommitInterval;
+
     @Bean
     public ConsumerFactory<String, CryptoPrice> consumerFactory() {
+        return new DefaultKafkaConsumerFactory<>(consumerProperties());
+    }
+
+    /**
+     * Receiver options for the reactive consumer mode. Auto commit is off: only offsets
+     * acknowledged after a successful Redis write are committed, every commit interval.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "processor.listener.mode", havingValue = "reactive")
+    public ReceiverOptions<String, CryptoPrice> reactiveReceiverOptions() {
+        Map<String, Object> props = consumerProperties();
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, reactiveMaxPollRecords);
+        return ReceiverOptions.<String, CryptoPrice>create(props)
+                .commitInterval(reactiveCommitInterval)
+                .subscription(List.of(Constants.TOPIC_CRYPTO_PRICES));
+    }
+
+    /**
+     * Rebalance listener calling the given listeners in order.
+     */
+    private static ConsumerAwareRebalanceListener inOrder(ConsumerAwareRebalanceListener... listeners) {
+        return new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                for (ConsumerAwareRebalanceListener listener : listeners) {
+                    listener.onPartitionsRevokedBeforeCommit(consumer, partitions);
+                }
+            }
+
+            @Override
+            public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                for (ConsumerAwareRebalanceListener listener : listeners) {
+                    listener.onPartitionsRevokedAfterCommit(consumer, partitions);
+                }
+            }
+
+            @Override
+            public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                for (ConsumerAwareRebalanceListener listener : listeners) {
+                    listener.onPartitionsLost(consumer, partitions);
+                }
+            }
+
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                for (ConsumerAwareRebalanceListener listener : listeners) {
+                    listener.onPartitionsAssigned(consumer, partitions);
+                }
+            }
+        };
+    }
+
+    private Map<String, Object> consumerProperties() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
@@ -38,16 +124,63 @@ public class KafkaConsumerConfig {
         props.put(JsonDeserializer.TYPE_MAPPINGS,
             "com.alexlondon07.crypto_fetcher_service.model.CryptoPrice:" + CryptoPrice.class.getName());
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return props;
+    }
 
-        return new DefaultKafkaConsumerFactory<>(props);
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, CryptoPrice> kafkaListenerContainerFactory(
+            LocalStatsStore localStatsStore, SymbolStateRegistry symbolStateRegistry, CandleAggregator candleAggregator,
+            TickStore tickStore) {
+        ConcurrentKafkaListenerContainerFactory<String, CryptoPrice> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setConsumerRebalanceListener(inOrder(localStatsStore, symbolStateRegistry, candleAggregator, tickStore));
+        return factory;
+    }
+
+    /**
+     * Container factory for the batch listener mode: each poll is handed over
+     * as a single list so the storage layer can coalesce writes per symbol.
+     * Offsets are acknowledged by the listener, which holds them back while conflated state
+     * is only buffered in memory. When the stats change topic is enabled every poll runs in
+     * a Kafka transaction that also commits the acknowledged offsets.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, CryptoPrice> batchKafkaListenerContainerFactory(
+            LocalStatsStore localStatsStore, ConflationBuffer conflationBuffer, StateCheckpointer stateCheckpointer,
+            SymbolStateRegistry symbolStateRegistry, CandleAggregator candleAggregator, TickStore tickStore,
+            ObjectProvider<KafkaTransactionManager<String, PriceStats>> statsTransactionManager) {
+        ConcurrentKafkaListenerContainerFactory<String, CryptoPrice> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(
+                inOrder(conflationBuffer, stateCheckpointer, localStatsStore, symbolStateRegistry, candleAggregator, tickStore));
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchMaxPollRecords));
+        statsTransactionManager.ifAvailable(factory.getContainerProperties()::setKafkaAwareTransactionManager);
+        return factory;
     }
 
+    /**
+     * Container factory for the sharded mode: consumer threads only deserialize and hand
+     * each poll to the shards, which own the stats, so the engine is the rebalance listener.
+     */
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, CryptoPrice> kafkaListenerContainerFactory() {
+    @ConditionalOnProperty(name = "processor.listener.mode", havingValue = "sharded")
+    public ConcurrentKafkaListenerContainerFactory<String, CryptoPrice> shardedKafkaListenerContainerFactory(
+            ShardedPriceEngine shardedPriceEngine, CandleAggregator candleAggregator, TickStore tickStore) {
         ConcurrentKafkaListenerContainerFactory<String, CryptoPrice> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
-        factory.setConcurrency(3); // Set the number of concurrent threads
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setConsumerRebalanceListener(inOrder(shardedPriceEngine, candleAggregator, tickStore));
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchMaxPollRecords));
         return factory;
     }
 }
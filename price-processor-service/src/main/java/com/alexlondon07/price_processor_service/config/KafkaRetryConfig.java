@@ -0,0 +1,125 @@
+package com.alexlondon07.price_processor_service.config;
+
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationSupport;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Producer side of failed-record routing. Failed ticks are republished to tiered delay retry
+ * topics (crypto-prices-retry-N, see PriceListener) and finally to crypto-prices-dlt; records
+ * that cannot be deserialized go straight to the dead-letter topic with their raw bytes.
+ * Every republished record carries the kafka_dlt-exception-* and kafka_dlt-original-* headers.
+ */
+@Configuration
+public class KafkaRetryConfig extends RetryTopicConfigurationSupport {
+
+    private final CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector;
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Value("${processor.retry.partitions:3}")
+    private int partitions;
+
+    @Value("${processor.retry.replication-factor:1}")
+    private short replicationFactor;
+
+    public KafkaRetryConfig(CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector) {
+        this.priceMetricsCollector = priceMetricsCollector;
+    }
+
+    /**
+     * Values are either CryptoPrice (failed ticks) or the raw bytes of a poison record.
+     */
+    @Bean
+    public ProducerFactory<Object, Object> deadLetterProducerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return new DefaultKafkaProducerFactory<>(props,
+                orRawBytes(String.class, new StringSerializer()),
+                orRawBytes(CryptoPrice.class, new JsonSerializer<CryptoPrice>().noTypeInfo()));
+    }
+
+    @Bean
+    public KafkaTemplate<Object, Object> deadLetterKafkaTemplate() {
+        return new KafkaTemplate<>(deadLetterProducerFactory());
+    }
+
+    /**
+     * Publishes poison records of the batch and reactive modes to the dead-letter topic,
+     * keeping the key so the partitioner spreads them like the source topic.
+     */
+    @Bean
+    public DeadLetterPublishingRecoverer poisonRecordRecoverer() {
+        return new DeadLetterPublishingRecoverer(deadLetterKafkaTemplate(),
+                (record, exception) -> new TopicPartition(Constants.TOPIC_CRYPTO_PRICES_DLT, -1));
+    }
+
+    /**
+     * The retry topic feature creates the dead-letter topic itself in record mode.
+     */
+    @Bean
+    @ConditionalOnExpression("'${processor.listener.mode:record}' != 'record'")
+    public NewTopic deadLetterTopic() {
+        return TopicBuilder.name(Constants.TOPIC_CRYPTO_PRICES_DLT)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+
+    /**
+     * Count poison records as they are published: deserialization failures are never retried,
+     * so they always go to the dead-letter topic. Other failures are counted by the DLT handler.
+     * Added next to the retry headers function, which has to stay in place.
+     */
+    @Override
+    protected void configureCustomizers(CustomizersConfigurer customizersConfigurer) {
+        customizersConfigurer.customizeDeadLetterPublishingRecoverer(recoverer ->
+                recoverer.addHeadersFunction((record, exception) -> {
+                    if (isDeserializationFailure(exception)) {
+                        priceMetricsCollector.recordDeadLetter("deserialization");
+                    }
+                    return null;
+                }));
+    }
+
+    private static boolean isDeserializationFailure(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeserializationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static DelegatingByTypeSerializer orRawBytes(Class<?> type, Serializer<?> serializer) {
+        Map<Class<?>, Serializer<?>> delegates = new LinkedHashMap<>();
+        delegates.put(type, serializer);
+        delegates.put(byte[].class, new ByteArraySerializer());
+        return new DelegatingByTypeSerializer(delegates);
+    }
+}
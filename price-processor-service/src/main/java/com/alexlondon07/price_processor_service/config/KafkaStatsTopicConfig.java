@@ -0,0 +1,81 @@
+package com.alexlondon07.price_processor_service.config;
+
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transactional producer of the compacted crypto-price-stats topic. The batch container runs
+ * every poll in a Kafka transaction of this producer: the stats changes of the batch and the
+ * consumed offsets are committed together, so read_committed consumers see exactly one stats
+ * change event per symbol of each committed batch. Only the event count is exactly-once: the
+ * Redis writes and the in-memory stats are outside the transaction, so a batch redelivered
+ * after an abort is applied again, and only the tick watermarks keep its ticks from being
+ * counted twice. Only the batch listener mode supports it, and not with state checkpoints.
+ */
+@Configuration
+@ConditionalOnExpression("${processor.stats-topic.enabled:false} and '${processor.listener.mode:record}' == 'batch'")
+public class KafkaStatsTopicConfig {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    // Has to be unique per instance, the default appends a random id
+    @Value("${processor.stats-topic.transaction-id-prefix:price-processor-stats-${random.uuid}-}")
+    private String transactionIdPrefix;
+
+    @Value("${processor.stats-topic.partitions:3}")
+    private int partitions;
+
+    @Value("${processor.stats-topic.replication-factor:1}")
+    private short replicationFactor;
+
+    @Bean
+    public ProducerFactory<String, PriceStats> statsProducerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        DefaultKafkaProducerFactory<String, PriceStats> factory = new DefaultKafkaProducerFactory<>(props,
+                new StringSerializer(), new JsonSerializer<PriceStats>().noTypeInfo());
+        factory.setTransactionIdPrefix(transactionIdPrefix);
+        return factory;
+    }
+
+    @Bean
+    public KafkaTemplate<String, PriceStats> statsKafkaTemplate() {
+        return new KafkaTemplate<>(statsProducerFactory());
+    }
+
+    @Bean
+    public KafkaTransactionManager<String, PriceStats> statsTransactionManager() {
+        return new KafkaTransactionManager<>(statsProducerFactory());
+    }
+
+    /**
+     * Keyed by symbol and compacted, so the topic converges to the latest stats of every symbol.
+     */
+    @Bean
+    public NewTopic statsTopic() {
+        return TopicBuilder.name(Constants.TOPIC_CRYPTO_PRICE_STATS)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .compact()
+                .build();
+    }
+}
@@ -4,8 +4,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
@@ -36,4 +38,76 @@ public class RedisConfig {
 
         return new ReactiveRedisTemplate<>(factory, context);
     }
+
+    /**
+     * Stats update script, executed with EVALSHA so it is only shipped to Redis once.
+     */
+    @Bean
+    public RedisScript<String> updateStatsScript() {
+        return RedisScript.of(new ClassPathResource("scripts/update_stats.lua"), String.class);
+    }
+
+    /**
+     * History append script: XADD with tick-timestamp ids and trimming in a single call.
+     */
+    @Bean
+    public RedisScript<Long> appendHistoryScript() {
+        return RedisScript.of(new ClassPathResource("scripts/append_history.lua"), Long.class);
+    }
+
+    /**
+     * Chunked history append script: APPENDs the raw ticks newer than the last appended one.
+     */
+    @Bean
+    public RedisScript<Long> appendHistoryTailScript() {
+        return RedisScript.of(new ClassPathResource("scripts/append_history_tail.lua"), Long.class);
+    }
+
+    /**
+     * Chunked history seal script: stores a compressed chunk, cuts it from the raw tail and trims old chunks.
+     */
+    @Bean
+    public RedisScript<Long> sealHistoryChunkScript() {
+        return RedisScript.of(new ClassPathResource("scripts/seal_history_chunk.lua"), Long.class);
+    }
+
+    /**
+     * Chunked history read script: tail and overlapping chunks of a time range as one bulk reply.
+     */
+    @Bean
+    public RedisScript<byte[]> readHistoryChunksScript() {
+        return RedisScript.of(new ClassPathResource("scripts/read_history_chunks.lua"), byte[].class);
+    }
+
+    /**
+     * Guarded SET: only writes a value derived from a tick newer than the last one written to the key.
+     */
+    @Bean
+    public RedisScript<Long> setIfNewerScript() {
+        return RedisScript.of(new ClassPathResource("scripts/set_if_newer.lua"), Long.class);
+    }
+
+    /**
+     * Candle script: replaces the candle of a bucket and trims old candles in one atomic call.
+     */
+    @Bean
+    public RedisScript<Long> saveCandleScript() {
+        return RedisScript.of(new ClassPathResource("scripts/save_candle.lua"), Long.class);
+    }
+
+    /**
+     * Lease script: takes a free lease or renews the caller's own, so only one instance runs a job.
+     */
+    @Bean
+    public RedisScript<Long> acquireLeaseScript() {
+        return RedisScript.of(new ClassPathResource("scripts/acquire_lease.lua"), Long.class);
+    }
+
+    /**
+     * Rebuild swap script: RENAMEs shadow keys over live keys in a single atomic call.
+     */
+    @Bean
+    public RedisScript<Long> swapKeysScript() {
+        return RedisScript.of(new ClassPathResource("scripts/swap_keys.lua"), Long.class);
+    }
 }
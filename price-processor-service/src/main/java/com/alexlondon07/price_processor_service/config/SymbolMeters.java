@@ -0,0 +1,101 @@
+package com.alexlondon07.price_processor_service.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Every meter of one symbol, registered once when the symbol is first seen.
+ * Gauges read from AtomicLongs held here (doubles stored as raw bits), so they stay
+ * strongly reachable for as long as the collector keeps this holder and the hot path
+ * is plain atomic stores and counter increments: no registry lookup, tag or varargs
+ * allocation per tick.
+ */
+public final class SymbolMeters {
+
+    private final AtomicLong currentPrice = new AtomicLong();
+    private final AtomicLong minPrice = new AtomicLong();
+    private final AtomicLong maxPrice = new AtomicLong();
+    private final AtomicLong avgPrice = new AtomicLong();
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final AtomicLong volatility = new AtomicLong();
+    private final AtomicLong changePercent = new AtomicLong();
+    private final Counter increaseAlerts;
+    private final Counter decreaseAlerts;
+    private final Counter storageSuccess;
+    private final Counter replayedTicks;
+
+    SymbolMeters(String symbol, MeterRegistry meterRegistry) {
+        registerDouble(meterRegistry, "price.current", symbol, currentPrice);
+        registerDouble(meterRegistry, "price.min", symbol, minPrice);
+        registerDouble(meterRegistry, "price.max", symbol, maxPrice);
+        registerDouble(meterRegistry, "price.avg", symbol, avgPrice);
+        registerDouble(meterRegistry, "price.volatility", symbol, volatility);
+        registerDouble(meterRegistry, "price.change.percent", symbol, changePercent);
+        Gauge.builder("price.samples", sampleCount, AtomicLong::get)
+                .tag("symbol", symbol)
+                .register(meterRegistry);
+        this.increaseAlerts = Counter.builder("price.alerts")
+                .tag("symbol", symbol)
+                .tag("type", "increase")
+                .register(meterRegistry);
+        this.decreaseAlerts = Counter.builder("price.alerts")
+                .tag("symbol", symbol)
+                .tag("type", "decrease")
+                .register(meterRegistry);
+        this.storageSuccess = Counter.builder("price.storage.success")
+                .tag("symbol", symbol)
+                .register(meterRegistry);
+        this.replayedTicks = Counter.builder("price.ticks.replayed")
+                .tag("symbol", symbol)
+                .register(meterRegistry);
+    }
+
+    void setCurrentPrice(double value) {
+        currentPrice.set(Double.doubleToRawLongBits(value));
+    }
+
+    void setMinPrice(double value) {
+        minPrice.set(Double.doubleToRawLongBits(value));
+    }
+
+    void setMaxPrice(double value) {
+        maxPrice.set(Double.doubleToRawLongBits(value));
+    }
+
+    void setAvgPrice(double value) {
+        avgPrice.set(Double.doubleToRawLongBits(value));
+    }
+
+    void setSampleCount(long value) {
+        sampleCount.set(value);
+    }
+
+    void setVolatility(double value) {
+        volatility.set(Double.doubleToRawLongBits(value));
+    }
+
+    void setChangePercent(double value) {
+        changePercent.set(Double.doubleToRawLongBits(value));
+    }
+
+    Counter alerts(boolean increase) {
+        return increase ? increaseAlerts : decreaseAlerts;
+    }
+
+    Counter storageSuccess() {
+        return storageSuccess;
+    }
+
+    Counter replayedTicks() {
+        return replayedTicks;
+    }
+
+    private static void registerDouble(MeterRegistry meterRegistry, String name, String symbol, AtomicLong bits) {
+        Gauge.builder(name, bits, value -> Double.longBitsToDouble(value.get()))
+                .tag("symbol", symbol)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,47 @@
+package com.alexlondon07.price_processor_service.controller;
+
+import com.alexlondon07.price_processor_service.model.RebuildStatus;
+import com.alexlondon07.price_processor_service.rebuild.PriceRebuildJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+@RestController
+@RequestMapping("/admin")
+@Slf4j
+@RequiredArgsConstructor
+public class AdminController {
+
+    private final PriceRebuildJob priceRebuildJob;
+
+    /**
+     * Rebuild stats and history from the prices topic, replayed from the given timestamp.
+     * Returns 202 with the job status, or 409 when a rebuild is already running.
+     */
+    @PostMapping("/rebuild")
+    public Mono<ResponseEntity<RebuildStatus>> startRebuild(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from) {
+        log.info("Request: Rebuild Redis state from {}", from);
+        try {
+            return Mono.just(ResponseEntity.status(HttpStatus.ACCEPTED).body(priceRebuildJob.start(from)));
+        } catch (IllegalStateException e) {
+            log.warn("Rebuild rejected: {}", e.getMessage());
+            return Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).body(priceRebuildJob.getStatus()));
+        }
+    }
+
+    @GetMapping("/rebuild")
+    public Mono<ResponseEntity<RebuildStatus>> getRebuildStatus() {
+        return Mono.just(ResponseEntity.ok(priceRebuildJob.getStatus()));
+    }
+}
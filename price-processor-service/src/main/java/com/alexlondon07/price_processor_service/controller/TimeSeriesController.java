@@ -0,0 +1,89 @@
+package com.alexlondon07.price_processor_service.controller;
+
+import com.alexlondon07.price_processor_service.model.Candle;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.timeseries.TickStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Long-range queries on the local time-series store. Segments are mapped and scanned on the
+ * bounded elastic scheduler, never on the event loop. Answers 404 while the store is disabled
+ * and for symbols another instance consumes; otherwise the X-Complete-Since header tells since
+ * when this instance stored every tick of the symbol, earlier ranges may have gaps.
+ */
+@RestController
+@RequestMapping("/timeseries")
+@Slf4j
+@RequiredArgsConstructor
+public class TimeSeriesController {
+
+    private static final String COMPLETE_SINCE_HEADER = "X-Complete-Since";
+
+    private final TickStore tickStore;
+
+    @GetMapping("/{symbol}")
+    public Mono<ResponseEntity<List<CryptoPrice>>> getRange(
+            @PathVariable String symbol,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "10000") int limit) {
+        log.info("Request: Stored ticks of {} from {} to {}", symbol, from, to);
+        String storedSymbol = symbol.toUpperCase();
+        Instant completeSince = tickStore.isEnabled() ? tickStore.completeSince(storedSymbol) : null;
+        if (completeSince == null) {
+            return Mono.just(ResponseEntity.notFound().build());
+        }
+        return Mono.fromCallable(() -> tickStore.range(storedSymbol, from, to != null ? to : Instant.now(), limit))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(prices -> ResponseEntity.ok()
+                        .header(COMPLETE_SINCE_HEADER, completeSince.toString())
+                        .body(prices));
+    }
+
+    /**
+     * Downsampled OHLC buckets, e.g. {@code ?from=2024-01-01T00:00:00Z&step=1d}.
+     */
+    @GetMapping("/{symbol}/aggregate")
+    public Mono<ResponseEntity<List<Candle>>> getAggregate(
+            @PathVariable String symbol,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "1h") String step) {
+        log.info("Request: {} aggregates of {} from {} to {}", step, symbol, from, to);
+        String storedSymbol = symbol.toUpperCase();
+        Instant completeSince = tickStore.isEnabled() ? tickStore.completeSince(storedSymbol) : null;
+        if (completeSince == null) {
+            return Mono.just(ResponseEntity.notFound().build());
+        }
+        Duration stepDuration;
+        try {
+            stepDuration = DurationStyle.detectAndParse(step);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        if (stepDuration.isNegative() || stepDuration.toMillis() == 0) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return Mono.fromCallable(() -> tickStore.aggregate(storedSymbol, from, to != null ? to : Instant.now(),
+                        stepDuration, step))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(candles -> ResponseEntity.ok()
+                        .header(COMPLETE_SINCE_HEADER, completeSince.toString())
+                        .body(candles));
+    }
+}
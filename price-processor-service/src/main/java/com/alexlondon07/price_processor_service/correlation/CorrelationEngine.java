@@ -0,0 +1,146 @@
+package com.alexlondon07.price_processor_service.correlation;
+
+import com.alexlondon07.price_processor_service.model.CorrelationSnapshot;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.repository.PriceRepository;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pairwise log-return covariance and correlation of every tracked symbol over the last
+ * processor.correlation.window grid steps. Every processor.correlation.interval the engine
+ * reads the current price of all symbols at once, so returns are aligned on a common time
+ * grid across symbols and across consumer instances (each instance only consumes part of the
+ * symbols), folds the step into a {@link CorrelationMatrix} and publishes the snapshot in
+ * crypto:correlation for crypto-api. A symbol without a new price in a step has a zero return.
+ * <p>
+ * Only one instance runs the steps: the one holding the crypto:correlation:lease, renewed by
+ * every step and released after three missed intervals. An instance that takes the lease over
+ * starts a fresh window, it never folds a return spanning steps it did not take.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "processor.correlation.enabled", havingValue = "true")
+public class CorrelationEngine {
+
+    private static final int LEASE_INTERVALS = 3;
+
+    private final PriceRepository priceRepository;
+    private final String instanceId = UUID.randomUUID().toString();
+    private CorrelationMatrix matrix;
+    private boolean leading;
+    private final Map<String, Double> lastCloses = new HashMap<>();
+    private final AtomicBoolean sampling = new AtomicBoolean();
+    private final int window;
+    private final long intervalMillis;
+    private final int maxSymbols;
+    private final int parallelThreshold;
+    private final Duration leaseTime;
+
+    public CorrelationEngine(PriceRepository priceRepository,
+                             @Value("${processor.correlation.window:60}") int window,
+                             @Value("${processor.correlation.interval:300000}") long intervalMillis,
+                             @Value("${processor.correlation.max-symbols:1000}") int maxSymbols,
+                             @Value("${processor.correlation.parallel-threshold:64}") int parallelThreshold) {
+        this.priceRepository = priceRepository;
+        this.window = window;
+        this.intervalMillis = intervalMillis;
+        this.maxSymbols = maxSymbols;
+        this.parallelThreshold = parallelThreshold;
+        this.leaseTime = Duration.ofMillis(intervalMillis * LEASE_INTERVALS);
+        this.matrix = new CorrelationMatrix(window, parallelThreshold, 16);
+        log.info("Correlation engine: {} steps of {} ms, up to {} symbols", window, intervalMillis, maxSymbols);
+    }
+
+    @Scheduled(fixedRateString = "${processor.correlation.interval:300000}")
+    public void scheduledSample() {
+        sample().subscribe();
+    }
+
+    /**
+     * Take one grid step and publish the resulting snapshot, when this instance holds the
+     * lease. Steps never overlap; a step that is still running when the next one is due
+     * makes the next one a no-op.
+     * @return Mono<Void>
+     */
+    public Mono<Void> sample() {
+        if (!sampling.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        return priceRepository.acquireLease(Constants.REDIS_KEY_CORRELATION_LEASE, instanceId, leaseTime)
+                // Unknown whether the lease lapsed meanwhile, so the next step starts afresh
+                .doOnError(error -> leading = false)
+                .filter(this::lead)
+                .flatMap(acquired -> priceRepository.getAllCurrentPrices().collectList())
+                .map(this::step)
+                .flatMap(priceRepository::saveCorrelation)
+                .then()
+                .doOnError(error -> log.warn("Correlation step failed: {}", error.getMessage()))
+                .onErrorResume(error -> Mono.empty())
+                .doFinally(signal -> sampling.set(false));
+    }
+
+    /**
+     * Track whether this instance holds the lease, starting a fresh window when it takes it over.
+     * @return whether this instance takes the step.
+     */
+    private boolean lead(boolean acquired) {
+        if (acquired && !leading) {
+            log.info("Correlation lease taken by this instance, starting a fresh window");
+            matrix = new CorrelationMatrix(window, parallelThreshold, 16);
+            lastCloses.clear();
+        } else if (!acquired && leading) {
+            log.info("Correlation lease held by another instance, pausing the engine");
+        }
+        leading = acquired;
+        return acquired;
+    }
+
+    private CorrelationSnapshot step(List<CryptoPrice> prices) {
+        double[] returns = new double[matrix.size() + prices.size()];
+        for (CryptoPrice price : prices) {
+            String symbol = price.getSymbol();
+            if (price.getPriceUsd() == null || price.getPriceUsd().signum() <= 0
+                    || (!matrix.contains(symbol) && matrix.size() >= maxSymbols)) {
+                continue;
+            }
+            double close = price.getPriceUsd().doubleValue();
+            Double lastClose = lastCloses.put(symbol, close);
+            // A symbol joins the matrix with its first return, not its first price
+            if (lastClose == null) {
+                continue;
+            }
+            returns[matrix.indexOf(symbol)] = Math.log(close / lastClose);
+        }
+        matrix.add(returns);
+        if (matrix.size() >= maxSymbols && lastCloses.size() > matrix.size()) {
+            // Symbols that got a first price while there was room can no longer join
+            lastCloses.keySet().removeIf(symbol -> !matrix.contains(symbol));
+        }
+
+        CorrelationMatrix.Snapshot snapshot = matrix.snapshot();
+        log.debug("Correlation step over {} prices, {} of {} symbols reported",
+                prices.size(), snapshot.symbols().size(), matrix.size());
+        return CorrelationSnapshot.builder()
+                .asOf(Instant.now())
+                .intervalMillis(intervalMillis)
+                .window(window)
+                .symbols(snapshot.symbols())
+                .covariance(snapshot.covariance())
+                .correlation(snapshot.correlation())
+                .build();
+    }
+}
@@ -0,0 +1,157 @@
+package com.alexlondon07.price_processor_service.correlation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Rolling covariance and correlation of the returns of many symbols over the last N grid
+ * steps. Keeps a ring of the last N return rows, the running sum of each symbol's returns
+ * and the running cross products of every pair (lower triangle), so a step adds the new row
+ * and subtracts the one leaving the window in O(n) per symbol instead of recomputing the
+ * O(N n^2) matrix. Rows are updated in parallel once there are enough symbols. The sums are
+ * recomputed from the ring once per wrap to bound floating-point drift.
+ * A symbol joining later has zero returns in the older rows, so it is only reported once a
+ * full window has passed since it joined. Not thread-safe, the engine serializes steps.
+ */
+final class CorrelationMatrix {
+
+    private final int window;
+    private final int parallelThreshold;
+    private final Map<String, Integer> indexBySymbol = new HashMap<>();
+    private final List<String> symbols = new ArrayList<>();
+    private double[][] rows;
+    private double[] sums;
+    private double[][] products;
+    private int[] observations;
+    private int next;
+    private int filled;
+
+    CorrelationMatrix(int window, int parallelThreshold, int initialCapacity) {
+        this.window = window;
+        this.parallelThreshold = parallelThreshold;
+        this.rows = new double[window][initialCapacity];
+        this.sums = new double[initialCapacity];
+        this.products = new double[initialCapacity][];
+        this.observations = new int[initialCapacity];
+    }
+
+    int size() {
+        return symbols.size();
+    }
+
+    boolean contains(String symbol) {
+        return indexBySymbol.containsKey(symbol);
+    }
+
+    /**
+     * @return index of the symbol's returns, registering it when new.
+     */
+    int indexOf(String symbol) {
+        Integer index = indexBySymbol.get(symbol);
+        if (index != null) {
+            return index;
+        }
+        int added = symbols.size();
+        if (added == sums.length) {
+            grow(added * 2);
+        }
+        products[added] = new double[added + 1];
+        symbols.add(symbol);
+        indexBySymbol.put(symbol, added);
+        return added;
+    }
+
+    /**
+     * Slide the window by one grid step.
+     * @param returns return of each registered symbol by index, at least {@link #size()} long.
+     */
+    void add(double[] returns) {
+        int n = symbols.size();
+        double[] leaving = filled == window ? rows[next] : null;
+        IntStream indexes = IntStream.range(0, n);
+        (n >= parallelThreshold ? indexes.parallel() : indexes).forEach(i -> {
+            double in = returns[i];
+            double out = leaving != null ? leaving[i] : 0;
+            sums[i] += in - out;
+            double[] row = products[i];
+            for (int j = 0; j <= i; j++) {
+                row[j] += in * returns[j] - (leaving != null ? out * leaving[j] : 0);
+            }
+            observations[i] = Math.min(observations[i] + 1, window);
+        });
+        System.arraycopy(returns, 0, rows[next], 0, n);
+        next = (next + 1) % window;
+        filled = Math.min(filled + 1, window);
+        if (next == 0) {
+            resum();
+        }
+    }
+
+    /**
+     * Sample covariance and Pearson correlation of the symbols that have a full window.
+     */
+    Snapshot snapshot() {
+        List<Integer> ready = new ArrayList<>();
+        for (int i = 0; i < symbols.size(); i++) {
+            if (observations[i] >= window && window > 1) {
+                ready.add(i);
+            }
+        }
+        int m = ready.size();
+        double[][] covariance = new double[m][m];
+        for (int a = 0; a < m; a++) {
+            for (int b = 0; b <= a; b++) {
+                int i = Math.max(ready.get(a), ready.get(b));
+                int j = Math.min(ready.get(a), ready.get(b));
+                double value = (products[i][j] - sums[i] * sums[j] / window) / (window - 1);
+                covariance[a][b] = value;
+                covariance[b][a] = value;
+            }
+        }
+        double[][] correlation = new double[m][m];
+        for (int a = 0; a < m; a++) {
+            for (int b = 0; b < m; b++) {
+                double denominator = Math.sqrt(covariance[a][a] * covariance[b][b]);
+                correlation[a][b] = a == b ? 1 : denominator > 0 ? clamp(covariance[a][b] / denominator) : 0;
+            }
+        }
+        return new Snapshot(ready.stream().map(symbols::get).toList(), covariance, correlation);
+    }
+
+    private void resum() {
+        int n = symbols.size();
+        IntStream indexes = IntStream.range(0, n);
+        (n >= parallelThreshold ? indexes.parallel() : indexes).forEach(i -> {
+            double sum = 0;
+            double[] row = products[i];
+            Arrays.fill(row, 0);
+            for (double[] returns : rows) {
+                sum += returns[i];
+                for (int j = 0; j <= i; j++) {
+                    row[j] += returns[i] * returns[j];
+                }
+            }
+            sums[i] = sum;
+        });
+    }
+
+    private void grow(int capacity) {
+        for (int k = 0; k < rows.length; k++) {
+            rows[k] = Arrays.copyOf(rows[k], capacity);
+        }
+        sums = Arrays.copyOf(sums, capacity);
+        products = Arrays.copyOf(products, capacity);
+        observations = Arrays.copyOf(observations, capacity);
+    }
+
+    private static double clamp(double value) {
+        return Math.max(-1, Math.min(1, value));
+    }
+
+    record Snapshot(List<String> symbols, double[][] covariance, double[][] correlation) {
+    }
+}
@@ -0,0 +1,93 @@
+package com.alexlondon07.price_processor_service.flow;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the processor is in catch-up (conflated) mode.
+ * It switches on when the consumer lag reaches processor.conflation.enter-lag and back to
+ * per-tick processing once the lag drops to processor.conflation.exit-lag; the gap between
+ * the two keeps it from flapping. Time spent in each mode is reported as
+ * price.processing.mode.seconds{mode=per-tick|conflated}.
+ */
+@Component
+@Slf4j
+public class ConflationController {
+
+    private static final String MODE_PER_TICK = "per-tick";
+    private static final String MODE_CONFLATED = "conflated";
+
+    private final boolean enabled;
+    private final long enterLag;
+    private final long exitLag;
+    private volatile boolean active;
+    private long modeSinceNanos = System.nanoTime();
+    private long perTickNanos;
+    private long conflatedNanos;
+
+    public ConflationController(ConsumerLagMonitor consumerLagMonitor,
+                                MeterRegistry meterRegistry,
+                                @Value("${processor.conflation.enabled:false}") boolean enabled,
+                                @Value("${processor.conflation.enter-lag:50000}") long enterLag,
+                                @Value("${processor.conflation.exit-lag:1000}") long exitLag) {
+        this.enabled = enabled;
+        this.enterLag = enterLag;
+        this.exitLag = exitLag;
+        FunctionCounter.builder("price.processing.mode.seconds", this, controller -> controller.secondsIn(false))
+                .description("Time spent processing every tick")
+                .tag("mode", MODE_PER_TICK)
+                .register(meterRegistry);
+        FunctionCounter.builder("price.processing.mode.seconds", this, controller -> controller.secondsIn(true))
+                .description("Time spent in conflated catch-up mode")
+                .tag("mode", MODE_CONFLATED)
+                .register(meterRegistry);
+        meterRegistry.gauge("price.conflation.active", this, controller -> controller.active ? 1 : 0);
+        if (enabled) {
+            consumerLagMonitor.addListener(this::onLag);
+        }
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    synchronized void onLag(long lag) {
+        if (!enabled) {
+            return;
+        }
+        if (!active && lag >= enterLag) {
+            switchMode(true, lag);
+        } else if (active && lag <= exitLag) {
+            switchMode(false, lag);
+        }
+    }
+
+    private void switchMode(boolean conflated, long lag) {
+        long now = System.nanoTime();
+        long spent = now - modeSinceNanos;
+        if (active) {
+            conflatedNanos += spent;
+        } else {
+            perTickNanos += spent;
+        }
+        modeSinceNanos = now;
+        active = conflated;
+        log.info("Consumer lag {}: switching to {} mode after {} in {} mode",
+                lag, conflated ? MODE_CONFLATED : MODE_PER_TICK, Duration.ofNanos(spent),
+                conflated ? MODE_PER_TICK : MODE_CONFLATED);
+    }
+
+    private synchronized double secondsIn(boolean conflated) {
+        long total = conflated ? conflatedNanos : perTickNanos;
+        if (active == conflated) {
+            total += System.nanoTime() - modeSinceNanos;
+        }
+        return total / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,143 @@
+package com.alexlondon07.price_processor_service.flow;
+
+import com.alexlondon07.price_processor_service.utils.Constants;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Periodically computes the consumer group's total lag on the prices topic (log end
+ * offset minus consumed position, summed over partitions) with the admin client, exposes
+ * it as kafka.consumer.lag and pushes each new value to registered listeners.
+ * The position of a partition is the later of its committed offset and the offset after
+ * the last record this instance processed: while conflated state is buffered the
+ * listeners hold back their commits, and that must not keep the lag high.
+ * Nothing is polled while no listener is registered, i.e. with conflation and adaptive
+ * Redis concurrency both disabled; the gauge then stays at -1.
+ */
+@Component
+@Slf4j
+public class ConsumerLagMonitor {
+
+    private static final long ADMIN_TIMEOUT_SECONDS = 10;
+
+    private final KafkaAdmin kafkaAdmin;
+    private final AtomicLong totalLag = new AtomicLong(-1);
+    private final List<LongConsumer> listeners = new CopyOnWriteArrayList<>();
+    private final Map<TopicPartition, Long> processedOffsets = new ConcurrentHashMap<>();
+    private volatile AdminClient adminClient;
+
+    public ConsumerLagMonitor(KafkaAdmin kafkaAdmin, MeterRegistry meterRegistry) {
+        this.kafkaAdmin = kafkaAdmin;
+        meterRegistry.gauge("kafka.consumer.lag", totalLag);
+    }
+
+    /**
+     * @return last measured lag in records, or -1 before the first measurement.
+     */
+    public long getTotalLag() {
+        return totalLag.get();
+    }
+
+    public void addListener(LongConsumer listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Note that a record was processed, stored or folded into conflated state, whether or
+     * not its offset was committed yet.
+     */
+    public void recordProcessed(String topic, int partition, long offset) {
+        if (Constants.TOPIC_CRYPTO_PRICES.equals(topic)) {
+            processedOffsets.merge(new TopicPartition(topic, partition), offset + 1, Math::max);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${processor.lag.check-interval:5000}")
+    public void refresh() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        try {
+            AdminClient admin = adminClient();
+            Map<TopicPartition, Long> committed = new HashMap<>();
+            admin.listConsumerGroupOffsets(Constants.CONSUMER_GROUP)
+                    .partitionsToOffsetAndMetadata()
+                    .get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .forEach((partition, offset) -> {
+                        if (offset != null && Constants.TOPIC_CRYPTO_PRICES.equals(partition.topic())) {
+                            committed.put(partition, offset.offset());
+                        }
+                    });
+            update(endOffsets(admin, committed.keySet()), committed);
+        } catch (Exception e) {
+            log.warn("Could not measure consumer lag: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Compute the lag from the given offsets and push it to the listeners.
+     */
+    void update(Map<TopicPartition, Long> endOffsets, Map<TopicPartition, Long> committed) {
+        long lag = 0;
+        for (Map.Entry<TopicPartition, Long> entry : endOffsets.entrySet()) {
+            Long committedOffset = committed.get(entry.getKey());
+            if (committedOffset == null) {
+                continue;
+            }
+            long position = Math.max(committedOffset, processedOffsets.getOrDefault(entry.getKey(), 0L));
+            lag += Math.max(0, entry.getValue() - position);
+        }
+        long measured = lag;
+        totalLag.set(measured);
+        listeners.forEach(listener -> listener.accept(measured));
+    }
+
+    @PreDestroy
+    public void close() {
+        if (adminClient != null) {
+            adminClient.close();
+        }
+    }
+
+    private static Map<TopicPartition, Long> endOffsets(AdminClient admin, Collection<TopicPartition> partitions) throws Exception {
+        Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+        partitions.forEach(partition -> latest.put(partition, OffsetSpec.latest()));
+        if (latest.isEmpty()) {
+            return Map.of();
+        }
+        Map<TopicPartition, Long> endOffsets = new HashMap<>();
+        admin.listOffsets(latest)
+                .all()
+                .get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .forEach((partition, info) -> endOffsets.put(partition, info.offset()));
+        return endOffsets;
+    }
+
+    private AdminClient adminClient() {
+        if (adminClient == null) {
+            synchronized (this) {
+                if (adminClient == null) {
+                    adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+                }
+            }
+        }
+        return adminClient;
+    }
+}
@@ -0,0 +1,175 @@
+package com.alexlondon07.price_processor_service.flow;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.concurrent.Queues;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive limit on the Redis commands a consumer keeps in flight while writing a batch
+ * (processor.concurrency.*), adjusted AIMD-style from consumer lag and Redis latency.
+ * Every adjust-interval the mean latency of the commands completed in that window is
+ * compared with a slowly moving baseline: above baseline * latency-tolerance, or when
+ * commands failed, the limit is cut by backoff-ratio. Otherwise it grows by increase-step
+ * while the consumer lag is rising (or still above grow-lag) and batches were actually
+ * held back by the limit. The limit is published as price.redis.concurrency.limit and the
+ * commands in flight over all consumers as price.redis.inflight.
+ * Disabled, every batch uses Reactor's default merge concurrency as before.
+ */
+@Component
+@Slf4j
+public class RedisConcurrencyController {
+
+    // Reactor's default merge / flatMap concurrency, the fixed limit without this controller
+    private static final int DEFAULT_LIMIT = Queues.SMALL_BUFFER_SIZE;
+    private static final double BASELINE_SMOOTHING = 0.05;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int increaseStep;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final long growLag;
+    private final long minSamples;
+
+    private volatile int limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder windowNanos = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final LongAdder windowErrors = new LongAdder();
+    private final LongAdder throttledBatches = new LongAdder();
+    private volatile boolean lagRising;
+    private long previousLag = -1;
+    // Only touched by the scheduled adjustment
+    private double baselineNanos;
+
+    public RedisConcurrencyController(ConsumerLagMonitor consumerLagMonitor,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${processor.concurrency.enabled:false}") boolean enabled,
+                                      @Value("${processor.concurrency.initial-limit:64}") int initialLimit,
+                                      @Value("${processor.concurrency.min-limit:4}") int minLimit,
+                                      @Value("${processor.concurrency.max-limit:256}") int maxLimit,
+                                      @Value("${processor.concurrency.increase-step:4}") int increaseStep,
+                                      @Value("${processor.concurrency.backoff-ratio:0.75}") double backoffRatio,
+                                      @Value("${processor.concurrency.latency-tolerance:2.0}") double latencyTolerance,
+                                      @Value("${processor.concurrency.grow-lag:1000}") long growLag,
+                                      @Value("${processor.concurrency.min-samples:20}") long minSamples) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("processor.concurrency needs 1 <= min-limit <= max-limit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1 || latencyTolerance <= 1) {
+            throw new IllegalArgumentException("processor.concurrency needs 0 < backoff-ratio < 1 and latency-tolerance > 1");
+        }
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.increaseStep = Math.max(1, increaseStep);
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.growLag = growLag;
+        this.minSamples = minSamples;
+        this.limit = enabled ? Math.min(maxLimit, Math.max(minLimit, initialLimit)) : DEFAULT_LIMIT;
+        meterRegistry.gauge("price.redis.concurrency.limit", this, controller -> controller.limit);
+        meterRegistry.gauge("price.redis.inflight", inFlight);
+        if (enabled) {
+            consumerLagMonitor.addListener(this::onLag);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Concurrency for a batch of independent Redis commands; a batch with more commands
+     * than the limit counts as held back, the signal that a higher limit would be used.
+     * @param commands number of commands the batch is about to issue.
+     */
+    public int limitFor(int commands) {
+        int current = limit;
+        if (enabled && commands > current) {
+            throttledBatches.increment();
+        }
+        return current;
+    }
+
+    /**
+     * Count the command as in flight from subscription until it terminates and feed its
+     * latency (or failure) to the next adjustment.
+     */
+    public <T> Mono<T> track(Mono<T> command) {
+        if (!enabled) {
+            return command;
+        }
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            inFlight.incrementAndGet();
+            return command.doFinally(signal -> {
+                inFlight.decrementAndGet();
+                record(signal, System.nanoTime() - start);
+            });
+        });
+    }
+
+    void record(SignalType signal, long latencyNanos) {
+        if (signal == SignalType.ON_COMPLETE) {
+            windowNanos.add(latencyNanos);
+            windowSamples.increment();
+        } else if (signal == SignalType.ON_ERROR) {
+            windowErrors.increment();
+        }
+    }
+
+    synchronized void onLag(long lag) {
+        lagRising = lag > 0 && (lag > previousLag || lag >= growLag);
+        previousLag = lag;
+    }
+
+    @Scheduled(fixedDelayString = "${processor.concurrency.adjust-interval:1000}")
+    public void adjust() {
+        if (!enabled) {
+            return;
+        }
+        long samples = windowSamples.sumThenReset();
+        long nanos = windowNanos.sumThenReset();
+        long errors = windowErrors.sumThenReset();
+        long throttled = throttledBatches.sumThenReset();
+
+        if (errors > 0) {
+            decrease(errors + " failed commands");
+            return;
+        }
+        if (samples < minSamples) {
+            return;
+        }
+        double latency = (double) nanos / samples;
+        if (baselineNanos == 0) {
+            baselineNanos = latency;
+        }
+        if (latency > baselineNanos * latencyTolerance) {
+            decrease("latency " + Duration.ofNanos((long) latency) + " against baseline " + Duration.ofNanos((long) baselineNanos));
+        } else if (lagRising && throttled > 0 && limit < maxLimit) {
+            limit = Math.min(maxLimit, limit + increaseStep);
+            log.debug("Redis concurrency limit raised to {} (lag rising, {} batches held back)", limit, throttled);
+        }
+        // The baseline follows lasting shifts in Redis latency, slowly enough that a spike stands out
+        baselineNanos += (latency - baselineNanos) * BASELINE_SMOOTHING;
+    }
+
+    private void decrease(String reason) {
+        int decreased = Math.max(minLimit, (int) (limit * backoffRatio));
+        if (decreased != limit) {
+            limit = decreased;
+            log.info("Redis concurrency limit lowered to {}: {}", decreased, reason);
+        }
+    }
+}
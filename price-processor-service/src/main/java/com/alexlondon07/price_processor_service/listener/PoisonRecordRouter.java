@@ -0,0 +1,38 @@
+package com.alexlondon07.price_processor_service.listener;
+
+import com.alexlondon07.price_processor_service.config.CustomDatadogConfig;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Routes records whose value could not be deserialized to crypto-prices-dlt, for the batch
+ * and reactive modes that receive them as null values. The dead-letter record carries the
+ * original raw bytes plus the exception and original topic/partition/offset headers.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PoisonRecordRouter {
+
+    private final DeadLetterPublishingRecoverer poisonRecordRecoverer;
+    private final CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector;
+
+    public void route(ConsumerRecord<?, ?> record) {
+        priceMetricsCollector.recordDeserializationError();
+        priceMetricsCollector.recordPriceError();
+        try {
+            poisonRecordRecoverer.accept(record, new IllegalArgumentException(
+                    "Value at " + record.topic() + "-" + record.partition() + "@" + record.offset() + " could not be deserialized"));
+            priceMetricsCollector.recordDeadLetter("deserialization");
+            log.error("Deserialization error for message - Key: {}, Partition: {}, Offset: {}. Routed to {}.",
+                    record.key(), record.partition(), record.offset(), Constants.TOPIC_CRYPTO_PRICES_DLT);
+        } catch (RuntimeException e) {
+            log.error("Deserialization error for message - Key: {}, Partition: {}, Offset: {}. Could not route it to {}: {}",
+                    record.key(), record.partition(), record.offset(), Constants.TOPIC_CRYPTO_PRICES_DLT, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.alexlondon07.price_processor_service.listener;
+
+import com.alexlondon07.price_processor_service.config.CustomDatadogConfig;
+import com.alexlondon07.price_processor_service.flow.ConsumerLagMonitor;
+import com.alexlondon07.price_processor_service.logging.PriceEventLog;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.service.PriceStorageService;
+import com.alexlondon07.price_processor_service.service.StatsChangePublisher;
+import com.alexlondon07.price_processor_service.state.ConflationBuffer;
+import com.alexlondon07.price_processor_service.state.StateCheckpointer;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "processor.listener.mode", havingValue = "batch")
+public class PriceBatchListener {
+
+    private static final Duration BATCH_WRITE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final PriceStorageService priceStorageService;
+    private final CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector;
+    private final StateCheckpointer stateCheckpointer;
+    private final PoisonRecordRouter poisonRecordRouter;
+    private final StatsChangePublisher statsChangePublisher;
+    private final PriceEventLog priceEventLog;
+    private final ConflationBuffer conflationBuffer;
+    private final ConsumerLagMonitor consumerLagMonitor;
+
+    /**
+     * Receives a whole poll of price records and stores them as one batch.
+     * The call blocks until Redis acknowledges the pipelined writes so the
+     * container only commits offsets for batches that were actually stored.
+     * The resulting stats changes are then published from this thread, inside the
+     * container's transaction when the stats change topic is enabled.
+     * While conflated state is still buffered the offsets are not acknowledged; the next
+     * batch acknowledged after the flush commits them all. The lag monitor still counts
+     * the records as processed, so catch-up mode ends once consumption has caught up.
+     * @param records records returned by a single consumer poll.
+     * @param acknowledgment commits the offsets of the poll.
+     */
+    @KafkaListener(
+            topics = Constants.TOPIC_CRYPTO_PRICES,
+            groupId = Constants.CONSUMER_GROUP,
+            containerFactory = "batchKafkaListenerContainerFactory"
+    )
+    public void onPricesReceived(List<ConsumerRecord<String, CryptoPrice>> records, Acknowledgment acknowledgment) {
+        List<CryptoPrice> prices = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, CryptoPrice> record : records) {
+            if (record.value() == null) {
+                poisonRecordRouter.route(record);
+                continue;
+            }
+            prices.add(record.value());
+            priceMetricsCollector.recordTickAge(record.value().getTimestamp());
+            priceEventLog.recordTick(record.value().getSymbol());
+        }
+
+        priceMetricsCollector.recordKafkaMessages(records.size());
+
+        if (prices.isEmpty()) {
+            acknowledgeIfStored(records, acknowledgment);
+            return;
+        }
+
+        Queue<PriceStats> statsChanges = statsChangePublisher.isEnabled() ? new ConcurrentLinkedQueue<>() : null;
+        priceMetricsCollector.timeKafkaProcessing(stateCheckpointer.track(records, () -> priceStorageService.processBatch(prices, statsChanges)))
+                .doOnError(error -> {
+                    priceMetricsCollector.recordPriceError();
+                    prices.forEach(price -> priceEventLog.recordError(price.getSymbol()));
+                    if (priceEventLog.shouldLogBatch()) {
+                        log.error("Error processing batch of {} prices: {}", prices.size(), error.getMessage());
+                    }
+                })
+                .block(BATCH_WRITE_TIMEOUT);
+        if (statsChanges != null) {
+            statsChangePublisher.publish(statsChanges);
+        }
+        acknowledgeIfStored(records, acknowledgment);
+
+        if (priceEventLog.shouldLogBatch()) {
+            log.info("Successfully processed batch of {} prices", prices.size());
+        }
+    }
+
+    private void acknowledgeIfStored(List<ConsumerRecord<String, CryptoPrice>> records, Acknowledgment acknowledgment) {
+        records.forEach(record -> consumerLagMonitor.recordProcessed(record.topic(), record.partition(), record.offset()));
+        if (conflationBuffer.isEmpty()) {
+            acknowledgment.acknowledge();
+        }
+    }
+}
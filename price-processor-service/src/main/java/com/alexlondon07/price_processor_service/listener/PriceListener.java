@@ -1,81 +1,175 @@
 package com.alexlondon07.price_processor_service.listener;
 
 import com.alexlondon07.price_processor_service.config.CustomDatadogConfig;
+import com.alexlondon07.price_processor_service.logging.PriceEventLog;
 import com.alexlondon07.price_processor_service.model.CryptoPrice;
 import com.alexlondon07.price_processor_service.service.PriceStorageService;
 import com.alexlondon07.price_processor_service.utils.Constants;
 import io.micrometer.core.instrument.MeterRegistry;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.retrytopic.DltStrategy;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.stereotype.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 @Component
-@RequiredArgsConstructor
+@ConditionalOnProperty(name = "processor.listener.mode", havingValue = "record", matchIfMissing = true)
 public class PriceListener {
 
     private static final Logger log = LoggerFactory.getLogger(PriceListener.class);
-    
+    private static final Duration RECORD_WRITE_TIMEOUT = Duration.ofSeconds(30);
+
     private final PriceStorageService priceStorageService;
     private final CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector;
     private final MeterRegistry meterRegistry;
+    private final PriceEventLog priceEventLog;
+    private final Semaphore inFlightRecords;
+    // Last pending write per symbol, so ticks of a symbol are stored one after another
+    private final Map<String, CompletableFuture<Void>> pendingBySymbol = new ConcurrentHashMap<>();
+
+    public PriceListener(PriceStorageService priceStorageService,
+                         CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector,
+                         MeterRegistry meterRegistry,
+                         PriceEventLog priceEventLog,
+                         @Value("${processor.record.max-in-flight:64}") int maxInFlight) {
+        this.priceStorageService = priceStorageService;
+        this.priceMetricsCollector = priceMetricsCollector;
+        this.meterRegistry = meterRegistry;
+        this.priceEventLog = priceEventLog;
+        this.inFlightRecords = new Semaphore(Math.max(1, maxInFlight));
+    }
 
+    /**
+     * Stores one price without blocking the consumer thread: the returned future completes
+     * once Redis acknowledged the writes, and the container commits the offset then. Writes of
+     * one symbol are chained so they reach Redis in consumption order, and at most
+     * processor.record.max-in-flight records are pending; beyond that the consumer waits.
+     * A failed write fails the future, and the container republishes the record to the next
+     * delay retry topic (crypto-prices-retry-0, -1, ...) and, once the attempts are used up,
+     * to crypto-prices-dlt; the main partition moves on meanwhile. A retried price is only
+     * written where it is newer than what later ticks already stored.
+     * Records that cannot be deserialized skip the retries and go to the dead-letter topic
+     * with their raw bytes.
+     */
+    @RetryableTopic(
+            attempts = "${processor.retry.attempts:4}",
+            backoff = @Backoff(
+                    delayExpression = "${processor.retry.initial-delay:1000}",
+                    multiplierExpression = "${processor.retry.multiplier:5}",
+                    maxDelayExpression = "${processor.retry.max-delay:60000}"),
+            kafkaTemplate = "deadLetterKafkaTemplate",
+            retryTopicSuffix = Constants.RETRY_TOPIC_SUFFIX,
+            dltTopicSuffix = Constants.DLT_TOPIC_SUFFIX,
+            topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+            dltStrategy = DltStrategy.FAIL_ON_ERROR,
+            numPartitions = "${processor.retry.partitions:3}",
+            replicationFactor = "${processor.retry.replication-factor:1}"
+    )
     @KafkaListener(
             topics = Constants.TOPIC_CRYPTO_PRICES,
             groupId = Constants.CONSUMER_GROUP,
             containerFactory = "kafkaListenerContainerFactory"
     )
-    public void onPriceReceived(ConsumerRecord<String, CryptoPrice> record){
+    public CompletableFuture<Void> onPriceReceived(ConsumerRecord<String, CryptoPrice> record){
 
         String key = record.key();
         CryptoPrice price = record.value();
         int partition = record.partition();
         long offset = record.offset();
 
-        // Handle deserialization errors
+        // Deserialization errors are normally routed to the dead-letter topic before reaching here
         if (price == null) {
-            meterRegistry.counter("kafka.consumer.errors", 
-                    "service", "price-processor-service",
-                    "error_type", "deserialization").increment();
+            priceMetricsCollector.recordDeserializationError();
             priceMetricsCollector.recordPriceError();
             log.error("Deserialization error for message - Key: {}, Partition: {}, Offset: {}. Skipping message.",
                     key, partition, offset);
-            return;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        priceEventLog.recordTick(price.getSymbol());
+        if (priceEventLog.shouldLog(price.getSymbol())) {
+            log.info("Received price for {}: {}", key, price);
+            log.info("Record details - Topic: {}, Partition: {}, Offset: {}", record.topic(), partition, offset);
         }
 
-        log.info("Received price for {}: {}", key, price);
-        log.info("Record details - Partition: {}, Offset: {}", partition, offset);
+        if (!Constants.TOPIC_CRYPTO_PRICES.equals(record.topic())) {
+            // The retry record was published when the previous attempt failed
+            priceMetricsCollector.recordRetry(record.topic(), System.currentTimeMillis() - record.timestamp());
+        }
 
         // Record Kafka consumption metrics
-        meterRegistry.counter("kafka.consumer.messages", 
-                "service", "price-processor-service",
-                "topic", Constants.TOPIC_CRYPTO_PRICES).increment();
-
-        priceMetricsCollector.timeKafkaProcessing(
-            priceStorageService.processPrice(price)
-                .doOnSuccess(v -> {
-                    meterRegistry.counter("price.storage.success", 
-                            "symbol", price.getSymbol()).increment();
-                })
-                .doOnError(error -> {
-                    meterRegistry.counter("price.storage.error", 
-                            "symbol", price.getSymbol(),
-                            "error_type", error.getClass().getSimpleName()).increment();
-                })
-        ).subscribe(
-                null,
-                error -> {
-                    priceMetricsCollector.recordPriceError();
-                    log.error("Error processing price for {}: {}", key, error.getMessage());
-                },
-                () -> {
-                    priceMetricsCollector.recordPriceProcessed();
-                    log.info("Successfully processed price for {}", key);
+        priceMetricsCollector.recordKafkaMessages(1);
+        priceMetricsCollector.recordTickAge(price.getTimestamp());
+
+        inFlightRecords.acquireUninterruptibly();
+        String symbol = price.getSymbol();
+        CompletableFuture<Void> stored = pendingBySymbol.compute(symbol, (k, previous) ->
+                (previous != null ? previous.exceptionally(error -> null) : CompletableFuture.<Void>completedFuture(null))
+                        .thenCompose(v -> store(price).toFuture()));
+        return stored.whenComplete((v, error) -> {
+            pendingBySymbol.remove(symbol, stored);
+            inFlightRecords.release();
+            if (error != null) {
+                priceMetricsCollector.recordPriceError();
+                priceEventLog.recordError(symbol);
+                if (priceEventLog.shouldLogError(symbol)) {
+                    log.error("Error processing price for {}, routing to retry: {}", key, error.getMessage());
                 }
-        );
+                return;
+            }
+            priceMetricsCollector.recordPriceProcessed();
+            if (priceEventLog.shouldLog(symbol)) {
+                log.info("Successfully processed price for {}", key);
+            }
+        });
+    }
+
+    private Mono<Void> store(CryptoPrice price) {
+        return priceMetricsCollector.timeKafkaProcessing(
+                priceStorageService.processPrice(price)
+                        .doOnSuccess(v -> {
+                            priceMetricsCollector.recordStorageSuccess(price.getSymbol());
+                        })
+                        .doOnError(error -> {
+                            meterRegistry.counter("price.storage.error",
+                                    "symbol", price.getSymbol(),
+                                    "error_type", error.getClass().getSimpleName()).increment();
+                        }))
+                .timeout(RECORD_WRITE_TIMEOUT);
+    }
+
+    /**
+     * Records that used up every retry. They stay in crypto-prices-dlt for inspection or replay.
+     */
+    @DltHandler
+    public void onDeadLetter(ConsumerRecord<String, CryptoPrice> record) {
+        String exception = headerValue(record, KafkaHeaders.DLT_EXCEPTION_FQCN);
+        priceMetricsCollector.recordDeadLetter(exception != null ? exception : "unknown");
+        log.error("Price for {} dead-lettered after retries - Original topic: {}, Exception: {}: {}",
+                record.key(), headerValue(record, KafkaHeaders.DLT_ORIGINAL_TOPIC),
+                exception, headerValue(record, KafkaHeaders.DLT_EXCEPTION_MESSAGE));
+    }
+
+    private static String headerValue(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
     }
 
 }
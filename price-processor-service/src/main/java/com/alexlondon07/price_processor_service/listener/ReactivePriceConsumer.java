@@ -0,0 +1,231 @@
+package com.alexlondon07.price_processor_service.listener;
+
+import com.alexlondon07.price_processor_service.aggregation.CandleAggregator;
+import com.alexlondon07.price_processor_service.aggregation.SymbolStateRegistry;
+import com.alexlondon07.price_processor_service.config.CustomDatadogConfig;
+import com.alexlondon07.price_processor_service.flow.ConsumerLagMonitor;
+import com.alexlondon07.price_processor_service.logging.PriceEventLog;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.service.PriceStorageService;
+import com.alexlondon07.price_processor_service.state.ConflationBuffer;
+import com.alexlondon07.price_processor_service.state.LocalStatsStore;
+import com.alexlondon07.price_processor_service.state.StateCheckpointer;
+import com.alexlondon07.price_processor_service.timeseries.TickStore;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.KafkaReceiver;
+import reactor.kafka.receiver.ReceiverOptions;
+import reactor.kafka.receiver.ReceiverPartition;
+import reactor.kafka.receiver.ReceiverRecord;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reactive consumer mode (processor.listener.mode=reactive).
+ * Records are split per partition and each partition is written one micro-batch at a
+ * time, so ordering per partition (and so per symbol) is preserved and at most one batch
+ * per partition is in flight. Demand only flows back to the Kafka consumer once a batch is
+ * stored, so a slow Redis pauses fetching instead of growing memory. A batch's last offset
+ * is acknowledged only after Redis has acknowledged its writes, and only acknowledged
+ * offsets are committed; a batch that keeps failing restarts the consumer from the last
+ * committed offsets instead of being skipped. Both the write retries and the restart hand
+ * ticks to the storage service again; stats, derived state and candles skip the ticks they
+ * already applied, so the in-memory state is not folded twice.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "processor.listener.mode", havingValue = "reactive")
+public class ReactivePriceConsumer {
+
+    // Upper bound on partitions consumed concurrently; groupBy needs one slot per partition.
+    private static final int MAX_PARTITIONS = 256;
+
+    private final ReceiverOptions<String, CryptoPrice> receiverOptions;
+    private final PriceStorageService priceStorageService;
+    private final CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector;
+    private final LocalStatsStore localStatsStore;
+    private final ConflationBuffer conflationBuffer;
+    private final SymbolStateRegistry symbolStateRegistry;
+    private final CandleAggregator candleAggregator;
+    private final TickStore tickStore;
+    private final ConsumerLagMonitor consumerLagMonitor;
+    private final StateCheckpointer stateCheckpointer;
+    private final PoisonRecordRouter poisonRecordRouter;
+    private final KafkaAdmin kafkaAdmin;
+    private final PriceEventLog priceEventLog;
+    private final int maxBatchSize;
+    private final Duration maxBatchWait;
+    private final Duration writeTimeout;
+    private final int writeRetries;
+    private final AtomicInteger inFlightRecords = new AtomicInteger();
+    private Disposable subscription;
+
+    public ReactivePriceConsumer(ReceiverOptions<String, CryptoPrice> receiverOptions,
+                                 PriceStorageService priceStorageService,
+                                 CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector,
+                                 MeterRegistry meterRegistry,
+                                 LocalStatsStore localStatsStore,
+                                 ConflationBuffer conflationBuffer,
+                                 SymbolStateRegistry symbolStateRegistry,
+                                 CandleAggregator candleAggregator,
+                                 TickStore tickStore,
+                                 ConsumerLagMonitor consumerLagMonitor,
+                                 StateCheckpointer stateCheckpointer,
+                                 PoisonRecordRouter poisonRecordRouter,
+                                 KafkaAdmin kafkaAdmin,
+                                 PriceEventLog priceEventLog,
+                                 @Value("${processor.reactive.max-batch-size:500}") int maxBatchSize,
+                                 @Value("${processor.reactive.max-batch-wait:100ms}") Duration maxBatchWait,
+                                 @Value("${processor.reactive.write-timeout:30s}") Duration writeTimeout,
+                                 @Value("${processor.reactive.write-retries:3}") int writeRetries) {
+        this.receiverOptions = receiverOptions;
+        this.priceStorageService = priceStorageService;
+        this.priceMetricsCollector = priceMetricsCollector;
+        this.localStatsStore = localStatsStore;
+        this.conflationBuffer = conflationBuffer;
+        this.symbolStateRegistry = symbolStateRegistry;
+        this.candleAggregator = candleAggregator;
+        this.tickStore = tickStore;
+        this.consumerLagMonitor = consumerLagMonitor;
+        this.stateCheckpointer = stateCheckpointer;
+        this.poisonRecordRouter = poisonRecordRouter;
+        this.kafkaAdmin = kafkaAdmin;
+        this.priceEventLog = priceEventLog;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchWait = maxBatchWait;
+        this.writeTimeout = writeTimeout;
+        this.writeRetries = writeRetries;
+        meterRegistry.gauge("kafka.consumer.inflight.records", inFlightRecords);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        ReceiverOptions<String, CryptoPrice> options = receiverOptions
+                .addAssignListener(partitions -> {
+                    if (localStatsStore.isEnabled()) {
+                        int partitionCount = partitionCount();
+                        Map<TopicPartition, Long> restored =
+                                stateCheckpointer.partitionsAssigned(topicPartitions(partitions), partitionCount);
+                        partitions.stream()
+                                .filter(partition -> restored.containsKey(partition.topicPartition()))
+                                .forEach(partition -> partition.seek(restored.get(partition.topicPartition())));
+                        localStatsStore.partitionsAssigned(topicPartitions(partitions), partitionCount);
+                    }
+                    if (tickStore.isEnabled()) {
+                        tickStore.partitionsAssigned(topicPartitions(partitions), partitionCount());
+                    }
+                })
+                .addRevokeListener(partitions -> {
+                    conflationBuffer.partitionsRevoked();
+                    stateCheckpointer.partitionsRevoked(topicPartitions(partitions));
+                    localStatsStore.partitionsRevoked(topicPartitions(partitions));
+                    symbolStateRegistry.partitionsRevoked(topicPartitions(partitions), partitionCount());
+                    candleAggregator.partitionsRevoked(topicPartitions(partitions), partitionCount());
+                    tickStore.partitionsRevoked(topicPartitions(partitions));
+                });
+
+        subscription = KafkaReceiver.create(options)
+                .receive()
+                .groupBy(record -> record.receiverOffset().topicPartition(), maxBatchSize)
+                .flatMap(partitionRecords -> partitionRecords
+                        .bufferTimeout(maxBatchSize, maxBatchWait, true)
+                        .concatMap(this::processBatch, 0), MAX_PARTITIONS)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.error("Reactive consumer failed, restarting from committed offsets: {}",
+                                signal.failure().getMessage())))
+                .subscribe();
+        log.info("Reactive price consumer started (max batch {}, max wait {})", maxBatchSize, maxBatchWait);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Store one micro-batch of a partition and acknowledge its last offset once Redis
+     * has acknowledged the writes. While conflated state is still buffered the offset is
+     * not acknowledged; the partition's next batch acknowledged after the flush covers it,
+     * while the lag monitor already counts it as processed.
+     * @param records consecutive records of a single partition.
+     * @return Mono<Void> completing when the batch is stored and acknowledged.
+     */
+    private Mono<Void> processBatch(List<ReceiverRecord<String, CryptoPrice>> records) {
+        List<CryptoPrice> prices = new ArrayList<>(records.size());
+        for (ReceiverRecord<String, CryptoPrice> record : records) {
+            if (record.value() == null) {
+                poisonRecordRouter.route(record);
+                continue;
+            }
+            prices.add(record.value());
+            priceMetricsCollector.recordTickAge(record.value().getTimestamp());
+            priceEventLog.recordTick(record.value().getSymbol());
+        }
+
+        priceMetricsCollector.recordKafkaMessages(records.size());
+
+        ReceiverRecord<String, CryptoPrice> last = records.get(records.size() - 1);
+        if (prices.isEmpty()) {
+            acknowledgeIfStored(last);
+            return Mono.empty();
+        }
+
+        inFlightRecords.addAndGet(prices.size());
+        return priceMetricsCollector.timeKafkaProcessing(
+                        stateCheckpointer.track(records, () -> priceStorageService.processBatch(prices))
+                                .timeout(writeTimeout)
+                                .retryWhen(Retry.backoff(writeRetries, Duration.ofMillis(200))))
+                .doOnSuccess(v -> {
+                    acknowledgeIfStored(last);
+                    if (priceEventLog.shouldLogBatch()) {
+                        log.info("Stored batch of {} prices from partition {} up to offset {}",
+                                prices.size(), last.partition(), last.offset());
+                    }
+                })
+                .doOnError(error -> {
+                    priceMetricsCollector.recordPriceError();
+                    prices.forEach(price -> priceEventLog.recordError(price.getSymbol()));
+                    log.error("Error storing batch of {} prices from partition {}: {}",
+                            prices.size(), last.partition(), error.getMessage());
+                })
+                .doFinally(signal -> inFlightRecords.addAndGet(-prices.size()));
+    }
+
+    private void acknowledgeIfStored(ReceiverRecord<String, CryptoPrice> last) {
+        consumerLagMonitor.recordProcessed(last.topic(), last.partition(), last.offset());
+        if (conflationBuffer.isEmpty()) {
+            last.receiverOffset().acknowledge();
+        }
+    }
+
+    private int partitionCount() {
+        return kafkaAdmin.describeTopics(Constants.TOPIC_CRYPTO_PRICES)
+                .get(Constants.TOPIC_CRYPTO_PRICES)
+                .partitions()
+                .size();
+    }
+
+    private static List<TopicPartition> topicPartitions(Collection<ReceiverPartition> partitions) {
+        return partitions.stream().map(ReceiverPartition::topicPartition).toList();
+    }
+}
@@ -0,0 +1,73 @@
+package com.alexlondon07.price_processor_service.listener;
+
+import com.alexlondon07.price_processor_service.config.CustomDatadogConfig;
+import com.alexlondon07.price_processor_service.logging.PriceEventLog;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.shard.ShardedPriceEngine;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "processor.listener.mode", havingValue = "sharded")
+public class ShardedPriceListener {
+
+    private static final long BATCH_WRITE_TIMEOUT_SECONDS = 30;
+
+    private final ShardedPriceEngine shardedPriceEngine;
+    private final CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector;
+    private final PoisonRecordRouter poisonRecordRouter;
+    private final PriceEventLog priceEventLog;
+
+    /**
+     * Hands a whole poll to the shards and waits until they have written it, so the
+     * container only commits offsets of ticks that reached Redis.
+     * @param records records returned by a single consumer poll.
+     */
+    @KafkaListener(
+            topics = Constants.TOPIC_CRYPTO_PRICES,
+            groupId = Constants.CONSUMER_GROUP,
+            containerFactory = "shardedKafkaListenerContainerFactory"
+    )
+    public void onPricesReceived(List<ConsumerRecord<String, CryptoPrice>> records)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        List<CryptoPrice> prices = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, CryptoPrice> record : records) {
+            if (record.value() == null) {
+                poisonRecordRouter.route(record);
+                continue;
+            }
+            prices.add(record.value());
+            priceMetricsCollector.recordTickAge(record.value().getTimestamp());
+            priceEventLog.recordTick(record.value().getSymbol());
+        }
+
+        priceMetricsCollector.recordKafkaMessages(records.size());
+
+        if (prices.isEmpty()) {
+            return;
+        }
+
+        try {
+            shardedPriceEngine.submit(prices).get(BATCH_WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            priceMetricsCollector.recordPriceError();
+            prices.forEach(price -> priceEventLog.recordError(price.getSymbol()));
+            log.error("Error processing batch of {} prices: {}", prices.size(), e.getMessage());
+            throw e;
+        }
+        log.debug("Sharded batch of {} prices stored", prices.size());
+    }
+}
@@ -0,0 +1,192 @@
+package com.alexlondon07.price_processor_service.logging;
+
+import com.alexlondon07.price_processor_service.utils.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Gate for the per-event log lines of the price path (processor.logging.*).
+ * <p>
+ * In {@code full} mode every line is written, as before. In {@code sampled} mode only the
+ * lines of every {@code sample-every}th tick of a symbol are written, so a sampled tick keeps
+ * its whole trace from the listener down to the repository, and each symbol is further
+ * capped at {@code max-per-second} lines; batch-level lines share one such cap. Errors are
+ * never sampled, only rate limited. Callers check the gate before logging, so arguments
+ * of suppressed lines are never formatted.
+ * <p>
+ * Ticks and errors are counted per symbol in both modes and written as one summary line
+ * every {@code summary-interval}.
+ */
+@Component
+@Slf4j
+public class PriceEventLog {
+
+    private static final String UNKNOWN_SYMBOL = "?";
+
+    private final boolean sampled;
+    private final long sampleEvery;
+    private final int maxPerSecond;
+    private final int summaryTop;
+
+    private final Map<String, SymbolLog> symbols = new ConcurrentHashMap<>();
+    private final SymbolLog batches = new SymbolLog();
+    private final LongAdder suppressed = new LongAdder();
+    private volatile long summaryStart = System.nanoTime();
+
+    public PriceEventLog(@Value("${processor.logging.mode:" + Constants.LOGGING_MODE_SAMPLED + "}") String mode,
+                         @Value("${processor.logging.sample-every:100}") long sampleEvery,
+                         @Value("${processor.logging.max-per-second:10}") int maxPerSecond,
+                         @Value("${processor.logging.summary-top:10}") int summaryTop) {
+        this.sampled = !Constants.LOGGING_MODE_FULL.equals(mode);
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.maxPerSecond = maxPerSecond;
+        this.summaryTop = summaryTop;
+        log.info("Price path logging mode: {}", sampled
+                ? Constants.LOGGING_MODE_SAMPLED + " (every " + this.sampleEvery + " ticks, at most " + maxPerSecond + " lines/s per symbol)"
+                : Constants.LOGGING_MODE_FULL);
+    }
+
+    /**
+     * Count a consumed tick of the symbol; starts a new sampled trace every sample-every ticks.
+     */
+    public void recordTick(String symbol) {
+        symbolLog(symbol).ticks.incrementAndGet();
+    }
+
+    /**
+     * Count a failed tick of the symbol for the summary.
+     */
+    public void recordError(String symbol) {
+        symbolLog(symbol).errors.increment();
+    }
+
+    /**
+     * Whether a per-tick INFO line of the symbol should be written now.
+     */
+    public boolean shouldLog(String symbol) {
+        if (!sampled) {
+            return true;
+        }
+        SymbolLog symbolLog = symbol != null ? symbols.get(symbol) : null;
+        if (symbolLog == null) {
+            // No tick of it consumed here yet, only the shared cap applies
+            return shouldLogBatch();
+        }
+        long tick = symbolLog.ticks.get();
+        return admit(tick > 0 && (tick - 1) % sampleEvery == 0 && symbolLog.tryAcquire(maxPerSecond));
+    }
+
+    /**
+     * Whether an error line of the symbol should be written now; errors are rate limited only.
+     */
+    public boolean shouldLogError(String symbol) {
+        if (!sampled) {
+            return true;
+        }
+        SymbolLog symbolLog = symbol != null ? symbols.get(symbol) : null;
+        return admit((symbolLog != null ? symbolLog : batches).tryAcquire(maxPerSecond));
+    }
+
+    /**
+     * Whether a batch-level line (one per batch, not per tick) should be written now.
+     */
+    public boolean shouldLogBatch() {
+        return !sampled || admit(batches.tryAcquire(maxPerSecond));
+    }
+
+    /**
+     * Write ticks/s and per-symbol errors since the previous summary and reset the counters.
+     */
+    @Scheduled(fixedRateString = "${processor.logging.summary-interval:60000}",
+            initialDelayString = "${processor.logging.summary-interval:60000}")
+    public void logSummary() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - summaryStart) / 1e9);
+        summaryStart = now;
+
+        long totalTicks = 0;
+        long totalErrors = 0;
+        List<Map.Entry<String, Long>> ticksBySymbol = new ArrayList<>();
+        List<String> errorsBySymbol = new ArrayList<>();
+        for (Map.Entry<String, SymbolLog> entry : symbols.entrySet()) {
+            SymbolLog symbolLog = entry.getValue();
+            long ticks = symbolLog.ticks.get() - symbolLog.summarizedTicks;
+            symbolLog.summarizedTicks += ticks;
+            long errors = symbolLog.errors.sumThenReset();
+            totalTicks += ticks;
+            totalErrors += errors;
+            if (ticks > 0) {
+                ticksBySymbol.add(Map.entry(entry.getKey(), ticks));
+            }
+            if (errors > 0) {
+                errorsBySymbol.add(entry.getKey() + "=" + errors);
+            }
+        }
+        long suppressedLines = suppressed.sumThenReset();
+        if (totalTicks == 0 && totalErrors == 0) {
+            return;
+        }
+        String busiest = ticksBySymbol.stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(summaryTop)
+                .map(entry -> String.format("%s=%.1f/s", entry.getKey(), entry.getValue() / seconds))
+                .collect(Collectors.joining(", "));
+        log.info("Price path over {}s: {} ticks ({} ticks/s) for {} symbols, {} errors {}, {} log lines suppressed; busiest: {}",
+                Math.round(seconds), totalTicks, String.format("%.1f", totalTicks / seconds), ticksBySymbol.size(),
+                totalErrors, errorsBySymbol, suppressedLines, busiest);
+    }
+
+    private boolean admit(boolean emit) {
+        if (!emit) {
+            suppressed.increment();
+        }
+        return emit;
+    }
+
+    private SymbolLog symbolLog(String symbol) {
+        String key = symbol != null ? symbol : UNKNOWN_SYMBOL;
+        SymbolLog symbolLog = symbols.get(key);
+        return symbolLog != null ? symbolLog : symbols.computeIfAbsent(key, k -> new SymbolLog());
+    }
+
+    /**
+     * Counters of one symbol. The rate limit is a one-second window, only contended
+     * by the lines that already passed the sampling.
+     */
+    private static final class SymbolLog {
+        private final AtomicLong ticks = new AtomicLong();
+        private final LongAdder errors = new LongAdder();
+        // Only touched by the scheduled summary
+        private long summarizedTicks;
+        // Guarded by tryAcquire
+        private long windowSecond;
+        private int windowLines;
+
+        synchronized boolean tryAcquire(int maxPerSecond) {
+            if (maxPerSecond <= 0) {
+                return true;
+            }
+            long second = System.nanoTime() / 1_000_000_000L;
+            if (second != windowSecond) {
+                windowSecond = second;
+                windowLines = 0;
+            }
+            if (windowLines < maxPerSecond) {
+                windowLines++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
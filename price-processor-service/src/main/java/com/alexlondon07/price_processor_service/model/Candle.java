@@ -0,0 +1,22 @@
+package com.alexlondon07.price_processor_service.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Candle {
+    private String symbol;
+    private String resolution;
+    private Instant openTime;
+    private BigDecimal open;
+    private BigDecimal high;
+    private BigDecimal low;
+    private BigDecimal close;
+    private int count;
+}
@@ -0,0 +1,21 @@
+package com.alexlondon07.price_processor_service.model;
+
+
+import lombok.*;
+
+import java.time.Instant;
+import java.util.List;
+
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CorrelationSnapshot {
+    private Instant asOf;
+    private long intervalMillis;
+    private int window;
+    private List<String> symbols;
+    private double[][] covariance;
+    private double[][] correlation;
+}
@@ -0,0 +1,25 @@
+package com.alexlondon07.price_processor_service.model;
+
+
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Indicators {
+    private long samples;
+    private Map<String, BigDecimal> sma;
+    private Map<String, BigDecimal> ema;
+    private BigDecimal rsi;
+    private BigDecimal bollingerMiddle;
+    private BigDecimal bollingerUpper;
+    private BigDecimal bollingerLower;
+    private BigDecimal macd;
+    private BigDecimal macdSignal;
+    private BigDecimal macdHistogram;
+}
@@ -5,6 +5,7 @@ import lombok.*;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Map;
 
 @Setter
 @Getter
@@ -19,4 +20,9 @@ public class PriceStats {
     private BigDecimal avgPrice;
     private int sampleCount;
     private Instant lastUpdated;
+    private Instant lastTickTime;
+    private Map<String, BigDecimal> pricePercentiles;
+    private Map<String, BigDecimal> changePercentiles;
+    private Map<String, WindowStats> windows;
+    private Indicators indicators;
 }
@@ -0,0 +1,27 @@
+package com.alexlondon07.price_processor_service.model;
+
+
+import lombok.*;
+
+import java.time.Instant;
+
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+public class RebuildStatus {
+
+    public enum State { IDLE, RUNNING, COMPLETED, FAILED }
+
+    private State state;
+    private Instant from;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private long recordsProcessed;
+    private long recordsSkipped;
+    private int symbols;
+    private long keysSwapped;
+    private long recordsPerSecond;
+    private String error;
+}
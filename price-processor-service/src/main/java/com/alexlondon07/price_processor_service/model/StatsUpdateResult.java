@@ -0,0 +1,18 @@
+package com.alexlondon07.price_processor_service.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of an atomic stats update executed inside Redis: the new stats and
+ * the current price they replaced (null for the first sample of a symbol).
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatsUpdateResult {
+    private PriceStats stats;
+    private BigDecimal previousPrice;
+}
@@ -0,0 +1,22 @@
+package com.alexlondon07.price_processor_service.model;
+
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WindowStats {
+    private String window;
+    private long count;
+    private BigDecimal mean;
+    private BigDecimal variance;
+    private BigDecimal stddev;
+    private BigDecimal ewma;
+    private BigDecimal min;
+    private BigDecimal max;
+}
@@ -0,0 +1,265 @@
+package com.alexlondon07.price_processor_service.rebuild;
+
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.model.RebuildStatus;
+import com.alexlondon07.price_processor_service.repository.PriceRepository;
+import com.alexlondon07.price_processor_service.state.StatsAccumulator;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.FixedPoint;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rebuilds crypto:stats:* and the history keys from the prices topic, starting at a timestamp.
+ * A dedicated consumer (manually assigned, never committing) seeks every partition to the
+ * first offset at or after the timestamp and reads at full speed up to the end offsets taken
+ * when the job starts. Ticks are folded in memory and written in large pipelined batches under
+ * the rebuild: shadow prefix; once every partition is read, the shadow keys are swapped over
+ * the live ones in one atomic script call.
+ * Only one rebuild runs at a time; no per-record logging happens on the way.
+ */
+@Component
+@Slf4j
+public class PriceRebuildJob {
+
+    private static final String REBUILD_GROUP = Constants.CONSUMER_GROUP + "-rebuild";
+    private static final long PROGRESS_LOG_INTERVAL_MILLIS = 10_000;
+
+    private final ConsumerFactory<String, CryptoPrice> consumerFactory;
+    private final PriceRepository priceRepository;
+    private final int maxPollRecords;
+    private final int writeBatchSize;
+    private final Duration pollTimeout;
+    private final Duration writeTimeout;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "price-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile RebuildStatus status = RebuildStatus.builder().state(RebuildStatus.State.IDLE).build();
+
+    public PriceRebuildJob(ConsumerFactory<String, CryptoPrice> consumerFactory,
+                           PriceRepository priceRepository,
+                           @Value("${processor.rebuild.max-poll-records:5000}") int maxPollRecords,
+                           @Value("${processor.rebuild.write-batch-size:50000}") int writeBatchSize,
+                           @Value("${processor.rebuild.poll-timeout:1s}") Duration pollTimeout,
+                           @Value("${processor.rebuild.write-timeout:60s}") Duration writeTimeout) {
+        this.consumerFactory = consumerFactory;
+        this.priceRepository = priceRepository;
+        this.maxPollRecords = maxPollRecords;
+        this.writeBatchSize = writeBatchSize;
+        this.pollTimeout = pollTimeout;
+        this.writeTimeout = writeTimeout;
+    }
+
+    /**
+     * Start a rebuild in the background.
+     * @param from timestamp the replay starts at, per partition.
+     * @return the status of the started job.
+     * @throws IllegalStateException when a rebuild is already running.
+     */
+    public RebuildStatus start(Instant from) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A rebuild is already running since " + status.getStartedAt());
+        }
+        status = RebuildStatus.builder()
+                .state(RebuildStatus.State.RUNNING)
+                .from(from)
+                .startedAt(Instant.now())
+                .build();
+        executor.execute(() -> {
+            try {
+                rebuild(from);
+            } catch (Exception e) {
+                log.error("Rebuild from {} failed: {}", from, e.getMessage(), e);
+                status = status.toBuilder()
+                        .state(RebuildStatus.State.FAILED)
+                        .finishedAt(Instant.now())
+                        .error(e.getMessage())
+                        .build();
+            } finally {
+                running.set(false);
+            }
+        });
+        return status;
+    }
+
+    public RebuildStatus getStatus() {
+        return status;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void rebuild(Instant from) throws Exception {
+        Long staleKeys = priceRepository.deleteShadowKeys(Constants.REDIS_KEY_REBUILD).block(writeTimeout);
+        log.info("Starting rebuild from {}, removed {} stale shadow keys", from, staleKeys);
+
+        Map<String, StatsAccumulator> statsBySymbol = new HashMap<>();
+        Map<String, List<CryptoPrice>> pendingHistory = new HashMap<>();
+        CompletableFuture<Void> pendingWrite = CompletableFuture.completedFuture(null);
+        int pendingTicks = 0;
+        long processed = 0;
+        long skipped = 0;
+        long lastProgressLog = System.currentTimeMillis();
+
+        try (Consumer<String, CryptoPrice> consumer = consumerFactory.createConsumer(
+                REBUILD_GROUP, null, "-rebuild", rebuildConsumerProperties())) {
+            Map<TopicPartition, Long> endOffsets = new HashMap<>();
+            Map<TopicPartition, Long> startOffsets = seekToTimestamp(consumer, from, endOffsets);
+            Set<TopicPartition> remaining = new HashSet<>(startOffsets.keySet());
+            log.info("Replaying {} partitions of {} up to offsets {}", remaining.size(), Constants.TOPIC_CRYPTO_PRICES, endOffsets);
+
+            while (!remaining.isEmpty()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Rebuild interrupted");
+                }
+                for (ConsumerRecord<String, CryptoPrice> record : consumer.poll(pollTimeout)) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (record.offset() >= endOffsets.get(partition)) {
+                        continue;
+                    }
+                    CryptoPrice price = record.value();
+                    if (price == null || price.getSymbol() == null || price.getPriceUsd() == null) {
+                        skipped++;
+                        continue;
+                    }
+                    long tickMillis = price.getTimestamp() != null ? price.getTimestamp().toEpochMilli() : record.timestamp();
+                    statsBySymbol.computeIfAbsent(price.getSymbol(), StatsAccumulator::new)
+                            .apply(FixedPoint.fromDecimal(price.getPriceUsd()), tickMillis, tickMillis);
+                    pendingHistory.computeIfAbsent(price.getSymbol(), symbol -> new ArrayList<>()).add(price);
+                    pendingTicks++;
+                    processed++;
+                }
+
+                List<TopicPartition> finished = remaining.stream()
+                        .filter(partition -> consumer.position(partition) >= endOffsets.get(partition))
+                        .toList();
+                if (!finished.isEmpty()) {
+                    finished.forEach(remaining::remove);
+                    consumer.pause(finished);
+                }
+
+                if (pendingTicks >= writeBatchSize) {
+                    pendingWrite = writeShadowBatch(pendingWrite, statsBySymbol, pendingHistory);
+                    pendingHistory = new HashMap<>();
+                    pendingTicks = 0;
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastProgressLog >= PROGRESS_LOG_INTERVAL_MILLIS) {
+                    lastProgressLog = now;
+                    updateProgress(processed, skipped, statsBySymbol.size());
+                    log.info("Rebuild progress: {} records, {} symbols, {} partitions left",
+                            processed, statsBySymbol.size(), remaining.size());
+                }
+            }
+        }
+
+        pendingWrite = writeShadowBatch(pendingWrite, statsBySymbol, pendingHistory);
+        pendingWrite.get(writeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        Long swapped = priceRepository.swapShadowKeys(Constants.REDIS_KEY_REBUILD, statsBySymbol.keySet())
+                .block(writeTimeout);
+
+        updateProgress(processed, skipped, statsBySymbol.size());
+        status = status.toBuilder()
+                .state(RebuildStatus.State.COMPLETED)
+                .finishedAt(Instant.now())
+                .keysSwapped(swapped != null ? swapped : 0)
+                .build();
+        log.info("Rebuild from {} completed: {} records ({} skipped), {} symbols, {} records/s",
+                from, processed, skipped, statsBySymbol.size(), status.getRecordsPerSecond());
+    }
+
+    /**
+     * Assign every partition that has records between the timestamp and its current end,
+     * and position it at the first offset whose record timestamp is at or after from.
+     * @param endOffsets filled with the end offset of every partition of the topic.
+     * @return start offset of every assigned partition.
+     */
+    private Map<TopicPartition, Long> seekToTimestamp(Consumer<String, CryptoPrice> consumer,
+                                                      Instant from,
+                                                      Map<TopicPartition, Long> endOffsets) {
+        List<TopicPartition> partitions = consumer.partitionsFor(Constants.TOPIC_CRYPTO_PRICES).stream()
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .toList();
+        endOffsets.putAll(consumer.endOffsets(partitions));
+
+        Map<TopicPartition, Long> timestamps = new HashMap<>();
+        partitions.forEach(partition -> timestamps.put(partition, from.toEpochMilli()));
+        Map<TopicPartition, OffsetAndTimestamp> offsets = consumer.offsetsForTimes(timestamps);
+
+        Map<TopicPartition, Long> startOffsets = new HashMap<>();
+        offsets.forEach((partition, offset) -> {
+            // null means no record at or after the timestamp in this partition
+            if (offset != null && offset.offset() < endOffsets.get(partition)) {
+                startOffsets.put(partition, offset.offset());
+            }
+        });
+        consumer.assign(startOffsets.keySet());
+        startOffsets.forEach(consumer::seek);
+        return startOffsets;
+    }
+
+    /**
+     * Start writing the ticks buffered since the last write, plus the stats of their symbols,
+     * once the previous write completed. The consumer keeps polling while the write is in flight.
+     */
+    private CompletableFuture<Void> writeShadowBatch(CompletableFuture<Void> previousWrite,
+                                                     Map<String, StatsAccumulator> statsBySymbol,
+                                                     Map<String, List<CryptoPrice>> history) throws Exception {
+        previousWrite.get(writeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        if (history.isEmpty()) {
+            return previousWrite;
+        }
+        List<PriceStats> stats = new ArrayList<>(history.size());
+        history.keySet().forEach(symbol -> stats.add(statsBySymbol.get(symbol).toPriceStats()));
+        return priceRepository.saveShadowBatch(Constants.REDIS_KEY_REBUILD, history, stats).toFuture();
+    }
+
+    private void updateProgress(long processed, long skipped, int symbols) {
+        long elapsedMillis = Math.max(1, Duration.between(status.getStartedAt(), Instant.now()).toMillis());
+        status = status.toBuilder()
+                .recordsProcessed(processed)
+                .recordsSkipped(skipped)
+                .symbols(symbols)
+                .recordsPerSecond(processed * 1000 / elapsedMillis)
+                .build();
+    }
+
+    private Properties rebuildConsumerProperties() {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxPollRecords));
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        // Favour large fetches over latency, the job only cares about throughput
+        properties.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, String.valueOf(1024 * 1024));
+        properties.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, String.valueOf(8 * 1024 * 1024));
+        return properties;
+    }
+}
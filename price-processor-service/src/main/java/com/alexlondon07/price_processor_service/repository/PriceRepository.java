@@ -1,18 +1,125 @@
 package com.alexlondon07.price_processor_service.repository;
 
 
+import com.alexlondon07.price_processor_service.model.Candle;
+import com.alexlondon07.price_processor_service.model.CorrelationSnapshot;
 import com.alexlondon07.price_processor_service.model.CryptoPrice;
 import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.model.StatsUpdateResult;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 public interface PriceRepository {
 
+    /**
+     * Save the current price unless a later tick of the symbol was already saved.
+     * @return true when written, false when the price is older than the stored one.
+     */
     Mono<Boolean> saveCurrentPrice(CryptoPrice price);
 
     Mono<CryptoPrice> getCurrentPrice(String symbol);
 
+    /**
+     * Read the current price of every symbol (SCAN + MGET in chunks), e.g. to sample all
+     * symbols at the same instant regardless of which instance consumes them.
+     */
+    Flux<CryptoPrice> getAllCurrentPrices();
+
+    /**
+     * Replace the published correlation snapshot.
+     */
+    Mono<Boolean> saveCorrelation(CorrelationSnapshot snapshot);
+
+    /**
+     * Take the lease under the key, or renew it when the owner already holds it.
+     * @param owner id of the calling instance.
+     * @param leaseTime how long the lease is held without a renewal.
+     * @return true when the owner holds the lease, false when another instance does.
+     */
+    Mono<Boolean> acquireLease(String key, String owner, Duration leaseTime);
+
+    /**
+     * Save stats unless stats of a later tick (lastTickTime) of the symbol were already saved.
+     * @return true when written, false when the stored stats are newer.
+     */
     Mono<Boolean> saveStats(PriceStats stats);
 
     Mono<PriceStats> getStats(String symbol);
 
     Mono<Long> addToHistory(String symbol, CryptoPrice price);
+
+    /**
+     * Read the ticks of a symbol whose timestamp falls within [from, to].
+     * Backed by XRANGE on the history stream, so the cost is O(log n + k).
+     */
+    Flux<CryptoPrice> getHistory(String symbol, Instant from, Instant to);
+
+    /**
+     * Fetch the stats of several symbols with a single MGET.
+     * Symbols without stored stats are absent from the returned map.
+     */
+    Mono<Map<String, PriceStats>> getStats(Collection<String> symbols);
+
+    /**
+     * Write the coalesced result of a batch: one current price and one stats
+     * entry per symbol, plus every tick appended to its history.
+     * All commands are issued together so they share one pipelined flush. Like
+     * {@link #saveCurrentPrice} and {@link #saveStats}, a current price or stats entry is
+     * not written over one derived from a later tick.
+     */
+    Mono<Void> saveBatch(Collection<CryptoPrice> currentPrices,
+                         Map<String, List<CryptoPrice>> history,
+                         Collection<PriceStats> stats);
+
+    /**
+     * Fold the given prices into the symbol's stats hash atomically inside Redis,
+     * costing a single EVALSHA regardless of how many prices are applied.
+     * Safe when several consumer instances update the same symbol. Prices at or before
+     * the newest tick already applied are skipped, so a retried batch is not counted twice.
+     */
+    Mono<StatsUpdateResult> updateStatsAtomic(String symbol, List<CryptoPrice> prices);
+
+    /**
+     * Store finished candles in per-resolution sorted sets scored by open time,
+     * replacing any candle already stored for the same bucket.
+     */
+    Mono<Void> saveCandles(List<Candle> candles);
+
+    /**
+     * Fetch encoded per-symbol state (sketches, rolling windows...) stored under
+     * keyPrefix + symbol with a single MGET, keyed by symbol.
+     */
+    Mono<Map<String, String>> getEncodedState(String keyPrefix, Collection<String> symbols);
+
+    /**
+     * Store encoded per-symbol state under keyPrefix + symbol with a single MSET.
+     */
+    Mono<Void> saveEncodedState(String keyPrefix, Map<String, String> stateBySymbol);
+
+    /**
+     * Write rebuilt stats and history under shadowPrefix + live key, with the same
+     * pipelined commands as {@link #saveBatch} but without per-call logging.
+     */
+    Mono<Void> saveShadowBatch(String shadowPrefix,
+                               Map<String, List<CryptoPrice>> history,
+                               Collection<PriceStats> stats);
+
+    /**
+     * Delete every key under shadowPrefix (SCAN + UNLINK), e.g. left over by an aborted rebuild.
+     * @return number of keys removed.
+     */
+    Mono<Long> deleteShadowKeys(String shadowPrefix);
+
+    /**
+     * Atomically replace the live stats and history keys of the given symbols with their
+     * shadow copies. Symbols without a shadow copy keep their live keys.
+     * @return number of keys swapped.
+     */
+    Mono<Long> swapShadowKeys(String shadowPrefix, Collection<String> symbols);
 }
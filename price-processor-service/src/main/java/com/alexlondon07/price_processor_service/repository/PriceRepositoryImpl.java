@@ -1,67 +1,689 @@
 package com.alexlondon07.price_processor_service.repository;
 
+import com.alexlondon07.price_processor_service.config.CustomDatadogConfig;
+import com.alexlondon07.price_processor_service.flow.RedisConcurrencyController;
+import com.alexlondon07.price_processor_service.logging.PriceEventLog;
+import com.alexlondon07.price_processor_service.model.Candle;
+import com.alexlondon07.price_processor_service.model.CorrelationSnapshot;
 import com.alexlondon07.price_processor_service.model.CryptoPrice;
 import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.model.StatsUpdateResult;
+import com.alexlondon07.price_processor_service.model.WindowStats;
 import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.HistoryChunkCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
 @Repository
 @Slf4j
 @RequiredArgsConstructor
 public class PriceRepositoryImpl implements PriceRepository {
 
+    // History stream entry fields
+    private static final String FIELD_PRICE = "price";
+    private static final String FIELD_CHANGE_24H = "change24h";
+    private static final String FIELD_MARKET_CAP = "marketCap";
+    private static final String FIELD_NAME = "name";
+    private static final String FIELD_TIMESTAMP = "timestamp";
+    private static final int HISTORY_ENTRY_WIDTH = 10;
+
     private final ReactiveRedisTemplate<String, Object> redisTemplate;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector;
+    private final PriceEventLog priceEventLog;
+    private final RedisConcurrencyController redisConcurrencyController;
+    private final RedisScript<String> updateStatsScript;
+    private final RedisScript<Long> appendHistoryScript;
+    private final RedisScript<Long> swapKeysScript;
+    private final RedisScript<Long> appendHistoryTailScript;
+    private final RedisScript<Long> sealHistoryChunkScript;
+    private final RedisScript<byte[]> readHistoryChunksScript;
+    private final RedisScript<Long> setIfNewerScript;
+    private final RedisScript<Long> acquireLeaseScript;
+    private final RedisScript<Long> saveCandleScript;
+    // Stored values carry ISO timestamps, so the JSR310 module has to be registered here as well
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Value("${processor.history.format:" + Constants.HISTORY_FORMAT_STREAM + "}")
+    private String historyFormat;
+
+    @Value("${processor.history.max-length:10000}")
+    private long historyMaxLength;
+
+    @Value("${processor.history.max-age:0s}")
+    private Duration historyMaxAge;
+
+    @Value("${processor.history.chunk-size:120}")
+    private int historyChunkSize;
+
+    @Value("${processor.candles.retention:1000}")
+    private long candleRetention;
+
+    @Value("${processor.movers.volatility-window:24h}")
+    private String volatilityWindow;
 
     @Override
     public Mono<Boolean> saveCurrentPrice(CryptoPrice price) {
         String key = Constants.REDIS_KEY_CURRENT + price.getSymbol();
-        return redisTemplate.opsForValue()
-                .set(key, price)
-                .doOnSuccess(success -> log.info("Saved current price for {}: {}", price.getSymbol(), price))
-                .doOnError(error -> log.error("Error saving current price for {}: {}", price.getSymbol(), error.getMessage()));
+        long tickMillis = price.getTimestamp() != null ? price.getTimestamp().toEpochMilli() : System.currentTimeMillis();
+        // The leaderboard updates are only sent for a price that was actually written
+        return priceMetricsCollector.timeStage(Constants.STAGE_CURRENT_PRICE_SAVE, setIfNewer(key, tickMillis, price)
+                .flatMap(saved -> saved
+                        ? Flux.merge(moverUpdates(List.of(price), List.of())).then(Mono.just(true))
+                        : Mono.just(false))
+                .doOnSuccess(saved -> {
+                    if (priceEventLog.shouldLog(price.getSymbol())) {
+                        log.info(saved ? "Saved current price for {}: {}" : "Kept newer current price for {} over {}",
+                                price.getSymbol(), price);
+                    }
+                })
+                .doOnError(error -> {
+                    if (priceEventLog.shouldLogError(price.getSymbol())) {
+                        log.error("Error saving current price for {}: {}", price.getSymbol(), error.getMessage());
+                    }
+                }));
     }
 
     @Override
     public Mono<CryptoPrice> getCurrentPrice(String symbol) {
         String key = Constants.REDIS_KEY_CURRENT + symbol;
-        return redisTemplate.opsForValue()
+        return priceMetricsCollector.timeStage(Constants.STAGE_CURRENT_PRICE_GET, redisTemplate.opsForValue()
                 .get(key)
                 .map(value -> objectMapper.convertValue(value, CryptoPrice.class))
-                .doOnSuccess(price -> log.info("Retrieved current price for {}: {}", symbol, price))
-                .doOnError(error -> log.error("Error retrieving current price for {}: {}", symbol, error.getMessage()));
+                .doOnSuccess(price -> {
+                    if (priceEventLog.shouldLog(symbol)) {
+                        log.info("Retrieved current price for {}: {}", symbol, price);
+                    }
+                })
+                .doOnError(error -> log.error("Error retrieving current price for {}: {}", symbol, error.getMessage())));
+    }
+
+    @Override
+    public Flux<CryptoPrice> getAllCurrentPrices() {
+        ScanOptions options = ScanOptions.scanOptions().match(Constants.REDIS_KEY_CURRENT + "*").count(1000).build();
+        return priceMetricsCollector.timeStage(Constants.STAGE_CURRENT_PRICE_SCAN, redisTemplate.scan(options)
+                .buffer(500)
+                .concatMap(keys -> redisTemplate.opsForValue().multiGet(keys))
+                .flatMapIterable(values -> values)
+                .filter(value -> value != null)
+                .map(value -> objectMapper.convertValue(value, CryptoPrice.class))
+                .doOnError(error -> log.error("Error retrieving all current prices: {}", error.getMessage())));
+    }
+
+    @Override
+    public Mono<Boolean> saveCorrelation(CorrelationSnapshot snapshot) {
+        return priceMetricsCollector.timeStage(Constants.STAGE_CORRELATION_SAVE, redisTemplate.opsForValue()
+                .set(Constants.REDIS_KEY_CORRELATION, snapshot)
+                .doOnSuccess(success -> log.info("Saved correlation of {} symbols", snapshot.getSymbols().size()))
+                .doOnError(error -> log.error("Error saving correlation: {}", error.getMessage())));
+    }
+
+    @Override
+    public Mono<Boolean> acquireLease(String key, String owner, Duration leaseTime) {
+        return redisTemplate.execute(acquireLeaseScript, List.of(key),
+                        List.of(owner, String.valueOf(leaseTime.toMillis())),
+                        RedisElementWriter.from(StringRedisSerializer.UTF_8),
+                        RedisElementReader.from(new GenericToStringSerializer<>(Long.class)))
+                .next()
+                .map(acquired -> acquired == 1L)
+                .defaultIfEmpty(false);
     }
 
     @Override
     public Mono<Boolean> saveStats(PriceStats stats) {
         String key = Constants.REDIS_KEY_STATS + stats.getSymbol();
-        return redisTemplate.opsForValue()
-                .set(key, stats)
-                .doOnSuccess(success -> log.info("Saved stats for {}: {}", stats.getSymbol(), stats))
-                .doOnError(error -> log.error("Error saving stats for {}: {}", stats.getSymbol(), error.getMessage()));
+        long tickMillis = stats.getLastTickTime() != null ? stats.getLastTickTime().toEpochMilli() : System.currentTimeMillis();
+        // The leaderboard updates are only sent for stats that were actually written
+        return priceMetricsCollector.timeStage(Constants.STAGE_STATS_SET, setIfNewer(key, tickMillis, stats)
+                .flatMap(saved -> saved
+                        ? Flux.merge(moverUpdates(List.of(), List.of(stats))).then(Mono.just(true))
+                        : Mono.just(false))
+                .doOnSuccess(saved -> {
+                    if (priceEventLog.shouldLog(stats.getSymbol())) {
+                        log.info(saved ? "Saved stats for {}: {}" : "Kept newer stats for {} over {}",
+                                stats.getSymbol(), stats);
+                    }
+                })
+                .doOnError(error -> {
+                    if (priceEventLog.shouldLogError(stats.getSymbol())) {
+                        log.error("Error saving stats for {}: {}", stats.getSymbol(), error.getMessage());
+                    }
+                }));
+    }
+
+    /**
+     * SET the value unless a value derived from the same or a later tick was written to the key,
+     * see set_if_newer.lua. The value is serialized exactly like a plain SET through the template.
+     */
+    private Mono<Boolean> setIfNewer(String key, long tickMillis, Object value) {
+        return redisTemplate.execute(setIfNewerScript,
+                        List.of(key, Constants.REDIS_KEY_TICK_GUARDS),
+                        List.of(utf8(String.valueOf(tickMillis)), serialize(value)),
+                        RedisElementWriter.from(RedisSerializer.byteArray()),
+                        RedisElementReader.from(new GenericToStringSerializer<>(Long.class)))
+                .next()
+                .map(written -> written == 1L);
     }
 
     @Override
     public Mono<PriceStats> getStats(String symbol) {
         String key = Constants.REDIS_KEY_STATS + symbol;
-        return redisTemplate.opsForValue()
+        return priceMetricsCollector.timeStage(Constants.STAGE_STATS_GET, redisTemplate.opsForValue()
                 .get(key)
                 .map(value -> objectMapper.convertValue(value, PriceStats.class))
-                .doOnSuccess(stats -> log.info("Retrieved stats for {}: {}", symbol, stats))
-                .doOnError(error -> log.error("Error retrieving stats for {}: {}", symbol, error.getMessage()));
+                .doOnSuccess(stats -> {
+                    if (priceEventLog.shouldLog(symbol)) {
+                        log.info("Retrieved stats for {}: {}", symbol, stats);
+                    }
+                })
+                .doOnError(error -> {
+                    if (priceEventLog.shouldLogError(symbol)) {
+                        log.error("Error retrieving stats for {}: {}", symbol, error.getMessage());
+                    }
+                }));
     }
 
     @Override
     public Mono<Long> addToHistory(String symbol, CryptoPrice price) {
-        String key = Constants.REDIS_KEY_HISTORY + symbol;
-        return redisTemplate.opsForList()
-                .rightPush(key, price)
-                .doOnSuccess(size -> log.info("Added to history for {}: {}, new size: {}", symbol, price, size))
-                .doOnError(error -> log.error("Error adding to history for {}: {}", symbol, error.getMessage()));
+        return priceMetricsCollector.timeStage(Constants.STAGE_HISTORY_APPEND, appendHistory("", symbol, List.of(price))
+                .doOnSuccess(size -> {
+                    if (priceEventLog.shouldLog(symbol)) {
+                        log.info("Added to history for {}: {}, new size: {}", symbol, price, size);
+                    }
+                })
+                .doOnError(error -> {
+                    if (priceEventLog.shouldLogError(symbol)) {
+                        log.error("Error adding to history for {}: {}", symbol, error.getMessage());
+                    }
+                }));
+    }
+
+    @Override
+    public Flux<CryptoPrice> getHistory(String symbol, Instant from, Instant to) {
+        if (Constants.HISTORY_FORMAT_LIST.equals(historyFormat)) {
+            // Legacy list history has no time index, so the whole list has to be scanned
+            return priceMetricsCollector.timeStage(Constants.STAGE_HISTORY_READ, redisTemplate.opsForList()
+                    .range(Constants.REDIS_KEY_HISTORY + symbol, 0, -1)
+                    .map(value -> objectMapper.convertValue(value, CryptoPrice.class))
+                    .filter(price -> price.getTimestamp() != null
+                            && !price.getTimestamp().isBefore(from) && !price.getTimestamp().isAfter(to)));
+        }
+        if (Constants.HISTORY_FORMAT_CHUNKED.equals(historyFormat)) {
+            return priceMetricsCollector.timeStage(Constants.STAGE_HISTORY_READ, getChunkedHistory(symbol, from, to));
+        }
+        // Entry ids are tick timestamps in millis, so XRANGE seeks straight to the window
+        Range<String> range = Range.closed(String.valueOf(from.toEpochMilli()), String.valueOf(to.toEpochMilli()));
+        return priceMetricsCollector.timeStage(Constants.STAGE_HISTORY_READ, redisTemplate.<String, String>opsForStream()
+                .range(Constants.REDIS_KEY_HISTORY_STREAM + symbol, range)
+                .map(record -> toCryptoPrice(symbol, record))
+                .doOnError(error -> log.error("Error reading history for {}: {}", symbol, error.getMessage())));
+    }
+
+    /**
+     * Append ticks to the symbol's history in one command.
+     * Stream history is trimmed by count or age inside the same script call.
+     * @param keyPrefix prepended to the history key, empty for the live key.
+     * @return the history length after the append; for chunked history, the ticks not sealed yet.
+     */
+    private Mono<Long> appendHistory(String keyPrefix, String symbol, List<CryptoPrice> prices) {
+        if (Constants.HISTORY_FORMAT_LIST.equals(historyFormat)) {
+            return redisTemplate.opsForList()
+                    .rightPushAll(keyPrefix + Constants.REDIS_KEY_HISTORY + symbol, new ArrayList<Object>(prices));
+        }
+        if (Constants.HISTORY_FORMAT_CHUNKED.equals(historyFormat)) {
+            return appendChunkedHistory(keyPrefix, symbol, prices);
+        }
+
+        List<String> args = new ArrayList<>(4 + prices.size() * HISTORY_ENTRY_WIDTH);
+        if (historyMaxAge.isZero()) {
+            args.add("MAXLEN");
+            args.add(String.valueOf(historyMaxLength));
+        } else {
+            args.add("MINID");
+            args.add(String.valueOf(Instant.now().minus(historyMaxAge).toEpochMilli()));
+        }
+        args.add(String.valueOf(HISTORY_ENTRY_WIDTH));
+        args.add(FIELD_TIMESTAMP);
+        for (CryptoPrice price : prices) {
+            args.add(FIELD_PRICE);
+            args.add(toField(price.getPriceUsd()));
+            args.add(FIELD_CHANGE_24H);
+            args.add(toField(price.getPriceChange24h()));
+            args.add(FIELD_MARKET_CAP);
+            args.add(toField(price.getMarketCap()));
+            args.add(FIELD_NAME);
+            args.add(price.getName() != null ? price.getName() : "");
+            args.add(FIELD_TIMESTAMP);
+            args.add(String.valueOf(price.getTimestamp() != null
+                    ? price.getTimestamp().toEpochMilli()
+                    : System.currentTimeMillis()));
+        }
+
+        return redisTemplate.execute(appendHistoryScript,
+                        List.of(keyPrefix + Constants.REDIS_KEY_HISTORY_STREAM + symbol), args,
+                        RedisElementWriter.from(StringRedisSerializer.UTF_8),
+                        RedisElementReader.from(new GenericToStringSerializer<>(Long.class)))
+                .next();
+    }
+
+    /**
+     * Append the ticks as raw records to the symbol's tail, then seal every full chunk of the tail.
+     * Sealing runs only once per chunk-size ticks, so most appends stay a single command.
+     * The append script skips ticks at or before the last appended one, so retrying a batch whose
+     * append or seal failed does not duplicate ticks; an unsealed full tail is sealed by the retry.
+     */
+    private Mono<Long> appendChunkedHistory(String keyPrefix, String symbol, List<CryptoPrice> prices) {
+        ByteBuffer tailKey = ByteBuffer.wrap((keyPrefix + Constants.REDIS_KEY_HISTORY_TAIL + symbol).getBytes(StandardCharsets.UTF_8));
+        byte[] raw = HistoryChunkCodec.encodeRaw(prices);
+        List<byte[]> args = new ArrayList<>(prices.size() * 2);
+        for (int i = 0; i < prices.size(); i++) {
+            args.add(utf8(String.valueOf(HistoryChunkCodec.rawTimestamp(raw, i))));
+            args.add(Arrays.copyOfRange(raw, i * HistoryChunkCodec.RAW_TICK_BYTES, (i + 1) * HistoryChunkCodec.RAW_TICK_BYTES));
+        }
+        long chunkBytes = (long) historyChunkSize * HistoryChunkCodec.RAW_TICK_BYTES;
+        return redisTemplate.execute(appendHistoryTailScript,
+                        List.of(keyPrefix + Constants.REDIS_KEY_HISTORY_TAIL + symbol,
+                                keyPrefix + Constants.REDIS_KEY_HISTORY_CHUNKS + symbol),
+                        args,
+                        RedisElementWriter.from(RedisSerializer.byteArray()),
+                        RedisElementReader.from(new GenericToStringSerializer<>(Long.class)))
+                .next()
+                .expand(tailBytes -> tailBytes >= chunkBytes ? sealHistoryChunk(keyPrefix, symbol, tailKey) : Mono.empty())
+                .last()
+                .map(tailBytes -> tailBytes / HistoryChunkCodec.RAW_TICK_BYTES);
+    }
+
+    /**
+     * Compress the oldest chunk-size ticks of the tail and hand the chunk to the seal script.
+     * The chunk id is its first timestamp plus a checksum, so a concurrent sealer of the same
+     * ticks is detected by the script and the loop stops.
+     * @return the remaining tail length in bytes, empty when there is nothing left to seal.
+     */
+    private Mono<Long> sealHistoryChunk(String keyPrefix, String symbol, ByteBuffer tailKey) {
+        return redisTemplate.execute(connection -> connection.stringCommands().get(tailKey.duplicate()))
+                .next()
+                .flatMap(buffer -> {
+                    byte[] tail = new byte[buffer.remaining()];
+                    buffer.get(tail);
+                    if (tail.length < historyChunkSize * HistoryChunkCodec.RAW_TICK_BYTES) {
+                        return Mono.<Long>empty();
+                    }
+                    byte[] chunk = HistoryChunkCodec.encodeChunk(tail, historyChunkSize);
+                    long firstTimestamp = HistoryChunkCodec.rawTimestamp(tail, 0);
+                    CRC32 checksum = new CRC32();
+                    checksum.update(chunk);
+                    String chunkId = firstTimestamp + ":" + Long.toHexString(checksum.getValue());
+                    long maxChunks = historyMaxAge.isZero()
+                            ? Math.max(1, (historyMaxLength + historyChunkSize - 1) / historyChunkSize)
+                            : 0;
+                    long cutoff = historyMaxAge.isZero() ? 0 : Instant.now().minus(historyMaxAge).toEpochMilli();
+
+                    List<byte[]> args = List.of(
+                            utf8(chunkId),
+                            chunk,
+                            utf8(String.valueOf(firstTimestamp)),
+                            utf8(String.valueOf(historyChunkSize * HistoryChunkCodec.RAW_TICK_BYTES)),
+                            utf8(String.valueOf(maxChunks)),
+                            utf8(String.valueOf(cutoff)));
+                    return redisTemplate.execute(sealHistoryChunkScript,
+                                    List.of(keyPrefix + Constants.REDIS_KEY_HISTORY_TAIL + symbol,
+                                            keyPrefix + Constants.REDIS_KEY_HISTORY_CHUNKS + symbol,
+                                            keyPrefix + Constants.REDIS_KEY_HISTORY_INDEX + symbol),
+                                    args,
+                                    RedisElementWriter.from(RedisSerializer.byteArray()),
+                                    RedisElementReader.from(new GenericToStringSerializer<>(Long.class)))
+                            .next()
+                            .filter(remaining -> remaining >= 0)
+                            .doOnNext(remaining -> log.debug("Sealed history chunk {} for {} ({} bytes for {} ticks)",
+                                    chunkId, symbol, chunk.length, historyChunkSize));
+                });
+    }
+
+    /**
+     * One script call returns the tail and every chunk overlapping the window; the ticks are
+     * decoded here and filtered by timestamp.
+     */
+    private Flux<CryptoPrice> getChunkedHistory(String symbol, Instant from, Instant to) {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        return redisTemplate.execute(readHistoryChunksScript,
+                        List.of(Constants.REDIS_KEY_HISTORY_TAIL + symbol,
+                                Constants.REDIS_KEY_HISTORY_CHUNKS + symbol,
+                                Constants.REDIS_KEY_HISTORY_INDEX + symbol),
+                        List.of(String.valueOf(fromMillis), String.valueOf(toMillis)),
+                        RedisElementWriter.from(StringRedisSerializer.UTF_8),
+                        RedisElementReader.from(RedisSerializer.byteArray()))
+                .next()
+                .flatMapIterable(snapshot -> {
+                    List<CryptoPrice> prices = new ArrayList<>();
+                    HistoryChunkCodec.decodeSnapshot(snapshot, (timestamp, price, change24h, marketCap) -> {
+                        if (timestamp >= fromMillis && timestamp <= toMillis) {
+                            prices.add(CryptoPrice.builder()
+                                    .symbol(symbol)
+                                    .priceUsd(HistoryChunkCodec.toDecimal(price))
+                                    .priceChange24h(HistoryChunkCodec.toDecimal(change24h))
+                                    .marketCap(HistoryChunkCodec.toDecimal(marketCap))
+                                    .timestamp(Instant.ofEpochMilli(timestamp))
+                                    .build());
+                        }
+                    });
+                    return prices;
+                })
+                .doOnError(error -> log.error("Error reading history for {}: {}", symbol, error.getMessage()));
+    }
+
+    /**
+     * Serialize a value exactly like the template does for a plain write, to pass it to a script.
+     */
+    private byte[] serialize(Object value) {
+        ByteBuffer serialized = redisTemplate.getSerializationContext().getValueSerializationPair().write(value);
+        byte[] bytes = new byte[serialized.remaining()];
+        serialized.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Mono<Void> saveCandles(List<Candle> candles) {
+        if (candles.isEmpty()) {
+            return Mono.empty();
+        }
+        return priceMetricsCollector.timeStage(Constants.STAGE_CANDLES_SAVE, Flux.fromIterable(candles)
+                .flatMap(candle -> {
+                    String key = Constants.REDIS_KEY_CANDLES + candle.getResolution() + ":" + candle.getSymbol();
+                    // Replace and trim in one script, so readers never see the bucket missing or doubled
+                    return redisConcurrencyController.track(redisTemplate.execute(saveCandleScript,
+                                    List.of(key),
+                                    List.of(utf8(String.valueOf(candle.getOpenTime().toEpochMilli())), serialize(candle),
+                                            utf8(String.valueOf(candleRetention))),
+                                    RedisElementWriter.from(RedisSerializer.byteArray()),
+                                    RedisElementReader.from(new GenericToStringSerializer<>(Long.class)))
+                            .then());
+                }, redisConcurrencyController.limitFor(candles.size()))
+                .then()
+                .doOnSuccess(v -> {
+                    if (priceEventLog.shouldLogBatch()) {
+                        log.info("Saved {} finished candles", candles.size());
+                    }
+                })
+                .doOnError(error -> log.error("Error saving candles: {}", error.getMessage())));
+    }
+
+    @Override
+    public Mono<Map<String, String>> getEncodedState(String keyPrefix, Collection<String> symbols) {
+        List<String> symbolList = List.copyOf(symbols);
+        List<String> keys = symbolList.stream()
+                .map(symbol -> keyPrefix + symbol)
+                .toList();
+        return priceMetricsCollector.timeStage(Constants.STAGE_STATE_GET, redisTemplate.opsForValue()
+                .multiGet(keys)
+                .map(values -> {
+                    Map<String, String> states = new HashMap<>();
+                    for (int i = 0; i < values.size(); i++) {
+                        if (values.get(i) != null) {
+                            states.put(symbolList.get(i), values.get(i).toString());
+                        }
+                    }
+                    return states;
+                })
+                .doOnError(error -> log.error("Error retrieving {}* for {}: {}", keyPrefix, symbols, error.getMessage())));
+    }
+
+    @Override
+    public Mono<Void> saveEncodedState(String keyPrefix, Map<String, String> stateBySymbol) {
+        if (stateBySymbol.isEmpty()) {
+            return Mono.empty();
+        }
+        Map<String, Object> entries = new HashMap<>();
+        stateBySymbol.forEach((symbol, state) -> entries.put(keyPrefix + symbol, state));
+        return priceMetricsCollector.timeStage(Constants.STAGE_STATE_SET, redisTemplate.opsForValue()
+                .multiSet(entries)
+                .then()
+                .doOnError(error -> log.error("Error saving {}* for {}: {}", keyPrefix, stateBySymbol.keySet(), error.getMessage())));
+    }
+
+    /**
+     * ZADD the symbols' scores into the movers leaderboards: 24h change and market cap (the
+     * volume proxy, ticks carry no volume) from current prices, volatility (stddev / mean of
+     * the configured rolling window, in percent) from stats. Each update is O(log n), so
+     * crypto-api can read the top N in O(log n + N) however many symbols are tracked.
+     */
+    private List<Mono<Boolean>> moverUpdates(Collection<CryptoPrice> currentPrices, Collection<PriceStats> stats) {
+        List<Mono<Boolean>> updates = new ArrayList<>();
+        for (CryptoPrice price : currentPrices) {
+            if (price.getPriceChange24h() != null) {
+                updates.add(redisTemplate.opsForZSet().add(Constants.REDIS_KEY_MOVERS + Constants.MOVER_METRIC_CHANGE_24H,
+                        price.getSymbol(), price.getPriceChange24h().doubleValue()));
+            }
+            if (price.getMarketCap() != null) {
+                updates.add(redisTemplate.opsForZSet().add(Constants.REDIS_KEY_MOVERS + Constants.MOVER_METRIC_MARKET_CAP,
+                        price.getSymbol(), price.getMarketCap().doubleValue()));
+            }
+        }
+        for (PriceStats entry : stats) {
+            WindowStats window = entry.getWindows() != null ? entry.getWindows().get(volatilityWindow) : null;
+            if (window != null && window.getCount() > 1 && window.getMean().signum() > 0) {
+                double volatility = window.getStddev().doubleValue() / window.getMean().doubleValue() * 100;
+                updates.add(redisTemplate.opsForZSet().add(Constants.REDIS_KEY_MOVERS + Constants.MOVER_METRIC_VOLATILITY,
+                        entry.getSymbol(), volatility));
+            }
+        }
+        return updates;
+    }
+
+    private CryptoPrice toCryptoPrice(String symbol, MapRecord<String, String, String> record) {
+        Map<String, String> fields = record.getValue();
+        return CryptoPrice.builder()
+                .symbol(symbol)
+                .name(emptyToNull(fields.get(FIELD_NAME)))
+                .priceUsd(toDecimal(fields.get(FIELD_PRICE)))
+                .priceChange24h(toDecimal(fields.get(FIELD_CHANGE_24H)))
+                .marketCap(toDecimal(fields.get(FIELD_MARKET_CAP)))
+                .timestamp(Instant.ofEpochMilli(Long.parseLong(fields.get(FIELD_TIMESTAMP))))
+                .build();
+    }
+
+    private static String toField(BigDecimal value) {
+        return value != null ? value.toPlainString() : "";
+    }
+
+    private static BigDecimal toDecimal(String value) {
+        return value == null || value.isEmpty() ? null : new BigDecimal(value);
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    @Override
+    public Mono<Map<String, PriceStats>> getStats(Collection<String> symbols) {
+        List<String> keys = symbols.stream()
+                .map(symbol -> Constants.REDIS_KEY_STATS + symbol)
+                .toList();
+        return priceMetricsCollector.timeStage(Constants.STAGE_STATS_MGET, redisTemplate.opsForValue()
+                .multiGet(keys)
+                .map(values -> {
+                    Map<String, PriceStats> statsBySymbol = new HashMap<>();
+                    for (Object value : values) {
+                        if (value != null) {
+                            PriceStats stats = objectMapper.convertValue(value, PriceStats.class);
+                            statsBySymbol.put(stats.getSymbol(), stats);
+                        }
+                    }
+                    return statsBySymbol;
+                })
+                .doOnSuccess(stats -> {
+                    if (priceEventLog.shouldLogBatch()) {
+                        log.info("Retrieved stats for {} of {} symbols", stats.size(), keys.size());
+                    }
+                })
+                .doOnError(error -> log.error("Error retrieving stats for {}: {}", symbols, error.getMessage())));
+    }
+
+    @Override
+    public Mono<Void> saveBatch(Collection<CryptoPrice> currentPrices,
+                                Map<String, List<CryptoPrice>> history,
+                                Collection<PriceStats> stats) {
+        // Up to the adaptive concurrency limit, commands are subscribed eagerly on the shared
+        // connection, so Lettuce writes them back to back and they go out as pipelined flushes.
+        // Current prices and stats go through the same tick guard as the single writes, and
+        // their leaderboard updates are only sent for values that were actually written.
+        AtomicInteger kept = new AtomicInteger();
+        List<Mono<?>> commands = new ArrayList<>();
+        for (CryptoPrice price : currentPrices) {
+            long tickMillis = price.getTimestamp() != null ? price.getTimestamp().toEpochMilli() : System.currentTimeMillis();
+            commands.add(setIfNewer(Constants.REDIS_KEY_CURRENT + price.getSymbol(), tickMillis, price)
+                    .flatMap(saved -> saved
+                            ? Flux.merge(moverUpdates(List.of(price), List.of())).then()
+                            : Mono.fromRunnable(kept::incrementAndGet)));
+        }
+        for (PriceStats entry : stats) {
+            long tickMillis = entry.getLastTickTime() != null ? entry.getLastTickTime().toEpochMilli() : System.currentTimeMillis();
+            commands.add(setIfNewer(Constants.REDIS_KEY_STATS + entry.getSymbol(), tickMillis, entry)
+                    .flatMap(saved -> saved
+                            ? Flux.merge(moverUpdates(List.of(), List.of(entry))).then()
+                            : Mono.fromRunnable(kept::incrementAndGet)));
+        }
+        history.forEach((symbol, prices) -> commands.add(appendHistory("", symbol, prices)));
+
+        return priceMetricsCollector.timeStage(Constants.STAGE_BATCH_SAVE, Flux.fromIterable(commands)
+                .flatMap(command -> redisConcurrencyController.track(command), redisConcurrencyController.limitFor(commands.size()))
+                .then()
+                .doOnSuccess(v -> {
+                    if (priceEventLog.shouldLogBatch()) {
+                        log.info("Saved batch: {} current prices, {} history symbols, {} stats, kept {} newer values",
+                                currentPrices.size(), history.size(), stats.size(), kept.get());
+                    }
+                })
+                .doOnError(error -> log.error("Error saving batch: {}", error.getMessage())));
+    }
+
+    @Override
+    public Mono<Void> saveShadowBatch(String shadowPrefix,
+                                      Map<String, List<CryptoPrice>> history,
+                                      Collection<PriceStats> stats) {
+        Map<String, Object> statsEntries = new HashMap<>();
+        stats.forEach(entry -> statsEntries.put(shadowPrefix + Constants.REDIS_KEY_STATS + entry.getSymbol(), entry));
+
+        List<Mono<?>> commands = new ArrayList<>();
+        if (!statsEntries.isEmpty()) {
+            commands.add(redisTemplate.opsForValue().multiSet(statsEntries));
+        }
+        history.forEach((symbol, prices) -> commands.add(appendHistory(shadowPrefix, symbol, prices)));
+
+        return priceMetricsCollector.timeStage(Constants.STAGE_REBUILD_WRITE, Flux.merge(commands)
+                .then()
+                .doOnError(error -> log.error("Error saving shadow batch under {}: {}", shadowPrefix, error.getMessage())));
+    }
+
+    @Override
+    public Mono<Long> deleteShadowKeys(String shadowPrefix) {
+        ScanOptions options = ScanOptions.scanOptions().match(shadowPrefix + "*").count(1000).build();
+        return priceMetricsCollector.timeStage(Constants.STAGE_REBUILD_DELETE, redisTemplate.scan(options)
+                .buffer(500)
+                .concatMap(keys -> redisTemplate.unlink(keys.toArray(String[]::new)))
+                .reduce(0L, Long::sum)
+                .doOnError(error -> log.error("Error deleting {}* keys: {}", shadowPrefix, error.getMessage())));
+    }
+
+    @Override
+    public Mono<Long> swapShadowKeys(String shadowPrefix, Collection<String> symbols) {
+        if (symbols.isEmpty()) {
+            return Mono.just(0L);
+        }
+        List<String> historyKeys = switch (historyFormat) {
+            case Constants.HISTORY_FORMAT_LIST -> List.of(Constants.REDIS_KEY_HISTORY);
+            case Constants.HISTORY_FORMAT_CHUNKED -> List.of(Constants.REDIS_KEY_HISTORY_TAIL,
+                    Constants.REDIS_KEY_HISTORY_CHUNKS, Constants.REDIS_KEY_HISTORY_INDEX);
+            default -> List.of(Constants.REDIS_KEY_HISTORY_STREAM);
+        };
+        List<String> keys = new ArrayList<>(symbols.size() * (2 + historyKeys.size() * 2));
+        for (String symbol : symbols) {
+            keys.add(shadowPrefix + Constants.REDIS_KEY_STATS + symbol);
+            keys.add(Constants.REDIS_KEY_STATS + symbol);
+            for (String historyKey : historyKeys) {
+                keys.add(shadowPrefix + historyKey + symbol);
+                keys.add(historyKey + symbol);
+            }
+        }
+        return priceMetricsCollector.timeStage(Constants.STAGE_REBUILD_SWAP, redisTemplate.execute(swapKeysScript, keys, List.of(),
+                        RedisElementWriter.from(StringRedisSerializer.UTF_8),
+                        RedisElementReader.from(new GenericToStringSerializer<>(Long.class)))
+                .next()
+                .doOnSuccess(swapped -> log.info("Swapped {} rebuilt keys for {} symbols", swapped, symbols.size()))
+                .doOnError(error -> log.error("Error swapping rebuilt keys: {}", error.getMessage())));
+    }
+
+    @Override
+    public Mono<StatsUpdateResult> updateStatsAtomic(String symbol, List<CryptoPrice> prices) {
+        String key = Constants.REDIS_KEY_STATS_HASH + symbol;
+        List<String> args = new ArrayList<>(prices.size() * 2 + 2);
+        args.add(symbol);
+        args.add(Instant.now().toString());
+        long nowMillis = System.currentTimeMillis();
+        prices.forEach(price -> {
+            args.add(price.getPriceUsd().toPlainString());
+            args.add(String.valueOf(price.getTimestamp() != null ? price.getTimestamp().toEpochMilli() : nowMillis));
+        });
+
+        // Arguments and result are plain strings, not JSON values, so bypass the template's value serializer
+        return priceMetricsCollector.timeStage(Constants.STAGE_STATS_SCRIPT, redisTemplate.execute(updateStatsScript, List.of(key), args,
+                        RedisElementWriter.from(StringRedisSerializer.UTF_8),
+                        RedisElementReader.from(StringRedisSerializer.UTF_8))
+                .next()
+                .map(this::readStatsUpdate)
+                .doOnSuccess(result -> {
+                    if (priceEventLog.shouldLog(symbol)) {
+                        log.info("Atomically updated stats for {} with {} prices", symbol, prices.size());
+                    }
+                })
+                .doOnError(error -> {
+                    if (priceEventLog.shouldLogError(symbol)) {
+                        log.error("Error updating stats atomically for {}: {}", symbol, error.getMessage());
+                    }
+                }));
+    }
+
+    private StatsUpdateResult readStatsUpdate(String json) {
+        try {
+            return objectMapper.readValue(json, StatsUpdateResult.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid stats script result: " + json, e);
+        }
     }
 }
@@ -1,18 +1,36 @@
 package com.alexlondon07.price_processor_service.service;
 
+import com.alexlondon07.price_processor_service.aggregation.BatchStats;
+import com.alexlondon07.price_processor_service.aggregation.BatchStatsKernel;
+import com.alexlondon07.price_processor_service.aggregation.CandleAggregator;
+import com.alexlondon07.price_processor_service.aggregation.SymbolStateRegistry;
 import com.alexlondon07.price_processor_service.config.CustomDatadogConfig;
+import com.alexlondon07.price_processor_service.flow.ConflationController;
+import com.alexlondon07.price_processor_service.flow.RedisConcurrencyController;
+import com.alexlondon07.price_processor_service.logging.PriceEventLog;
 import com.alexlondon07.price_processor_service.model.CryptoPrice;
 import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.model.StatsUpdateResult;
 import com.alexlondon07.price_processor_service.repository.PriceRepository;
+import com.alexlondon07.price_processor_service.state.ConflationBuffer;
+import com.alexlondon07.price_processor_service.state.LocalStatsStore;
+import com.alexlondon07.price_processor_service.state.StatsAccumulator;
+import com.alexlondon07.price_processor_service.timeseries.TickStore;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.FixedPoint;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
@@ -21,18 +39,53 @@ public class PriceStorageService {
     private final PriceRepository priceRepository;
     private final CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector;
     private final MeterRegistry meterRegistry;
+    private final CandleAggregator candleAggregator;
+    private final LocalStatsStore localStatsStore;
+    private final SymbolStateRegistry symbolStateRegistry;
+    private final ConflationController conflationController;
+    private final ConflationBuffer conflationBuffer;
+    private final boolean atomicStats;
+    private final boolean writeBehindStats;
+    private final BatchStatsKernel batchStatsKernel;
+    private final TickStore tickStore;
+    private final PriceEventLog priceEventLog;
+    private final RedisConcurrencyController redisConcurrencyController;
 
     public PriceStorageService(PriceRepository priceRepository, 
                            CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector,
-                           MeterRegistry meterRegistry) {
+                           MeterRegistry meterRegistry,
+                           CandleAggregator candleAggregator,
+                           LocalStatsStore localStatsStore,
+                           SymbolStateRegistry symbolStateRegistry,
+                           ConflationController conflationController,
+                           ConflationBuffer conflationBuffer,
+                           TickStore tickStore,
+                           PriceEventLog priceEventLog,
+                           RedisConcurrencyController redisConcurrencyController,
+                           @Value("${processor.stats.mode:" + Constants.STATS_MODE_READ_MODIFY_WRITE + "}") String statsMode,
+                           @Value("${processor.stats.vector.enabled:true}") boolean vectorStats,
+                           @Value("${processor.stats.vector.min-length:16}") int vectorMinLength) {
         this.priceRepository = priceRepository;
         this.priceMetricsCollector = priceMetricsCollector;
         this.meterRegistry = meterRegistry;
+        this.candleAggregator = candleAggregator;
+        this.localStatsStore = localStatsStore;
+        this.symbolStateRegistry = symbolStateRegistry;
+        this.conflationController = conflationController;
+        this.conflationBuffer = conflationBuffer;
+        this.tickStore = tickStore;
+        this.priceEventLog = priceEventLog;
+        this.redisConcurrencyController = redisConcurrencyController;
+        this.atomicStats = Constants.STATS_MODE_SCRIPT.equals(statsMode);
+        this.writeBehindStats = Constants.STATS_MODE_WRITE_BEHIND.equals(statsMode);
+        this.batchStatsKernel = BatchStatsKernel.create(vectorStats, vectorMinLength);
+        log.info("Price stats mode: {}, batch stats kernel: {}", statsMode, batchStatsKernel.getClass().getSimpleName());
     }
 
     /**
      * Process and store the incoming crypto price.
-     * Saves the current price, adds it to history, and updates statistics.
+     * Saves the current price, adds it to history, updates statistics and stores any candle it finishes,
+     * then appends the tick to the local time-series store when it is enabled.
      * @param price CryptoPrice object containing the price details.
      * @return Mono<Void>
      */
@@ -40,14 +93,20 @@ public class PriceStorageService {
         return priceMetricsCollector.timePriceProcessing(
             priceRepository.saveCurrentPrice(price)
                 .then( priceRepository.addToHistory(price.getSymbol(), price))
-                .then(updateStats(price))
-                .then()
+                .then(priceMetricsCollector.timeStage(Constants.STAGE_STATS_UPDATE, updateStats(price)))
+                .then(Mono.fromRunnable(() -> candleAggregator.onTick(price)))
+                .then(candleAggregator.saveFinished())
+                .then(tickStore.appendAsync(List.of(price)))
                 .doOnSuccess(v -> {
-                    log.info("Processed price for {}: {}", price.getSymbol(), price);
-                    meterRegistry.counter("price.storage.success", "symbol", price.getSymbol()).increment();
+                    if (priceEventLog.shouldLog(price.getSymbol())) {
+                        log.info("Processed price for {}: {}", price.getSymbol(), price);
+                    }
+                    priceMetricsCollector.recordStorageSuccess(price.getSymbol());
                 })
                 .doOnError(error -> {
-                    log.error("Error processing price for {}: {}", price.getSymbol(), error.getMessage());
+                    if (priceEventLog.shouldLogError(price.getSymbol())) {
+                        log.error("Error processing price for {}: {}", price.getSymbol(), error.getMessage());
+                    }
                     
                     // Handle Jackson deserialization errors specifically
                     if (error.getMessage() != null && error.getMessage().contains("Java 8 date/time type")) {
@@ -66,77 +125,420 @@ public class PriceStorageService {
     }
 
     /**
-     * Update the price statistics with the new price.
-     * @param price CryptoPrice object containing the new price details.
-     * @return Mono<Object> Updated PriceStats object.
+     * Process a whole batch of crypto prices at once.
+     * Ticks are grouped per symbol, stats are folded in memory starting from a single
+     * MGET, and the resulting writes (latest current price and stats per symbol, every
+     * tick appended to history, finished candles) are sent to Redis as one pipelined flush.
+     * While the consumer is catching up (conflated mode) only the latest current price per
+     * symbol is written and everything else is folded into the ConflationBuffer, which is
+     * flushed before the first per-tick batch after catching up.
+     * @param prices CryptoPrice objects in the order they were consumed.
+     * @return Mono<Void>
      */
-    private Mono<Object> updateStats(CryptoPrice price) {
-        return priceRepository.getStats(price.getSymbol())
-                .defaultIfEmpty(createInitialStats(price))
-                .flatMap(oldStats -> {
-                    PriceStats updatedStats = updateStatsWithNewPrice(oldStats, price);
-                    
-                    // Record price change metrics
-                    priceMetricsCollector.recordPriceStats(
-                        price.getSymbol(),
-                        price.getPriceUsd(),
-                        updatedStats.getMinPrice(),
-                        updatedStats.getMaxPrice(),
-                        updatedStats.getAvgPrice(),
-                        updatedStats.getSampleCount()
-                    );
-                    
-                    // Check for price change alerts
-                    if (oldStats.getSampleCount() > 0) {
-                        BigDecimal oldPrice = oldStats.getCurrentPrice();
-                        if (oldPrice != null && oldPrice.compareTo(BigDecimal.ZERO) > 0) {
-                            priceMetricsCollector.recordPriceChange(
-                                price.getSymbol(), oldPrice, price.getPriceUsd()
-                            );
+    public Mono<Void> processBatch(List<CryptoPrice> prices) {
+        return processBatch(prices, null);
+    }
+
+    /**
+     * Process a batch and collect the resulting stats of every updated symbol, e.g. to
+     * publish them as change events. Nothing is collected while conflating; the stats of
+     * the symbols folded meanwhile are collected by the batch that flushes them.
+     * @param prices CryptoPrice objects in the order they were consumed.
+     * @param statsChanges thread-safe collection receiving the new stats, or null.
+     * @return Mono<Void>
+     */
+    public Mono<Void> processBatch(List<CryptoPrice> prices, Collection<PriceStats> statsChanges) {
+        Map<String, List<CryptoPrice>> pricesBySymbol = new LinkedHashMap<>();
+        for (CryptoPrice price : prices) {
+            pricesBySymbol.computeIfAbsent(price.getSymbol(), symbol -> new ArrayList<>()).add(price);
+        }
+
+        // Nothing is folded before subscription, so a caller holding a lock while it runs covers the folds too
+        Mono<Void> batchWrite = Mono.defer(() -> {
+            prices.forEach(candleAggregator::onTick);
+
+            if (conflationController.isActive() && !atomicStats) {
+                return processBatchConflated(pricesBySymbol);
+            }
+            return conflationBuffer.flush(statsChanges)
+                    .then(localStatsStore.load(pricesBySymbol.keySet()))
+                    .then(symbolStateRegistry.load(pricesBySymbol.keySet()))
+                    .then(Mono.when(
+                            Mono.defer(() -> atomicStats
+                                    ? processBatchWithAtomicStats(pricesBySymbol, statsChanges)
+                                    : processBatchWithLocalStats(pricesBySymbol, statsChanges)),
+                            candleAggregator.saveFinished()));
+        }).and(tickStore.appendAsync(prices));
+
+        return priceMetricsCollector.timePriceProcessing(
+            batchWrite
+                .doOnSuccess(v -> {
+                    if (priceEventLog.shouldLogBatch()) {
+                        log.info("Processed batch of {} prices for {} symbols", prices.size(), pricesBySymbol.size());
+                    }
+                })
+                .doOnError(error -> log.error("Error processing batch of {} prices: {}",
+                        prices.size(), error.getMessage()))
+        );
+    }
+
+    /**
+     * Catch-up path: fold every tick into stats, derived state, history and candles in
+     * memory and only write the latest current price of each symbol. Finished candles stay
+     * queued in the CandleAggregator until the next regular batch or flush writes them.
+     * @param pricesBySymbol batch prices grouped per symbol, in consumption order.
+     * @return Mono<Void>
+     */
+    private Mono<Void> processBatchConflated(Map<String, List<CryptoPrice>> pricesBySymbol) {
+        return symbolStateRegistry.load(pricesBySymbol.keySet())
+                .then(localStatsStore.load(pricesBySymbol.keySet()))
+                .then(loadConflatedStats(pricesBySymbol.keySet()))
+                .then(Mono.defer(() -> {
+                    List<CryptoPrice> latestPrices = new ArrayList<>(pricesBySymbol.size());
+                    pricesBySymbol.forEach((symbol, symbolPrices) -> {
+                        if (writeBehindStats) {
+                            conflationBuffer.foldHistory(symbol, applyToLocalStats(symbol, symbolPrices));
+                        } else {
+                            conflationBuffer.fold(symbol, stats -> applyTicks(stats, symbolPrices));
                         }
+                        latestPrices.add(symbolPrices.get(symbolPrices.size() - 1));
+                    });
+                    return priceRepository.saveBatch(latestPrices, Map.of(), List.of());
+                }));
+    }
+
+    /**
+     * Seed the conflation buffer with the stored stats of symbols it does not hold yet.
+     */
+    private Mono<Void> loadConflatedStats(Collection<String> symbols) {
+        if (writeBehindStats) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            List<String> missing = symbols.stream()
+                    .filter(symbol -> !conflationBuffer.hasStats(symbol))
+                    .toList();
+            if (missing.isEmpty()) {
+                return Mono.empty();
+            }
+            return priceRepository.getStats(missing)
+                    .doOnNext(stored -> stored.values().forEach(stats ->
+                            conflationBuffer.putStatsIfAbsent(StatsAccumulator.fromPriceStats(stats))))
+                    .then();
+        });
+    }
+
+    /**
+     * Process a batch for symbols whose stats the caller owns (sharded engine).
+     * Ticks, candles and derived state are folded on the calling thread; the returned Mono
+     * only performs the pipelined writes of latest prices, history, stats and candles.
+     * @param pricesBySymbol prices grouped per symbol, in consumption order.
+     * @param ownedStats stats owned by the caller, missing symbols start empty.
+     * @return Mono<Void>
+     */
+    public Mono<Void> processOwnedBatch(Map<String, List<CryptoPrice>> pricesBySymbol,
+                                        Map<String, StatsAccumulator> ownedStats) {
+        List<CryptoPrice> latestPrices = new ArrayList<>(pricesBySymbol.size());
+        List<PriceStats> updatedStats = new ArrayList<>(pricesBySymbol.size());
+
+        pricesBySymbol.forEach((symbol, symbolPrices) -> {
+            StatsAccumulator stats = ownedStats.computeIfAbsent(symbol, StatsAccumulator::new);
+            applyTicks(stats, symbolPrices);
+            symbolPrices.forEach(candleAggregator::onTick);
+            tickStore.append(symbolPrices);
+            latestPrices.add(symbolPrices.get(symbolPrices.size() - 1));
+            updatedStats.add(toAnnotatedStats(stats));
+        });
+
+        return priceMetricsCollector.timePriceProcessing(
+                Mono.when(
+                        priceRepository.saveBatch(latestPrices, pricesBySymbol, updatedStats),
+                        symbolStateRegistry.save(pricesBySymbol.keySet()),
+                        candleAggregator.saveFinished()));
+    }
+
+    /**
+     * Fold the batch into stats in memory, starting from the stats fetched with a single MGET
+     * (or from the locally owned stats in write-behind mode).
+     * @param pricesBySymbol batch prices grouped per symbol, in consumption order.
+     * @param statsChanges receives the new stats, or null.
+     * @return Mono<Void>
+     */
+    private Mono<Void> processBatchWithLocalStats(Map<String, List<CryptoPrice>> pricesBySymbol,
+                                                  Collection<PriceStats> statsChanges) {
+        if (writeBehindStats) {
+            List<CryptoPrice> latestPrices = new ArrayList<>(pricesBySymbol.size());
+            pricesBySymbol.forEach((symbol, symbolPrices) -> {
+                applyToLocalStats(symbol, symbolPrices);
+                if (statsChanges != null) {
+                    statsChanges.add(toAnnotatedStats(localStatsStore.get(symbol)));
+                }
+                latestPrices.add(symbolPrices.get(symbolPrices.size() - 1));
+            });
+            return priceRepository.saveBatch(latestPrices, pricesBySymbol, List.of());
+        }
+        return priceRepository.getStats(pricesBySymbol.keySet())
+                .flatMap(storedStats -> {
+                    List<CryptoPrice> latestPrices = new ArrayList<>(pricesBySymbol.size());
+                    List<PriceStats> updatedStats = new ArrayList<>(pricesBySymbol.size());
+
+                    pricesBySymbol.forEach((symbol, symbolPrices) -> {
+                        StatsAccumulator stats = toAccumulator(symbol, storedStats.get(symbol));
+                        applyTicks(stats, symbolPrices);
+                        latestPrices.add(symbolPrices.get(symbolPrices.size() - 1));
+                        updatedStats.add(toAnnotatedStats(stats));
+                    });
+                    if (statsChanges != null) {
+                        statsChanges.addAll(updatedStats);
                     }
-                    
-                    return priceRepository.saveStats(updatedStats);
+
+                    return Mono.when(
+                            priceRepository.saveBatch(latestPrices, pricesBySymbol, updatedStats),
+                            symbolStateRegistry.save(pricesBySymbol.keySet()));
                 });
     }
 
     /**
-     * Update existing PriceStats with a new CryptoPrice.
-     * Calculate a new avg ( (oldAvg * oldCount) + newPrice ) / newCount
-     * @param stats Existing PriceStats object.
-     * @param price New CryptoPrice object.
-     * @return Updated PriceStats object.
+     * Apply the batch with one stats script call per symbol, issued together with the
+     * current price and history writes so they share pipelined flushes; the script calls
+     * in flight are bounded by the adaptive Redis concurrency limit.
+     * @param pricesBySymbol batch prices grouped per symbol, in consumption order.
+     * @param statsChanges receives the new stats, or null.
+     * @return Mono<Void>
+     */
+    private Mono<Void> processBatchWithAtomicStats(Map<String, List<CryptoPrice>> pricesBySymbol,
+                                                   Collection<PriceStats> statsChanges) {
+        List<CryptoPrice> latestPrices = new ArrayList<>(pricesBySymbol.size());
+        pricesBySymbol.values().forEach(symbolPrices -> latestPrices.add(symbolPrices.get(symbolPrices.size() - 1)));
+
+        Flux<Void> statsUpdates = Flux.fromIterable(pricesBySymbol.entrySet())
+                .flatMap(entry -> redisConcurrencyController.track(priceRepository.updateStatsAtomic(entry.getKey(), entry.getValue()))
+                        .doOnNext(result -> {
+                            recordAtomicStatsMetrics(result, entry.getValue());
+                            if (statsChanges != null) {
+                                statsChanges.add(result.getStats());
+                            }
+                        })
+                        .then(), redisConcurrencyController.limitFor(pricesBySymbol.size()));
+
+        return Flux.merge(priceRepository.saveBatch(latestPrices, pricesBySymbol, List.of()), statsUpdates)
+                .then(symbolStateRegistry.save(pricesBySymbol.keySet()));
+    }
+
+    /**
+     * Update the price statistics with the new price.
+     * In write-behind mode only the local stats are updated, and only by the owner of the
+     * symbol's partition; in script mode the whole read-modify-write runs inside Redis in one
+     * round trip, otherwise the stats are read, updated here and written back unless stats of
+     * a later tick were written meanwhile.
+     * @param price CryptoPrice object containing the new price details.
+     * @return Mono<Void>
+     */
+    private Mono<Void> updateStats(CryptoPrice price) {
+        List<String> symbols = List.of(price.getSymbol());
+        if (writeBehindStats) {
+            if (!localStatsStore.owns(price.getSymbol())) {
+                // A record from a retry topic, whose symbol's stats are owned by the consumer of its partition
+                return Mono.empty();
+            }
+            return localStatsStore.load(symbols)
+                    .then(symbolStateRegistry.load(symbols))
+                    .then(Mono.fromRunnable(() -> applyToLocalStats(price)));
+        }
+        if (atomicStats) {
+            return symbolStateRegistry.load(symbols)
+                    .then(priceRepository.updateStatsAtomic(price.getSymbol(), List.of(price)))
+                    .doOnNext(result -> recordAtomicStatsMetrics(result, List.of(price)))
+                    .then(symbolStateRegistry.save(symbols));
+        }
+        return symbolStateRegistry.load(symbols)
+                .then(priceRepository.getStats(price.getSymbol()))
+                .map(StatsAccumulator::fromPriceStats)
+                .defaultIfEmpty(new StatsAccumulator(price.getSymbol()))
+                .flatMap(stats -> {
+                    if (applyTicks(stats, List.of(price)).isEmpty()) {
+                        // Already in the stored stats, e.g. a retried record whose stats write succeeded
+                        return Mono.empty();
+                    }
+                    // Guarded by the tick time, so a delayed retry never overwrites stats of a later tick
+                    return Mono.when(
+                            priceRepository.saveStats(toAnnotatedStats(stats)),
+                            symbolStateRegistry.save(symbols));
+                })
+                .then();
+    }
+
+    private PriceStats toAnnotatedStats(StatsAccumulator stats) {
+        PriceStats priceStats = stats.toPriceStats();
+        symbolStateRegistry.annotate(priceStats);
+        return priceStats;
+    }
+
+    /**
+     * Update the locally owned stats of the price's symbol; they reach Redis on the next flush.
+     * @param price CryptoPrice object containing the new price details.
+     */
+    private void applyToLocalStats(CryptoPrice price) {
+        applyToLocalStats(price.getSymbol(), List.of(price));
+    }
+
+    /**
+     * Update the locally owned stats of a symbol with all of its ticks in the batch.
+     * @param symbol symbol of the prices.
+     * @param prices prices of the symbol, in consumption order.
+     * @return the ticks that were applied, see {@link #applyTicks}.
+     */
+    private List<CryptoPrice> applyToLocalStats(String symbol, List<CryptoPrice> prices) {
+        StatsAccumulator stats = localStatsStore.get(symbol);
+        if (stats == null) {
+            stats = new StatsAccumulator(symbol);
+            localStatsStore.put(stats);
+        }
+        List<CryptoPrice> applied = applyTicks(stats, prices);
+        localStatsStore.markUpdated(symbol);
+        return applied;
+    }
+
+    /**
+     * Fold a tick into the fixed-point stats and the symbol's quantile sketches, and record
+     * the stats gauges and, when there is a previous price, the price change alert metrics.
+     * The price is converted from BigDecimal once; everything after that is primitive arithmetic.
+     * A tick at or before the newest applied one is skipped, see {@link #unappliedTicks}.
+     * @param stats running stats of the price's symbol.
+     * @param price CryptoPrice that is applied.
      */
-    private PriceStats updateStatsWithNewPrice(PriceStats stats, CryptoPrice price) {
-        BigDecimal newPrice = price.getPriceUsd();
-
-        int newCount = stats.getSampleCount() + 1;
-        BigDecimal newAvg = stats.getAvgPrice()
-                .multiply(BigDecimal.valueOf(stats.getSampleCount()))
-                .add(newPrice)
-                .divide(BigDecimal.valueOf(newCount), 2, RoundingMode.HALF_UP);
-
-        return PriceStats.builder()
-                .symbol(stats.getSymbol())
-                .currentPrice(newPrice)
-                .minPrice(stats.getMinPrice().min(newPrice))
-                .maxPrice(stats.getMaxPrice().max(newPrice))
-                .avgPrice(newAvg)
-                .sampleCount(newCount)
-                .lastUpdated(Instant.now())
-                .build();
-        
-    }
-
-    private PriceStats createInitialStats(CryptoPrice price) {
-        return PriceStats.builder()
-                .symbol(price.getSymbol())
-                .currentPrice(price.getPriceUsd())
-                .minPrice(price.getPriceUsd())
-                .maxPrice(price.getPriceUsd())
-                .avgPrice(price.getPriceUsd())
-                .sampleCount(0)
-                .lastUpdated(Instant.now())
-                .build();
+    private void applyTick(StatsAccumulator stats, CryptoPrice price) {
+        long nowMillis = System.currentTimeMillis();
+        if (unappliedTicks(stats, List.of(price), nowMillis).isEmpty()) {
+            return;
+        }
+        long fixedPrice = FixedPoint.fromDecimal(price.getPriceUsd());
+        long tickMillis = tickMillis(price, nowMillis);
+        long previousPrice = stats.apply(fixedPrice, tickMillis, nowMillis);
+        boolean recorded = symbolStateRegistry.record(stats.getSymbol(), previousPrice, fixedPrice, tickMillis);
+
+        priceMetricsCollector.recordPriceStats(
+            stats.getSymbol(),
+            fixedPrice,
+            stats.getMinPrice(),
+            stats.getMaxPrice(),
+            stats.getAvgPrice(),
+            stats.getSampleCount()
+        );
+
+        // Check for price change alerts, unless the tick already raised them before a failed write
+        if (recorded && previousPrice > 0) {
+            priceMetricsCollector.recordPriceChange(stats.getSymbol(), previousPrice, fixedPrice);
+        }
+    }
+
+    /**
+     * Fold several ticks of one symbol at once. Derived state and price change alerts still
+     * see every tick, while min, max and average come from one pass of the batch stats kernel
+     * (SIMD when the Vector API is available) and the stats gauges are recorded once.
+     * Ticks at or before the newest applied one are skipped, see {@link #unappliedTicks}.
+     * @param stats running stats of the prices' symbol.
+     * @param prices prices of the symbol, in consumption order.
+     * @return the ticks that were applied, in consumption order.
+     */
+    private List<CryptoPrice> applyTicks(StatsAccumulator stats, List<CryptoPrice> prices) {
+        long nowMillis = System.currentTimeMillis();
+        List<CryptoPrice> unapplied = unappliedTicks(stats, prices, nowMillis);
+        if (unapplied.size() <= 1) {
+            unapplied.forEach(price -> applyTick(stats, price));
+            return unapplied;
+        }
+        long[] fixedPrices = new long[unapplied.size()];
+        long previousPrice = stats.getSampleCount() > 0 ? stats.getCurrentPrice() : -1L;
+        long lastTickMillis = StatsAccumulator.NO_TICK;
+        for (int i = 0; i < fixedPrices.length; i++) {
+            CryptoPrice price = unapplied.get(i);
+            long fixedPrice = FixedPoint.fromDecimal(price.getPriceUsd());
+            fixedPrices[i] = fixedPrice;
+            lastTickMillis = tickMillis(price, nowMillis);
+            if (symbolStateRegistry.record(stats.getSymbol(), previousPrice, fixedPrice, lastTickMillis) && previousPrice > 0) {
+                priceMetricsCollector.recordPriceChange(stats.getSymbol(), previousPrice, fixedPrice);
+            }
+            previousPrice = fixedPrice;
+        }
+
+        BatchStats batch = batchStatsKernel.compute(fixedPrices, fixedPrices.length);
+        stats.merge(batch, previousPrice, lastTickMillis, nowMillis);
+
+        priceMetricsCollector.recordPriceStats(
+            stats.getSymbol(),
+            previousPrice,
+            stats.getMinPrice(),
+            stats.getMaxPrice(),
+            stats.getAvgPrice(),
+            stats.getSampleCount()
+        );
+        return unapplied;
+    }
+
+    /**
+     * Ticks of a symbol that are not in its stats yet: later than the newest applied tick and
+     * than every earlier tick of the list. When a batch is redelivered after a failed write,
+     * e.g. by a retry, only the ticks that never reached the stats are folded again; a tick
+     * that really arrives late is dropped the same way. Both are counted as price.ticks.replayed.
+     * A tick without a timestamp counts as arriving now, as in the history stream.
+     * @return the prices themselves when nothing is skipped.
+     */
+    private List<CryptoPrice> unappliedTicks(StatsAccumulator stats, List<CryptoPrice> prices, long nowMillis) {
+        long lastTickMillis = stats.getLastTickMillis();
+        List<CryptoPrice> unapplied = null;
+        for (int i = 0; i < prices.size(); i++) {
+            CryptoPrice price = prices.get(i);
+            long tickMillis = tickMillis(price, nowMillis);
+            if (tickMillis > lastTickMillis) {
+                lastTickMillis = tickMillis;
+                if (unapplied != null) {
+                    unapplied.add(price);
+                }
+            } else if (unapplied == null) {
+                unapplied = new ArrayList<>(prices.subList(0, i));
+            }
+        }
+        if (unapplied == null) {
+            return prices;
+        }
+        priceMetricsCollector.recordReplayedTicks(stats.getSymbol(), prices.size() - unapplied.size());
+        return unapplied;
+    }
+
+    /**
+     * Record metrics for stats computed by the Redis script, converting at the JSON boundary.
+     * @param result script result with the new stats and the replaced price.
+     * @param prices prices applied by the script, in order.
+     */
+    private void recordAtomicStatsMetrics(StatsUpdateResult result, List<CryptoPrice> prices) {
+        long previousPrice = result.getPreviousPrice() != null ? FixedPoint.fromDecimal(result.getPreviousPrice()) : -1L;
+        for (CryptoPrice price : prices) {
+            long fixedPrice = FixedPoint.fromDecimal(price.getPriceUsd());
+            // Ticks already recorded were skipped by the script as well
+            if (symbolStateRegistry.record(price.getSymbol(), previousPrice, fixedPrice, tickMillis(price, System.currentTimeMillis()))
+                    && previousPrice > 0) {
+                priceMetricsCollector.recordPriceChange(price.getSymbol(), previousPrice, fixedPrice);
+            }
+            previousPrice = fixedPrice;
+        }
+
+        PriceStats stats = result.getStats();
+        priceMetricsCollector.recordPriceStats(
+            stats.getSymbol(),
+            FixedPoint.fromDecimal(stats.getCurrentPrice()),
+            FixedPoint.fromDecimal(stats.getMinPrice()),
+            FixedPoint.fromDecimal(stats.getMaxPrice()),
+            FixedPoint.fromDecimal(stats.getAvgPrice()),
+            stats.getSampleCount()
+        );
+    }
+
+    private static long tickMillis(CryptoPrice price, long fallbackMillis) {
+        return price.getTimestamp() != null ? price.getTimestamp().toEpochMilli() : fallbackMillis;
+    }
+
+    private StatsAccumulator toAccumulator(String symbol, PriceStats storedStats) {
+        return storedStats != null ? StatsAccumulator.fromPriceStats(storedStats) : new StatsAccumulator(symbol);
     }
 }
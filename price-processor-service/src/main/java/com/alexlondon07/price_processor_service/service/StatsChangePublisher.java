@@ -0,0 +1,55 @@
+package com.alexlondon07.price_processor_service.service;
+
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Publishes stats changes to the compacted crypto-price-stats topic, keyed by symbol.
+ * Called on the listener thread the sends join the container's Kafka transaction
+ * (see KafkaStatsTopicConfig); elsewhere, e.g. from a rebalance callback, they run in a
+ * transaction of their own. Disabled when that configuration is not active.
+ */
+@Component
+@Slf4j
+public class StatsChangePublisher {
+
+    private final KafkaTemplate<String, PriceStats> statsKafkaTemplate;
+
+    public StatsChangePublisher(ObjectProvider<KafkaTemplate<String, PriceStats>> statsKafkaTemplate) {
+        this.statsKafkaTemplate = statsKafkaTemplate.getIfAvailable();
+        log.info("Stats change topic: {}", isEnabled() ? Constants.TOPIC_CRYPTO_PRICE_STATS : "disabled");
+    }
+
+    public boolean isEnabled() {
+        return statsKafkaTemplate != null;
+    }
+
+    /**
+     * Send the latest stats of each symbol; sends are committed or aborted with the batch.
+     */
+    public void publish(Collection<PriceStats> changes) {
+        if (!isEnabled() || changes.isEmpty()) {
+            return;
+        }
+        if (statsKafkaTemplate.inTransaction()) {
+            send(statsKafkaTemplate, changes);
+        } else {
+            statsKafkaTemplate.executeInTransaction(template -> send(template, changes));
+        }
+        log.debug("Published {} stats changes", changes.size());
+    }
+
+    private static Void send(KafkaOperations<String, PriceStats> template, Collection<PriceStats> changes) {
+        for (PriceStats stats : changes) {
+            template.send(Constants.TOPIC_CRYPTO_PRICE_STATS, stats.getSymbol(), stats);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,102 @@
+package com.alexlondon07.price_processor_service.shard;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, pre-allocated multi-producer / single-consumer ring buffer.
+ * Producers claim a slot with one CAS on the tail and publish it by advancing the slot's
+ * sequence; the single consumer reads slots in order without any CAS. Nothing is
+ * allocated per entry.
+ * @param <T> entry type.
+ */
+public final class PriceRingBuffer<T> {
+
+    private final Object[] entries;
+    private final Object[] tags;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Only written by the consumer, once per drain; volatile for size() on other threads
+    private volatile long head;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two.
+     */
+    public PriceRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.entries = new Object[size];
+        this.tags = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * Publish an entry with an opaque tag travelling alongside it.
+     * @return false when the buffer is full.
+     */
+    public boolean offer(T entry, Object tag) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.getAcquire(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries[index] = entry;
+                    tags[index] = tag;
+                    sequences.setRelease(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Move up to maxEntries published entries, in order, into the given lists.
+     * Must only be called from the consumer thread.
+     * @return number of entries drained.
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(List<T> entriesOut, List<Object> tagsOut, int maxEntries) {
+        long position = head;
+        int drained = 0;
+        while (drained < maxEntries) {
+            int index = (int) (position & mask);
+            if (sequences.getAcquire(index) != position + 1) {
+                break;
+            }
+            entriesOut.add((T) entries[index]);
+            tagsOut.add(tags[index]);
+            entries[index] = null;
+            tags[index] = null;
+            sequences.setRelease(index, position + entries.length);
+            position++;
+            drained++;
+        }
+        if (drained > 0) {
+            head = position;
+        }
+        return drained;
+    }
+
+    /**
+     * @return approximate number of published entries not yet drained.
+     */
+    public long size() {
+        long consumed = head;
+        return Math.max(0, tail.get() - consumed);
+    }
+}
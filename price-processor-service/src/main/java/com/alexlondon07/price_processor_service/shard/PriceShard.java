@@ -0,0 +1,153 @@
+package com.alexlondon07.price_processor_service.shard;
+
+import com.alexlondon07.price_processor_service.aggregation.SymbolStateRegistry;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.repository.PriceRepository;
+import com.alexlondon07.price_processor_service.service.PriceStorageService;
+import com.alexlondon07.price_processor_service.state.StatsAccumulator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * One shard of the sharded engine: a dedicated thread draining its ring buffer.
+ * The stats of the symbols hashed to this shard live in a plain HashMap that only this
+ * thread touches. Each drain is folded in memory and written as one pipelined batch;
+ * the thread waits for Redis before draining again, so the ring buffer is the only
+ * queue and it is bounded.
+ * A failed write, of this shard or another one, redelivers the whole poll to every shard.
+ * The owned stats, derived state and candles skip ticks they already applied, so shards
+ * only write their state again instead of folding the ticks twice.
+ */
+@Slf4j
+final class PriceShard implements Runnable {
+
+    private static final long IDLE_PARK_NANOS = 100_000L;
+
+    private final int id;
+    private final PriceRingBuffer<CryptoPrice> ringBuffer;
+    private final PriceStorageService priceStorageService;
+    private final PriceRepository priceRepository;
+    private final SymbolStateRegistry symbolStateRegistry;
+    private final LongSupplier epoch;
+    private final int maxDrain;
+    private final Duration writeTimeout;
+    private final Counter ticksCounter;
+    private final Timer writeTimer;
+
+    private final Map<String, StatsAccumulator> ownedStats = new HashMap<>();
+    private final List<CryptoPrice> drainedPrices;
+    private final List<Object> drainedBatches;
+    private long seenEpoch;
+    private volatile boolean running = true;
+
+    PriceShard(int id,
+               int ringSize,
+               int maxDrain,
+               Duration writeTimeout,
+               PriceStorageService priceStorageService,
+               PriceRepository priceRepository,
+               SymbolStateRegistry symbolStateRegistry,
+               LongSupplier epoch,
+               MeterRegistry meterRegistry) {
+        this.id = id;
+        this.ringBuffer = new PriceRingBuffer<>(ringSize);
+        this.maxDrain = maxDrain;
+        this.writeTimeout = writeTimeout;
+        this.priceStorageService = priceStorageService;
+        this.priceRepository = priceRepository;
+        this.symbolStateRegistry = symbolStateRegistry;
+        this.epoch = epoch;
+        this.drainedPrices = new ArrayList<>(maxDrain);
+        this.drainedBatches = new ArrayList<>(maxDrain);
+        String shard = String.valueOf(id);
+        this.ticksCounter = Counter.builder("price.shard.ticks")
+                .description("Ticks written by a shard, rate per shard is ticks/sec per core")
+                .tag("shard", shard)
+                .register(meterRegistry);
+        this.writeTimer = Timer.builder("price.shard.write.duration")
+                .description("Fold and pipelined write of one shard drain")
+                .tag("shard", shard)
+                .register(meterRegistry);
+        meterRegistry.gauge("price.shard.queue.depth", Tags.of("shard", shard),
+                ringBuffer, PriceRingBuffer::size);
+    }
+
+    PriceRingBuffer<CryptoPrice> getRingBuffer() {
+        return ringBuffer;
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            int drained = ringBuffer.drain(drainedPrices, drainedBatches, maxDrain);
+            if (drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            evictIfRebalanced();
+            try {
+                writeTimer.record(this::processDrained);
+                ticksCounter.increment(drained);
+                drainedBatches.forEach(batch -> ((ShardBatch) batch).release());
+            } catch (RuntimeException e) {
+                log.error("Shard {} failed to store {} prices: {}", id, drained, e.getMessage());
+                // The folded state stays ahead of Redis: the redelivered ticks are skipped by the
+                // stats and derived state, and the next drain of their symbols writes it again
+                drainedBatches.forEach(batch -> ((ShardBatch) batch).fail(e));
+            } finally {
+                drainedPrices.clear();
+                drainedBatches.clear();
+            }
+        }
+    }
+
+    private void processDrained() {
+        Map<String, List<CryptoPrice>> pricesBySymbol = new LinkedHashMap<>();
+        for (CryptoPrice price : drainedPrices) {
+            pricesBySymbol.computeIfAbsent(price.getSymbol(), symbol -> new ArrayList<>()).add(price);
+        }
+
+        List<String> missing = pricesBySymbol.keySet().stream()
+                .filter(symbol -> !ownedStats.containsKey(symbol))
+                .toList();
+        if (!missing.isEmpty()) {
+            Map<String, PriceStats> loaded = priceRepository.getStats(missing).block(writeTimeout);
+            if (loaded != null) {
+                loaded.forEach((symbol, stats) -> ownedStats.put(symbol, StatsAccumulator.fromPriceStats(stats)));
+            }
+        }
+        symbolStateRegistry.load(pricesBySymbol.keySet()).block(writeTimeout);
+
+        priceStorageService.processOwnedBatch(pricesBySymbol, ownedStats).block(writeTimeout);
+    }
+
+    /**
+     * After a rebalance another instance may have written the symbols this shard owned,
+     * so drop the cached state and reload it from Redis on the next tick.
+     */
+    private void evictIfRebalanced() {
+        long currentEpoch = epoch.getAsLong();
+        if (currentEpoch != seenEpoch) {
+            ownedStats.keySet().forEach(symbolStateRegistry::evict);
+            ownedStats.clear();
+            seenEpoch = currentEpoch;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.alexlondon07.price_processor_service.shard;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Completion of one consumer batch spread over several shards: done once every tick
+ * has been written by its shard, failed as soon as one shard fails.
+ */
+final class ShardBatch {
+
+    private final AtomicInteger remaining;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    ShardBatch(int ticks) {
+        this.remaining = new AtomicInteger(ticks);
+        if (ticks == 0) {
+            done.complete(null);
+        }
+    }
+
+    void release() {
+        if (remaining.decrementAndGet() == 0) {
+            done.complete(null);
+        }
+    }
+
+    void fail(Throwable error) {
+        done.completeExceptionally(error);
+    }
+
+    CompletableFuture<Void> future() {
+        return done;
+    }
+}
@@ -0,0 +1,104 @@
+package com.alexlondon07.price_processor_service.shard;
+
+import com.alexlondon07.price_processor_service.aggregation.SymbolStateRegistry;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.repository.PriceRepository;
+import com.alexlondon07.price_processor_service.service.PriceStorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sharded processing engine (processor.listener.mode=sharded).
+ * Ticks are handed off from the Kafka consumer threads to one pre-allocated ring buffer
+ * per shard, one shard per core by default, picked by symbol hash. Parallelism is the
+ * shard count, no longer the partition count, and since a symbol always lands on the
+ * same shard its ticks stay in order and its state is only ever touched by one thread.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "processor.listener.mode", havingValue = "sharded")
+public class ShardedPriceEngine implements ConsumerAwareRebalanceListener {
+
+    private static final long FULL_PARK_NANOS = 10_000L;
+
+    private final PriceShard[] shards;
+    private final Thread[] threads;
+    private final AtomicLong epoch = new AtomicLong();
+
+    public ShardedPriceEngine(PriceStorageService priceStorageService,
+                              PriceRepository priceRepository,
+                              SymbolStateRegistry symbolStateRegistry,
+                              MeterRegistry meterRegistry,
+                              @Value("${processor.sharded.shards:0}") int shardCount,
+                              @Value("${processor.sharded.ring-size:8192}") int ringSize,
+                              @Value("${processor.sharded.max-drain:1024}") int maxDrain,
+                              @Value("${processor.sharded.write-timeout:30s}") Duration writeTimeout) {
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new PriceShard[count];
+        this.threads = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new PriceShard(i, ringSize, maxDrain, writeTimeout, priceStorageService, priceRepository,
+                    symbolStateRegistry, epoch::get, meterRegistry);
+            threads[i] = new Thread(shards[i], "price-shard-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        log.info("Started {} price shards with ring buffers of {} entries", count, shards[0].getRingBuffer().capacity());
+    }
+
+    /**
+     * Hand a consumer batch to the shards.
+     * Blocks while a shard's ring buffer is full, which pushes back on the consumer.
+     * @param prices ticks in consumption order.
+     * @return future completing once every tick has been written to Redis.
+     */
+    public CompletableFuture<Void> submit(List<CryptoPrice> prices) {
+        ShardBatch batch = new ShardBatch(prices.size());
+        for (CryptoPrice price : prices) {
+            PriceRingBuffer<CryptoPrice> ringBuffer = shards[shardOf(price.getSymbol())].getRingBuffer();
+            while (!ringBuffer.offer(price, batch)) {
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+        }
+        return batch.future();
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        epoch.incrementAndGet();
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        epoch.incrementAndGet();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (PriceShard shard : shards) {
+            shard.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join(Duration.ofSeconds(5).toMillis());
+        }
+    }
+
+    private int shardOf(String symbol) {
+        int hash = symbol.hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shards.length;
+    }
+}
@@ -0,0 +1,250 @@
+package com.alexlondon07.price_processor_service.state;
+
+import com.alexlondon07.price_processor_service.aggregation.CandleAggregator;
+import com.alexlondon07.price_processor_service.aggregation.SymbolStateRegistry;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.repository.PriceRepository;
+import com.alexlondon07.price_processor_service.service.StatsChangePublisher;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Everything folded in memory while the processor is in conflated catch-up mode: stats
+ * (unless write-behind already owns them), the history ticks not yet appended (only the
+ * newest processor.history.max-length per symbol, older ones would be trimmed anyway);
+ * finished candles stay queued in the CandleAggregator meanwhile. It is flushed in one
+ * pipelined batch when per-tick processing resumes and before partitions are revoked.
+ * <p>
+ * A flush writes a copy and only removes what it wrote once Redis acknowledged it, so a
+ * failed flush keeps everything for the next attempt. The listeners only acknowledge
+ * offsets while the buffer is empty, so records whose state is only held here are
+ * consumed again after a crash or rebalance.
+ */
+@Component
+@Slf4j
+public class ConflationBuffer implements ConsumerAwareRebalanceListener {
+
+    private static final Duration REBALANCE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final PriceRepository priceRepository;
+    private final SymbolStateRegistry symbolStateRegistry;
+    private final CandleAggregator candleAggregator;
+    private final LocalStatsStore localStatsStore;
+    private final StatsChangePublisher statsChangePublisher;
+    private final long historyMaxLength;
+
+    private final Map<String, StatsAccumulator> statsBySymbol = new ConcurrentHashMap<>();
+    private final Map<String, ArrayDeque<CryptoPrice>> historyBySymbol = new ConcurrentHashMap<>();
+    // Bumped under the stats entry lock by every fold, so a flush can tell whether it wrote the latest stats
+    private final Map<String, Long> statsVersions = new ConcurrentHashMap<>();
+    private final AtomicReference<Mono<Void>> inFlightFlush = new AtomicReference<>();
+
+    public ConflationBuffer(PriceRepository priceRepository,
+                            SymbolStateRegistry symbolStateRegistry,
+                            CandleAggregator candleAggregator,
+                            LocalStatsStore localStatsStore,
+                            StatsChangePublisher statsChangePublisher,
+                            @Value("${processor.history.max-length:10000}") long historyMaxLength) {
+        this.priceRepository = priceRepository;
+        this.symbolStateRegistry = symbolStateRegistry;
+        this.candleAggregator = candleAggregator;
+        this.localStatsStore = localStatsStore;
+        this.statsChangePublisher = statsChangePublisher;
+        this.historyMaxLength = historyMaxLength;
+    }
+
+    /**
+     * Whether nothing is buffered, i.e. every record consumed so far is stored in Redis.
+     */
+    public boolean isEmpty() {
+        return statsBySymbol.isEmpty() && historyBySymbol.isEmpty();
+    }
+
+    public boolean hasStats(String symbol) {
+        return statsBySymbol.containsKey(symbol);
+    }
+
+    public void putStatsIfAbsent(StatsAccumulator stats) {
+        statsBySymbol.putIfAbsent(stats.getSymbol(), stats);
+    }
+
+    /**
+     * Fold a symbol's ticks into its buffered stats and buffer the ticks the folder applied
+     * for history, so a tick redelivered after a failed batch is buffered only once.
+     * Both happen under the map entries' locks, so a concurrent flush never loses a tick.
+     * @param statsFolder applies the ticks to the symbol's stats and returns the applied ones.
+     */
+    public void fold(String symbol, Function<StatsAccumulator, List<CryptoPrice>> statsFolder) {
+        List<List<CryptoPrice>> applied = new ArrayList<>(1);
+        statsBySymbol.compute(symbol, (key, stats) -> {
+            StatsAccumulator folded = stats != null ? stats : new StatsAccumulator(key);
+            applied.add(statsFolder.apply(folded));
+            statsVersions.merge(key, 1L, Long::sum);
+            return folded;
+        });
+        foldHistory(symbol, applied.get(0));
+    }
+
+    /**
+     * Buffer a symbol's ticks for history only, when its stats are owned elsewhere (write-behind).
+     * @param prices ticks applied to the stats, in consumption order.
+     */
+    public void foldHistory(String symbol, List<CryptoPrice> prices) {
+        if (prices.isEmpty()) {
+            return;
+        }
+        historyBySymbol.compute(symbol, (key, history) -> {
+            ArrayDeque<CryptoPrice> buffered = history != null ? history : new ArrayDeque<>();
+            buffered.addAll(prices);
+            while (buffered.size() > historyMaxLength) {
+                buffered.pollFirst();
+            }
+            return buffered;
+        });
+    }
+
+    /**
+     * Write everything buffered and remove what was written. Stats are removed from the
+     * buffer so the next conflated batch reloads them from Redis, unless they were folded
+     * again meanwhile. Only one flush runs at a time: a caller arriving while one is in
+     * flight waits for it and then flushes what was folded since.
+     * @param statsChanges thread-safe collection receiving the stats of every flushed symbol
+     *                     once they are written, to be published as change events, or null.
+     * @return Mono<Void> failing, with the buffer left intact, when the write fails.
+     */
+    public Mono<Void> flush(Collection<PriceStats> statsChanges) {
+        return Mono.defer(() -> {
+            Mono<Void> running = inFlightFlush.get();
+            if (running != null) {
+                return running.then(Mono.defer(() -> flush(statsChanges)));
+            }
+            if (isEmpty()) {
+                return Mono.empty();
+            }
+            AtomicReference<Mono<Void>> self = new AtomicReference<>();
+            Mono<Void> started = Mono.defer(() -> write(statsChanges))
+                    .doFinally(signal -> inFlightFlush.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(started);
+            if (!inFlightFlush.compareAndSet(null, started)) {
+                return flush(statsChanges);
+            }
+            return started;
+        });
+    }
+
+    private Mono<Void> write(Collection<PriceStats> statsChanges) {
+        Set<String> symbols = new HashSet<>(statsBySymbol.keySet());
+        symbols.addAll(historyBySymbol.keySet());
+
+        List<PriceStats> stats = new ArrayList<>(statsBySymbol.size());
+        Map<String, Long> writtenVersions = new HashMap<>();
+        Map<String, List<CryptoPrice>> history = new HashMap<>();
+        for (String symbol : symbols) {
+            statsBySymbol.computeIfPresent(symbol, (key, accumulator) -> {
+                stats.add(annotated(accumulator));
+                writtenVersions.put(key, statsVersions.getOrDefault(key, 0L));
+                return accumulator;
+            });
+            historyBySymbol.computeIfPresent(symbol, (key, buffered) -> {
+                history.put(key, new ArrayList<>(buffered));
+                return buffered;
+            });
+        }
+        return Mono.when(
+                        priceRepository.saveBatch(List.of(), history, stats),
+                        symbolStateRegistry.save(symbols),
+                        candleAggregator.saveFinished())
+                .doOnSuccess(v -> {
+                    removeWritten(writtenVersions, history);
+                    if (statsChanges != null) {
+                        statsChanges.addAll(stats);
+                        // Under write-behind only history was buffered, the stats live in the local store
+                        history.keySet().stream()
+                                .filter(symbol -> !writtenVersions.containsKey(symbol))
+                                .map(localStatsStore::get)
+                                .filter(local -> local != null)
+                                .forEach(local -> statsChanges.add(annotated(local)));
+                    }
+                    log.info("Flushed conflated state for {} symbols", symbols.size());
+                })
+                .doOnError(error -> log.error("Error flushing conflated state for {} symbols, keeping it buffered: {}",
+                        symbols.size(), error.getMessage()));
+    }
+
+    private PriceStats annotated(StatsAccumulator stats) {
+        PriceStats priceStats = stats.toPriceStats();
+        symbolStateRegistry.annotate(priceStats);
+        return priceStats;
+    }
+
+    private void removeWritten(Map<String, Long> writtenVersions, Map<String, List<CryptoPrice>> history) {
+        writtenVersions.forEach((symbol, version) -> statsBySymbol.computeIfPresent(symbol, (key, accumulator) -> {
+            if (!version.equals(statsVersions.getOrDefault(key, 0L))) {
+                return accumulator;
+            }
+            statsVersions.remove(key);
+            return null;
+        }));
+        history.forEach((symbol, written) -> historyBySymbol.computeIfPresent(symbol, (key, buffered) -> {
+            // Ticks are only added at the tail and trimmed at the head, so the written ones still buffered lead the deque
+            Set<CryptoPrice> writtenTicks = Collections.newSetFromMap(new IdentityHashMap<>());
+            writtenTicks.addAll(written);
+            while (!buffered.isEmpty() && writtenTicks.contains(buffered.peekFirst())) {
+                buffered.pollFirst();
+            }
+            return buffered.isEmpty() ? null : buffered;
+        }));
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsRevoked();
+    }
+
+    /**
+     * Flush synchronously so the next owner of the partitions starts from complete state,
+     * and publish the flushed stats in a transaction of their own when the stats change
+     * topic is enabled. When the flush fails the buffer is dropped instead of being written
+     * later over the next owner's state; its offsets were never acknowledged, so the records
+     * are replayed.
+     */
+    public void partitionsRevoked() {
+        Queue<PriceStats> statsChanges = statsChangePublisher.isEnabled() ? new ConcurrentLinkedQueue<>() : null;
+        try {
+            flush(statsChanges).block(REBALANCE_TIMEOUT);
+        } catch (RuntimeException e) {
+            log.error("Discarding conflated state, its records are consumed again: {}", e.getMessage());
+            statsBySymbol.clear();
+            historyBySymbol.clear();
+            statsVersions.clear();
+            return;
+        }
+        if (statsChanges != null) {
+            statsChangePublisher.publish(statsChanges);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.alexlondon07.price_processor_service.state;
+
+import com.alexlondon07.price_processor_service.aggregation.SymbolStateRegistry;
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.repository.PriceRepository;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.SymbolPartitioner;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind, partition-aware store of PriceStats (processor.stats.mode=write-behind).
+ * Kafka keys prices by symbol, so the consumer owning a partition owns the stats of every
+ * symbol hashed to it: they are loaded with one MGET when a batch first meets the symbol,
+ * updated here in fixed point on each tick and written to crypto:stats:* with one MSET per flush instead of a GET and a
+ * SET per tick; derived per-symbol state from the SymbolStateRegistry follows the same lifecycle.
+ * Flushes happen on an interval or after a number of updates, and synchronously before a partition is revoked so the next owner reads fresh stats.
+ * Only one flush runs at a time, the revoke flush waits for a running one.
+ */
+@Component
+@Slf4j
+public class LocalStatsStore implements ConsumerAwareRebalanceListener {
+
+    private static final Duration REBALANCE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final PriceRepository priceRepository;
+    private final SymbolStateRegistry symbolStateRegistry;
+    private final boolean enabled;
+    private final int flushDirtyCount;
+
+    private final Map<String, StatsAccumulator> statsBySymbol = new ConcurrentHashMap<>();
+    private final Set<String> dirtySymbols = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pendingUpdates = new AtomicInteger();
+    private final AtomicReference<Mono<Void>> inFlightFlush = new AtomicReference<>();
+    private final Set<Integer> ownedPartitions = ConcurrentHashMap.newKeySet();
+    private volatile int partitionCount;
+
+    public LocalStatsStore(PriceRepository priceRepository,
+                           SymbolStateRegistry symbolStateRegistry,
+                           @Value("${processor.stats.mode:" + Constants.STATS_MODE_READ_MODIFY_WRITE + "}") String statsMode,
+                           @Value("${processor.stats.flush-dirty-count:500}") int flushDirtyCount) {
+        this.priceRepository = priceRepository;
+        this.symbolStateRegistry = symbolStateRegistry;
+        this.enabled = Constants.STATS_MODE_WRITE_BEHIND.equals(statsMode);
+        this.flushDirtyCount = flushDirtyCount;
+    }
+
+    public StatsAccumulator get(String symbol) {
+        return statsBySymbol.get(symbol);
+    }
+
+    public void put(StatsAccumulator stats) {
+        statsBySymbol.put(stats.getSymbol(), stats);
+    }
+
+    /**
+     * Load the stored stats of symbols not held in memory yet, e.g. the first ticks of a
+     * symbol after its partition was assigned. Symbols without stored stats start empty.
+     * @param symbols symbols about to be updated.
+     * @return Mono<Void>
+     */
+    public Mono<Void> load(Collection<String> symbols) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            List<String> missing = symbols.stream()
+                    .filter(symbol -> !statsBySymbol.containsKey(symbol))
+                    .toList();
+            if (missing.isEmpty()) {
+                return Mono.empty();
+            }
+            return priceRepository.getStats(missing)
+                    .doOnNext(loaded -> loaded.forEach((symbol, stats) ->
+                            statsBySymbol.putIfAbsent(symbol, StatsAccumulator.fromPriceStats(stats))))
+                    .then();
+        });
+    }
+
+    /**
+     * Mark the stats of a symbol for the next flush.
+     * Triggers an early flush once enough updates have piled up.
+     */
+    public void markUpdated(String symbol) {
+        dirtySymbols.add(symbol);
+        if (pendingUpdates.incrementAndGet() >= flushDirtyCount) {
+            flush().subscribe();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${processor.stats.flush-interval:5000}")
+    public void scheduledFlush() {
+        if (enabled) {
+            flush().subscribe();
+        }
+    }
+
+    /**
+     * Write every dirty symbol's stats with a single MSET, unless a flush is already running.
+     * Symbols whose write fails are marked dirty again.
+     */
+    public Mono<Void> flush() {
+        if (dirtySymbols.isEmpty()) {
+            return Mono.empty();
+        }
+        return exclusiveFlush(() -> new ArrayList<>(dirtySymbols), false);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether the symbol hashes to a partition of the prices topic assigned to this instance,
+     * i.e. whether its stats are held here rather than by another consumer.
+     */
+    public boolean owns(String symbol) {
+        return ownedPartitions.contains(partitionOf(symbol));
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!enabled || partitions.isEmpty()) {
+            return;
+        }
+        partitionsAssigned(partitions, consumer.partitionsFor(Constants.TOPIC_CRYPTO_PRICES).size());
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsRevoked(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsLost(partitions);
+    }
+
+    /**
+     * Take ownership of the symbols hashed to the assigned partitions. Their stats are
+     * loaded by {@link #load} when their first ticks arrive, so an assignment costs no
+     * Redis round trip however many symbols are stored.
+     * @param partitionCount number of partitions of the prices topic.
+     */
+    public void partitionsAssigned(Collection<TopicPartition> partitions, int partitionCount) {
+        if (!enabled || partitions.isEmpty()) {
+            return;
+        }
+        this.partitionCount = partitionCount;
+        Set<Integer> assigned = partitionNumbers(partitions);
+        ownedPartitions.addAll(assigned);
+        log.info("Assigned stats of partitions {}", assigned);
+    }
+
+    /**
+     * Flush and release the stats of symbols hashed to the revoked partitions, along with
+     * the complete derived state of their trackers.
+     */
+    public void partitionsRevoked(Collection<TopicPartition> partitions) {
+        if (!enabled || partitions.isEmpty()) {
+            return;
+        }
+        Set<Integer> revoked = partitionNumbers(partitions);
+        ownedPartitions.removeAll(revoked);
+        List<String> revokedSymbols = symbolsOf(revoked);
+        // Waits for a running flush, whose failed symbols are dirty again by then and written here.
+        // The trackers' own saves are throttled, the next owner has to find their complete state
+        Mono.when(exclusiveFlush(() -> revokedSymbols, true), symbolStateRegistry.saveNow(revokedSymbols))
+                .block(REBALANCE_TIMEOUT);
+        revokedSymbols.forEach(symbol -> {
+            statsBySymbol.remove(symbol);
+            dirtySymbols.remove(symbol);
+            symbolStateRegistry.evict(symbol);
+        });
+        log.info("Flushed and released stats for {} symbols of revoked partitions", revokedSymbols.size());
+    }
+
+    /**
+     * Release the stats of symbols hashed to lost partitions without writing them.
+     */
+    public void partitionsLost(Collection<TopicPartition> partitions) {
+        if (!enabled || partitions.isEmpty()) {
+            return;
+        }
+        // Another member may already own these partitions, so drop the state without writing it
+        Set<Integer> lost = partitionNumbers(partitions);
+        ownedPartitions.removeAll(lost);
+        List<String> lostSymbols = symbolsOf(lost);
+        lostSymbols.forEach(symbol -> {
+            statsBySymbol.remove(symbol);
+            dirtySymbols.remove(symbol);
+            symbolStateRegistry.evict(symbol);
+        });
+        log.warn("Dropped stats for {} symbols of lost partitions", lostSymbols.size());
+    }
+
+    /**
+     * Run a flush of the supplied symbols unless another flush is in flight.
+     * @param symbols evaluated once the flush starts.
+     * @param awaitRunning wait for a running flush and flush afterwards instead of skipping.
+     */
+    private Mono<Void> exclusiveFlush(Supplier<List<String>> symbols, boolean awaitRunning) {
+        return Mono.defer(() -> {
+            Mono<Void> running = inFlightFlush.get();
+            if (running != null) {
+                return awaitRunning
+                        ? running.onErrorResume(error -> Mono.empty()).then(exclusiveFlush(symbols, true))
+                        : Mono.empty();
+            }
+            AtomicReference<Mono<Void>> self = new AtomicReference<>();
+            Mono<Void> started = Mono.defer(() -> flushSymbols(symbols.get()))
+                    .doFinally(signal -> inFlightFlush.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(started);
+            if (!inFlightFlush.compareAndSet(null, started)) {
+                return exclusiveFlush(symbols, awaitRunning);
+            }
+            return started;
+        });
+    }
+
+    private Mono<Void> flushSymbols(List<String> symbols) {
+        List<PriceStats> dirtyStats = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            if (dirtySymbols.remove(symbol)) {
+                StatsAccumulator stats = statsBySymbol.get(symbol);
+                if (stats != null) {
+                    PriceStats priceStats = stats.toPriceStats();
+                    symbolStateRegistry.annotate(priceStats);
+                    dirtyStats.add(priceStats);
+                }
+            }
+        }
+        if (dirtyStats.isEmpty()) {
+            return Mono.empty();
+        }
+        pendingUpdates.set(0);
+        List<String> flushedSymbols = dirtyStats.stream().map(PriceStats::getSymbol).toList();
+        return Mono.when(
+                        priceRepository.saveBatch(List.of(), Map.of(), dirtyStats),
+                        symbolStateRegistry.save(flushedSymbols))
+                .doOnSuccess(v -> log.info("Flushed stats for {} symbols", dirtyStats.size()))
+                .doOnError(error -> {
+                    dirtyStats.forEach(stats -> dirtySymbols.add(stats.getSymbol()));
+                    log.error("Error flushing stats for {} symbols: {}", dirtyStats.size(), error.getMessage());
+                });
+    }
+
+    int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * @return symbols held in memory, grouped by the partition they hash to.
+     */
+    Map<Integer, List<String>> symbolsByPartition(Set<Integer> partitions) {
+        Map<Integer, List<String>> symbols = new HashMap<>();
+        for (String symbol : statsBySymbol.keySet()) {
+            int partition = partitionOf(symbol);
+            if (partitions.contains(partition)) {
+                symbols.computeIfAbsent(partition, key -> new ArrayList<>()).add(symbol);
+            }
+        }
+        return symbols;
+    }
+
+    private List<String> symbolsOf(Set<Integer> partitions) {
+        return statsBySymbol.keySet().stream()
+                .filter(symbol -> partitions.contains(partitionOf(symbol)))
+                .toList();
+    }
+
+    private int partitionOf(String symbol) {
+        return SymbolPartitioner.partitionOf(symbol, partitionCount);
+    }
+
+    private static Set<Integer> partitionNumbers(Collection<TopicPartition> partitions) {
+        Set<Integer> numbers = ConcurrentHashMap.newKeySet();
+        for (TopicPartition partition : partitions) {
+            if (Constants.TOPIC_CRYPTO_PRICES.equals(partition.topic())) {
+                numbers.add(partition.partition());
+            }
+        }
+        return numbers;
+    }
+}
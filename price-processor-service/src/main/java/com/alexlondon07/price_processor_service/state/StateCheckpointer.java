@@ -0,0 +1,442 @@
+package com.alexlondon07.price_processor_service.state;
+
+import com.alexlondon07.price_processor_service.aggregation.CandleAggregator;
+import com.alexlondon07.price_processor_service.aggregation.SymbolStateRegistry;
+import com.alexlondon07.price_processor_service.flow.ConflationController;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Periodic checkpoint of the in-memory aggregation state (write-behind stats, sketches and
+ * rolling windows, open candles) to a local memory-mapped file, tagged with the next offset
+ * of every partition the state covers (processor.checkpoint.*).
+ * Batches run under a shared lock and record their offsets when done; a checkpoint takes the
+ * exclusive lock just long enough to serialize, so the state and the offsets always match.
+ * The file is written through a mapping of a temporary file and atomically moved in place.
+ * On startup the file is mapped and validated; when a partition is assigned, the state of its
+ * symbols is restored from it and the partition is sought to the checkpointed offset, so the
+ * records after it are replayed on top and nothing is read back from Redis for those symbols.
+ * Records replayed past what was already written are skipped by the stats, history and
+ * time-series store, which all ignore ticks at or before the newest one they hold, and by the
+ * candles, which recognise the ticks they applied recently.
+ * Requires the write-behind stats mode, the batch or reactive listener and stream or chunked history,
+ * and cannot be combined with the stats change topic: the replay from a checkpoint starts
+ * behind offsets whose stats changes were already committed, and would publish them again.
+ */
+@Component
+@Slf4j
+public class StateCheckpointer implements ConsumerAwareRebalanceListener {
+
+    private static final int MAGIC = 0x50434B50;  // "PCKP"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 8;
+    private static final Duration LOCK_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration READ_LOCK_RETRY = Duration.ofMillis(1);
+
+    private final LocalStatsStore localStatsStore;
+    private final SymbolStateRegistry symbolStateRegistry;
+    private final CandleAggregator candleAggregator;
+    private final ConflationController conflationController;
+    private final ConflationBuffer conflationBuffer;
+    private final Path path;
+    private final Duration maxAge;
+    private final boolean enabled;
+    private final Timer writeTimer;
+    private final AtomicLong checkpointBytes = new AtomicLong();
+
+    private final StampedLock lock = new StampedLock();
+    private final Map<Integer, Long> nextOffsets = new ConcurrentHashMap<>();
+    private final Map<Integer, PartitionCheckpoint> pendingRestore = new ConcurrentHashMap<>();
+    private volatile int checkpointPartitionCount;
+    private volatile long checkpointCreatedMillis;
+
+    public StateCheckpointer(LocalStatsStore localStatsStore,
+                             SymbolStateRegistry symbolStateRegistry,
+                             CandleAggregator candleAggregator,
+                             ConflationController conflationController,
+                             ConflationBuffer conflationBuffer,
+                             MeterRegistry meterRegistry,
+                             @Value("${processor.checkpoint.enabled:false}") boolean enabled,
+                             @Value("${processor.checkpoint.path:data/price-processor.checkpoint}") String path,
+                             @Value("${processor.checkpoint.max-age:10m}") Duration maxAge,
+                             @Value("${processor.listener.mode:record}") String listenerMode,
+                             @Value("${processor.history.format:" + Constants.HISTORY_FORMAT_STREAM + "}") String historyFormat,
+                             @Value("${processor.stats-topic.enabled:false}") boolean statsTopicEnabled) {
+        this.localStatsStore = localStatsStore;
+        this.symbolStateRegistry = symbolStateRegistry;
+        this.candleAggregator = candleAggregator;
+        this.conflationController = conflationController;
+        this.conflationBuffer = conflationBuffer;
+        this.path = Path.of(path);
+        this.maxAge = maxAge;
+        boolean supportedMode = "batch".equals(listenerMode) || "reactive".equals(listenerMode);
+        // Replayed records were already appended to the history; only stream and chunked history skip them
+        boolean supportedHistory = !Constants.HISTORY_FORMAT_LIST.equals(historyFormat);
+        if (enabled && (!localStatsStore.isEnabled() || !supportedMode || !supportedHistory)) {
+            log.warn("State checkpoints need processor.stats.mode={}, the batch or reactive listener and stream or chunked history, disabling them",
+                    Constants.STATS_MODE_WRITE_BEHIND);
+        }
+        this.enabled = enabled && localStatsStore.isEnabled() && supportedMode && supportedHistory;
+        if (this.enabled && statsTopicEnabled && "batch".equals(listenerMode)) {
+            throw new IllegalStateException("processor.checkpoint.enabled cannot be combined with processor.stats-topic.enabled: "
+                    + "replaying from a checkpoint would publish stats changes of committed offsets again");
+        }
+        this.writeTimer = Timer.builder("price.checkpoint.write")
+                .description("Time to serialize and write a state checkpoint")
+                .register(meterRegistry);
+        meterRegistry.gauge("price.checkpoint.bytes", checkpointBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Run a batch under the shared lock and, once it succeeded, record the offsets after its records.
+     * The batch is only assembled once the lock is held, since assembling it already folds
+     * the ticks into the in-memory state a checkpoint serializes. The lock is never waited
+     * for on the calling thread, which may be an event loop: while a checkpoint holds it the
+     * attempt is repeated on a timer.
+     * @param records records of the batch, including skipped ones.
+     * @param batch assembles the processing of the batch.
+     * @return Mono<Void>
+     */
+    public Mono<Void> track(Collection<? extends ConsumerRecord<?, ?>> records, Supplier<Mono<Void>> batch) {
+        if (!enabled) {
+            return Mono.defer(batch);
+        }
+        // StampedLock is not owned by a thread, so the batch may complete on another one
+        Mono<Long> readLock = Mono.fromCallable(lock::tryReadLock)
+                .filter(stamp -> stamp != 0L)
+                .repeatWhenEmpty(attempts -> attempts.delayElements(READ_LOCK_RETRY));
+        return Mono.usingWhen(
+                readLock,
+                stamp -> Mono.defer(batch).then(Mono.fromRunnable(() -> markProcessed(records))),
+                stamp -> Mono.fromRunnable(() -> lock.unlockRead(stamp)));
+    }
+
+    /**
+     * Map the checkpoint file and keep its per-partition state until the partitions are assigned.
+     */
+    @PostConstruct
+    public void load() {
+        if (!enabled || !Files.exists(path)) {
+            return;
+        }
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                log.warn("Ignoring checkpoint {}, unknown format", path);
+                return;
+            }
+            long createdMillis = buffer.getLong();
+            int payloadLength = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (payloadLength != buffer.remaining() || crc(buffer.slice(HEADER_BYTES, payloadLength)) != checksum) {
+                log.warn("Ignoring checkpoint {}, checksum mismatch", path);
+                return;
+            }
+            if (System.currentTimeMillis() - createdMillis > maxAge.toMillis()) {
+                log.info("Ignoring checkpoint {}, older than {}", path, maxAge);
+                return;
+            }
+            readPayload(buffer);
+            checkpointCreatedMillis = createdMillis;
+            log.info("Mapped checkpoint of {} partitions in {} ms", pendingRestore.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException | RuntimeException e) {
+            pendingRestore.clear();
+            log.warn("Ignoring unreadable checkpoint {}: {}", path, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${processor.checkpoint.interval:30000}")
+    public void scheduledCheckpoint() {
+        if (enabled) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Write a checkpoint of every partition that has processed offsets.
+     * Skipped while conflating or until the conflated state is flushed, since conflated
+     * ticks are buffered outside the local stats and would be skipped by the replay.
+     */
+    public void checkpoint() {
+        if (nextOffsets.isEmpty() || conflationController.isActive() || !conflationBuffer.isEmpty()) {
+            return;
+        }
+        writeTimer.record(() -> {
+            byte[] payload;
+            long stamp;
+            try {
+                stamp = lock.tryWriteLock(LOCK_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (stamp == 0L) {
+                log.warn("Skipping checkpoint, batches kept the state busy for {}", LOCK_TIMEOUT);
+                return;
+            }
+            try {
+                payload = writePayload();
+            } catch (IOException e) {
+                log.error("Error serializing checkpoint: {}", e.getMessage());
+                return;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            try {
+                writeFile(payload);
+                checkpointBytes.set(HEADER_BYTES + payload.length);
+            } catch (IOException e) {
+                log.error("Error writing checkpoint {}: {}", path, e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!enabled || partitions.isEmpty()) {
+            return;
+        }
+        partitionsAssigned(partitions, consumer.partitionsFor(Constants.TOPIC_CRYPTO_PRICES).size())
+                .forEach(consumer::seek);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsRevoked(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsRevoked(partitions);
+    }
+
+    /**
+     * Restore the checkpointed state of the assigned partitions. Has to run before the
+     * local stats load, which then skips the restored symbols.
+     * @param partitionCount number of partitions of the prices topic.
+     * @return offset to seek to for every restored partition.
+     */
+    public Map<TopicPartition, Long> partitionsAssigned(Collection<TopicPartition> partitions, int partitionCount) {
+        if (!enabled || pendingRestore.isEmpty()) {
+            return Map.of();
+        }
+        if (partitionCount != checkpointPartitionCount
+                || System.currentTimeMillis() - checkpointCreatedMillis > maxAge.toMillis()) {
+            // Symbols would hash to other partitions, or the replay would be too long
+            log.info("Discarding checkpoint, partition count changed or older than {}", maxAge);
+            pendingRestore.clear();
+            return Map.of();
+        }
+
+        long started = System.nanoTime();
+        Map<TopicPartition, Long> seekOffsets = new HashMap<>();
+        int symbols = 0;
+        for (TopicPartition partition : partitions) {
+            if (!Constants.TOPIC_CRYPTO_PRICES.equals(partition.topic())) {
+                continue;
+            }
+            PartitionCheckpoint checkpoint = pendingRestore.remove(partition.partition());
+            if (checkpoint == null) {
+                continue;
+            }
+            for (SymbolCheckpoint symbol : checkpoint.symbols()) {
+                localStatsStore.put(symbol.stats());
+                symbol.trackerStates().forEach((prefix, encoded) ->
+                        symbolStateRegistry.restore(prefix, symbol.symbol(), encoded));
+                if (symbol.candles() != null) {
+                    candleAggregator.restore(symbol.symbol(), symbol.candles());
+                }
+            }
+            symbols += checkpoint.symbols().size();
+            nextOffsets.put(partition.partition(), checkpoint.nextOffset());
+            seekOffsets.put(partition, checkpoint.nextOffset());
+        }
+        if (!seekOffsets.isEmpty()) {
+            log.info("Restored {} symbols from checkpoint in {} ms, resuming at {}", symbols,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), seekOffsets);
+        }
+        return seekOffsets;
+    }
+
+    public void partitionsRevoked(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            if (Constants.TOPIC_CRYPTO_PRICES.equals(partition.topic())) {
+                nextOffsets.remove(partition.partition());
+            }
+        }
+    }
+
+    private void markProcessed(Collection<? extends ConsumerRecord<?, ?>> records) {
+        for (ConsumerRecord<?, ?> record : records) {
+            nextOffsets.merge(record.partition(), record.offset() + 1, Math::max);
+        }
+    }
+
+    /**
+     * Payload layout: partition count, then per partition its number, next offset and symbols;
+     * per symbol its name, stats, tracker states by key prefix and open candles (length 0 when none).
+     */
+    private byte[] writePayload() throws IOException {
+        Map<Integer, Long> offsets = new HashMap<>(nextOffsets);
+        Map<Integer, List<String>> symbolsByPartition = localStatsStore.symbolsByPartition(offsets.keySet());
+        List<String> allSymbols = new ArrayList<>();
+        symbolsByPartition.values().forEach(allSymbols::addAll);
+        Map<String, Map<String, String>> trackerStates = symbolStateRegistry.snapshot(allSymbols);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream candleBytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes);
+             DataOutputStream candleOut = new DataOutputStream(candleBytes)) {
+            out.writeInt(localStatsStore.getPartitionCount());
+            out.writeInt(offsets.size());
+            for (Map.Entry<Integer, Long> offset : offsets.entrySet()) {
+                List<StatsAccumulator> symbolStats = new ArrayList<>();
+                for (String symbol : symbolsByPartition.getOrDefault(offset.getKey(), List.of())) {
+                    StatsAccumulator stats = localStatsStore.get(symbol);
+                    if (stats != null) {
+                        symbolStats.add(stats);
+                    }
+                }
+                out.writeInt(offset.getKey());
+                out.writeLong(offset.getValue());
+                out.writeInt(symbolStats.size());
+                for (StatsAccumulator stats : symbolStats) {
+                    String symbol = stats.getSymbol();
+                    writeString(out, symbol);
+                    stats.write(out);
+
+                    List<Map.Entry<String, String>> states = new ArrayList<>();
+                    trackerStates.forEach((prefix, bySymbol) -> {
+                        String encoded = bySymbol.get(symbol);
+                        if (encoded != null) {
+                            states.add(Map.entry(prefix, encoded));
+                        }
+                    });
+                    out.writeInt(states.size());
+                    for (Map.Entry<String, String> state : states) {
+                        writeString(out, state.getKey());
+                        writeString(out, state.getValue());
+                    }
+
+                    candleBytes.reset();
+                    candleAggregator.write(symbol, candleOut);
+                    candleOut.flush();
+                    out.writeInt(candleBytes.size());
+                    candleBytes.writeTo(out);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private void readPayload(ByteBuffer in) {
+        checkpointPartitionCount = in.getInt();
+        int partitions = in.getInt();
+        for (int p = 0; p < partitions; p++) {
+            int partition = in.getInt();
+            long nextOffset = in.getLong();
+            int symbolCount = in.getInt();
+            List<SymbolCheckpoint> symbols = new ArrayList<>(symbolCount);
+            for (int s = 0; s < symbolCount; s++) {
+                String symbol = readString(in);
+                StatsAccumulator stats = StatsAccumulator.read(symbol, in);
+                int stateCount = in.getInt();
+                Map<String, String> states = new HashMap<>();
+                for (int i = 0; i < stateCount; i++) {
+                    states.put(readString(in), readString(in));
+                }
+                int candleLength = in.getInt();
+                ByteBuffer candles = candleLength > 0 ? in.slice(in.position(), candleLength) : null;
+                in.position(in.position() + candleLength);
+                symbols.add(new SymbolCheckpoint(symbol, stats, states, candles));
+            }
+            pendingRestore.put(partition, new PartitionCheckpoint(nextOffset, symbols));
+        }
+    }
+
+    private void writeFile(byte[] payload) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + payload.length);
+            buffer.putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putLong(System.currentTimeMillis())
+                    .putInt(payload.length)
+                    .putLong(crc(ByteBuffer.wrap(payload)))
+                    .put(payload);
+            buffer.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long crc(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record SymbolCheckpoint(String symbol, StatsAccumulator stats, Map<String, String> trackerStates,
+                                    ByteBuffer candles) {
+    }
+
+    private record PartitionCheckpoint(long nextOffset, List<SymbolCheckpoint> symbols) {
+    }
+}
@@ -0,0 +1,171 @@
+package com.alexlondon07.price_processor_service.state;
+
+import com.alexlondon07.price_processor_service.aggregation.BatchStats;
+import com.alexlondon07.price_processor_service.model.PriceStats;
+import com.alexlondon07.price_processor_service.utils.FixedPoint;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * Mutable, fixed-point running stats of one symbol.
+ * Applying a tick allocates nothing; {@link #toPriceStats()} converts to the
+ * BigDecimal-based PriceStats only when the stats are written out.
+ * The time of the newest applied tick is kept with the stats, so a tick redelivered
+ * after a failed write can be recognized and skipped instead of being counted twice.
+ * Methods are synchronized so a flush never observes a half-applied tick.
+ */
+public final class StatsAccumulator {
+
+    public static final long NO_TICK = Long.MIN_VALUE;
+
+    private final String symbol;
+    private long currentPrice;
+    private long minPrice;
+    private long maxPrice;
+    private long avgPrice;
+    private int sampleCount;
+    private long lastUpdatedMillis;
+    private long lastTickMillis = NO_TICK;
+
+    public StatsAccumulator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public static StatsAccumulator fromPriceStats(PriceStats stats) {
+        StatsAccumulator accumulator = new StatsAccumulator(stats.getSymbol());
+        accumulator.sampleCount = stats.getSampleCount();
+        if (stats.getSampleCount() > 0) {
+            accumulator.currentPrice = FixedPoint.fromDecimal(stats.getCurrentPrice());
+            accumulator.minPrice = FixedPoint.fromDecimal(stats.getMinPrice());
+            accumulator.maxPrice = FixedPoint.fromDecimal(stats.getMaxPrice());
+            accumulator.avgPrice = FixedPoint.fromDecimal(stats.getAvgPrice());
+        }
+        accumulator.lastUpdatedMillis = stats.getLastUpdated() != null ? stats.getLastUpdated().toEpochMilli() : 0L;
+        accumulator.lastTickMillis = stats.getLastTickTime() != null ? stats.getLastTickTime().toEpochMilli() : NO_TICK;
+        return accumulator;
+    }
+
+    /**
+     * Fold a tick in: avg += (price - avg) / newCount, rounded half up.
+     * @param price fixed-point price.
+     * @param tickMillis time of the tick.
+     * @param nowMillis update time.
+     * @return the current price before this tick, or -1 for the first sample.
+     */
+    public synchronized long apply(long price, long tickMillis, long nowMillis) {
+        long previous = sampleCount > 0 ? currentPrice : -1L;
+        if (sampleCount == 0) {
+            minPrice = price;
+            maxPrice = price;
+            avgPrice = price;
+        } else {
+            minPrice = Math.min(minPrice, price);
+            maxPrice = Math.max(maxPrice, price);
+            avgPrice += FixedPoint.divideRounded(price - avgPrice, sampleCount + 1L);
+        }
+        currentPrice = price;
+        sampleCount++;
+        lastUpdatedMillis = nowMillis;
+        lastTickMillis = Math.max(lastTickMillis, tickMillis);
+        return previous;
+    }
+
+    /**
+     * Fold a run of ticks in at once: avg += (sum - n * avg) / (count + n), rounded half up.
+     * Equal to applying the ticks one by one up to the rounding of the average.
+     * @param batch min, max and sum of the run, as computed by a BatchStatsKernel.
+     * @param lastPrice fixed-point price of the last tick of the run.
+     * @param lastTickMillis time of the newest tick of the run.
+     * @param nowMillis update time.
+     * @return the current price before this run, or -1 for the first samples.
+     */
+    public synchronized long merge(BatchStats batch, long lastPrice, long lastTickMillis, long nowMillis) {
+        long previous = sampleCount > 0 ? currentPrice : -1L;
+        if (sampleCount == 0) {
+            minPrice = batch.min();
+            maxPrice = batch.max();
+            avgPrice = FixedPoint.divideRounded(batch.sum(), batch.count());
+        } else {
+            minPrice = Math.min(minPrice, batch.min());
+            maxPrice = Math.max(maxPrice, batch.max());
+            avgPrice += FixedPoint.divideRounded(batch.sum() - batch.count() * avgPrice, (long) sampleCount + batch.count());
+        }
+        currentPrice = lastPrice;
+        sampleCount += batch.count();
+        lastUpdatedMillis = nowMillis;
+        this.lastTickMillis = Math.max(this.lastTickMillis, lastTickMillis);
+        return previous;
+    }
+
+    /**
+     * Write the raw fixed-point state, read back by {@link #read(String, ByteBuffer)}.
+     */
+    public synchronized void write(DataOutputStream out) throws IOException {
+        out.writeLong(currentPrice);
+        out.writeLong(minPrice);
+        out.writeLong(maxPrice);
+        out.writeLong(avgPrice);
+        out.writeInt(sampleCount);
+        out.writeLong(lastUpdatedMillis);
+        out.writeLong(lastTickMillis);
+    }
+
+    public static StatsAccumulator read(String symbol, ByteBuffer in) {
+        StatsAccumulator accumulator = new StatsAccumulator(symbol);
+        accumulator.currentPrice = in.getLong();
+        accumulator.minPrice = in.getLong();
+        accumulator.maxPrice = in.getLong();
+        accumulator.avgPrice = in.getLong();
+        accumulator.sampleCount = in.getInt();
+        accumulator.lastUpdatedMillis = in.getLong();
+        accumulator.lastTickMillis = in.getLong();
+        return accumulator;
+    }
+
+    public synchronized PriceStats toPriceStats() {
+        return PriceStats.builder()
+                .symbol(symbol)
+                .currentPrice(FixedPoint.toDecimal(currentPrice))
+                .minPrice(FixedPoint.toDecimal(minPrice))
+                .maxPrice(FixedPoint.toDecimal(maxPrice))
+                .avgPrice(FixedPoint.toDecimal(avgPrice, 2))
+                .sampleCount(sampleCount)
+                .lastUpdated(Instant.ofEpochMilli(lastUpdatedMillis))
+                .lastTickTime(lastTickMillis != NO_TICK ? Instant.ofEpochMilli(lastTickMillis) : null)
+                .build();
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public synchronized long getCurrentPrice() {
+        return currentPrice;
+    }
+
+    public synchronized long getMinPrice() {
+        return minPrice;
+    }
+
+    public synchronized long getMaxPrice() {
+        return maxPrice;
+    }
+
+    public synchronized long getAvgPrice() {
+        return avgPrice;
+    }
+
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return time of the newest applied tick, or {@link #NO_TICK} when unknown.
+     */
+    public synchronized long getLastTickMillis() {
+        return lastTickMillis;
+    }
+}
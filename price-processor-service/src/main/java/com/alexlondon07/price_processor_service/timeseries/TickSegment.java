@@ -0,0 +1,142 @@
+package com.alexlondon07.price_processor_service.timeseries;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One memory-mapped segment file of a symbol's tick history, in columnar layout:
+ * a header (magic, version, capacity, committed count), then the timestamp column
+ * (epoch millis) and the price column (fixed-point, 10^8), both {@code capacity} longs.
+ * The file is created at full size but stays sparse until the columns fill up.
+ * <p>
+ * A tick is committed by publishing the new count with release semantics after both
+ * columns are written, so readers on other threads see whole ticks only and never
+ * deserialize anything: they binary-search the timestamp column and read prices in place.
+ */
+final class TickSegment {
+
+    private static final int MAGIC = 0x54534547;  // "TSEG"
+    private static final int FORMAT_VERSION = 1;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int HEADER_BYTES = 16;
+    private static final VarHandle INT_VIEW = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int priceOffset;
+
+    private TickSegment(Path path, MappedByteBuffer buffer, int capacity) {
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.priceOffset = HEADER_BYTES + capacity * Long.BYTES;
+    }
+
+    static TickSegment create(Path path, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeOf(capacity));
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putInt(COUNT_OFFSET, 0);
+            return new TickSegment(path, buffer, capacity);
+        }
+    }
+
+    /**
+     * Map an existing segment, read-write to keep appending to it or read-only for queries.
+     */
+    static TickSegment open(Path path, boolean writable) throws IOException {
+        try (FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Not a tick segment: " + path);
+            }
+            int capacity = buffer.getInt(CAPACITY_OFFSET);
+            if (buffer.capacity() < sizeOf(capacity)) {
+                throw new IOException("Truncated tick segment: " + path);
+            }
+            return new TickSegment(path, buffer, capacity);
+        }
+    }
+
+    private static long sizeOf(int capacity) {
+        return HEADER_BYTES + 2L * capacity * Long.BYTES;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int count() {
+        return (int) INT_VIEW.getAcquire(buffer, COUNT_OFFSET);
+    }
+
+    boolean isFull() {
+        return count() >= capacity;
+    }
+
+    long timestamp(int index) {
+        return buffer.getLong(HEADER_BYTES + index * Long.BYTES);
+    }
+
+    long price(int index) {
+        return buffer.getLong(priceOffset + index * Long.BYTES);
+    }
+
+    /**
+     * Timestamp of the newest tick, or Long.MIN_VALUE for an empty segment.
+     */
+    long lastTimestamp() {
+        int count = count();
+        return count > 0 ? timestamp(count - 1) : Long.MIN_VALUE;
+    }
+
+    /**
+     * Append a tick; the single writer of a segment must call this under its own lock.
+     * @return false when the segment is full.
+     */
+    boolean append(long timestamp, long price) {
+        int count = count();
+        if (count >= capacity) {
+            return false;
+        }
+        buffer.putLong(HEADER_BYTES + count * Long.BYTES, timestamp);
+        buffer.putLong(priceOffset + count * Long.BYTES, price);
+        INT_VIEW.setRelease(buffer, COUNT_OFFSET, count + 1);
+        return true;
+    }
+
+    /**
+     * Index of the first tick at or after the timestamp among the first {@code count} ticks.
+     */
+    int lowerBound(long timestamp, int count) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamp(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    void force() {
+        buffer.force();
+    }
+}
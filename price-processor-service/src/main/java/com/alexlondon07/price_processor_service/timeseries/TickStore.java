@@ -0,0 +1,424 @@
+package com.alexlondon07.price_processor_service.timeseries;
+
+import com.alexlondon07.price_processor_service.model.Candle;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.FixedPoint;
+import com.alexlondon07.price_processor_service.utils.SymbolPartitioner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local append-only store of every tick for long-horizon history (processor.timeseries.*),
+ * so Redis only has to keep the hot window.
+ * Each symbol has a directory of daily segment files ({@code 2024-01-15-000.seg}, rolled to the
+ * next sequence number when a day outgrows the segment capacity), see {@link TickSegment}.
+ * Ticks are appended in timestamp order: one that is not newer than the symbol's last stored
+ * tick (a replay after a restart, a retried write, a late duplicate) is skipped.
+ * Queries map the segments overlapping the range and scan their columns in place.
+ * Every instance stores the ticks of the partitions it consumes, so it only answers for the
+ * symbols of its current partitions and reports since when it has held them: earlier ticks
+ * may have been stored by another instance.
+ * Appends do file I/O, callers on an event loop use {@link #appendAsync}.
+ */
+@Component
+@Slf4j
+public class TickStore implements ConsumerAwareRebalanceListener {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // {day}-{sequence}.seg, e.g. 2024-01-15-000.seg
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})-(\\d{3,})\\.seg");
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private final Path directory;
+    private final int segmentCapacity;
+    private final Duration retention;
+    private final boolean enabled;
+    private final Counter appendedTicks;
+    private final Counter skippedTicks;
+    private final Counter appendErrors;
+
+    private final Map<String, TickSegment> writers = new ConcurrentHashMap<>();
+    // Serializes the appends of a symbol without holding a map bin lock during file I/O
+    private final Map<String, Object> appendLocks = new ConcurrentHashMap<>();
+    private final Map<Integer, Instant> ownedSince = new ConcurrentHashMap<>();
+    private volatile int partitionCount;
+
+    public TickStore(MeterRegistry meterRegistry,
+                     @Value("${processor.timeseries.enabled:false}") boolean enabled,
+                     @Value("${processor.timeseries.path:data/timeseries}") String path,
+                     @Value("${processor.timeseries.segment-capacity:86400}") int segmentCapacity,
+                     @Value("${processor.timeseries.retention:365d}") Duration retention) {
+        if (segmentCapacity <= 0 || segmentCapacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("processor.timeseries.segment-capacity must be in 1.." + MAX_CAPACITY);
+        }
+        this.enabled = enabled;
+        this.directory = Path.of(path);
+        this.segmentCapacity = segmentCapacity;
+        this.retention = retention;
+        this.appendedTicks = Counter.builder("price.timeseries.ticks")
+                .description("Ticks appended to the local time-series store")
+                .register(meterRegistry);
+        this.skippedTicks = Counter.builder("price.timeseries.skipped")
+                .description("Ticks not newer than the last stored tick of their symbol")
+                .register(meterRegistry);
+        this.appendErrors = Counter.builder("price.timeseries.errors")
+                .description("Ticks that could not be written to the local time-series store")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void append(Collection<CryptoPrice> prices) {
+        if (enabled) {
+            prices.forEach(this::append);
+        }
+    }
+
+    /**
+     * Append the ticks on the bounded elastic scheduler, for callers running on an event loop.
+     * @return Mono<Void> completing once they are appended, it never fails.
+     */
+    public Mono<Void> appendAsync(Collection<CryptoPrice> prices) {
+        if (!enabled || prices.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.<Void>fromRunnable(() -> append(prices))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Append one tick to its symbol's current segment, rolling to a new segment on a new
+     * day or when the current one is full. A local write failure is counted and logged
+     * but never fails the Redis write path.
+     */
+    public void append(CryptoPrice price) {
+        if (!enabled || price.getPriceUsd() == null || price.getTimestamp() == null) {
+            return;
+        }
+        String symbol = price.getSymbol();
+        long timestamp = price.getTimestamp().toEpochMilli();
+        long fixedPrice = FixedPoint.fromDecimal(price.getPriceUsd());
+        // One symbol's appends run one after another, other symbols append concurrently
+        synchronized (appendLocks.computeIfAbsent(symbol, key -> new Object())) {
+            try {
+                TickSegment current = writers.get(symbol);
+                if (current == null) {
+                    current = openLatest(symbol);
+                }
+                if (current != null && timestamp <= current.lastTimestamp()) {
+                    skippedTicks.increment();
+                    writers.put(symbol, current);
+                    return;
+                }
+                LocalDate day = dayOf(timestamp);
+                if (current == null || !current.path().getFileName().toString().startsWith(day.toString())
+                        || current.isFull()) {
+                    current = roll(symbol, current, day);
+                }
+                current.append(timestamp, fixedPrice);
+                writers.put(symbol, current);
+                appendedTicks.increment();
+            } catch (IOException | UncheckedIOException e) {
+                appendErrors.increment();
+                log.warn("Could not append tick of {} to the time-series store: {}", symbol, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Since when the ticks of the symbol are stored here without gaps, i.e. when its partition
+     * was assigned to this instance.
+     * @return the instant, or null when another instance consumes the symbol.
+     */
+    public Instant completeSince(String symbol) {
+        return ownedSince.get(SymbolPartitioner.partitionOf(symbol, partitionCount));
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (enabled && !partitions.isEmpty()) {
+            partitionsAssigned(partitions, consumer.partitionsFor(Constants.TOPIC_CRYPTO_PRICES).size());
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsRevoked(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsRevoked(partitions);
+    }
+
+    /**
+     * @param partitionCount number of partitions of the prices topic.
+     */
+    public void partitionsAssigned(Collection<TopicPartition> partitions, int partitionCount) {
+        if (!enabled) {
+            return;
+        }
+        this.partitionCount = partitionCount;
+        Instant now = Instant.now();
+        for (TopicPartition partition : partitions) {
+            if (Constants.TOPIC_CRYPTO_PRICES.equals(partition.topic())) {
+                ownedSince.putIfAbsent(partition.partition(), now);
+            }
+        }
+    }
+
+    /**
+     * Stop answering for the symbols of the revoked partitions and force and release their open segments.
+     */
+    public void partitionsRevoked(Collection<TopicPartition> partitions) {
+        if (!enabled || partitions.isEmpty()) {
+            return;
+        }
+        for (TopicPartition partition : partitions) {
+            if (Constants.TOPIC_CRYPTO_PRICES.equals(partition.topic())) {
+                ownedSince.remove(partition.partition());
+            }
+        }
+        for (String symbol : List.copyOf(writers.keySet())) {
+            if (completeSince(symbol) != null) {
+                continue;
+            }
+            synchronized (appendLocks.computeIfAbsent(symbol, key -> new Object())) {
+                TickSegment segment = writers.remove(symbol);
+                if (segment != null) {
+                    segment.force();
+                }
+            }
+        }
+    }
+
+    /**
+     * Ticks of a symbol in [from, to], oldest first, at most {@code limit} of them.
+     */
+    public List<CryptoPrice> range(String symbol, Instant from, Instant to, int limit) throws IOException {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        List<CryptoPrice> prices = new ArrayList<>();
+        for (Path path : segments(symbol, dayOf(fromMillis), dayOf(toMillis))) {
+            TickSegment segment = map(symbol, path);
+            int count = segment.count();
+            for (int i = segment.lowerBound(fromMillis, count); i < count && prices.size() < limit; i++) {
+                long timestamp = segment.timestamp(i);
+                if (timestamp > toMillis) {
+                    break;
+                }
+                prices.add(CryptoPrice.builder()
+                        .symbol(symbol)
+                        .priceUsd(FixedPoint.toDecimal(segment.price(i)))
+                        .timestamp(Instant.ofEpochMilli(timestamp))
+                        .build());
+            }
+            if (prices.size() >= limit) {
+                break;
+            }
+        }
+        return prices;
+    }
+
+    /**
+     * Downsample a symbol's ticks in [from, to] to OHLC buckets of the given step, aligned to
+     * the epoch. Prices are folded as fixed-point longs straight from the mapped columns.
+     * @param resolution label of the step, reported as the candle resolution.
+     */
+    public List<Candle> aggregate(String symbol, Instant from, Instant to, Duration step, String resolution) throws IOException {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        long stepMillis = step.toMillis();
+        if (stepMillis <= 0) {
+            throw new IllegalArgumentException("Step must be positive");
+        }
+        List<Candle> candles = new ArrayList<>();
+        long bucket = Long.MIN_VALUE;
+        long open = 0;
+        long high = 0;
+        long low = 0;
+        long close = 0;
+        int count = 0;
+        for (Path path : segments(symbol, dayOf(fromMillis), dayOf(toMillis))) {
+            TickSegment segment = map(symbol, path);
+            int size = segment.count();
+            for (int i = segment.lowerBound(fromMillis, size); i < size; i++) {
+                long timestamp = segment.timestamp(i);
+                if (timestamp > toMillis) {
+                    break;
+                }
+                long price = segment.price(i);
+                long tickBucket = Math.floorDiv(timestamp, stepMillis) * stepMillis;
+                if (tickBucket != bucket) {
+                    if (count > 0) {
+                        candles.add(toCandle(symbol, resolution, bucket, open, high, low, close, count));
+                    }
+                    bucket = tickBucket;
+                    open = price;
+                    high = price;
+                    low = price;
+                    count = 0;
+                }
+                high = Math.max(high, price);
+                low = Math.min(low, price);
+                close = price;
+                count++;
+            }
+        }
+        if (count > 0) {
+            candles.add(toCandle(symbol, resolution, bucket, open, high, low, close, count));
+        }
+        return candles;
+    }
+
+    /**
+     * Push the dirty pages of the open segments to disk. The page cache already survives a
+     * process crash; this bounds what a host crash can lose.
+     */
+    @Scheduled(fixedDelayString = "${processor.timeseries.flush-interval:10000}")
+    public void flush() {
+        if (enabled) {
+            writers.values().forEach(TickSegment::force);
+        }
+    }
+
+    /**
+     * Delete segment files of days older than the retention.
+     */
+    @Scheduled(fixedDelayString = "${processor.timeseries.cleanup-interval:3600000}")
+    public void deleteExpired() {
+        if (!enabled || !Files.isDirectory(directory)) {
+            return;
+        }
+        String oldestKept = LocalDate.now(ZoneOffset.UTC).minusDays(retention.toDays()).toString();
+        try (Stream<Path> symbols = Files.list(directory)) {
+            for (Path symbolDirectory : symbols.filter(Files::isDirectory).toList()) {
+                try (Stream<Path> files = Files.list(symbolDirectory)) {
+                    for (Path file : files.toList()) {
+                        String day = segmentDay(file);
+                        if (day != null && day.compareTo(oldestKept) < 0) {
+                            Files.deleteIfExists(file);
+                            log.info("Deleted expired time-series segment {}", file);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete expired time-series segments: {}", e.getMessage());
+        }
+    }
+
+    private TickSegment roll(String symbol, TickSegment current, LocalDate day) throws IOException {
+        int sequence = 0;
+        if (current != null) {
+            current.force();
+            Matcher name = SEGMENT_NAME.matcher(current.path().getFileName().toString());
+            if (name.matches() && name.group(1).equals(day.toString())) {
+                sequence = Integer.parseInt(name.group(2)) + 1;
+            }
+        }
+        Path symbolDirectory = Files.createDirectories(directory.resolve(symbol));
+        Path path = symbolDirectory.resolve(String.format("%s-%03d%s", day, sequence, SEGMENT_SUFFIX));
+        log.info("Rolling time-series segment of {} to {}", symbol, path);
+        return TickSegment.create(path, segmentCapacity);
+    }
+
+    /**
+     * The newest segment of the symbol, mapped for appending, or null when there is none.
+     */
+    private TickSegment openLatest(String symbol) throws IOException {
+        Path symbolDirectory = directory.resolve(symbol);
+        if (!Files.isDirectory(symbolDirectory)) {
+            return null;
+        }
+        try (Stream<Path> files = Files.list(symbolDirectory)) {
+            Path latest = files.filter(file -> segmentDay(file) != null)
+                    .max(Path::compareTo)
+                    .orElse(null);
+            return latest != null ? TickSegment.open(latest, true) : null;
+        }
+    }
+
+    /**
+     * Segment files of the symbol whose day lies in [fromDay, toDay], in time order.
+     */
+    private List<Path> segments(String symbol, LocalDate fromDay, LocalDate toDay) throws IOException {
+        Path symbolDirectory = directory.resolve(symbol);
+        if (!enabled || !Files.isDirectory(symbolDirectory)) {
+            return List.of();
+        }
+        String first = fromDay.toString();
+        String last = toDay.toString();
+        try (Stream<Path> files = Files.list(symbolDirectory)) {
+            return files.filter(file -> {
+                        String day = segmentDay(file);
+                        return day != null && day.compareTo(first) >= 0 && day.compareTo(last) <= 0;
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * The writer's own mapping for the open segment, a read-only mapping for the others.
+     */
+    private TickSegment map(String symbol, Path path) throws IOException {
+        TickSegment writer = writers.get(symbol);
+        return writer != null && writer.path().equals(path) ? writer : TickSegment.open(path, false);
+    }
+
+    /**
+     * The day of a segment file, or null for a file not named like a segment.
+     */
+    private static String segmentDay(Path file) {
+        Matcher name = SEGMENT_NAME.matcher(file.getFileName().toString());
+        return name.matches() ? name.group(1) : null;
+    }
+
+    private static LocalDate dayOf(long epochMillis) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    private static Candle toCandle(String symbol, String resolution, long bucket,
+                                   long open, long high, long low, long close, int count) {
+        return Candle.builder()
+                .symbol(symbol)
+                .resolution(resolution)
+                .openTime(Instant.ofEpochMilli(bucket))
+                .open(FixedPoint.toDecimal(open))
+                .high(FixedPoint.toDecimal(high))
+                .low(FixedPoint.toDecimal(low))
+                .close(FixedPoint.toDecimal(close))
+                .count(count)
+                .build();
+    }
+}
@@ -5,11 +5,68 @@ public class Constants {
     // Kafka
     public static final String TOPIC_CRYPTO_PRICES = "crypto-prices";
     public static final String CONSUMER_GROUP = "price-processor-group";
+    public static final String RETRY_TOPIC_SUFFIX = "-retry";  // crypto-prices-retry-0, -1, ...
+    public static final String DLT_TOPIC_SUFFIX = "-dlt";
+    public static final String TOPIC_CRYPTO_PRICES_DLT = TOPIC_CRYPTO_PRICES + DLT_TOPIC_SUFFIX;
+    public static final String TOPIC_CRYPTO_PRICE_STATS = "crypto-price-stats";  // compacted, keyed by symbol
 
     // Redis keys
     public static final String REDIS_KEY_CURRENT = "crypto:current:";  // crypto:current:BTC
     public static final String REDIS_KEY_STATS = "crypto:stats:";      // crypto:stats:BTC
     public static final String REDIS_KEY_HISTORY = "crypto:history:";  // crypto:history:BTC
+    public static final String REDIS_KEY_STATS_HASH = "crypto:stats-hash:";  // crypto:stats-hash:BTC
+    public static final String REDIS_KEY_HISTORY_STREAM = "crypto:history-stream:";  // crypto:history-stream:BTC
+    public static final String REDIS_KEY_HISTORY_TAIL = "crypto:history-tail:";  // crypto:history-tail:BTC (raw ticks not yet sealed)
+    public static final String REDIS_KEY_HISTORY_CHUNKS = "crypto:history-chunks:";  // crypto:history-chunks:BTC (hash of compressed chunks)
+    public static final String REDIS_KEY_HISTORY_INDEX = "crypto:history-index:";  // crypto:history-index:BTC (chunk ids by first tick)
+    public static final String REDIS_KEY_CANDLES = "crypto:candles:";  // crypto:candles:1m:BTC
+    public static final String REDIS_KEY_SKETCH = "crypto:sketch:";  // crypto:sketch:BTC
+    public static final String REDIS_KEY_WINDOWS = "crypto:windows:";  // crypto:windows:BTC
+    public static final String REDIS_KEY_INDICATORS = "crypto:indicators:";  // crypto:indicators:BTC
+    public static final String REDIS_KEY_CORRELATION = "crypto:correlation";  // latest correlation snapshot
+    public static final String REDIS_KEY_CORRELATION_LEASE = "crypto:correlation:lease";  // instance running the correlation engine
+    public static final String REDIS_KEY_MOVERS = "crypto:movers:";  // crypto:movers:change24h (sorted set of symbols)
+    public static final String REDIS_KEY_TICK_GUARDS = "crypto:tick-guards";  // newest tick written per guarded key
+    public static final String REDIS_KEY_REBUILD = "rebuild:";  // rebuild:crypto:stats:BTC (shadow copy while rebuilding)
+
+    // Stats update modes (processor.stats.mode)
+    public static final String STATS_MODE_READ_MODIFY_WRITE = "read-modify-write";
+    public static final String STATS_MODE_SCRIPT = "script";
+    public static final String STATS_MODE_WRITE_BEHIND = "write-behind";
+
+    // Price path logging modes (processor.logging.mode)
+    public static final String LOGGING_MODE_FULL = "full";
+    public static final String LOGGING_MODE_SAMPLED = "sampled";
+
+    // Movers leaderboards, one sorted set per metric
+    public static final String MOVER_METRIC_CHANGE_24H = "change24h";
+    public static final String MOVER_METRIC_MARKET_CAP = "marketCap";
+    public static final String MOVER_METRIC_VOLATILITY = "volatility";
+
+    // History formats (processor.history.format)
+    public static final String HISTORY_FORMAT_LIST = "list";
+    public static final String HISTORY_FORMAT_STREAM = "stream";
+    public static final String HISTORY_FORMAT_CHUNKED = "chunked";
+    // Pipeline stages, the stage tag of price.stage.duration
+    public static final String STAGE_CURRENT_PRICE_SAVE = "current_price.save";
+    public static final String STAGE_CURRENT_PRICE_GET = "current_price.get";
+    public static final String STAGE_CURRENT_PRICE_SCAN = "current_price.scan";
+    public static final String STAGE_HISTORY_APPEND = "history.append";
+    public static final String STAGE_HISTORY_READ = "history.read";
+    public static final String STAGE_STATS_UPDATE = "stats.update";  // processPrice: load state, stats GET, fold, stats SET
+    public static final String STAGE_STATS_GET = "stats.get";
+    public static final String STAGE_STATS_SET = "stats.set";
+    public static final String STAGE_STATS_MGET = "stats.mget";
+    public static final String STAGE_STATS_SCRIPT = "stats.script";
+    public static final String STAGE_CANDLES_SAVE = "candles.save";
+    public static final String STAGE_STATE_GET = "state.get";
+    public static final String STAGE_STATE_SET = "state.set";
+    public static final String STAGE_BATCH_SAVE = "batch.save";
+    public static final String STAGE_CORRELATION_SAVE = "correlation.save";
+    public static final String STAGE_REBUILD_WRITE = "rebuild.write";
+    public static final String STAGE_REBUILD_DELETE = "rebuild.delete";
+    public static final String STAGE_REBUILD_SWAP = "rebuild.swap";
+
     // Alert thresholds
     public static final double ALERT_THRESHOLD_PERCENT = 5.0;
     private Constants() {}
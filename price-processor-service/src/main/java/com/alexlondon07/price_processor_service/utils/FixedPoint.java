@@ -0,0 +1,52 @@
+package com.alexlondon07.price_processor_service.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point price arithmetic on plain longs scaled by 10^8 (satoshi precision).
+ * The hot path works on primitives only; BigDecimal is limited to the JSON boundary
+ * through {@link #fromDecimal(BigDecimal)} and {@link #toDecimal(long, int)}.
+ */
+public final class FixedPoint {
+
+    public static final int SCALE = 8;
+    public static final long ONE = 100_000_000L;
+
+    private FixedPoint() {}
+
+    public static long fromDecimal(BigDecimal value) {
+        return value.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long value) {
+        return BigDecimal.valueOf(value, SCALE);
+    }
+
+    public static BigDecimal toDecimal(long value, int scale) {
+        return BigDecimal.valueOf(value, SCALE).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    public static double toDouble(long value) {
+        return (double) value / ONE;
+    }
+
+    /**
+     * Division rounded half away from zero, like {@link RoundingMode#HALF_UP}.
+     */
+    public static long divideRounded(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (Math.abs(remainder) * 2 >= Math.abs(divisor)) {
+            quotient += (dividend < 0) == (divisor < 0) ? 1 : -1;
+        }
+        return quotient;
+    }
+
+    /**
+     * Relative change from {@code oldValue} to {@code newValue} in percent.
+     */
+    public static double changePercent(long oldValue, long newValue) {
+        return (double) (newValue - oldValue) / oldValue * 100;
+    }
+}
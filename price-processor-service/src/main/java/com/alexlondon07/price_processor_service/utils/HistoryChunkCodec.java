@@ -0,0 +1,328 @@
+package com.alexlondon07.price_processor_service.utils;
+
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Gorilla-style encoding of price history ("chunked" history format).
+ * <p>
+ * New ticks are appended to a per-symbol tail as fixed 32-byte raw records
+ * (timestamp millis, price, change 24h, market cap; a missing value is NaN).
+ * Once the tail holds a full chunk it is sealed into a compressed chunk:
+ * timestamps as delta-of-delta, each double column XORed with its previous value,
+ * storing only the meaningful bits. Regular ticks then cost a few bits per column
+ * instead of a full JSON document.
+ * <p>
+ * Chunk layout: version (1 byte), tick count (4 bytes), then the bit stream:
+ * the first tick in full (64 bits per column), every further tick as
+ * <ul>
+ *   <li>delta-of-delta of the timestamp: '0' | '10' + 7 bits | '110' + 9 bits | '1110' + 12 bits | '1111' + 64 bits</li>
+ *   <li>per double column: '0' when unchanged, '10' + bits inside the previous leading/trailing zero window,
+ *       '11' + 6 bits leading zeros + 6 bits length - 1 + the meaningful bits</li>
+ * </ul>
+ * The crypto-api keeps a decoder copy, so the layout must only change together with {@link #VERSION}.
+ */
+public final class HistoryChunkCodec {
+
+    public static final int RAW_TICK_BYTES = 32;
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 5;
+    private static final int COLUMNS = 3;
+
+    private HistoryChunkCodec() {}
+
+    /**
+     * Receives decoded ticks in append order. Missing values are NaN.
+     */
+    @FunctionalInterface
+    public interface TickConsumer {
+        void accept(long timestampMillis, double price, double change24h, double marketCap);
+    }
+
+    /**
+     * Raw tail records for the given ticks, ready to be APPENDed to the tail.
+     * A tick without a timestamp is stamped with the current time, like the stream format does.
+     */
+    public static byte[] encodeRaw(List<CryptoPrice> prices) {
+        ByteBuffer buffer = ByteBuffer.allocate(prices.size() * RAW_TICK_BYTES);
+        for (CryptoPrice price : prices) {
+            buffer.putLong(price.getTimestamp() != null ? price.getTimestamp().toEpochMilli() : System.currentTimeMillis());
+            buffer.putDouble(toDouble(price.getPriceUsd()));
+            buffer.putDouble(toDouble(price.getPriceChange24h()));
+            buffer.putDouble(toDouble(price.getMarketCap()));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Timestamp of the raw record at the given index of a tail.
+     */
+    public static long rawTimestamp(byte[] raw, int index) {
+        return ByteBuffer.wrap(raw).getLong(index * RAW_TICK_BYTES);
+    }
+
+    /**
+     * Decode whole raw records of a tail; a trailing partial record is ignored.
+     * @return the number of ticks decoded.
+     */
+    public static int decodeRaw(byte[] raw, TickConsumer consumer) {
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        int count = raw.length / RAW_TICK_BYTES;
+        for (int i = 0; i < count; i++) {
+            consumer.accept(buffer.getLong(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+        }
+        return count;
+    }
+
+    /**
+     * Compress the first {@code count} raw records of a tail into a chunk.
+     */
+    public static byte[] encodeChunk(byte[] raw, int count) {
+        if (count <= 0 || count * RAW_TICK_BYTES > raw.length) {
+            throw new IllegalArgumentException("Tail holds fewer than " + count + " ticks");
+        }
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        BitWriter out = new BitWriter(count * 8);
+        out.writeBits(VERSION, 8);
+        out.writeBits(count, 32);
+
+        long timestamp = in.getLong();
+        long[] previous = new long[COLUMNS];
+        int[] leading = new int[COLUMNS];
+        int[] trailing = new int[COLUMNS];
+        out.writeBits(timestamp, 64);
+        for (int c = 0; c < COLUMNS; c++) {
+            previous[c] = Double.doubleToRawLongBits(in.getDouble());
+            leading[c] = -1;
+            out.writeBits(previous[c], 64);
+        }
+
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long next = in.getLong();
+            long delta = next - timestamp;
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousDelta = delta;
+            timestamp = next;
+
+            for (int c = 0; c < COLUMNS; c++) {
+                long bits = Double.doubleToRawLongBits(in.getDouble());
+                long xor = bits ^ previous[c];
+                previous[c] = bits;
+                if (xor == 0) {
+                    out.writeBit(false);
+                    continue;
+                }
+                out.writeBit(true);
+                int lead = Long.numberOfLeadingZeros(xor);
+                int trail = Long.numberOfTrailingZeros(xor);
+                if (leading[c] >= 0 && lead >= leading[c] && trail >= trailing[c]) {
+                    // Fits the previous window, reuse it without repeating its size
+                    out.writeBit(false);
+                    out.writeBits(xor >>> trailing[c], 64 - leading[c] - trailing[c]);
+                } else {
+                    int length = 64 - lead - trail;
+                    out.writeBit(true);
+                    out.writeBits(lead, 6);
+                    out.writeBits(length - 1, 6);
+                    out.writeBits(xor >>> trail, length);
+                    leading[c] = lead;
+                    trailing[c] = trail;
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode every tick of a chunk.
+     * @return the number of ticks decoded.
+     */
+    public static int decodeChunk(byte[] chunk, TickConsumer consumer) {
+        if (chunk.length < HEADER_BYTES || chunk[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported history chunk version");
+        }
+        BitReader in = new BitReader(chunk);
+        in.readBits(8);
+        int count = (int) in.readBits(32);
+
+        long timestamp = in.readBits(64);
+        long[] previous = new long[COLUMNS];
+        int[] leading = new int[COLUMNS];
+        int[] trailing = new int[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            previous[c] = in.readBits(64);
+        }
+        consumer.accept(timestamp, Double.longBitsToDouble(previous[0]),
+                Double.longBitsToDouble(previous[1]), Double.longBitsToDouble(previous[2]));
+
+        long delta = 0;
+        for (int i = 1; i < count; i++) {
+            delta += readDeltaOfDelta(in);
+            timestamp += delta;
+            for (int c = 0; c < COLUMNS; c++) {
+                if (!in.readBit()) {
+                    continue;
+                }
+                if (in.readBit()) {
+                    leading[c] = (int) in.readBits(6);
+                    int length = (int) in.readBits(6) + 1;
+                    trailing[c] = 64 - leading[c] - length;
+                }
+                previous[c] ^= in.readBits(64 - leading[c] - trailing[c]) << trailing[c];
+            }
+            consumer.accept(timestamp, Double.longBitsToDouble(previous[0]),
+                    Double.longBitsToDouble(previous[1]), Double.longBitsToDouble(previous[2]));
+        }
+        return count;
+    }
+
+    /**
+     * Decode the reply of read_history_chunks.lua: length-prefixed frames, the raw tail first
+     * and then the chunks in time order. Ticks are emitted chunks first, tail last.
+     * @return the number of ticks decoded.
+     */
+    public static int decodeSnapshot(byte[] snapshot, TickConsumer consumer) {
+        ByteBuffer frames = ByteBuffer.wrap(snapshot);
+        byte[] tail = new byte[frames.getInt()];
+        frames.get(tail);
+        int decoded = 0;
+        while (frames.hasRemaining()) {
+            byte[] chunk = new byte[frames.getInt()];
+            frames.get(chunk);
+            decoded += decodeChunk(chunk, consumer);
+        }
+        return decoded + decodeRaw(tail, consumer);
+    }
+
+    /**
+     * Back to the BigDecimal of the JSON boundary, NaN being a missing value.
+     * The shortest decimal that round-trips the double is used, so 66151.01 stays 66151.01.
+     */
+    public static BigDecimal toDecimal(double value) {
+        return Double.isNaN(value) ? null : BigDecimal.valueOf(value);
+    }
+
+    private static double toDouble(BigDecimal value) {
+        return value != null ? value.doubleValue() : Double.NaN;
+    }
+
+    private static void writeDeltaOfDelta(BitWriter out, long dod) {
+        if (dod == 0) {
+            out.writeBit(false);
+        } else if (dod >= -64 && dod <= 63) {
+            out.writeBits(0b10, 2);
+            out.writeBits(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            out.writeBits(0b110, 3);
+            out.writeBits(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(dod, 12);
+        } else {
+            out.writeBits(0b1111, 4);
+            out.writeBits(dod, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        if (!in.readBit()) {
+            return 0;
+        }
+        if (!in.readBit()) {
+            return signExtend(in.readBits(7), 7);
+        }
+        if (!in.readBit()) {
+            return signExtend(in.readBits(9), 9);
+        }
+        if (!in.readBit()) {
+            return signExtend(in.readBits(12), 12);
+        }
+        return in.readBits(64);
+    }
+
+    private static long signExtend(long value, int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private static final class BitWriter {
+        private byte[] bytes;
+        private int bitCount;
+
+        BitWriter(int initialBytes) {
+            this.bytes = new byte[Math.max(initialBytes, 64)];
+        }
+
+        void writeBit(boolean bit) {
+            writeBits(bit ? 1 : 0, 1);
+        }
+
+        /**
+         * Write the low {@code count} bits of value, most significant first.
+         */
+        void writeBits(long value, int count) {
+            if (bitCount + count > bytes.length * 8L) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, (bitCount + count) / 8 + 1));
+            }
+            while (count > 0) {
+                int room = 8 - (bitCount & 7);
+                int take = Math.min(room, count);
+                int bits = (int) (value >>> (count - take)) & ((1 << take) - 1);
+                bytes[bitCount >>> 3] |= (byte) (bits << (room - take));
+                bitCount += take;
+                count -= take;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (bitCount + 7) >>> 3);
+        }
+    }
+
+    private static final class BitReader {
+        private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+        private final byte[] bytes;
+        private int position;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean readBit() {
+            boolean bit = ((bytes[position >>> 3] >>> (7 - (position & 7))) & 1) != 0;
+            position++;
+            return bit;
+        }
+
+        /**
+         * Read 1 to 64 bits, most significant first, from a big-endian window of 8 bytes.
+         */
+        long readBits(int count) {
+            if (count > 56) {
+                // The window holds 57 usable bits at worst, split wider reads
+                return (readBits(count - 32) << 32) | readBits(32);
+            }
+            int index = position >>> 3;
+            long window;
+            if (index + 8 <= bytes.length) {
+                window = (long) LONG_VIEW.get(bytes, index);
+            } else {
+                window = 0;
+                for (int i = 0; i < 8; i++) {
+                    window = (window << 8) | (index + i < bytes.length ? bytes[index + i] & 0xFF : 0);
+                }
+            }
+            long value = (window << (position & 7)) >>> (64 - count);
+            position += count;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.alexlondon07.price_processor_service.utils;
+
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Partition of crypto-prices a symbol's ticks are produced to: the same mapping as the
+ * producer's default partitioner for a String key, so a consumer can tell which symbols
+ * move with a partition.
+ */
+public final class SymbolPartitioner {
+
+    private SymbolPartitioner() {}
+
+    /**
+     * @return the symbol's partition, or -1 while the partition count is unknown (0).
+     */
+    public static int partitionOf(String symbol, int partitionCount) {
+        if (partitionCount <= 0) {
+            return -1;
+        }
+        return Utils.toPositive(Utils.murmur2(symbol.getBytes(StandardCharsets.UTF_8))) % partitionCount;
+    }
+}
@@ -0,0 +1,10 @@
+-- Acquires or renews a lease held by one instance, e.g. to run a job on only one consumer.
+-- KEYS[1] = lease key (crypto:correlation:lease)
+-- ARGV[1] = owner id of the calling instance, ARGV[2] = lease time (millis)
+-- Returns 1 when the caller holds the lease until it expires, 0 when another instance does.
+local owner = redis.call('GET', KEYS[1])
+if owner and owner ~= ARGV[1] then
+    return 0
+end
+redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+return 1
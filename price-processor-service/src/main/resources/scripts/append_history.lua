@@ -0,0 +1,44 @@
+-- Appends one or more ticks to a symbol's history stream and trims it in the same call.
+-- Entry ids are derived from the tick timestamp so XRANGE can serve time ranges directly.
+-- A stream only accepts ids after its last generated id, so a tick at or before it is skipped
+-- rather than given a later id: appending a redelivered batch again is a no-op and a late
+-- tick never shows up out of place in a time range. The last generated id is read from
+-- XINFO STREAM, since age trimming can remove every entry while the stream keeps that id.
+-- KEYS[1] = history stream key (crypto:history-stream:{symbol})
+-- ARGV[1] = trim strategy (MAXLEN | MINID), ARGV[2] = trim threshold
+-- ARGV[3] = number of field/value arguments per entry, ARGV[4] = timestamp field name
+-- ARGV[5..n] = entries, each made of ARGV[3] field/value arguments
+local key = KEYS[1]
+local strategy = ARGV[1]
+local threshold = ARGV[2]
+local width = tonumber(ARGV[3])
+local timestampField = ARGV[4]
+
+local lastMs = -1
+if redis.call('EXISTS', key) == 1 then
+    local info = redis.call('XINFO', 'STREAM', key)
+    for i = 1, #info, 2 do
+        if info[i] == 'last-generated-id' then
+            lastMs = tonumber(string.match(info[i + 1], '^(%d+)'))
+            break
+        end
+    end
+end
+
+for first = 5, #ARGV, width do
+    local entry = {}
+    local ms = lastMs
+    for i = first, first + width - 1, 2 do
+        entry[#entry + 1] = ARGV[i]
+        entry[#entry + 1] = ARGV[i + 1]
+        if ARGV[i] == timestampField then
+            ms = tonumber(ARGV[i + 1])
+        end
+    end
+    if ms > lastMs then
+        redis.call('XADD', key, strategy, '~', threshold, string.format('%d-0', ms), unpack(entry))
+        lastMs = ms
+    end
+end
+
+return redis.call('XLEN', key)
@@ -0,0 +1,24 @@
+-- Appends raw ticks to a chunked history tail (see HistoryChunkCodec), skipping every tick at or
+-- before the newest one already appended, so a batch appended again after a failed write or seal
+-- adds nothing. The newest appended timestamp is kept in the chunks hash under the 'last' field,
+-- which outlives the tail being sealed; chunk ids always contain a ':', so they cannot collide.
+-- KEYS[1] = tail (crypto:history-tail:{symbol}), KEYS[2] = chunks hash (crypto:history-chunks:{symbol})
+-- ARGV = pairs of tick timestamp (millis) and its raw 32-byte record, in append order
+-- Returns the tail length in bytes.
+local tail, chunks = KEYS[1], KEYS[2]
+local last = tonumber(redis.call('HGET', chunks, 'last')) or -1
+
+local records = {}
+for i = 1, #ARGV, 2 do
+    local timestamp = tonumber(ARGV[i])
+    if timestamp > last then
+        records[#records + 1] = ARGV[i + 1]
+        last = timestamp
+    end
+end
+
+if #records == 0 then
+    return redis.call('STRLEN', tail)
+end
+redis.call('HSET', chunks, 'last', string.format('%d', last))
+return redis.call('APPEND', tail, table.concat(records))
@@ -0,0 +1,11 @@
+-- Replaces the finished candle of one bucket and trims the oldest candles beyond the retention
+-- in one call, so a reader never sees the bucket missing or two candles for it.
+-- KEYS[1] = candles key (crypto:candles:{resolution}:{symbol})
+-- ARGV[1] = candle open time (millis, the score), ARGV[2] = candle, ARGV[3] = candles kept
+-- Returns the number of candles kept.
+local key = KEYS[1]
+local openTime = ARGV[1]
+redis.call('ZREMRANGEBYSCORE', key, openTime, openTime)
+redis.call('ZADD', key, openTime, ARGV[2])
+redis.call('ZREMRANGEBYRANK', key, 0, -(tonumber(ARGV[3]) + 1))
+return redis.call('ZCARD', key)
@@ -0,0 +1,42 @@
+-- Seals the oldest ticks of a chunked history tail into a compressed chunk (see HistoryChunkCodec).
+-- The chunk is stored in a hash and indexed by its first tick timestamp, the sealed raw bytes are
+-- cut from the tail and old chunks are trimmed, all in one atomic step.
+-- HSETNX makes a second sealer of the same ticks a no-op, so concurrent writers cannot duplicate a chunk.
+-- KEYS[1] = tail (crypto:history-tail:{symbol}), KEYS[2] = chunks hash (crypto:history-chunks:{symbol}),
+-- KEYS[3] = chunk index sorted set (crypto:history-index:{symbol})
+-- ARGV[1] = chunk id, ARGV[2] = chunk bytes, ARGV[3] = first tick timestamp (millis),
+-- ARGV[4] = raw tail bytes covered by the chunk,
+-- ARGV[5] = max chunks kept (0 = unbounded), ARGV[6] = age cutoff in millis (0 = none)
+-- Returns the remaining tail length in bytes, or -1 when the chunk was already sealed.
+local tail, chunks, index = KEYS[1], KEYS[2], KEYS[3]
+local sealedBytes = tonumber(ARGV[4])
+local maxChunks = tonumber(ARGV[5])
+local cutoff = tonumber(ARGV[6])
+
+if redis.call('HSETNX', chunks, ARGV[1], ARGV[2]) == 0 then
+    return -1
+end
+redis.call('ZADD', index, ARGV[3], ARGV[1])
+
+local rest = redis.call('GETRANGE', tail, sealedBytes, -1)
+redis.call('SET', tail, rest)
+
+local expired = {}
+if maxChunks > 0 then
+    local excess = redis.call('ZCARD', index) - maxChunks
+    if excess > 0 then
+        expired = redis.call('ZRANGE', index, 0, excess - 1)
+    end
+elseif cutoff > 0 then
+    -- The newest chunk starting before the cutoff may still hold ticks after it, so it is kept
+    local old = redis.call('ZRANGEBYSCORE', index, '-inf', '(' .. cutoff)
+    for i = 1, #old - 1 do
+        expired[i] = old[i]
+    end
+end
+if #expired > 0 then
+    redis.call('HDEL', chunks, unpack(expired))
+    redis.call('ZREM', index, unpack(expired))
+end
+
+return #rest
@@ -0,0 +1,14 @@
+-- Sets a key only when the tick its value was derived from is newer than the last tick written
+-- to it, so a record retried from a delay topic never overwrites the value of a later tick.
+-- The newest written tick of every guarded key is kept in one hash, with the key as field.
+-- KEYS[1] = key (crypto:current:{symbol}, crypto:stats:{symbol}), KEYS[2] = guard hash (crypto:tick-guards)
+-- ARGV[1] = tick timestamp (millis), ARGV[2] = value
+-- Returns 1 when the value was written, 0 when a tick at or after it was already written.
+local tick = tonumber(ARGV[1])
+local last = tonumber(redis.call('HGET', KEYS[2], KEYS[1]))
+if last and tick <= last then
+    return 0
+end
+redis.call('SET', KEYS[1], ARGV[2])
+redis.call('HSET', KEYS[2], KEYS[1], ARGV[1])
+return 1
@@ -0,0 +1,13 @@
+-- Moves rebuilt shadow keys over their live counterparts in one atomic step,
+-- so readers see either the old state or the rebuilt state, never a mix.
+-- A shadow key that was never written leaves its live key untouched.
+-- KEYS = shadow1, live1, shadow2, live2, ...
+-- Returns the number of keys swapped.
+local swapped = 0
+for i = 1, #KEYS, 2 do
+    if redis.call('EXISTS', KEYS[i]) == 1 then
+        redis.call('RENAME', KEYS[i], KEYS[i + 1])
+        swapped = swapped + 1
+    end
+end
+return swapped
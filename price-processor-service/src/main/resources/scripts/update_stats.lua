@@ -0,0 +1,62 @@
+-- Folds one or more prices into the stats hash of a symbol in a single atomic step.
+-- The time of the newest applied tick is kept in the 'lastTick' field and ticks at or before it
+-- are skipped, so a batch retried after a failed write is not counted twice.
+-- KEYS[1] = stats hash key (crypto:stats-hash:{symbol})
+-- ARGV[1] = symbol, ARGV[2] = lastUpdated (ISO-8601),
+-- ARGV[3..n] = pairs of price and tick time (millis) in consumption order
+local key = KEYS[1]
+local stored = redis.call('HMGET', key, 'currentPrice', 'minPrice', 'maxPrice', 'sum', 'sampleCount', 'lastTick')
+
+local previous = stored[1]
+local min = stored[2]
+local max = stored[3]
+local sum = tonumber(stored[4]) or 0
+local count = tonumber(stored[5]) or 0
+local lastTick = tonumber(stored[6])
+local current = previous
+
+for i = 3, #ARGV, 2 do
+    local tick = tonumber(ARGV[i + 1])
+    if not lastTick or tick > lastTick then
+        lastTick = tick
+        current = ARGV[i]
+        local price = tonumber(current)
+        if not min or price < tonumber(min) then
+            min = current
+        end
+        if not max or price > tonumber(max) then
+            max = current
+        end
+        sum = sum + price
+        count = count + 1
+    end
+end
+
+local avg = string.format('%.2f', sum / count)
+
+redis.call('HSET', key,
+    'symbol', ARGV[1],
+    'currentPrice', current,
+    'minPrice', min,
+    'maxPrice', max,
+    'avgPrice', avg,
+    'sum', string.format('%.17g', sum),
+    'sampleCount', tostring(count),
+    'lastUpdated', ARGV[2],
+    'lastTick', string.format('%d', lastTick))
+
+local result = {
+    stats = {
+        symbol = ARGV[1],
+        currentPrice = current,
+        minPrice = min,
+        maxPrice = max,
+        avgPrice = avg,
+        sampleCount = count,
+        lastUpdated = ARGV[2]
+    }
+}
+if previous then
+    result.previousPrice = previous
+end
+return cjson.encode(result)
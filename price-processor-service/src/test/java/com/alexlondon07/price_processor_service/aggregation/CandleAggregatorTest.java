@@ -0,0 +1,151 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import com.alexlondon07.price_processor_service.model.Candle;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.repository.PriceRepository;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import com.alexlondon07.price_processor_service.utils.SymbolPartitioner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CandleAggregatorTest {
+
+    private static final Instant DAY = Instant.parse("2024-01-15T00:00:00Z");
+    private static final int PARTITIONS = 12;
+
+    private final List<Candle> saved = new ArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private CandleAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        PriceRepository priceRepository = mock(PriceRepository.class);
+        when(priceRepository.saveCandles(anyList())).thenAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(0));
+            return Mono.empty();
+        });
+        meterRegistry = new SimpleMeterRegistry();
+        aggregator = new CandleAggregator(priceRepository, meterRegistry, Duration.ofSeconds(30), Duration.ofMinutes(5));
+    }
+
+    @Test
+    void lateTickInsideOpenCandleIsApplied() {
+        aggregator.onTick(tick(10, "100"));
+        aggregator.onTick(tick(40, "110"));
+        aggregator.onTick(tick(20, "90"));
+        aggregator.onTick(tick(5, "95"));
+
+        Candle candle = finishMinute();
+
+        assertEquals(4, candle.getCount());
+        assertEquals(0, new BigDecimal("95").compareTo(candle.getOpen()));
+        assertEquals(0, new BigDecimal("110").compareTo(candle.getHigh()));
+        assertEquals(0, new BigDecimal("90").compareTo(candle.getLow()));
+        assertEquals(0, new BigDecimal("110").compareTo(candle.getClose()));
+    }
+
+    @Test
+    void redeliveredTicksAreSkipped() {
+        List<CryptoPrice> batch = List.of(tick(10, "100"), tick(20, "120"), tick(30, "80"));
+        batch.forEach(aggregator::onTick);
+        batch.forEach(aggregator::onTick);
+
+        Candle candle = finishMinute();
+
+        assertEquals(3, candle.getCount());
+        assertEquals(0, new BigDecimal("80").compareTo(candle.getClose()));
+    }
+
+    @Test
+    void tickWithSameTimestampAndOtherPriceIsApplied() {
+        aggregator.onTick(tick(10, "100"));
+        aggregator.onTick(tick(10, "101"));
+
+        assertEquals(2, finishMinute().getCount());
+    }
+
+    @Test
+    void candleFinishesOncePastItsEndPlusLateness() {
+        aggregator.onTick(tick(10, "100"));
+        aggregator.onTick(tick(80, "101"));
+        aggregator.saveFinished().block();
+        assertTrue(saved.isEmpty());
+
+        aggregator.onTick(tick(95, "102"));
+        aggregator.saveFinished().block();
+
+        assertEquals(1, minuteCandles().size());
+        assertEquals(DAY, minuteCandles().get(0).getOpenTime());
+    }
+
+    @Test
+    void tickForFinishedCandleIsDroppedAsLate() {
+        aggregator.onTick(tick(10, "100"));
+        aggregator.onTick(tick(95, "101"));
+
+        aggregator.onTick(tick(20, "150"));
+        aggregator.saveFinished().block();
+
+        Candle candle = minuteCandles().get(0);
+        assertEquals(1, candle.getCount());
+        assertEquals(0, new BigDecimal("100").compareTo(candle.getHigh()));
+        assertEquals(1.0, meterRegistry.get("price.candles.late")
+                .tag("symbol", "BTC").tag("resolution", "1m").counter().count());
+    }
+
+    @Test
+    void revokedPartitionEvictsOpenCandles() throws IOException {
+        aggregator.onTick(tick(10, "100"));
+        int partition = SymbolPartitioner.partitionOf("BTC", PARTITIONS);
+
+        aggregator.partitionsRevoked(List.of(new TopicPartition(Constants.TOPIC_CRYPTO_PRICES, (partition + 1) % PARTITIONS)), PARTITIONS);
+        assertTrue(aggregator.write("BTC", new DataOutputStream(new ByteArrayOutputStream())));
+
+        aggregator.partitionsRevoked(List.of(new TopicPartition(Constants.TOPIC_CRYPTO_PRICES, partition)), PARTITIONS);
+        assertFalse(aggregator.write("BTC", new DataOutputStream(new ByteArrayOutputStream())));
+    }
+
+    /**
+     * Push the watermark past the first minute plus lateness and return its candle.
+     */
+    private Candle finishMinute() {
+        aggregator.onTick(tick(95, "1"));
+        aggregator.saveFinished().block();
+        List<Candle> candles = minuteCandles();
+        assertEquals(1, candles.size());
+        return candles.get(0);
+    }
+
+    private List<Candle> minuteCandles() {
+        return saved.stream()
+                .filter(candle -> CandleResolution.ONE_MINUTE.getLabel().equals(candle.getResolution()))
+                .toList();
+    }
+
+    private static CryptoPrice tick(long second, String price) {
+        return CryptoPrice.builder()
+                .symbol("BTC")
+                .priceUsd(new BigDecimal(price))
+                .timestamp(DAY.plusSeconds(second))
+                .build();
+    }
+}
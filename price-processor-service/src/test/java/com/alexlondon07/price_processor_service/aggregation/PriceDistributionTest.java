@@ -0,0 +1,49 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PriceDistributionTest {
+
+    @Test
+    void encodedDistributionRoundTrips() {
+        PriceDistribution distribution = new PriceDistribution(0.01, 1024);
+        double price = 66_000;
+        for (int i = 0; i < 1_000; i++) {
+            double change = (i % 13 - 6) * 0.05;
+            price *= 1 + change / 100;
+            distribution.addPrice(price);
+            distribution.addChange(change);
+        }
+
+        PriceDistribution decoded = PriceDistribution.decode(distribution.encode());
+
+        for (double quantile : new double[]{0.5, 0.9, 0.99}) {
+            assertEquals(distribution.getPrices().quantile(quantile), decoded.getPrices().quantile(quantile));
+            assertEquals(distribution.getChanges().quantile(quantile), decoded.getChanges().quantile(quantile));
+        }
+        assertEquals(distribution.encode(), decoded.encode());
+    }
+
+    @Test
+    void decodedDistributionMergesWithNewTicks() {
+        PriceDistribution stored = new PriceDistribution(0.01, 1024);
+        PriceDistribution fresh = new PriceDistribution(0.01, 1024);
+        PriceDistribution all = new PriceDistribution(0.01, 1024);
+        for (int i = 1; i <= 200; i++) {
+            PriceDistribution target = i <= 100 ? stored : fresh;
+            target.addPrice(i);
+            target.addChange(i % 2 == 0 ? -i * 0.01 : i * 0.01);
+            all.addPrice(i);
+            all.addChange(i % 2 == 0 ? -i * 0.01 : i * 0.01);
+        }
+
+        PriceDistribution merged = PriceDistribution.decode(stored.encode());
+        merged.getPrices().merge(fresh.getPrices());
+        merged.getChanges().merge(fresh.getChanges());
+
+        assertEquals(200, merged.getPrices().getCount());
+        assertEquals(all.encode(), merged.encode());
+    }
+}
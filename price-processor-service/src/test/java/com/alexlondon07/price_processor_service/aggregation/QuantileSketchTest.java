@@ -0,0 +1,157 @@
+package com.alexlondon07.price_processor_service.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTest {
+
+    private static final double ACCURACY = 0.01;
+    private static final double[] QUANTILES = {0, 0.01, 0.25, 0.5, 0.75, 0.9, 0.99, 1};
+
+    @Test
+    void quantilesStayWithinRelativeAccuracy() {
+        // Eight decades fit in 1024 bins of 2%, nothing is collapsed
+        double[] values = logUniform(new Random(7), 20_000, 1e-2, 1e6);
+        QuantileSketch sketch = sketchOf(values, 1024);
+
+        assertEquals(values.length, sketch.getCount());
+        assertAccurate(values, sketch);
+    }
+
+    @Test
+    void negativeAndZeroValuesKeepTheirOrder() {
+        Random random = new Random(11);
+        double[] values = new double[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 10 == 0 ? 0 : (random.nextDouble() - 0.5) * 20;
+        }
+        QuantileSketch sketch = sketchOf(values, 1024);
+
+        assertAccurate(values, sketch);
+        assertEquals(0, sketch.quantile(0.5), 0.1);
+    }
+
+    @Test
+    void mergeEqualsOneSketchOfAllValues() {
+        double[] values = logUniform(new Random(3), 10_000, 1, 1e5);
+        QuantileSketch left = sketchOf(Arrays.copyOfRange(values, 0, 4_000), 1024);
+        QuantileSketch right = sketchOf(Arrays.copyOfRange(values, 4_000, values.length), 1024);
+        QuantileSketch all = sketchOf(values, 1024);
+
+        left.merge(right);
+
+        assertEquals(all.getCount(), left.getCount());
+        for (double quantile : QUANTILES) {
+            assertEquals(all.quantile(quantile), left.quantile(quantile), "q" + quantile);
+        }
+        assertArrayEquals(all.toBytes(), left.toBytes());
+    }
+
+    @Test
+    void mergeIntoEmptySketch() {
+        QuantileSketch empty = new QuantileSketch(ACCURACY, 1024);
+        QuantileSketch filled = sketchOf(new double[]{-3, 0, 5, 8}, 1024);
+
+        empty.merge(filled);
+
+        assertEquals(4, empty.getCount());
+        assertEquals(filled.quantile(0), empty.quantile(0));
+        assertEquals(filled.quantile(1), empty.quantile(1));
+    }
+
+    @Test
+    void mergeRejectsDifferentAccuracy() {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 1024);
+
+        assertThrows(IllegalArgumentException.class, () -> sketch.merge(new QuantileSketch(0.02, 1024)));
+    }
+
+    @Test
+    void collapsedBinsKeepTheTailAccurate() {
+        double[] values = logUniform(new Random(5), 20_000, 1e-6, 1e9);
+        QuantileSketch sketch = sketchOf(values, 64);
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        // 64 bins of 2% cover less than two decades, only the lowest quantiles are collapsed
+        for (double quantile : new double[]{0.99, 0.999, 1}) {
+            assertWithinAccuracy(valueAt(sorted, quantile), sketch.quantile(quantile), quantile);
+        }
+        assertTrue(sketch.quantile(0) > sorted[0]);
+    }
+
+    @Test
+    void bytesRoundTrip() {
+        Random random = new Random(13);
+        double[] values = new double[5_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 50 == 0 ? 0 : (random.nextDouble() - 0.3) * 1e4;
+        }
+        QuantileSketch sketch = sketchOf(values, 256);
+
+        QuantileSketch decoded = QuantileSketch.fromBytes(sketch.toBytes());
+
+        assertEquals(sketch.getCount(), decoded.getCount());
+        for (double quantile : QUANTILES) {
+            assertEquals(sketch.quantile(quantile), decoded.quantile(quantile), "q" + quantile);
+        }
+        assertArrayEquals(sketch.toBytes(), decoded.toBytes());
+    }
+
+    @Test
+    void emptySketchRoundTrips() {
+        QuantileSketch decoded = QuantileSketch.fromBytes(new QuantileSketch(ACCURACY, 1024).toBytes());
+
+        assertEquals(0, decoded.getCount());
+        assertTrue(Double.isNaN(decoded.quantile(0.5)));
+    }
+
+    @Test
+    void unknownFormatIsRejected() {
+        byte[] bytes = new QuantileSketch(ACCURACY, 1024).toBytes();
+        bytes[0] = 99;
+
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.fromBytes(bytes));
+    }
+
+    private static QuantileSketch sketchOf(double[] values, int maxBins) {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, maxBins);
+        for (double value : values) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+
+    private static double[] logUniform(Random random, int count, double min, double max) {
+        double[] values = new double[count];
+        double logMin = Math.log(min);
+        double logRange = Math.log(max) - logMin;
+        for (int i = 0; i < count; i++) {
+            values[i] = Math.exp(logMin + random.nextDouble() * logRange);
+        }
+        return values;
+    }
+
+    private static void assertAccurate(double[] values, QuantileSketch sketch) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double quantile : QUANTILES) {
+            assertWithinAccuracy(valueAt(sorted, quantile), sketch.quantile(quantile), quantile);
+        }
+    }
+
+    private static double valueAt(double[] sorted, double quantile) {
+        return sorted[(int) (quantile * (sorted.length - 1))];
+    }
+
+    private static void assertWithinAccuracy(double expected, double actual, double quantile) {
+        assertEquals(expected, actual, Math.abs(expected) * ACCURACY + 1e-9, "q" + quantile);
+    }
+}
@@ -0,0 +1,111 @@
+package com.alexlondon07.price_processor_service.flow;
+
+import com.alexlondon07.price_processor_service.config.CustomDatadogConfig;
+import com.alexlondon07.price_processor_service.listener.PoisonRecordRouter;
+import com.alexlondon07.price_processor_service.listener.PriceBatchListener;
+import com.alexlondon07.price_processor_service.logging.PriceEventLog;
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import com.alexlondon07.price_processor_service.service.PriceStorageService;
+import com.alexlondon07.price_processor_service.service.StatsChangePublisher;
+import com.alexlondon07.price_processor_service.state.ConflationBuffer;
+import com.alexlondon07.price_processor_service.state.StateCheckpointer;
+import com.alexlondon07.price_processor_service.utils.Constants;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConsumerLagMonitorTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition(Constants.TOPIC_CRYPTO_PRICES, 0);
+    private static final long END_OFFSET = 100_000;
+
+    private final AtomicBoolean buffered = new AtomicBoolean();
+    private ConsumerLagMonitor consumerLagMonitor;
+    private ConflationController conflationController;
+    private PriceBatchListener listener;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        consumerLagMonitor = new ConsumerLagMonitor(null, meterRegistry);
+        conflationController = new ConflationController(consumerLagMonitor, meterRegistry, true, 50_000, 1_000);
+
+        // Conflated batches fold into the buffer, per-tick batches flush it first
+        PriceStorageService priceStorageService = mock(PriceStorageService.class);
+        when(priceStorageService.processBatch(anyList(), any())).thenAnswer(invocation -> {
+            buffered.set(conflationController.isActive());
+            return Mono.empty();
+        });
+        ConflationBuffer conflationBuffer = mock(ConflationBuffer.class);
+        when(conflationBuffer.isEmpty()).thenAnswer(invocation -> !buffered.get());
+        CustomDatadogConfig.PriceMetricsCollector priceMetricsCollector = mock(CustomDatadogConfig.PriceMetricsCollector.class);
+        when(priceMetricsCollector.timeKafkaProcessing(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        StateCheckpointer stateCheckpointer = mock(StateCheckpointer.class);
+        when(stateCheckpointer.track(any(), any())).thenAnswer(invocation -> invocation.<Supplier<Mono<Void>>>getArgument(1).get());
+
+        listener = new PriceBatchListener(priceStorageService, priceMetricsCollector, stateCheckpointer,
+                mock(PoisonRecordRouter.class), mock(StatsChangePublisher.class), mock(PriceEventLog.class),
+                conflationBuffer, consumerLagMonitor);
+    }
+
+    @Test
+    void leavesConflationOnceConsumedAndThenCommits() {
+        measureLag(0);
+        assertTrue(conflationController.isActive());
+
+        Acknowledgment conflatedAck = mock(Acknowledgment.class);
+        listener.onPricesReceived(records(0, 99_499), conflatedAck);
+        verify(conflatedAck, never()).acknowledge();
+
+        // Nothing was committed, but the consumed position has caught up
+        measureLag(0);
+        assertEquals(500, consumerLagMonitor.getTotalLag());
+        assertFalse(conflationController.isActive());
+
+        Acknowledgment perTickAck = mock(Acknowledgment.class);
+        listener.onPricesReceived(records(99_500, 99_999), perTickAck);
+        verify(perTickAck).acknowledge();
+    }
+
+    @Test
+    void committedOffsetsAheadOfThisInstanceCount() {
+        listener.onPricesReceived(records(0, 10), mock(Acknowledgment.class));
+
+        measureLag(99_990);
+
+        assertEquals(10, consumerLagMonitor.getTotalLag());
+    }
+
+    private void measureLag(long committed) {
+        consumerLagMonitor.update(Map.of(PARTITION, END_OFFSET), Map.of(PARTITION, committed));
+    }
+
+    private static List<ConsumerRecord<String, CryptoPrice>> records(long... offsets) {
+        return Arrays.stream(offsets)
+                .mapToObj(offset -> new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, "BTC",
+                        CryptoPrice.builder().symbol("BTC").priceUsd(new BigDecimal("50000")).timestamp(Instant.now()).build()))
+                .toList();
+    }
+}
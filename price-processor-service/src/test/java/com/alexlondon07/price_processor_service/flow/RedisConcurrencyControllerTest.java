@@ -0,0 +1,176 @@
+package com.alexlondon07.price_processor_service.flow;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.SignalType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RedisConcurrencyControllerTest {
+
+    private static final long MILLI = 1_000_000L;
+    private static final int MIN_SAMPLES = 20;
+
+    @Test
+    void growsWhileLagRisesAndBatchesAreHeldBack() {
+        RedisConcurrencyController controller = controller(true);
+        controller.onLag(100);
+        controller.onLag(200);
+
+        window(controller, MILLI, true);
+        controller.adjust();
+
+        assertEquals(68, limit(controller));
+    }
+
+    @Test
+    void keepsTheLimitWhenNoBatchWasHeldBack() {
+        RedisConcurrencyController controller = controller(true);
+        controller.onLag(100);
+        controller.onLag(200);
+
+        window(controller, MILLI, false);
+        controller.adjust();
+
+        assertEquals(64, limit(controller));
+    }
+
+    @Test
+    void keepsTheLimitWhileLagFallsBelowGrowLag() {
+        RedisConcurrencyController controller = controller(true);
+        controller.onLag(500);
+        controller.onLag(400);
+
+        window(controller, MILLI, true);
+        controller.adjust();
+
+        assertEquals(64, limit(controller));
+    }
+
+    @Test
+    void growsWhileLagStaysAboveGrowLag() {
+        RedisConcurrencyController controller = controller(true);
+        controller.onLag(5_000);
+        controller.onLag(5_000);
+
+        window(controller, MILLI, true);
+        controller.adjust();
+
+        assertEquals(68, limit(controller));
+    }
+
+    @Test
+    void growthStopsAtMaxLimit() {
+        RedisConcurrencyController controller = controller(true);
+        controller.onLag(5_000);
+
+        for (int i = 0; i < 100; i++) {
+            window(controller, MILLI, true);
+            controller.adjust();
+        }
+
+        assertEquals(256, limit(controller));
+    }
+
+    @Test
+    void failedCommandsCutTheLimitDownToMinLimit() {
+        RedisConcurrencyController controller = controller(true);
+
+        controller.record(SignalType.ON_ERROR, 0);
+        controller.adjust();
+        assertEquals(48, limit(controller));
+
+        for (int i = 0; i < 20; i++) {
+            controller.record(SignalType.ON_ERROR, 0);
+            controller.adjust();
+        }
+        assertEquals(4, limit(controller));
+    }
+
+    @Test
+    void inflatedLatencyCutsTheLimit() {
+        RedisConcurrencyController controller = controller(true);
+        controller.onLag(5_000);
+        window(controller, MILLI, false);
+        controller.adjust();
+
+        // Above baseline * latency-tolerance, even with lag rising and batches held back
+        window(controller, 3 * MILLI, true);
+        controller.adjust();
+
+        assertEquals(48, limit(controller));
+    }
+
+    @Test
+    void latencyWithinToleranceStillGrows() {
+        RedisConcurrencyController controller = controller(true);
+        controller.onLag(5_000);
+        window(controller, MILLI, false);
+        controller.adjust();
+
+        window(controller, MILLI * 3 / 2, true);
+        controller.adjust();
+
+        assertEquals(68, limit(controller));
+    }
+
+    @Test
+    void tooFewSamplesKeepTheLimit() {
+        RedisConcurrencyController controller = controller(true);
+        controller.onLag(5_000);
+        controller.limitFor(1_000);
+        for (int i = 0; i < MIN_SAMPLES - 1; i++) {
+            controller.record(SignalType.ON_COMPLETE, MILLI);
+        }
+
+        controller.adjust();
+
+        assertEquals(64, limit(controller));
+    }
+
+    @Test
+    void cancelledCommandsAreNotSamples() {
+        RedisConcurrencyController controller = controller(true);
+        controller.onLag(5_000);
+        controller.limitFor(1_000);
+        for (int i = 0; i < MIN_SAMPLES; i++) {
+            controller.record(SignalType.CANCEL, MILLI);
+        }
+
+        controller.adjust();
+
+        assertEquals(64, limit(controller));
+    }
+
+    @Test
+    void disabledControllerUsesTheDefaultLimit() {
+        RedisConcurrencyController controller = controller(false);
+        controller.record(SignalType.ON_ERROR, 0);
+
+        controller.adjust();
+
+        assertEquals(256, limit(controller));
+    }
+
+    private static RedisConcurrencyController controller(boolean enabled) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new RedisConcurrencyController(new ConsumerLagMonitor(null, meterRegistry), meterRegistry,
+                enabled, 64, 4, 256, 4, 0.75, 2.0, 1_000, MIN_SAMPLES);
+    }
+
+    /**
+     * One adjust interval of completed commands, optionally with a batch held back by the limit.
+     */
+    private static void window(RedisConcurrencyController controller, long latencyNanos, boolean throttled) {
+        for (int i = 0; i < MIN_SAMPLES; i++) {
+            controller.record(SignalType.ON_COMPLETE, latencyNanos);
+        }
+        if (throttled) {
+            controller.limitFor(Integer.MAX_VALUE);
+        }
+    }
+
+    private static int limit(RedisConcurrencyController controller) {
+        return controller.limitFor(0);
+    }
+}
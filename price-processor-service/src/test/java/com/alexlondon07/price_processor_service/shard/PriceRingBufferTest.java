@@ -0,0 +1,119 @@
+package com.alexlondon07.price_processor_service.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriceRingBufferTest {
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(8, new PriceRingBuffer<String>(5).capacity());
+        assertEquals(8, new PriceRingBuffer<String>(8).capacity());
+        assertEquals(2, new PriceRingBuffer<String>(1).capacity());
+        assertEquals(2, new PriceRingBuffer<String>(2).capacity());
+    }
+
+    @Test
+    void drainsInOfferOrderWithTags() {
+        PriceRingBuffer<String> ringBuffer = new PriceRingBuffer<>(8);
+        Object firstTag = new Object();
+        Object secondTag = new Object();
+        assertTrue(ringBuffer.offer("BTC", firstTag));
+        assertTrue(ringBuffer.offer("ETH", secondTag));
+        assertEquals(2, ringBuffer.size());
+
+        List<String> entries = new ArrayList<>();
+        List<Object> tags = new ArrayList<>();
+        assertEquals(2, ringBuffer.drain(entries, tags, 10));
+
+        assertEquals(List.of("BTC", "ETH"), entries);
+        assertSame(firstTag, tags.get(0));
+        assertSame(secondTag, tags.get(1));
+        assertEquals(0, ringBuffer.size());
+        assertEquals(0, ringBuffer.drain(entries, tags, 10));
+    }
+
+    @Test
+    void rejectsOffersWhenFullUntilDrained() {
+        PriceRingBuffer<Integer> ringBuffer = new PriceRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.offer(i, null));
+        }
+        assertFalse(ringBuffer.offer(4, null));
+        assertEquals(4, ringBuffer.size());
+
+        List<Integer> entries = new ArrayList<>();
+        assertEquals(3, ringBuffer.drain(entries, new ArrayList<>(), 3));
+        assertEquals(List.of(0, 1, 2), entries);
+        assertEquals(1, ringBuffer.size());
+
+        // Freed slots are reused as the positions wrap around
+        for (int i = 4; i < 7; i++) {
+            assertTrue(ringBuffer.offer(i, null));
+        }
+        assertFalse(ringBuffer.offer(7, null));
+        entries.clear();
+        assertEquals(4, ringBuffer.drain(entries, new ArrayList<>(), 10));
+        assertEquals(List.of(3, 4, 5, 6), entries);
+    }
+
+    @Test
+    void concurrentProducersKeepTheirOwnOrder() throws Exception {
+        int producers = 4;
+        int perProducer = 50_000;
+        PriceRingBuffer<long[]> ringBuffer = new PriceRingBuffer<>(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int p = 0; p < producers; p++) {
+                long producer = p;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (long i = 0; i < perProducer; i++) {
+                        long[] entry = {producer, i};
+                        while (!ringBuffer.offer(entry, null)) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+
+            long[] next = new long[producers];
+            List<long[]> entries = new ArrayList<>();
+            List<Object> tags = new ArrayList<>();
+            int total = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (total < producers * perProducer) {
+                assertTrue(System.nanoTime() < deadline, "drained only " + total + " entries");
+                total += ringBuffer.drain(entries, tags, 256);
+                for (long[] entry : entries) {
+                    int producer = (int) entry[0];
+                    assertEquals(next[producer], entry[1], "order of producer " + producer);
+                    next[producer]++;
+                }
+                entries.clear();
+                tags.clear();
+            }
+            assertEquals(0, ringBuffer.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
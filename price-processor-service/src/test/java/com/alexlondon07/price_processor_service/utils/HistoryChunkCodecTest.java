@@ -0,0 +1,177 @@
+package com.alexlondon07.price_processor_service.utils;
+
+import com.alexlondon07.price_processor_service.model.CryptoPrice;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HistoryChunkCodecTest {
+
+    @Test
+    void regularTicksRoundTrip() {
+        long[][] ticks = new long[200][];
+        double price = 66151.01;
+        for (int i = 0; i < ticks.length; i++) {
+            price += (i % 7 - 3) * 0.37;
+            ticks[i] = tick(1_700_000_000_000L + i * 1000L + (i % 3), price, -1.25 + i * 0.01, 1.3e12 + i * 1e6);
+        }
+        assertRoundTrip(ticks);
+    }
+
+    @Test
+    void missingValuesRoundTripAsNaN() {
+        List<CryptoPrice> prices = List.of(
+                CryptoPrice.builder().priceUsd(new BigDecimal("66151.01")).timestamp(Instant.ofEpochMilli(1_000L)).build(),
+                CryptoPrice.builder().priceUsd(new BigDecimal("66152.5")).priceChange24h(new BigDecimal("-0.4"))
+                        .timestamp(Instant.ofEpochMilli(2_000L)).build(),
+                CryptoPrice.builder().priceUsd(new BigDecimal("66150")).marketCap(new BigDecimal("1300000000000"))
+                        .timestamp(Instant.ofEpochMilli(3_000L)).build());
+        byte[] raw = HistoryChunkCodec.encodeRaw(prices);
+
+        List<long[]> decoded = decode(HistoryChunkCodec.encodeChunk(raw, prices.size()));
+
+        assertEquals(3, decoded.size());
+        assertEquals(new BigDecimal("66151.01"), HistoryChunkCodec.toDecimal(Double.longBitsToDouble(decoded.get(0)[1])));
+        assertNull(HistoryChunkCodec.toDecimal(Double.longBitsToDouble(decoded.get(0)[2])));
+        assertNull(HistoryChunkCodec.toDecimal(Double.longBitsToDouble(decoded.get(0)[3])));
+        assertEquals(new BigDecimal("-0.4"), HistoryChunkCodec.toDecimal(Double.longBitsToDouble(decoded.get(1)[2])));
+        assertNull(HistoryChunkCodec.toDecimal(Double.longBitsToDouble(decoded.get(1)[3])));
+        assertNull(HistoryChunkCodec.toDecimal(Double.longBitsToDouble(decoded.get(2)[2])));
+        assertEquals(new BigDecimal("1.3E+12"), HistoryChunkCodec.toDecimal(Double.longBitsToDouble(decoded.get(2)[3])));
+        assertEquals(3_000L, decoded.get(2)[0]);
+    }
+
+    @Test
+    void deltaOfDeltaUsesEveryWidth() {
+        long base = 1_700_000_000_000L;
+        long[] timestamps = {
+                base,
+                base + 1000,            // first delta, 12-bit range
+                base + 2000,            // dod 0
+                base + 3063,            // dod 63, widest 7-bit
+                base + 4062,            // dod -64, smallest 7-bit
+                base + 5317,            // dod 256, 12-bit
+                base + 6317,            // dod -255, 9-bit
+                base + 9364,            // dod 2047, widest 12-bit
+                base + 10363,           // dod -2048, smallest 12-bit
+                base + 10363 + 86_400_000L * 365, // a year gap, 64-bit escape
+                base + 5,               // back in time, negative 64-bit escape
+                base + 6,
+                Long.MAX_VALUE / 4,
+                Long.MIN_VALUE / 4
+        };
+        long[][] ticks = new long[timestamps.length][];
+        for (int i = 0; i < timestamps.length; i++) {
+            ticks[i] = tick(timestamps[i], 100.0 + i, 0.5, 1e9);
+        }
+        assertRoundTrip(ticks);
+    }
+
+    @Test
+    void fullWidthXorWindowIsReused() {
+        // 1.0 ^ -MIN_VALUE has neither leading nor trailing zeros: a 64-bit window,
+        // which the following changes then reuse with 64-bit reads
+        long[][] ticks = {
+                tick(1_000L, 1.0, 1.0, 1.0),
+                tick(2_000L, -Double.MIN_VALUE, Double.NaN, -1.0),
+                tick(3_000L, 1.0, 1.0, 1.0),
+                tick(4_000L, -Double.MIN_VALUE, -0.0, Double.MAX_VALUE),
+                tick(5_000L, 2.0, Double.NEGATIVE_INFINITY, Double.MIN_VALUE),
+                tick(6_000L, 2.0, Double.NEGATIVE_INFINITY, Double.MIN_VALUE)
+        };
+        assertRoundTrip(ticks);
+    }
+
+    @Test
+    void singleTickChunk() {
+        assertRoundTrip(new long[][]{tick(42L, 0.1, Double.NaN, Double.NaN)});
+    }
+
+    @Test
+    void snapshotDecodesChunksBeforeTail() {
+        long[][] ticks = new long[25][];
+        for (int i = 0; i < ticks.length; i++) {
+            ticks[i] = tick(10_000L + i * 500L, 30_000.0 + i * 1.5, i % 2 == 0 ? Double.NaN : 2.0, 5e11);
+        }
+        byte[] first = HistoryChunkCodec.encodeChunk(raw(ticks, 0, 10), 10);
+        byte[] second = HistoryChunkCodec.encodeChunk(raw(ticks, 10, 20), 10);
+        byte[] tail = raw(ticks, 20, 25);
+        // The tail ends in a partial record, as seen while an APPEND is in flight
+        byte[] partialTail = ByteBuffer.allocate(tail.length + 7).put(tail).array();
+        byte[] snapshot = ByteBuffer.allocate(4 * 3 + partialTail.length + first.length + second.length)
+                .putInt(partialTail.length).put(partialTail)
+                .putInt(first.length).put(first)
+                .putInt(second.length).put(second)
+                .array();
+
+        List<long[]> decoded = new ArrayList<>();
+        int count = HistoryChunkCodec.decodeSnapshot(snapshot, collector(decoded));
+
+        assertEquals(ticks.length, count);
+        for (int i = 0; i < ticks.length; i++) {
+            assertArrayEquals(ticks[i], decoded.get(i));
+        }
+    }
+
+    @Test
+    void emptySnapshotTail() {
+        byte[] snapshot = ByteBuffer.allocate(4).putInt(0).array();
+        assertEquals(0, HistoryChunkCodec.decodeSnapshot(snapshot, collector(new ArrayList<>())));
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] chunk = HistoryChunkCodec.encodeChunk(raw(new long[][]{tick(1L, 1.0, 1.0, 1.0)}, 0, 1), 1);
+        chunk[0] = 2;
+        assertThrows(IllegalArgumentException.class, () -> HistoryChunkCodec.decodeChunk(chunk, collector(new ArrayList<>())));
+    }
+
+    @Test
+    void rawTimestampReadsRecordAtIndex() {
+        byte[] raw = raw(new long[][]{tick(7L, 1.0, 1.0, 1.0), tick(9L, 1.0, 1.0, 1.0)}, 0, 2);
+        assertEquals(9L, HistoryChunkCodec.rawTimestamp(raw, 1));
+    }
+
+    private static void assertRoundTrip(long[][] ticks) {
+        List<long[]> decoded = decode(HistoryChunkCodec.encodeChunk(raw(ticks, 0, ticks.length), ticks.length));
+        assertEquals(ticks.length, decoded.size());
+        for (int i = 0; i < ticks.length; i++) {
+            // Compared as raw bits, so NaN, -0.0 and subnormals must survive exactly
+            assertArrayEquals(ticks[i], decoded.get(i));
+        }
+    }
+
+    private static List<long[]> decode(byte[] chunk) {
+        List<long[]> decoded = new ArrayList<>();
+        HistoryChunkCodec.decodeChunk(chunk, collector(decoded));
+        return decoded;
+    }
+
+    private static HistoryChunkCodec.TickConsumer collector(List<long[]> decoded) {
+        return (timestamp, price, change, marketCap) -> decoded.add(tick(timestamp, price, change, marketCap));
+    }
+
+    private static long[] tick(long timestamp, double price, double change, double marketCap) {
+        return new long[]{timestamp, Double.doubleToRawLongBits(price),
+                Double.doubleToRawLongBits(change), Double.doubleToRawLongBits(marketCap)};
+    }
+
+    private static byte[] raw(long[][] ticks, int from, int to) {
+        ByteBuffer buffer = ByteBuffer.allocate((to - from) * HistoryChunkCodec.RAW_TICK_BYTES);
+        for (int i = from; i < to; i++) {
+            for (long column : ticks[i]) {
+                buffer.putLong(column);
+            }
+        }
+        return buffer.array();
+    }
+}